@@ -23,7 +23,7 @@ import org.oscim.layers.tile.MapTile;
 import org.oscim.tiling.ITileDataSink;
 import org.oscim.tiling.OverzoomDataSink;
 import org.oscim.tiling.QueryResult;
-import org.oscim.tiling.source.mvt.TileDecoder;
+import org.oscim.tiling.source.mvt.MvtTileDecoder;
 
 import java.io.ByteArrayInputStream;
 import java.util.Collections;
@@ -44,10 +44,10 @@ public class MBTilesMvtTileDataSource extends MBTilesTileDataSource {
 
     private final String mLanguage;
 
-    private final ThreadLocal<TileDecoder> mThreadLocalDecoders = new ThreadLocal<TileDecoder>() {
+    private final ThreadLocal<MvtTileDecoder> mThreadLocalDecoders = new ThreadLocal<MvtTileDecoder>() {
         @Override
-        protected TileDecoder initialValue() {
-            return new TileDecoder(mLanguage);
+        protected MvtTileDecoder initialValue() {
+            return new MvtTileDecoder(mLanguage);
         }
     };
 
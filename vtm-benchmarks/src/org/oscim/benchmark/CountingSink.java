@@ -0,0 +1,52 @@
+/*
+ * This file is part of the OpenScienceMap project (http://www.opensciencemap.org).
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.oscim.benchmark;
+
+import org.oscim.backend.canvas.Bitmap;
+import org.oscim.core.MapElement;
+import org.oscim.tiling.ITileDataSink;
+import org.oscim.tiling.QueryResult;
+
+/**
+ * Sink which only counts the received elements and points, so that the
+ * JIT can not drop the decoding.
+ */
+class CountingSink implements ITileDataSink {
+
+    int elements;
+    int points;
+    QueryResult result;
+
+    void reset() {
+        elements = 0;
+        points = 0;
+        result = null;
+    }
+
+    @Override
+    public void process(MapElement element) {
+        elements++;
+        points += element.getNumPoints();
+    }
+
+    @Override
+    public void setTileImage(Bitmap bitmap) {
+    }
+
+    @Override
+    public void completed(QueryResult result) {
+        this.result = result;
+    }
+}
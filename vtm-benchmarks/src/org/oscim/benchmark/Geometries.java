@@ -0,0 +1,89 @@
+/*
+ * This file is part of the OpenScienceMap project (http://www.opensciencemap.org).
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.oscim.benchmark;
+
+import org.oscim.core.GeometryBuffer;
+import org.oscim.core.Tile;
+
+import java.util.Random;
+
+/**
+ * Reproducible synthetic geometries in tile coordinates.
+ */
+final class Geometries {
+
+    private Geometries() {
+        throw new IllegalStateException();
+    }
+
+    /**
+     * Random walk lines with 'numPoints' points within the tile.
+     */
+    static GeometryBuffer[] lines(Random random, int numLines, int numPoints) {
+        GeometryBuffer[] lines = new GeometryBuffer[numLines];
+        for (int i = 0; i < numLines; i++) {
+            GeometryBuffer g = new GeometryBuffer(numPoints, 2);
+            g.startLine();
+            float x = random.nextFloat() * Tile.SIZE;
+            float y = random.nextFloat() * Tile.SIZE;
+            for (int j = 0; j < numPoints; j++) {
+                x = clamp(x + (random.nextFloat() - 0.5f) * 40);
+                y = clamp(y + (random.nextFloat() - 0.5f) * 40);
+                g.addPoint(x, y);
+            }
+            lines[i] = g;
+        }
+        return lines;
+    }
+
+    /**
+     * Star shaped polygons with 'numPoints' points in the outer ring and
+     * 'numHoles' small square holes around the center. Holes have the
+     * opposite winding order of the outer ring.
+     */
+    static GeometryBuffer[] polygons(Random random, int numPolygons, int numPoints, int numHoles) {
+        GeometryBuffer[] polygons = new GeometryBuffer[numPolygons];
+        for (int i = 0; i < numPolygons; i++) {
+            GeometryBuffer g = new GeometryBuffer(numPoints + numHoles * 4, numHoles + 2);
+            float cx = Tile.SIZE / 2;
+            float cy = Tile.SIZE / 2;
+
+            g.startPolygon();
+            for (int j = 0; j < numPoints; j++) {
+                double a = -2 * Math.PI * j / numPoints;
+                float r = Tile.SIZE * (0.35f + 0.1f * random.nextFloat());
+                g.addPoint(cx + (float) Math.cos(a) * r, cy + (float) Math.sin(a) * r);
+            }
+
+            for (int h = 0; h < numHoles; h++) {
+                double a = 2 * Math.PI * h / numHoles;
+                float x = cx + (float) Math.cos(a) * Tile.SIZE / 6;
+                float y = cy + (float) Math.sin(a) * Tile.SIZE / 6;
+                float s = 4;
+                g.startHole();
+                g.addPoint(x - s, y - s);
+                g.addPoint(x + s, y - s);
+                g.addPoint(x + s, y + s);
+                g.addPoint(x - s, y + s);
+            }
+            polygons[i] = g;
+        }
+        return polygons;
+    }
+
+    private static float clamp(float v) {
+        return v < 0 ? 0 : (v > Tile.SIZE ? Tile.SIZE : v);
+    }
+}
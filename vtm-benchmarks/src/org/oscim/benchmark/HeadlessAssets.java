@@ -0,0 +1,34 @@
+/*
+ * This file is part of the OpenScienceMap project (http://www.opensciencemap.org).
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.oscim.benchmark;
+
+import org.oscim.backend.AssetAdapter;
+
+import java.io.InputStream;
+
+/**
+ * Reads assets (shaders, themes) from the classpath.
+ */
+public class HeadlessAssets extends AssetAdapter {
+
+    @Override
+    protected InputStream openFileAsStream(String file) {
+        return HeadlessAssets.class.getResourceAsStream("/assets/" + file);
+    }
+
+    public static void init() {
+        AssetAdapter.init(new HeadlessAssets());
+    }
+}
@@ -0,0 +1,181 @@
+/*
+ * This file is part of the OpenScienceMap project (http://www.opensciencemap.org).
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.oscim.benchmark;
+
+import com.badlogic.gdx.utils.SharedLibraryLoader;
+import org.oscim.map.Map;
+import org.oscim.renderer.MapRenderer;
+import org.oscim.utils.ThreadUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Map without a window. Posted tasks and redraw requests are queued until
+ * the caller drives the render loop with {@link #frame()}, so that a map
+ * can be rendered on a headless GL (see {@link RecordingGL}) from a
+ * benchmark or test.
+ * <p>
+ * Delays of postDelayed() are ignored, the task runs with the next frame.
+ */
+public class HeadlessMap extends Map {
+
+    static {
+        /* GLMatrix of the viewport is native */
+        new SharedLibraryLoader().load("vtm-jni");
+    }
+
+    private final int mWidth;
+    private final int mHeight;
+
+    private final List<Runnable> mTasks = new ArrayList<>();
+    private MapRenderer mRenderer;
+
+    private boolean mUpdateRequest;
+
+    public HeadlessMap(int width, int height) {
+        mWidth = width;
+        mHeight = height;
+        viewport().setViewSize(width, height);
+    }
+
+    /**
+     * Create the MapRenderer and initialize it on the current GL.
+     * The calling thread becomes the main thread of the map.
+     */
+    public MapRenderer initRenderer() {
+        ThreadUtils.init();
+        mRenderer = new MapRenderer(this);
+        mRenderer.onSurfaceCreated();
+        mRenderer.onSurfaceChanged(mWidth, mHeight);
+        return mRenderer;
+    }
+
+    /**
+     * Run posted tasks, update the map if requested and draw a frame.
+     *
+     * @return true when another frame was requested, e.g. by a running
+     * animation.
+     */
+    public boolean frame() {
+        List<Runnable> tasks;
+        synchronized (mTasks) {
+            tasks = new ArrayList<>(mTasks);
+            mTasks.clear();
+        }
+        for (Runnable task : tasks)
+            task.run();
+
+        boolean update;
+        synchronized (this) {
+            update = mUpdateRequest;
+            mUpdateRequest = false;
+        }
+        if (update)
+            prepareFrame();
+
+        mRenderer.onDrawFrame();
+
+        return hasPendingFrame();
+    }
+
+    /**
+     * Draw frames until no further frame is requested and the animator
+     * finished, at most 'maxFrames'.
+     *
+     * @return number of frames drawn.
+     */
+    public int frames(int maxFrames) {
+        int frames = 0;
+        while (frames < maxFrames) {
+            frames++;
+            if (!frame() && !animator().isActive())
+                break;
+        }
+        return frames;
+    }
+
+    /**
+     * @return true when tasks are posted or a redraw was requested.
+     */
+    public boolean hasPendingFrame() {
+        synchronized (mTasks) {
+            if (!mTasks.isEmpty())
+                return true;
+        }
+        synchronized (this) {
+            return mUpdateRequest;
+        }
+    }
+
+    @Override
+    public void updateMap() {
+        updateMap(true);
+    }
+
+    @Override
+    public synchronized void updateMap(boolean redraw) {
+        mUpdateRequest = true;
+    }
+
+    @Override
+    public void render() {
+        /* the animator expects prepareFrame() to run for the next frame */
+        updateMap(false);
+    }
+
+    @Override
+    public boolean post(Runnable action) {
+        synchronized (mTasks) {
+            mTasks.add(action);
+        }
+        return true;
+    }
+
+    @Override
+    public boolean postDelayed(Runnable action, long delay) {
+        return post(action);
+    }
+
+    @Override
+    public int getWidth() {
+        return mWidth;
+    }
+
+    @Override
+    public int getHeight() {
+        return mHeight;
+    }
+
+    @Override
+    public int getScreenWidth() {
+        return mWidth;
+    }
+
+    @Override
+    public int getScreenHeight() {
+        return mHeight;
+    }
+
+    @Override
+    public void beginFrame() {
+    }
+
+    @Override
+    public synchronized void doneFrame(boolean needsRedraw) {
+        if (needsRedraw)
+            mUpdateRequest = true;
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * This file is part of the OpenScienceMap project (http://www.opensciencemap.org).
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.oscim.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.oscim.backend.GLAdapter;
+import org.oscim.backend.canvas.Color;
+import org.oscim.core.GeometryBuffer;
+import org.oscim.renderer.MapRenderer;
+import org.oscim.renderer.bucket.LineBucket;
+import org.oscim.renderer.bucket.RenderBuckets;
+import org.oscim.theme.styles.LineStyle;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Building line buckets of a tile with {@link LineBucket#addLine} and
+ * compiling them to buffer objects on the {@link RecordingGL} backend.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LineBucketBenchmark {
+
+    private static final int LEVELS = 4;
+
+    @Param({"500"})
+    public int lines;
+
+    @Param({"10", "100"})
+    public int points;
+
+    private GeometryBuffer[] mLines;
+    private LineStyle[] mStyles;
+
+    @Setup
+    public void setup() {
+        GLAdapter.init(new RecordingGL().getGL());
+        /* provides the buffer pool used for buffer object ids */
+        new MapRenderer(new HeadlessMap(512, 512));
+
+        mLines = Geometries.lines(new Random(42), lines, points);
+
+        mStyles = new LineStyle[LEVELS];
+        for (int i = 0; i < LEVELS; i++)
+            mStyles[i] = new LineStyle(i, Color.GRAY, 1 + i);
+    }
+
+    private RenderBuckets build() {
+        RenderBuckets buckets = new RenderBuckets();
+        for (int i = 0; i < mLines.length; i++) {
+            int level = i % LEVELS;
+            LineBucket lb = buckets.addLineBucket(level, mStyles[level]);
+            lb.addLine(mLines[i]);
+        }
+        return buckets;
+    }
+
+    @Benchmark
+    public RenderBuckets addLine() {
+        RenderBuckets buckets = build();
+        buckets.clear();
+        return buckets;
+    }
+
+    /**
+     * Build, pack and upload as done by the loader and render threads.
+     */
+    @Benchmark
+    public boolean compile() {
+        RenderBuckets buckets = build();
+        buckets.prepare();
+        buckets.pack(true);
+        boolean ok = buckets.compile(true);
+        buckets.clear();
+        return ok;
+    }
+}
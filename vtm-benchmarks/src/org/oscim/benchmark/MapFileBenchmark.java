@@ -0,0 +1,96 @@
+/*
+ * This file is part of the OpenScienceMap project (http://www.opensciencemap.org).
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.oscim.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.oscim.core.GeoPoint;
+import org.oscim.core.MercatorProjection;
+import org.oscim.layers.tile.MapTile;
+import org.oscim.tiling.ITileDataSource;
+import org.oscim.tiling.TileSource.OpenResult;
+import org.oscim.tiling.source.mapfile.MapFileTileSource;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link MapFileTileSource} queries of the tiles around the center of a
+ * map file. The repository bundles no map file, the path is passed with
+ * the 'vtm.benchmark.mapfile' system property (gradle: -Pmapfile=...).
+ * The jmh task excludes this benchmark when no map file is set.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MapFileBenchmark {
+
+    public static final String MAP_FILE = "vtm.benchmark.mapfile";
+
+    /**
+     * Number of tiles in x and y direction around the map center.
+     */
+    private static final int SPAN = 4;
+
+    @Param({"14", "16"})
+    public byte zoom;
+
+    @Param({"true", "false"})
+    public boolean memoryMapped;
+
+    private MapFileTileSource mTileSource;
+    private ITileDataSource mDataSource;
+    private final MapTile[] mTiles = new MapTile[SPAN * SPAN];
+    private final CountingSink mSink = new CountingSink();
+    private int mTile;
+
+    @Setup
+    public void setup() {
+        String file = System.getProperty(MAP_FILE);
+        if (file == null)
+            throw new IllegalStateException("set -D" + MAP_FILE + "=<file.map>");
+
+        mTileSource = new MapFileTileSource();
+        mTileSource.setMapFile(file);
+        mTileSource.setMemoryMapped(memoryMapped);
+        OpenResult result = mTileSource.open();
+        if (!result.isSuccess())
+            throw new IllegalStateException(result.getErrorMessage());
+
+        mDataSource = mTileSource.getDataSource();
+
+        GeoPoint center = mTileSource.getMapInfo().boundingBox.getCenterPoint();
+        int cx = MercatorProjection.longitudeToTileX(center.getLongitude(), zoom);
+        int cy = MercatorProjection.latitudeToTileY(center.getLatitude(), zoom);
+        for (int y = 0; y < SPAN; y++)
+            for (int x = 0; x < SPAN; x++)
+                mTiles[y * SPAN + x] = new MapTile(cx + x - SPAN / 2, cy + y - SPAN / 2, zoom);
+    }
+
+    @TearDown
+    public void tearDown() {
+        mDataSource.dispose();
+        mTileSource.close();
+    }
+
+    @Benchmark
+    public int query() {
+        MapTile tile = mTiles[mTile++ % mTiles.length];
+        mSink.reset();
+        mDataSource.query(tile, mSink);
+        return mSink.points;
+    }
+}
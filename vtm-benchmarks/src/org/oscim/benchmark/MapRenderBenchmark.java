@@ -0,0 +1,173 @@
+/*
+ * This file is part of the OpenScienceMap project (http://www.opensciencemap.org).
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.oscim.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.oscim.backend.GLAdapter;
+import org.oscim.backend.canvas.Color;
+import org.oscim.core.GeometryBuffer;
+import org.oscim.core.MapPosition;
+import org.oscim.layers.Layer;
+import org.oscim.map.Map;
+import org.oscim.renderer.BucketRenderer;
+import org.oscim.renderer.bucket.LineBucket;
+import org.oscim.renderer.bucket.PolygonBucket;
+import org.oscim.theme.styles.AreaStyle;
+import org.oscim.theme.styles.LineStyle;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Frames of a {@link HeadlessMap} with line and polygon buckets, rendered
+ * on {@link RecordingGL} while a scripted sequence of animations (pan,
+ * zoom, rotate, tilt) runs. Draw calls, state changes and uploaded bytes
+ * are reported as secondary results per iteration.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MapRenderBenchmark {
+
+    /**
+     * GL counters per iteration.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Counters {
+        public long frames;
+        public long drawCalls;
+        public long stateChanges;
+        public long redundantStateChanges;
+        public long bufferBytes;
+
+        @Setup(Level.Iteration)
+        public void clear() {
+            frames = 0;
+            drawCalls = 0;
+            stateChanges = 0;
+            redundantStateChanges = 0;
+            bufferBytes = 0;
+        }
+    }
+
+    /**
+     * Layer with static line and polygon buckets.
+     */
+    static class GeometryLayer extends Layer {
+        GeometryLayer(Map map, int lines, int polygons) {
+            super(map);
+            BucketRenderer r = new BucketRenderer();
+            Random random = new Random(42);
+
+            PolygonBucket pb = r.buckets.addPolygonBucket(0, new AreaStyle(0, Color.GREEN));
+            for (GeometryBuffer g : Geometries.polygons(random, polygons, 32, 4))
+                pb.addPolygon(g);
+
+            for (int i = 0; i < 4; i++) {
+                LineBucket lb = r.buckets.addLineBucket(i + 1,
+                        new LineStyle(i + 1, Color.GRAY, 1 + i));
+                for (GeometryBuffer g : Geometries.lines(random, lines / 4, 20))
+                    lb.addLine(g);
+            }
+            mRenderer = r;
+        }
+    }
+
+    @Param({"200", "2000"})
+    public int lines;
+
+    private HeadlessMap mMap;
+    private RecordingGL mGL;
+    private Script mScript;
+
+    @Setup
+    public void setup() {
+        mGL = new RecordingGL();
+        GLAdapter.init(mGL.getGL());
+        HeadlessAssets.init();
+
+        mMap = new HeadlessMap(1024, 768);
+        mMap.layers().add(new GeometryLayer(mMap, lines, 20));
+        mMap.initRenderer();
+        mMap.setMapPosition(new MapPosition(0, 0, 1 << 16));
+
+        mScript = new Script(mMap, 200);
+    }
+
+    @Benchmark
+    public boolean frame(Counters counters) {
+        mScript.next();
+
+        mGL.reset();
+        boolean more = mMap.frame();
+        RecordingGL.Stats s = mGL.getStats();
+
+        counters.frames++;
+        counters.drawCalls += s.drawCalls;
+        counters.stateChanges += s.stateChanges;
+        counters.redundantStateChanges += s.redundantStateChanges;
+        counters.bufferBytes += s.bufferBytes;
+        return more;
+    }
+
+    /**
+     * Starts the next animation of a fixed sequence whenever the
+     * animator is idle.
+     */
+    static class Script {
+        private final HeadlessMap mMap;
+        private final long mDuration;
+        private final MapPosition mPos = new MapPosition();
+        private int mStep;
+
+        Script(HeadlessMap map, long duration) {
+            mMap = map;
+            mDuration = duration;
+        }
+
+        void next() {
+            if (mMap.animator().isActive())
+                return;
+
+            mMap.getMapPosition(mPos);
+            switch (mStep++ % 6) {
+                case 0:
+                    mPos.setPosition(mPos.getLatitude() + 0.001, mPos.getLongitude() + 0.001);
+                    break;
+                case 1:
+                    mPos.setScale(mPos.scale * 4);
+                    break;
+                case 2:
+                    mPos.setBearing(mPos.bearing + 45);
+                    break;
+                case 3:
+                    mPos.setTilt(45);
+                    break;
+                case 4:
+                    mPos.setTilt(0);
+                    mPos.setBearing(0);
+                    break;
+                default:
+                    mPos.setScale(mPos.scale / 4);
+                    break;
+            }
+            mMap.animator().animateTo(mDuration, mPos);
+        }
+    }
+}
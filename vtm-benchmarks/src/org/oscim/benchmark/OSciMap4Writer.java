@@ -0,0 +1,139 @@
+/*
+ * This file is part of the OpenScienceMap project (http://www.opensciencemap.org).
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.oscim.benchmark;
+
+import org.oscim.tiling.source.oscimap4.Tags;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+/**
+ * Writes synthetic tiles in the OpenScienceMap v4 format read by
+ * {@link org.oscim.tiling.source.oscimap4.TileDecoder}.
+ */
+final class OSciMap4Writer {
+
+    private static final int EXTENT = 4096;
+
+    private static final String[] KEYS = {"highway", "building", "landuse", "natural", "name"};
+    private static final String[] VALUES = {"residential", "yes", "forest", "water", "Main Street"};
+
+    private OSciMap4Writer() {
+        throw new IllegalStateException();
+    }
+
+    /**
+     * @return a tile with 'numElements' lines, polygons and points.
+     */
+    static byte[] tile(Random random, int numElements, int numPoints) {
+        Message msg = new Message();
+        msg.varint(1, 4);
+
+        msg.varint(11, KEYS.length);
+        msg.varint(12, KEYS.length);
+        msg.varint(13, VALUES.length);
+        for (String key : KEYS)
+            msg.string(14, key);
+        for (String value : VALUES)
+            msg.string(15, value);
+
+        int[] tags = new int[KEYS.length * 2];
+        for (int i = 0; i < KEYS.length; i++) {
+            tags[i * 2] = Tags.ATTRIB_OFFSET + i;
+            tags[i * 2 + 1] = Tags.ATTRIB_OFFSET + i;
+        }
+        msg.packed(16, tags, tags.length, false);
+
+        int[] coords = new int[numPoints * 2];
+        for (int i = 0; i < numElements; i++) {
+            int type = 21 + i % 3;
+            int n = type == 23 ? 1 : numPoints;
+
+            int x = random.nextInt(EXTENT);
+            int y = random.nextInt(EXTENT);
+            for (int j = 0; j < n; j++) {
+                int dx = random.nextInt(64) - 32;
+                int dy = random.nextInt(64) - 32;
+                if (x + dx < 0 || x + dx > EXTENT)
+                    dx = -dx;
+                if (y + dy < 0 || y + dy > EXTENT)
+                    dy = -dy;
+                x += dx;
+                y += dy;
+                /* first point is absolute, the following are deltas */
+                coords[j * 2] = j == 0 ? x : dx;
+                coords[j * 2 + 1] = j == 0 ? y : dy;
+            }
+
+            Message elem = new Message();
+            elem.varint(2, 2);
+            elem.packed(11, new int[]{i % 4, 4}, 2, false);
+            if (type != 23)
+                elem.packed(12, new int[]{n}, 1, false);
+            elem.packed(13, coords, n * 2, true);
+            msg.message(type, elem);
+        }
+
+        byte[] data = msg.toByteArray();
+        ByteArrayOutputStream out = new ByteArrayOutputStream(data.length + 4);
+        out.write(data.length >>> 24);
+        out.write(data.length >>> 16);
+        out.write(data.length >>> 8);
+        out.write(data.length);
+        out.write(data, 0, data.length);
+        return out.toByteArray();
+    }
+
+    private static final class Message extends ByteArrayOutputStream {
+
+        void tag(int field, int wireType) {
+            writeVarint((field << 3) | wireType);
+        }
+
+        void writeVarint(int value) {
+            while ((value & ~0x7F) != 0) {
+                write((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            write(value);
+        }
+
+        void varint(int field, int value) {
+            tag(field, 0);
+            writeVarint(value);
+        }
+
+        void string(int field, String value) {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            tag(field, 2);
+            writeVarint(bytes.length);
+            write(bytes, 0, bytes.length);
+        }
+
+        void packed(int field, int[] values, int length, boolean zigzag) {
+            Message m = new Message();
+            for (int i = 0; i < length; i++)
+                m.writeVarint(zigzag ? (values[i] << 1) ^ (values[i] >> 31) : values[i]);
+            message(field, m);
+        }
+
+        void message(int field, Message m) {
+            tag(field, 2);
+            writeVarint(m.size());
+            write(m.buf, 0, m.count);
+        }
+    }
+}
@@ -0,0 +1,382 @@
+/*
+ * This file is part of the OpenScienceMap project (http://www.opensciencemap.org).
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.oscim.benchmark;
+
+import org.oscim.backend.GL;
+import org.oscim.backend.GL30;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.ShortBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * GL backend without GPU which counts calls, draw calls, state changes and
+ * uploaded bytes. Optionally the calls are recorded to be replayed on
+ * another GL instance.
+ * <p>
+ * Redundant state changes are calls which set a state (enable, bindBuffer,
+ * useProgram, blendFunc, ...) to the value it already has.
+ * <p>
+ * Queries return values which let the renderer proceed: unique ids for
+ * gen/create calls, success for shader compile and link status, no error.
+ * <p>
+ * The GL and GL30 interfaces are implemented with a {@link Proxy}, so that
+ * every method is recorded the same way.
+ */
+public final class RecordingGL implements InvocationHandler {
+
+    /**
+     * Counters since the last {@link #reset()}.
+     */
+    public static final class Stats {
+        public int calls;
+        public int drawCalls;
+        public int stateChanges;
+        public int redundantStateChanges;
+        public int uniformCalls;
+        public long bufferBytes;
+        public long textureBytes;
+
+        /**
+         * Number of calls per GL method name.
+         */
+        public final Map<String, Integer> counts = new TreeMap<>();
+
+        Stats copy() {
+            Stats s = new Stats();
+            s.calls = calls;
+            s.drawCalls = drawCalls;
+            s.stateChanges = stateChanges;
+            s.redundantStateChanges = redundantStateChanges;
+            s.uniformCalls = uniformCalls;
+            s.bufferBytes = bufferBytes;
+            s.textureBytes = textureBytes;
+            s.counts.putAll(counts);
+            return s;
+        }
+
+        public int count(String method) {
+            Integer c = counts.get(method);
+            return c == null ? 0 : c;
+        }
+
+        @Override
+        public String toString() {
+            return "calls=" + calls
+                    + " draw=" + drawCalls
+                    + " state=" + stateChanges
+                    + " redundant=" + redundantStateChanges
+                    + " uniform=" + uniformCalls
+                    + " buffer_bytes=" + bufferBytes
+                    + " texture_bytes=" + textureBytes;
+        }
+    }
+
+    /**
+     * A recorded call.
+     */
+    public static final class Command {
+        public final Method method;
+        public final Object[] args;
+
+        Command(Method method, Object[] args) {
+            this.method = method;
+            this.args = args;
+        }
+
+        @Override
+        public String toString() {
+            return method.getName() + (args == null ? "()" : Arrays.toString(args));
+        }
+    }
+
+    /**
+     * Number of leading arguments of state setting methods which select
+     * the state, the remaining arguments are its value.
+     */
+    private static final Map<String, Integer> STATE_KEY_ARGS = new HashMap<>();
+
+    static {
+        for (String name : new String[]{
+                "useProgram", "bindVertexArray", "activeTexture",
+                "blendFunc", "blendFuncSeparate", "blendEquation", "blendColor",
+                "depthMask", "depthFunc", "depthRangef",
+                "stencilMask", "stencilFunc", "stencilOp",
+                "colorMask", "clearColor", "clearStencil", "clearDepthf",
+                "viewport", "scissor", "lineWidth", "cullFace", "frontFace",
+                "polygonOffset"})
+            STATE_KEY_ARGS.put(name, 0);
+
+        for (String name : new String[]{
+                "bindBuffer", "bindFramebuffer", "bindRenderbuffer", "pixelStorei"})
+            STATE_KEY_ARGS.put(name, 1);
+    }
+
+    private final GL30 mProxy;
+
+    private Stats mStats = new Stats();
+    private final Map<String, Object> mState = new HashMap<>();
+    private Object mActiveTexture = GL.TEXTURE0;
+    private int mIds;
+
+    private boolean mRecording;
+    private final List<Command> mCommands = new ArrayList<>();
+
+    public RecordingGL() {
+        mProxy = (GL30) Proxy.newProxyInstance(GL30.class.getClassLoader(),
+                new Class<?>[]{GL30.class}, this);
+    }
+
+    /**
+     * @return the GL instance to pass to GLAdapter.init().
+     */
+    public GL30 getGL() {
+        return mProxy;
+    }
+
+    /**
+     * Record calls for {@link #replay(GL)}. Buffer arguments are copied.
+     */
+    public void setRecording(boolean recording) {
+        mRecording = recording;
+    }
+
+    public List<Command> getCommands() {
+        return mCommands;
+    }
+
+    /**
+     * @return a copy of the counters since the last {@link #reset()}.
+     */
+    public Stats getStats() {
+        return mStats.copy();
+    }
+
+    /**
+     * Reset counters and recorded commands. The tracked GL state is kept,
+     * so that redundant state changes are also detected across frames.
+     */
+    public void reset() {
+        mStats = new Stats();
+        mCommands.clear();
+    }
+
+    /**
+     * Replay the recorded commands on another GL instance. Object ids are
+     * passed as recorded.
+     */
+    public void replay(GL gl) {
+        for (Command c : mCommands) {
+            Object[] args = c.args;
+            if (args != null) {
+                args = args.clone();
+                for (int i = 0; i < args.length; i++) {
+                    if (args[i] instanceof Buffer)
+                        ((Buffer) (args[i] = copyBuffer((Buffer) args[i]))).rewind();
+                }
+            }
+            try {
+                c.method.invoke(gl, args);
+            } catch (IllegalAccessException e) {
+                throw new IllegalStateException(e);
+            } catch (InvocationTargetException e) {
+                throw new IllegalStateException(c.toString(), e.getCause());
+            }
+        }
+    }
+
+    /**
+     * @return the recorded calls, one per line.
+     */
+    public String dump() {
+        StringBuilder sb = new StringBuilder();
+        for (Command c : mCommands)
+            sb.append(c).append('\n');
+        return sb.toString();
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) {
+        String name = method.getName();
+
+        if (method.getDeclaringClass() == Object.class) {
+            if (name.equals("equals"))
+                return proxy == args[0];
+            if (name.equals("hashCode"))
+                return System.identityHashCode(proxy);
+            return "RecordingGL";
+        }
+
+        Stats s = mStats;
+        s.calls++;
+        Integer cnt = s.counts.get(name);
+        s.counts.put(name, cnt == null ? 1 : cnt + 1);
+
+        if (mRecording)
+            mCommands.add(new Command(method, copyArgs(args)));
+
+        count(s, name, args);
+
+        return result(method, name, args);
+    }
+
+    private void count(Stats s, String name, Object[] args) {
+        if (name.startsWith("draw") && !name.equals("drawBuffers")) {
+            s.drawCalls++;
+        } else if (name.startsWith("uniform")) {
+            s.uniformCalls++;
+        } else if (name.equals("bufferData")) {
+            s.bufferBytes += (Integer) args[1];
+        } else if (name.equals("bufferSubData")) {
+            s.bufferBytes += (Integer) args[2];
+        } else if (name.equals("texImage2D")) {
+            s.textureBytes += 4L * (Integer) args[3] * (Integer) args[4];
+        } else if (name.equals("texSubImage2D")) {
+            s.textureBytes += 4L * (Integer) args[4] * (Integer) args[5];
+        } else if (name.equals("enable") || name.equals("disable")) {
+            setState(s, "enable:" + args[0], name.equals("enable"));
+        } else if (name.equals("enableVertexAttribArray")
+                || name.equals("disableVertexAttribArray")) {
+            setState(s, "vertexAttribArray:" + args[0], name.startsWith("enable"));
+        } else if (name.equals("bindTexture")) {
+            setState(s, "bindTexture:" + mActiveTexture + ":" + args[0], args[1]);
+        } else {
+            Integer keyArgs = STATE_KEY_ARGS.get(name);
+            if (keyArgs == null)
+                return;
+
+            StringBuilder key = new StringBuilder(name);
+            for (int i = 0; i < keyArgs; i++)
+                key.append(':').append(args[i]);
+
+            Object value = args.length - keyArgs == 1 ? args[keyArgs]
+                    : Arrays.asList(Arrays.copyOfRange(args, keyArgs, args.length));
+
+            if (name.equals("activeTexture"))
+                mActiveTexture = value;
+
+            setState(s, key.toString(), value);
+        }
+    }
+
+    private void setState(Stats s, String key, Object value) {
+        s.stateChanges++;
+        Object prev = mState.put(key, value);
+        if (value.equals(prev))
+            s.redundantStateChanges++;
+    }
+
+    private Object result(Method method, String name, Object[] args) {
+        if (name.startsWith("gen") || name.startsWith("create")) {
+            if (args != null && args.length == 2 && args[1] instanceof IntBuffer) {
+                IntBuffer buf = (IntBuffer) args[1];
+                for (int i = 0, n = (Integer) args[0]; i < n; i++)
+                    buf.put(buf.position() + i, ++mIds);
+                return null;
+            }
+            if (method.getReturnType() == int.class)
+                return ++mIds;
+        }
+
+        if (name.equals("getShaderiv") || name.equals("getProgramiv")) {
+            IntBuffer buf = (IntBuffer) args[2];
+            buf.put(buf.position(), GL.TRUE);
+            return null;
+        }
+        if (name.equals("getIntegerv")) {
+            IntBuffer buf = (IntBuffer) args[1];
+            buf.put(buf.position(), (Integer) args[0] == GL.MAX_TEXTURE_SIZE ? 4096 : 0);
+            return null;
+        }
+        if (name.equals("getAttribLocation") || name.equals("getUniformLocation"))
+            return ++mIds;
+        if (name.equals("checkFramebufferStatus"))
+            return GL.FRAMEBUFFER_COMPLETE;
+        if (name.equals("getError"))
+            return GL.NO_ERROR;
+        if (name.startsWith("getString"))
+            return "RecordingGL";
+
+        Class<?> type = method.getReturnType();
+        if (type == boolean.class)
+            return name.startsWith("is");
+        if (type == int.class)
+            return 0;
+        if (type == long.class)
+            return 0L;
+        if (type == float.class)
+            return 0f;
+        return null;
+    }
+
+    private static Object[] copyArgs(Object[] args) {
+        if (args == null)
+            return null;
+
+        Object[] copy = args.clone();
+        for (int i = 0; i < copy.length; i++) {
+            if (copy[i] instanceof Buffer)
+                copy[i] = copyBuffer((Buffer) copy[i]);
+        }
+        return copy;
+    }
+
+    /**
+     * @return a direct copy of the remaining content of 'buf'.
+     */
+    private static Buffer copyBuffer(Buffer buf) {
+        if (buf instanceof ByteBuffer) {
+            ByteBuffer src = ((ByteBuffer) buf).duplicate();
+            ByteBuffer b = ByteBuffer.allocateDirect(src.remaining()).order(ByteOrder.nativeOrder());
+            b.put(src).flip();
+            return b;
+        }
+        if (buf instanceof ShortBuffer) {
+            ShortBuffer src = ((ShortBuffer) buf).duplicate();
+            ShortBuffer b = ByteBuffer.allocateDirect(src.remaining() * 2)
+                    .order(ByteOrder.nativeOrder()).asShortBuffer();
+            b.put(src).flip();
+            return b;
+        }
+        if (buf instanceof IntBuffer) {
+            IntBuffer src = ((IntBuffer) buf).duplicate();
+            IntBuffer b = ByteBuffer.allocateDirect(src.remaining() * 4)
+                    .order(ByteOrder.nativeOrder()).asIntBuffer();
+            b.put(src).flip();
+            return b;
+        }
+        if (buf instanceof FloatBuffer) {
+            FloatBuffer src = ((FloatBuffer) buf).duplicate();
+            FloatBuffer b = ByteBuffer.allocateDirect(src.remaining() * 4)
+                    .order(ByteOrder.nativeOrder()).asFloatBuffer();
+            b.put(src).flip();
+            return b;
+        }
+        return buf;
+    }
+}
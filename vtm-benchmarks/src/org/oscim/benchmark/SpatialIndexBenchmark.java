@@ -0,0 +1,98 @@
+/*
+ * This file is part of the OpenScienceMap project (http://www.opensciencemap.org).
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.oscim.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.oscim.core.Box;
+import org.oscim.utils.QuadTree;
+import org.oscim.utils.RTree;
+import org.oscim.utils.SpatialIndex;
+import org.oscim.utils.SpatialIndex.SearchCb;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Box queries on {@link RTree} and {@link QuadTree} with uniformly
+ * distributed items, e.g. marker or label boxes.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SpatialIndexBenchmark {
+
+    private static final int EXTENTS = 1 << 16;
+    private static final int QUERIES = 1024;
+
+    @Param({"rtree", "quadtree"})
+    public String index;
+
+    @Param({"10000"})
+    public int items;
+
+    /**
+     * Width and height of the query boxes.
+     */
+    @Param({"1000", "10000"})
+    public int querySize;
+
+    private SpatialIndex<Integer> mIndex;
+    private final Box[] mQueries = new Box[QUERIES];
+    private int mQuery;
+
+    private final SearchCb<Integer> mCounter = new SearchCb<Integer>() {
+        @Override
+        public boolean call(Integer item, Object context) {
+            ((int[]) context)[0]++;
+            return true;
+        }
+    };
+    private final int[] mCount = new int[1];
+
+    @Setup
+    public void setup() {
+        Random random = new Random(42);
+
+        if (index.equals("rtree"))
+            mIndex = new RTree<>();
+        else
+            mIndex = new QuadTree<>(EXTENTS, 10);
+
+        for (int i = 0; i < items; i++) {
+            Box box = randomBox(random, 10 + random.nextInt(200));
+            mIndex.insert(box, i);
+        }
+
+        for (int i = 0; i < QUERIES; i++)
+            mQueries[i] = randomBox(random, querySize);
+    }
+
+    private static Box randomBox(Random random, int size) {
+        double x = random.nextInt(2 * EXTENTS - size) - EXTENTS;
+        double y = random.nextInt(2 * EXTENTS - size) - EXTENTS;
+        return new Box(x, y, x + size, y + size);
+    }
+
+    @Benchmark
+    public int search() {
+        Box query = mQueries[mQuery++ & (QUERIES - 1)];
+        mCount[0] = 0;
+        mIndex.search(query, mCounter, mCount);
+        return mCount[0];
+    }
+}
@@ -0,0 +1,64 @@
+/*
+ * This file is part of the OpenScienceMap project (http://www.opensciencemap.org).
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.oscim.benchmark;
+
+import com.badlogic.gdx.utils.SharedLibraryLoader;
+import org.openjdk.jmh.annotations.*;
+import org.oscim.core.GeometryBuffer;
+import org.oscim.utils.Tessellator;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Polygon tessellation with {@link Tessellator#tessellate(GeometryBuffer, GeometryBuffer)},
+ * with libtess2 via JNI and with the Java {@link org.oscim.utils.Triangulator}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TessellatorBenchmark {
+
+    private static final int POLYGONS = 64;
+
+    @Param({"16", "256"})
+    public int points;
+
+    @Param({"0", "4"})
+    public int holes;
+
+    @Param({"true", "false"})
+    public boolean jni;
+
+    private GeometryBuffer[] mPolygons;
+    private final GeometryBuffer mOut = new GeometryBuffer(16, 16);
+    private int mPolygon;
+
+    @Setup
+    public void setup() {
+        new SharedLibraryLoader().load("vtm-jni");
+        Tessellator.USE_JNI = jni;
+        mPolygons = Geometries.polygons(new Random(42), POLYGONS, points, holes);
+    }
+
+    @Benchmark
+    public int tessellate() {
+        GeometryBuffer polygon = mPolygons[mPolygon++ & (POLYGONS - 1)];
+        return Tessellator.tessellate(polygon, mOut);
+    }
+}
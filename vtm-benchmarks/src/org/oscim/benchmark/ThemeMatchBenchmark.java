@@ -0,0 +1,112 @@
+/*
+ * This file is part of the OpenScienceMap project (http://www.opensciencemap.org).
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.oscim.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.oscim.awt.AwtGraphics;
+import org.oscim.core.GeometryBuffer.GeometryType;
+import org.oscim.core.Tag;
+import org.oscim.core.TagSet;
+import org.oscim.theme.IRenderTheme;
+import org.oscim.theme.ThemeLoader;
+import org.oscim.theme.internal.VtmThemes;
+import org.oscim.theme.styles.RenderStyle;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link IRenderTheme#matchElement} with the bundled themes on random
+ * combinations of common OSM tags.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ThemeMatchBenchmark {
+
+    private static final String[][] WAY_TAGS = {
+            {"highway", "motorway", "primary", "secondary", "tertiary", "residential", "service", "footway", "track"},
+            {"building", "yes", "house", "residential", "commercial"},
+            {"landuse", "residential", "forest", "meadow", "farmland", "industrial"},
+            {"natural", "water", "wood", "scrub", "coastline"},
+            {"waterway", "river", "stream", "canal"},
+            {"railway", "rail", "tram", "subway"},
+            {"leisure", "park", "pitch", "garden"},
+            {"bridge", "yes"},
+            {"tunnel", "yes"},
+            {"oneway", "yes"},
+            {"name", "Main Street", "Park"},
+    };
+
+    private static final String[][] NODE_TAGS = {
+            {"amenity", "restaurant", "cafe", "school", "parking", "bank"},
+            {"shop", "supermarket", "bakery", "clothes"},
+            {"place", "city", "town", "village", "suburb"},
+            {"highway", "bus_stop", "traffic_signals"},
+            {"name", "Somewhere"},
+    };
+
+    private static final int ELEMENTS = 1024;
+
+    @Param({"DEFAULT", "OSMARENDER"})
+    public VtmThemes theme;
+
+    @Param({"14", "17"})
+    public int zoom;
+
+    private IRenderTheme mTheme;
+    private final TagSet[] mTags = new TagSet[ELEMENTS];
+    private final GeometryType[] mTypes = new GeometryType[ELEMENTS];
+    private int mElement;
+
+    @Setup
+    public void setup() {
+        AwtGraphics.init();
+        mTheme = ThemeLoader.load(theme);
+
+        Random random = new Random(42);
+        for (int i = 0; i < ELEMENTS; i++) {
+            int type = random.nextInt(3);
+            mTypes[i] = type == 0 ? GeometryType.POINT
+                    : (type == 1 ? GeometryType.LINE : GeometryType.POLY);
+            mTags[i] = randomTags(random, type == 0 ? NODE_TAGS : WAY_TAGS);
+        }
+    }
+
+    private static TagSet randomTags(Random random, String[][] vocabulary) {
+        TagSet tags = new TagSet();
+        for (String[] keyValues : vocabulary) {
+            if (random.nextInt(3) != 0)
+                continue;
+            String value = keyValues[1 + random.nextInt(keyValues.length - 1)];
+            tags.add(new Tag(keyValues[0], value));
+        }
+        return tags;
+    }
+
+    @TearDown
+    public void tearDown() {
+        mTheme.dispose();
+    }
+
+    @Benchmark
+    public RenderStyle[] matchElement() {
+        int i = mElement++ & (ELEMENTS - 1);
+        return mTheme.matchElement(mTypes[i], mTags[i], zoom);
+    }
+}
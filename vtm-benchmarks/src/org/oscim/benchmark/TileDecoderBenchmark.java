@@ -0,0 +1,89 @@
+/*
+ * This file is part of the OpenScienceMap project (http://www.opensciencemap.org).
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.oscim.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.oscim.core.Tile;
+import org.oscim.tiling.source.mvt.MvtTileDecoder;
+import org.oscim.tiling.source.oscimap4.TileDecoder;
+import org.oscim.utils.IOUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decoding of in-memory tiles: a synthetic OpenScienceMap v4 tile and the
+ * recorded MVT tile of the vtm-tests resources.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TileDecoderBenchmark {
+
+    private final Tile mTile = new Tile(0, 0, (byte) 0);
+    private final CountingSink mSink = new CountingSink();
+
+    private byte[] mOSciMap4Tile;
+    private byte[] mMvtTile;
+
+    private TileDecoder mOSciMap4Decoder;
+    private MvtTileDecoder mMvtDecoder;
+
+    @Setup
+    public void setup() throws IOException {
+        mOSciMap4Tile = OSciMap4Writer.tile(new Random(42), 3000, 20);
+        mMvtTile = readResource("/mvt-test.pbf");
+
+        mOSciMap4Decoder = new TileDecoder();
+        mMvtDecoder = new MvtTileDecoder();
+    }
+
+    private static byte[] readResource(String name) throws IOException {
+        InputStream is = TileDecoderBenchmark.class.getResourceAsStream(name);
+        if (is == null)
+            throw new IOException("missing resource " + name);
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buf = new byte[8192];
+            int n;
+            while ((n = is.read(buf)) > 0)
+                out.write(buf, 0, n);
+            return out.toByteArray();
+        } finally {
+            IOUtils.closeQuietly(is);
+        }
+    }
+
+    @Benchmark
+    public int oscimap4() throws IOException {
+        mSink.reset();
+        mOSciMap4Decoder.decode(mTile, mSink, new ByteArrayInputStream(mOSciMap4Tile));
+        return mSink.points;
+    }
+
+    @Benchmark
+    public int mvt() throws IOException {
+        mSink.reset();
+        mMvtDecoder.decode(mTile, mSink, new ByteArrayInputStream(mMvtTile));
+        return mSink.points;
+    }
+}
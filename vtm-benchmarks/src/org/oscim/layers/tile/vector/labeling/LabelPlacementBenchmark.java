@@ -0,0 +1,181 @@
+/*
+ * This file is part of the OpenScienceMap project (http://www.opensciencemap.org).
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.oscim.layers.tile.vector.labeling;
+
+import org.openjdk.jmh.annotations.*;
+import org.oscim.awt.AwtGraphics;
+import org.oscim.backend.GLAdapter;
+import org.oscim.backend.canvas.Color;
+import org.oscim.benchmark.RecordingGL;
+import org.oscim.benchmark.HeadlessMap;
+import org.oscim.core.MapPosition;
+import org.oscim.core.Tile;
+import org.oscim.layers.tile.MapTile;
+import org.oscim.layers.tile.MapTile.TileNode;
+import org.oscim.layers.tile.TileRenderer;
+import org.oscim.layers.tile.TileSet;
+import org.oscim.layers.tile.ZoomLimiter;
+import org.oscim.renderer.GLViewport;
+import org.oscim.renderer.bucket.GlyphAtlas;
+import org.oscim.renderer.bucket.TextItem;
+import org.oscim.theme.styles.TextStyle;
+import org.oscim.utils.Parameters;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static org.oscim.layers.tile.MapTile.State.LOADING;
+import static org.oscim.layers.tile.MapTile.State.NEW_DATA;
+import static org.oscim.layers.tile.MapTile.State.READY;
+
+/**
+ * {@link LabelPlacement#updateLabels} on a grid of tiles with synthetic
+ * captions and way labels. The map position moves a little on each
+ * invocation so that all labels are placed again, or only revalidated
+ * with {@link Parameters#INCREMENTAL_LABELS}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LabelPlacementBenchmark {
+
+    private static final int ZOOM = 16;
+    private static final int SPAN = 4;
+    private static final int POSITIONS = 16;
+
+    /* keep a reference, the level is lost when the logger is collected */
+    private static final Logger LOG = Logger.getLogger(LabelPlacement.class.getName());
+
+    @Param({"50", "200"})
+    public int labelsPerTile;
+
+    @Param({"false", "true"})
+    public boolean incremental;
+
+    private HeadlessMap mMap;
+    private LabelPlacement mPlacement;
+    private LabelTask mTask;
+    private final MapPosition[] mPositions = new MapPosition[POSITIONS];
+    private int mPosition;
+
+    /**
+     * Renderer which always provides the same tiles.
+     */
+    static class StaticTiles extends TileRenderer {
+        final TileSet tiles = new TileSet(SPAN * SPAN);
+
+        @Override
+        public Integer getVisibleTiles(TileSet tileSet, boolean replace) {
+            tileSet.setTiles(tiles);
+            return ZOOM;
+        }
+
+        @Override
+        public void render(GLViewport v) {
+        }
+    }
+
+    @Setup
+    public void setup() {
+        AwtGraphics.init();
+        GLAdapter.init(new RecordingGL().getGL());
+        Parameters.INCREMENTAL_LABELS = incremental;
+
+        /* LabelPlacement logs on info level in its inner loops */
+        LOG.setLevel(Level.WARNING);
+
+        mMap = new HeadlessMap(1024, 1024);
+
+        Random random = new Random(42);
+        TextStyle caption = TextStyle.builder().fontSize(14).color(Color.BLACK)
+                .isCaption(true).build();
+        TextStyle wayText = TextStyle.builder().fontSize(12).color(Color.DKGRAY).build();
+
+        MapPosition pos = new MapPosition();
+        pos.setPosition(52.5, 13.4);
+        pos.setZoomLevel(ZOOM);
+
+        int tx = (int) (pos.x * (1 << ZOOM)) - SPAN / 2;
+        int ty = (int) (pos.y * (1 << ZOOM)) - SPAN / 2;
+
+        TileNode root = new TileNode();
+        root.parent = root;
+
+        StaticTiles renderer = new StaticTiles();
+        for (int y = 0; y < SPAN; y++) {
+            for (int x = 0; x < SPAN; x++) {
+                TileNode node = new TileNode();
+                node.parent = root;
+                MapTile tile = new MapTile(node, tx + x, ty + y, ZOOM);
+                node.item = tile;
+                tile.setState(LOADING);
+                tile.setState(NEW_DATA);
+                tile.setState(READY);
+
+                LabelTileData ld = new LabelTileData();
+                for (int i = 0; i < labelsPerTile; i++) {
+                    float lx = random.nextFloat() * Tile.SIZE;
+                    float ly = random.nextFloat() * Tile.SIZE;
+                    String text = "Label " + random.nextInt(labelsPerTile * 4);
+                    if (i % 2 == 0) {
+                        ld.labels.push(TextItem.pool.get().set(lx, ly, text, caption));
+                    } else {
+                        TextItem ti = TextItem.pool.get().set(lx, ly, text, wayText);
+                        float dx = 40 + random.nextFloat() * 80;
+                        float dy = (random.nextFloat() - 0.5f) * 40;
+                        ti.x1 = lx - dx / 2;
+                        ti.y1 = ly - dy / 2;
+                        ti.x2 = lx + dx / 2;
+                        ti.y2 = ly + dy / 2;
+                        ti.length = (short) Math.sqrt(dx * dx + dy * dy);
+                        ld.labels.push(ti);
+                    }
+                }
+                tile.addData(LabelLayer.LABEL_DATA, ld);
+
+                renderer.tiles.tiles[renderer.tiles.cnt++] = tile;
+            }
+        }
+
+        for (int i = 0; i < POSITIONS; i++) {
+            mPositions[i] = new MapPosition();
+            mPositions[i].copy(pos);
+            mPositions[i].x += i * 1e-7;
+        }
+
+        mPlacement = new LabelPlacement(mMap, renderer, new ZoomLimiter(null, 0, 20, 20));
+        mTask = new LabelTask(new GlyphAtlas());
+    }
+
+    @TearDown
+    public void tearDown() {
+        mPlacement.cleanup();
+        Parameters.INCREMENTAL_LABELS = false;
+    }
+
+    @Benchmark
+    public boolean updateLabels() {
+        mMap.viewport().setMapPosition(mPositions[mPosition++ & (POSITIONS - 1)]);
+        boolean changed = mPlacement.updateLabels(mTask);
+        mTask.textLayer.clear();
+        mTask.symbolLayer.clear();
+        return changed;
+    }
+}
@@ -0,0 +1,137 @@
+package org.oscim.benchmark;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.oscim.backend.GL;
+import org.oscim.backend.GLAdapter;
+import org.oscim.core.MapPosition;
+import org.oscim.renderer.GLState;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+
+public class RecordingGLTest {
+
+    private RecordingGL mRecorder;
+    private GL mGL;
+
+    @Before
+    public void setUp() {
+        mRecorder = new RecordingGL();
+        mGL = mRecorder.getGL();
+        GLAdapter.init(mRecorder.getGL());
+    }
+
+    @Test
+    public void shouldCountCalls() {
+        FloatBuffer buf = ByteBuffer.allocateDirect(64)
+                .order(ByteOrder.nativeOrder()).asFloatBuffer();
+
+        mGL.bindBuffer(GL.ARRAY_BUFFER, 1);
+        mGL.bufferData(GL.ARRAY_BUFFER, 64, buf, GL.STATIC_DRAW);
+        mGL.bufferSubData(GL.ARRAY_BUFFER, 0, 16, buf);
+        mGL.useProgram(3);
+        mGL.uniform1f(0, 1);
+        mGL.drawArrays(GL.TRIANGLES, 0, 3);
+        mGL.drawElements(GL.TRIANGLES, 3, GL.UNSIGNED_SHORT, 0);
+
+        RecordingGL.Stats s = mRecorder.getStats();
+        Assert.assertEquals(7, s.calls);
+        Assert.assertEquals(2, s.drawCalls);
+        Assert.assertEquals(1, s.uniformCalls);
+        Assert.assertEquals(80, s.bufferBytes);
+        Assert.assertEquals(2, s.stateChanges);
+        Assert.assertEquals(0, s.redundantStateChanges);
+        Assert.assertEquals(1, s.count("drawArrays"));
+
+        mRecorder.reset();
+        Assert.assertEquals(0, mRecorder.getStats().calls);
+    }
+
+    @Test
+    public void shouldDetectRedundantStateChanges() {
+        mGL.enable(GL.BLEND);
+        mGL.enable(GL.BLEND);
+        mGL.disable(GL.BLEND);
+        mGL.useProgram(1);
+        mGL.useProgram(1);
+        mGL.blendFunc(GL.ONE, GL.ONE_MINUS_SRC_ALPHA);
+        mGL.blendFunc(GL.ONE, GL.ONE_MINUS_SRC_ALPHA);
+
+        /* texture bindings are per texture unit */
+        mGL.activeTexture(GL.TEXTURE0);
+        mGL.bindTexture(GL.TEXTURE_2D, 5);
+        mGL.activeTexture(GL.TEXTURE1);
+        mGL.bindTexture(GL.TEXTURE_2D, 5);
+
+        RecordingGL.Stats s = mRecorder.getStats();
+        Assert.assertEquals(11, s.stateChanges);
+        Assert.assertEquals(3, s.redundantStateChanges);
+    }
+
+    @Test
+    public void shouldSkipRedundantChangesInGLState() {
+        GLState.useProgram(GLState.DISABLED);
+
+        GLState.blend(true);
+        GLState.blend(true);
+        GLState.useProgram(2);
+        GLState.useProgram(2);
+        GLState.test(true, false);
+        GLState.test(true, false);
+
+        RecordingGL.Stats s = mRecorder.getStats();
+        Assert.assertEquals(0, s.redundantStateChanges);
+        Assert.assertEquals(1, s.count("useProgram"));
+    }
+
+    @Test
+    public void shouldReplayRecordedCalls() {
+        mRecorder.setRecording(true);
+        mGL.bindBuffer(GL.ARRAY_BUFFER, 1);
+        mGL.bufferData(GL.ARRAY_BUFFER, 16, ByteBuffer.allocateDirect(16), GL.STATIC_DRAW);
+        mGL.drawArrays(GL.TRIANGLES, 0, 3);
+        Assert.assertEquals(3, mRecorder.getCommands().size());
+
+        RecordingGL target = new RecordingGL();
+        mRecorder.replay(target.getGL());
+
+        RecordingGL.Stats s = target.getStats();
+        Assert.assertEquals(3, s.calls);
+        Assert.assertEquals(1, s.drawCalls);
+        Assert.assertEquals(16, s.bufferBytes);
+    }
+
+    @Test
+    public void shouldRenderHeadlessMap() {
+        HeadlessAssets.init();
+        HeadlessMap map = new HeadlessMap(800, 600);
+        map.layers().add(new MapRenderBenchmark.GeometryLayer(map, 100, 5));
+        map.initRenderer();
+        map.setMapPosition(new MapPosition(0, 0, 1 << 16));
+        map.frames(100);
+
+        mRecorder.reset();
+        Assert.assertFalse(map.frame());
+        RecordingGL.Stats first = mRecorder.getStats();
+        Assert.assertTrue(first.drawCalls > 0);
+        /* buckets are uploaded once, not per frame */
+        Assert.assertEquals(0, first.bufferBytes);
+
+        mRecorder.reset();
+        map.frame();
+        RecordingGL.Stats second = mRecorder.getStats();
+        Assert.assertEquals(first.drawCalls, second.drawCalls);
+        Assert.assertEquals(first.redundantStateChanges, second.redundantStateChanges);
+
+        /* animation frames do not upload geometry either */
+        map.animator().animateZoom(20, 2, 0, 0);
+        mRecorder.reset();
+        int frames = map.frames(1000);
+        Assert.assertFalse(map.animator().isActive());
+        Assert.assertTrue(mRecorder.getStats().drawCalls >= frames * first.drawCalls);
+        Assert.assertEquals(0, mRecorder.getStats().bufferBytes);
+    }
+}
@@ -0,0 +1,137 @@
+/*
+ * This file is part of the OpenScienceMap project (http://www.opensciencemap.org).
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.oscim.layers.tile;
+
+import org.oscim.benchmark.HeadlessMap;
+import org.oscim.tiling.QueryResult;
+import org.junit.Test;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TileLoaderExecutorTest {
+
+    static final int LOADS = 16;
+    static final int JOBS = 64;
+    static final long IO_MILLIS = 40;
+
+    final AtomicInteger mIo = new AtomicInteger();
+    final AtomicInteger mMaxIo = new AtomicInteger();
+    final AtomicInteger mCpu = new AtomicInteger();
+    final AtomicInteger mMaxCpu = new AtomicInteger();
+    final AtomicInteger mCompleted = new AtomicInteger();
+
+    class Jobs extends TileManager {
+        final ArrayDeque<MapTile> mJobs = new ArrayDeque<>();
+
+        Jobs() {
+            super(new HeadlessMap(256, 256), 100);
+            for (int i = 0; i < JOBS; i++)
+                mJobs.add(new MapTile(i, 0, 10));
+        }
+
+        @Override
+        public synchronized boolean hasTileJobs() {
+            return !mJobs.isEmpty();
+        }
+
+        @Override
+        public synchronized MapTile getTileJob() {
+            return mJobs.poll();
+        }
+
+        @Override
+        public void jobCompleted(MapTile tile, QueryResult result) {
+            assertEquals(QueryResult.SUCCESS, result);
+            synchronized (mCompleted) {
+                mCompleted.incrementAndGet();
+                mCompleted.notifyAll();
+            }
+        }
+    }
+
+    class Loader extends TileLoader {
+        Loader(TileManager tileManager) {
+            super(tileManager);
+        }
+
+        @Override
+        protected boolean loadTile(MapTile tile) {
+            /* receive */
+            enter(mIo, mMaxIo);
+            try {
+                Thread.sleep(IO_MILLIS);
+            } catch (InterruptedException e) {
+                return false;
+            }
+            mIo.decrementAndGet();
+
+            /* decode */
+            beginCpuWork();
+            enter(mCpu, mMaxCpu);
+            long end = System.nanoTime() + 2000000;
+            while (System.nanoTime() < end) ;
+            mCpu.decrementAndGet();
+            endCpuWork();
+
+            completed(QueryResult.SUCCESS);
+            return true;
+        }
+
+        @Override
+        public void dispose() {
+        }
+
+        @Override
+        public void cancel() {
+        }
+    }
+
+    static void enter(AtomicInteger count, AtomicInteger max) {
+        int n = count.incrementAndGet();
+        int m;
+        while (n > (m = max.get()) && !max.compareAndSet(m, n)) ;
+    }
+
+    @Test
+    public void shouldOverlapLoadsWithDecoding() throws InterruptedException {
+        Jobs jobs = new Jobs();
+        TileLoader[] loaders = new TileLoader[LOADS];
+        for (int i = 0; i < LOADS; i++)
+            loaders[i] = new Loader(jobs);
+
+        TileLoaderExecutor executor = new TileLoaderExecutor(jobs, loaders);
+
+        long start = System.currentTimeMillis();
+        executor.go();
+        synchronized (mCompleted) {
+            while (mCompleted.get() < JOBS)
+                mCompleted.wait(1000);
+        }
+        long time = System.currentTimeMillis() - start;
+        executor.finish();
+
+        assertEquals(JOBS, mCompleted.get());
+        int cpus = Runtime.getRuntime().availableProcessors();
+        assertTrue("cpu " + mMaxCpu.get(), mMaxCpu.get() <= cpus);
+        assertTrue("io " + mMaxIo.get(), mMaxIo.get() > Math.min(cpus, LOADS / 2));
+
+        /* serial receiving alone takes JOBS * IO_MILLIS */
+        assertTrue("time " + time, time < JOBS * IO_MILLIS / 2);
+    }
+}
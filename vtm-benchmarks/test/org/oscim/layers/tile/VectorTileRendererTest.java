@@ -0,0 +1,255 @@
+/*
+ * This file is part of the OpenScienceMap project (http://www.opensciencemap.org).
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.oscim.layers.tile;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+import org.oscim.backend.GL;
+import org.oscim.backend.GLAdapter;
+import org.oscim.backend.canvas.Paint.Cap;
+import org.oscim.benchmark.HeadlessAssets;
+import org.oscim.benchmark.HeadlessMap;
+import org.oscim.benchmark.RecordingGL;
+import org.oscim.core.GeometryBuffer.GeometryType;
+import org.oscim.core.MapElement;
+import org.oscim.core.MapPosition;
+import org.oscim.core.Tag;
+import org.oscim.core.TagSet;
+import org.oscim.core.Tile;
+import org.oscim.layers.tile.vector.VectorTileLayer;
+import org.oscim.theme.IRenderTheme;
+import org.oscim.theme.styles.AreaStyle;
+import org.oscim.theme.styles.LineStyle;
+import org.oscim.theme.styles.RenderStyle;
+import org.oscim.tiling.ITileDataSink;
+import org.oscim.tiling.ITileDataSource;
+import org.oscim.tiling.QueryResult;
+import org.oscim.tiling.TileSource;
+import org.oscim.utils.Parameters;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+public class VectorTileRendererTest {
+
+    /**
+     * A polygon and a line crossing the tile borders in every tile.
+     */
+    static class GeometryTileSource extends TileSource {
+        GeometryTileSource() {
+            super(0, 18);
+        }
+
+        @Override
+        public ITileDataSource getDataSource() {
+            return new ITileDataSource() {
+                @Override
+                public void query(MapTile tile, ITileDataSink sink) {
+                    MapElement e = new MapElement();
+                    e.tags.add(new Tag("natural", "water"));
+                    e.startPolygon();
+                    for (int i = 0; i < 6; i++) {
+                        double a = Math.PI * i / 3;
+                        e.addPoint((float) (256 + 100 * Math.cos(a)),
+                                (float) (256 + 100 * Math.sin(a)));
+                    }
+                    sink.process(e);
+
+                    e = new MapElement();
+                    e.tags.add(new Tag("highway", "primary"));
+                    e.startLine();
+                    e.addPoint(-20, 100);
+                    e.addPoint(200, 180);
+                    e.addPoint(380, 150);
+                    e.addPoint(Tile.SIZE + 20, 300);
+                    sink.process(e);
+
+                    sink.completed(QueryResult.SUCCESS);
+                }
+
+                @Override
+                public void dispose() {
+                }
+
+                @Override
+                public void cancel() {
+                }
+            };
+        }
+
+        @Override
+        public OpenResult open() {
+            return OpenResult.SUCCESS;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    /**
+     * Water below translucent, transparent lines, i.e. lines that are
+     * drawn with a cleared depth buffer to not blend with themselves.
+     */
+    static class Theme implements IRenderTheme {
+        private final RenderStyle[] mArea = {new AreaStyle(0, 0xff0000ff)};
+        private final RenderStyle[] mLine = {new LineStyle(1, "", 0x80ff0000, 4,
+                Cap.ROUND, false, 1, 0, 0, 0, -1, 0, false, null, true, null,
+                0, 0, true)};
+
+        @Override
+        public RenderStyle[] matchElement(GeometryType type, TagSet tags, int zoomLevel) {
+            if (type == GeometryType.POLY)
+                return mArea;
+            if (type == GeometryType.LINE)
+                return mLine;
+            return null;
+        }
+
+        @Override
+        public void dispose() {
+        }
+
+        @Override
+        public int getLevels() {
+            return 2;
+        }
+
+        @Override
+        public int getMapBackground() {
+            /* no fade-in of tiles */
+            return 0;
+        }
+
+        @Override
+        public boolean isMapsforgeTheme() {
+            return false;
+        }
+
+        @Override
+        public void updateStyles() {
+        }
+
+        @Override
+        public void scaleTextSize(float scaleFactor) {
+        }
+
+        @Override
+        public String transformBackwardKey(String key) {
+            return key;
+        }
+
+        @Override
+        public String transformForwardKey(String key) {
+            return key;
+        }
+
+        @Override
+        public Tag transformBackwardTag(Tag tag) {
+            return tag;
+        }
+
+        @Override
+        public Tag transformForwardTag(Tag tag) {
+            return tag;
+        }
+    }
+
+    @After
+    public void tearDown() {
+        Parameters.BATCH_RENDERING = false;
+    }
+
+    private static boolean isTileFill(RecordingGL.Command c) {
+        return c.method.getName().equals("drawArrays")
+                && c.args[0].equals(GL.TRIANGLE_STRIP)
+                && c.args[1].equals(0) && c.args[2].equals(4);
+    }
+
+    /**
+     * @return the draw calls of bucket geometry, sorted.
+     */
+    private static List<String> geometryDraws(List<RecordingGL.Command> commands) {
+        List<String> draws = new ArrayList<>();
+        for (RecordingGL.Command c : commands) {
+            if (c.method.getName().startsWith("draw") && !isTileFill(c))
+                draws.add(c.toString());
+        }
+        Collections.sort(draws);
+        return draws;
+    }
+
+    private static int depthClears(List<RecordingGL.Command> commands) {
+        int clears = 0;
+        for (RecordingGL.Command c : commands) {
+            if (c.method.getName().equals("clear")
+                    && ((Integer) c.args[0] & GL.DEPTH_BUFFER_BIT) != 0)
+                clears++;
+        }
+        return clears;
+    }
+
+    @Test
+    public void shouldDrawSameGeometryBatched() throws InterruptedException {
+        RecordingGL recorder = new RecordingGL();
+        GLAdapter.init(recorder.getGL());
+        HeadlessAssets.init();
+
+        HeadlessMap map = new HeadlessMap(800, 600);
+        VectorTileLayer layer = new VectorTileLayer(map, new GeometryTileSource());
+        layer.setTheme(new Theme());
+        map.layers().add(layer);
+        map.initRenderer();
+        map.setMapPosition(new MapPosition(0.5, 0.5, 1 << 10));
+
+        /* load all tiles */
+        long end = System.currentTimeMillis() + 10000;
+        int stable = 0;
+        int drawCalls = -1;
+        while (stable < 10 && System.currentTimeMillis() < end) {
+            recorder.reset();
+            map.frame();
+            int calls = recorder.getStats().drawCalls;
+            stable = (calls == drawCalls && !layer.getManager().hasTileJobs()) ? stable + 1 : 0;
+            drawCalls = calls;
+            Thread.sleep(10);
+        }
+        Assert.assertTrue(stable >= 10);
+
+        recorder.reset();
+        recorder.setRecording(true);
+        map.frame();
+        List<RecordingGL.Command> tiles = new ArrayList<>(recorder.getCommands());
+        RecordingGL.Stats tileStats = recorder.getStats();
+
+        Parameters.BATCH_RENDERING = true;
+        recorder.reset();
+        map.updateMap(true);
+        map.frame();
+        recorder.setRecording(false);
+        List<RecordingGL.Command> batched = recorder.getCommands();
+        RecordingGL.Stats batchStats = recorder.getStats();
+
+        /* more than one tile, the line style is set up once */
+        Assert.assertTrue(depthClears(tiles) > 1);
+        Assert.assertTrue(batchStats.uniformCalls < tileStats.uniformCalls);
+
+        Assert.assertNotEquals(tiles.toString(), batched.toString());
+        Assert.assertEquals(geometryDraws(tiles), geometryDraws(batched));
+        Assert.assertEquals(depthClears(tiles), depthClears(batched));
+    }
+}
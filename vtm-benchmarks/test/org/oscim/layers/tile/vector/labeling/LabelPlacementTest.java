@@ -0,0 +1,214 @@
+/*
+ * This file is part of the OpenScienceMap project (http://www.opensciencemap.org).
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.oscim.layers.tile.vector.labeling;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.oscim.awt.AwtGraphics;
+import org.oscim.backend.GLAdapter;
+import org.oscim.backend.canvas.Color;
+import org.oscim.benchmark.HeadlessMap;
+import org.oscim.benchmark.RecordingGL;
+import org.oscim.core.MapPosition;
+import org.oscim.core.Tile;
+import org.oscim.layers.tile.MapTile;
+import org.oscim.layers.tile.MapTile.TileNode;
+import org.oscim.layers.tile.TileRenderer;
+import org.oscim.layers.tile.TileSet;
+import org.oscim.layers.tile.ZoomLimiter;
+import org.oscim.renderer.GLViewport;
+import org.oscim.renderer.bucket.GlyphAtlas;
+import org.oscim.renderer.bucket.TextItem;
+import org.oscim.theme.styles.TextStyle;
+import org.oscim.utils.Parameters;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static org.oscim.layers.tile.MapTile.State.LOADING;
+import static org.oscim.layers.tile.MapTile.State.NEW_DATA;
+import static org.oscim.layers.tile.MapTile.State.READY;
+
+public class LabelPlacementTest {
+
+    private static final int ZOOM = 16;
+
+    /* keep a reference, the level is lost when the logger is collected */
+    private static final Logger LOG = Logger.getLogger(LabelPlacement.class.getName());
+
+    /**
+     * Renderer which provides the tiles set by the test.
+     */
+    static class Tiles extends TileRenderer {
+        final TileSet tiles = new TileSet(4);
+
+        @Override
+        public Integer getVisibleTiles(TileSet tileSet, boolean replace) {
+            tileSet.setTiles(tiles);
+            return ZOOM;
+        }
+
+        @Override
+        public void render(GLViewport v) {
+        }
+    }
+
+    /**
+     * Placement which records the placed labels of the last update.
+     */
+    static class Placement extends LabelPlacement {
+        final Set<String> placed = new HashSet<>();
+
+        Placement(HeadlessMap map, Tiles tiles) {
+            super(map, tiles, new ZoomLimiter(null, 0, 20, 20));
+        }
+
+        @Override
+        protected Label groupLabels(Label labels) {
+            placed.clear();
+            for (Label l = labels; l != null; l = (Label) l.next)
+                placed.add(l.label);
+            return super.groupLabels(labels);
+        }
+    }
+
+    private final TileNode mRoot = new TileNode();
+    private HeadlessMap mMap;
+    private Tiles mTiles;
+    private Placement mPlacement;
+    private LabelTask mTask;
+    private int mTileX;
+    private int mTileY;
+
+    @Before
+    public void setUp() {
+        AwtGraphics.init();
+        GLAdapter.init(new RecordingGL().getGL());
+        Parameters.INCREMENTAL_LABELS = true;
+        LOG.setLevel(Level.WARNING);
+
+        mMap = new HeadlessMap(512, 512);
+        mTiles = new Tiles();
+        mPlacement = new Placement(mMap, mTiles);
+        mTask = new LabelTask(new GlyphAtlas());
+        mRoot.parent = mRoot;
+
+        MapPosition pos = new MapPosition();
+        pos.setPosition(52.5, 13.4);
+        mTileX = (int) (pos.x * (1 << ZOOM));
+        mTileY = (int) (pos.y * (1 << ZOOM));
+    }
+
+    @After
+    public void tearDown() {
+        mPlacement.cleanup();
+        Parameters.INCREMENTAL_LABELS = false;
+    }
+
+    private static TextStyle caption(int priority) {
+        return TextStyle.builder().fontSize(14).color(Color.BLACK)
+                .isCaption(true).priority(priority).build();
+    }
+
+    private MapTile addTile(int dx, boolean ready, TextItem... labels) {
+        TileNode node = new TileNode();
+        node.parent = mRoot;
+        MapTile tile = new MapTile(node, mTileX + dx, mTileY, ZOOM);
+        node.item = tile;
+        tile.setState(LOADING);
+        if (ready) {
+            tile.setState(NEW_DATA);
+            tile.setState(READY);
+        }
+        /* push() prepends, keep the order of labels */
+        LabelTileData ld = new LabelTileData();
+        for (int i = labels.length - 1; i >= 0; i--)
+            ld.labels.push(labels[i]);
+        tile.addData(LabelLayer.LABEL_DATA, ld);
+
+        mTiles.tiles.tiles[mTiles.tiles.cnt++] = tile;
+        return tile;
+    }
+
+    /**
+     * Label the tiles with the map center at x pixels right of the left
+     * border and in the middle of the first tile.
+     */
+    private Set<String> update(double x) {
+        MapPosition pos = new MapPosition();
+        pos.setZoomLevel(ZOOM);
+        pos.x = (mTileX + x / Tile.SIZE) / (1 << ZOOM);
+        pos.y = (mTileY + 0.5) / (1 << ZOOM);
+        mMap.viewport().setMapPosition(pos);
+
+        Assert.assertTrue(mPlacement.updateLabels(mTask));
+        mTask.textLayer.clear();
+        mTask.symbolLayer.clear();
+        return mPlacement.placed;
+    }
+
+    private static Set<String> set(String... labels) {
+        return new HashSet<>(Arrays.asList(labels));
+    }
+
+    @Test
+    public void shouldPlaceRejectedLabelWhenOverlappingLabelLeftView() {
+        /* the map shows a circle of ~724 pixels radius around the center */
+        addTile(0, true,
+                TextItem.pool.get().set(500, Tile.SIZE / 2, "Aaaa", caption(3)),
+                TextItem.pool.get().set(475, Tile.SIZE / 2, "Bbbb", caption(5)));
+
+        Assert.assertEquals(set("Aaaa"), update(-200));
+
+        /* Aaaa moves out of view, Bbbb is visible and does not overlap
+         * anymore */
+        Assert.assertEquals(set("Bbbb"), update(-240));
+    }
+
+    @Test
+    public void shouldPlaceRejectedLabelWhenOverlappingLabelIsReplaced() {
+        addTile(0, true,
+                TextItem.pool.get().set(Tile.SIZE - 6, Tile.SIZE / 2, "Aaaa", caption(3)),
+                TextItem.pool.get().set(Tile.SIZE - 45, Tile.SIZE / 2, "Bbbb", caption(5)));
+        MapTile right = addTile(1, false,
+                TextItem.pool.get().set(10, Tile.SIZE / 2, "Cc", caption(1)));
+
+        Assert.assertEquals(set("Aaaa"), update(Tile.SIZE));
+
+        /* Cc replaces Aaaa after the captions of the first tile were added */
+        right.setState(NEW_DATA);
+        right.setState(READY);
+        Assert.assertEquals(set("Cc"), update(Tile.SIZE + 1));
+
+        /* Bbbb is tested again with the next update */
+        Assert.assertEquals(set("Bbbb", "Cc"), update(Tile.SIZE + 2));
+    }
+
+    @Test
+    public void shouldKeepLabelsWhenNothingWasRemoved() {
+        addTile(0, true,
+                TextItem.pool.get().set(100, Tile.SIZE / 2, "Aaaa", caption(3)),
+                TextItem.pool.get().set(75, Tile.SIZE / 2, "Bbbb", caption(5)),
+                TextItem.pool.get().set(300, Tile.SIZE / 2, "Cc", caption(1)));
+
+        Assert.assertEquals(set("Aaaa", "Cc"), update(Tile.SIZE / 2));
+        Assert.assertEquals(set("Aaaa", "Cc"), update(Tile.SIZE / 2 + 10));
+    }
+}
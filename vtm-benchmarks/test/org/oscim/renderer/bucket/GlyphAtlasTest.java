@@ -0,0 +1,130 @@
+/*
+ * This file is part of the OpenScienceMap project (http://www.opensciencemap.org).
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.oscim.renderer.bucket;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.oscim.awt.AwtGraphics;
+import org.oscim.renderer.bucket.GlyphAtlas.Glyph;
+import org.oscim.theme.styles.TextStyle;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class GlyphAtlasTest {
+
+    private static final int SIZE = 64;
+    private static final int PAGES = 2;
+
+    private GlyphAtlas mAtlas;
+    private TextStyle mFill;
+    private TextStyle mStroke;
+
+    @Before
+    public void setUp() {
+        AwtGraphics.init();
+        mAtlas = new GlyphAtlas(SIZE, PAGES);
+        mFill = TextStyle.builder().fontSize(16).color(0xff000000).build();
+        mStroke = TextStyle.builder().fontSize(16).color(0xff000000)
+                .strokeColor(0xffffffff).strokeWidth(2).build();
+    }
+
+    private static boolean overlaps(Glyph a, int aw, Glyph b, int bw) {
+        return a.page == b.page
+                && a.x < b.x + bw && b.x < a.x + aw
+                && a.y < b.y + b.height && b.y < a.y + a.height;
+    }
+
+    @Test
+    public void shouldAllocateGlyphs() {
+        Glyph a = mAtlas.get(mFill, 'a');
+        Glyph b = mAtlas.get(mFill, 'b');
+        Glyph c = mAtlas.get(mStroke, 'c');
+
+        assertNotNull(a);
+        assertNotNull(b);
+        assertNotNull(c);
+        assertTrue(a.advance > 0);
+        assertTrue(a.x + a.width <= SIZE && a.y + a.height <= SIZE);
+
+        /* the stroke cell is next to the fill */
+        assertTrue(c.x + 2 * c.width <= SIZE);
+        assertTrue(c.pad > a.pad);
+
+        assertTrue(!overlaps(a, a.width, b, b.width));
+        assertTrue(!overlaps(a, a.width, c, 2 * c.width));
+        assertTrue(!overlaps(b, b.width, c, 2 * c.width));
+    }
+
+    @Test
+    public void shouldReuseGlyphs() {
+        Glyph a = mAtlas.get(mFill, 'a');
+        assertSame(a, mAtlas.get(mFill, 'a'));
+
+        /* chars stored outside of the array */
+        Glyph k = mAtlas.get(mFill, '가');
+        assertSame(k, mAtlas.get(mFill, '가'));
+
+        /* same char of another style */
+        assertNotSame(a, mAtlas.get(mStroke, 'a'));
+
+        /* update() keeps glyphs while the atlas is not full */
+        mAtlas.update();
+        assertSame(a, mAtlas.get(mFill, 'a'));
+    }
+
+    @Test
+    public void shouldResetWhenFull() {
+        char c = 'A';
+        while (mAtlas.get(mFill, c) != null)
+            c++;
+
+        assertEquals(PAGES, mAtlas.getNumPages());
+
+        /* full until the next update */
+        assertNull(mAtlas.get(mFill, (char) (c + 1)));
+        TextureItem t = mAtlas.getTexture(0);
+
+        mAtlas.update();
+        assertEquals(0, mAtlas.getNumPages());
+
+        Glyph g = mAtlas.get(mFill, c);
+        assertNotNull(g);
+        assertEquals(0, g.page);
+        assertEquals(1, mAtlas.getNumPages());
+
+        /* the retired page is released with its last texture */
+        assertEquals(SIZE, t.width);
+        assertNull(mAtlas.dispose(t, 1));
+    }
+
+    @Test
+    public void shouldClearStyles() {
+        Glyph a = mAtlas.get(mFill, 'a');
+
+        mAtlas.clear();
+        /* glyphs stay valid until the next update */
+        assertSame(a, mAtlas.get(mFill, 'a'));
+
+        mAtlas.update();
+        Glyph b = mAtlas.get(mFill, 'a');
+        assertNotNull(b);
+        assertNotSame(a, b);
+    }
+}
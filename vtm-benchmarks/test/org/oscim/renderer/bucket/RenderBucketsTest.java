@@ -0,0 +1,181 @@
+/*
+ * This file is part of the OpenScienceMap project (http://www.opensciencemap.org).
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.oscim.renderer.bucket;
+
+import com.badlogic.gdx.utils.SharedLibraryLoader;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.oscim.backend.GL;
+import org.oscim.backend.GLAdapter;
+import org.oscim.benchmark.HeadlessAssets;
+import org.oscim.benchmark.RecordingGL;
+import org.oscim.core.GeometryBuffer;
+import org.oscim.renderer.GLViewport;
+import org.oscim.renderer.MapRenderer;
+import org.oscim.theme.styles.AreaStyle;
+import org.oscim.theme.styles.LineStyle;
+
+import java.nio.ShortBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class RenderBucketsTest {
+
+    static {
+        /* GLMatrix of the renderer viewport is native */
+        new SharedLibraryLoader().load("vtm-jni");
+    }
+
+    private RecordingGL mRecorder;
+
+    @Before
+    public void setUp() {
+        mRecorder = new RecordingGL();
+        GLAdapter.init(mRecorder.getGL());
+        /* own buffers, so that offsets do not depend on other tests */
+        GLAdapter.NO_BUFFER_SUB_DATA = true;
+        new MapRenderer(null);
+    }
+
+    @After
+    public void tearDown() {
+        GLAdapter.NO_BUFFER_SUB_DATA = false;
+    }
+
+    private static RenderBuckets createBuckets() {
+        RenderBuckets buckets = new RenderBuckets();
+
+        GeometryBuffer g = new GeometryBuffer(16, 2);
+        g.startPolygon();
+        g.addPoint(10, 10);
+        g.addPoint(100, 10);
+        g.addPoint(100, 100);
+        g.addPoint(10, 100);
+        buckets.addPolygonBucket(0, new AreaStyle(0xff00ff00)).addPolygon(g);
+
+        g.clear();
+        g.startLine();
+        g.addPoint(0, 0);
+        g.addPoint(50, 80);
+        g.addPoint(200, 120);
+        buckets.addLineBucket(1, new LineStyle(0xff000000, 2)).addLine(g);
+        buckets.addHairLineBucket(2, new LineStyle(0xff0000ff, 1)).addLine(g);
+
+        buckets.prepare();
+        return buckets;
+    }
+
+    /**
+     * @return the uploaded vertex data and the offsets of the buckets.
+     */
+    private List<Object> compile(RenderBuckets buckets, boolean addFill) {
+        mRecorder.reset();
+        mRecorder.setRecording(true);
+        Assert.assertTrue(buckets.compile(addFill));
+        mRecorder.setRecording(false);
+
+        List<Object> result = new ArrayList<>();
+        for (RecordingGL.Command c : mRecorder.getCommands()) {
+            String name = c.method.getName();
+            if (name.equals("bufferData") && c.args[0].equals(GL.ARRAY_BUFFER))
+                result.add(toString((ShortBuffer) c.args[2], (Integer) c.args[1]));
+            else if (name.equals("bufferSubData") && c.args[0].equals(GL.ARRAY_BUFFER))
+                result.add(toString((ShortBuffer) c.args[3], (Integer) c.args[2]));
+        }
+        result.add(buckets.offset[RenderBucket.LINE]);
+        for (RenderBucket b = buckets.get(); b != null; b = b.next)
+            result.add(b.type + ":" + b.getVertexOffset());
+        return result;
+    }
+
+    private static String toString(ShortBuffer data, int bytes) {
+        short[] shorts = new short[bytes / 2];
+        data.duplicate().get(shorts);
+        return Arrays.toString(shorts);
+    }
+
+    @Test
+    public void shouldCompileUnpacked() {
+        List<Object> expected = compile(createBuckets(), true);
+        Assert.assertTrue(expected.size() > 1);
+    }
+
+    @Test
+    public void shouldCompilePackedWithoutFill() {
+        RenderBuckets buckets = createBuckets();
+        Assert.assertTrue(buckets.pack(true));
+
+        /* the fill vertices are uploaded, the offsets are the same as
+         * with fill */
+        Assert.assertEquals(compile(createBuckets(), true), compile(buckets, false));
+    }
+
+    @Test
+    public void shouldCompilePackedWithFill() {
+        RenderBuckets buckets = createBuckets();
+        Assert.assertTrue(buckets.pack(false));
+
+        Assert.assertEquals(compile(createBuckets(), true), compile(buckets, true));
+    }
+
+    @Test
+    public void shouldCompilePacked() {
+        RenderBuckets buckets = createBuckets();
+        Assert.assertTrue(buckets.pack(false));
+
+        Assert.assertEquals(compile(createBuckets(), false), compile(buckets, false));
+    }
+
+    @Test
+    public void shouldDrawPolygonsAtVertexBase() {
+        GLAdapter.NO_BUFFER_SUB_DATA = false;
+        HeadlessAssets.init();
+        RenderBuckets.initRenderer();
+
+        RenderBuckets first = createBuckets();
+        RenderBuckets second = createBuckets();
+        Assert.assertTrue(first.compile(true));
+        Assert.assertTrue(second.compile(true));
+        Assert.assertTrue(second.vbo.isShared());
+        Assert.assertTrue(second.vbo.getOffset() > 0);
+
+        /* the vertex base must follow the bound buckets */
+        second.bind();
+        first.bind();
+        Assert.assertEquals(first.vbo.getOffset(), drawPolygons(first));
+        second.bind();
+        Assert.assertEquals(second.vbo.getOffset(), drawPolygons(second));
+    }
+
+    /**
+     * @return the offset of the vertex attribute pointer of the fill shader.
+     */
+    private int drawPolygons(RenderBuckets buckets) {
+        mRecorder.reset();
+        mRecorder.setRecording(true);
+        PolygonBucket.Renderer.draw(buckets.get(), new GLViewport(), 1, true);
+        mRecorder.setRecording(false);
+
+        for (RecordingGL.Command c : mRecorder.getCommands()) {
+            if (c.method.getName().equals("vertexAttribPointer"))
+                return (Integer) c.args[5];
+        }
+        return -1;
+    }
+}
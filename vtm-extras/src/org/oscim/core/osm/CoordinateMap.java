@@ -0,0 +1,119 @@
+/*
+ * This file is part of the OpenScienceMap project (http://www.opensciencemap.org).
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.oscim.core.osm;
+
+import java.util.Arrays;
+
+/**
+ * Coordinates of nodes by id, in primitive arrays.
+ * <p>
+ * A hash table with linear probing refers to the insertion order of the
+ * nodes, the coordinates of a node are accessed by this index.
+ */
+public final class CoordinateMap {
+
+    /* index + 1 of the node in the hash slot, 0 when empty */
+    private int[] mSlots;
+    private int mMask;
+
+    private long[] mIds;
+    private double[] mX;
+    private double[] mY;
+    private int mSize;
+
+    public CoordinateMap(int capacity) {
+        int slots = Integer.highestOneBit(Math.max(capacity, 8) * 2 - 1) * 2;
+        mSlots = new int[slots];
+        mMask = slots - 1;
+        mIds = new long[slots / 2];
+        mX = new double[slots / 2];
+        mY = new double[slots / 2];
+    }
+
+    /**
+     * Add or replace the coordinates of a node.
+     */
+    public void put(long id, double x, double y) {
+        int slot = find(id);
+        int index = mSlots[slot] - 1;
+        if (index < 0) {
+            if (mSize == mIds.length) {
+                grow();
+                slot = find(id);
+            }
+            index = mSize++;
+            mIds[index] = id;
+            mSlots[slot] = index + 1;
+        }
+        mX[index] = x;
+        mY[index] = y;
+    }
+
+    /**
+     * @return the index of the node, or -1 when it was not added.
+     */
+    public int indexOf(long id) {
+        return mSlots[find(id)] - 1;
+    }
+
+    public double getX(int index) {
+        return mX[index];
+    }
+
+    public double getY(int index) {
+        return mY[index];
+    }
+
+    public int size() {
+        return mSize;
+    }
+
+    public void clear() {
+        Arrays.fill(mSlots, 0);
+        mSize = 0;
+    }
+
+    /**
+     * @return the slot of the node or the empty slot where it belongs.
+     */
+    private int find(long id) {
+        int slot = hash(id) & mMask;
+        int index;
+        while ((index = mSlots[slot]) != 0 && mIds[index - 1] != id)
+            slot = (slot + 1) & mMask;
+        return slot;
+    }
+
+    private void grow() {
+        int capacity = mIds.length * 2;
+        mIds = Arrays.copyOf(mIds, capacity);
+        mX = Arrays.copyOf(mX, capacity);
+        mY = Arrays.copyOf(mY, capacity);
+
+        mSlots = new int[capacity * 2];
+        mMask = mSlots.length - 1;
+        for (int i = 0; i < mSize; i++) {
+            int slot = hash(mIds[i]) & mMask;
+            while (mSlots[slot] != 0)
+                slot = (slot + 1) & mMask;
+            mSlots[slot] = i + 1;
+        }
+    }
+
+    private static int hash(long id) {
+        long h = id * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+}
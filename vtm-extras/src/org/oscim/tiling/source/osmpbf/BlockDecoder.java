@@ -0,0 +1,201 @@
+/*
+ * This file is part of the OpenScienceMap project (http://www.opensciencemap.org).
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.oscim.tiling.source.osmpbf;
+
+import org.openstreetmap.osmosis.osmbinary.BinaryParser;
+import org.openstreetmap.osmosis.osmbinary.Osmformat;
+import org.oscim.core.GeometryBuffer.GeometryType;
+import org.oscim.core.MapElement;
+import org.oscim.core.Tag;
+import org.oscim.core.TagSet;
+import org.oscim.tiling.source.mapfile.OSMUtils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Decodes one primitive block of a PBF file. Without a {@link NodeStore}
+ * the coordinates of the nodes are collected and tagged nodes are encoded
+ * as points, otherwise tagged ways are encoded with the coordinates of
+ * their nodes from the store. Relations are not decoded.
+ */
+final class BlockDecoder extends BinaryParser {
+
+    private final NodeStore mNodeStore;
+
+    /* encoded elements, see ElementStore */
+    final ByteArrayOutputStream elements = new ByteArrayOutputStream();
+    private final DataOutputStream mOutput = new DataOutputStream(elements);
+
+    /* ids and coordinates of the nodes, in order */
+    long[] nodeIds = new long[0];
+    int[] nodeCoordinates = new int[0];
+    int numNodes;
+
+    boolean hasWays;
+    boolean hasRelations;
+
+    private final MapElement mElement = new MapElement();
+    private int[] mPoints = new int[256];
+
+    /**
+     * @param nodeStore the completed node store to decode ways, or null
+     *                  to decode nodes.
+     */
+    BlockDecoder(NodeStore nodeStore) {
+        mNodeStore = nodeStore;
+    }
+
+    private TagSet tags(int count, List<Integer> keys, List<Integer> values) {
+        TagSet tags = mElement.tags;
+        tags.clear();
+        for (int i = 0; i < count; i++)
+            tags.add(new Tag(getStringById(keys.get(i)), getStringById(values.get(i))));
+        return tags;
+    }
+
+    private void addNode(long id, long lat, long lon, TagSet tags) {
+        if (numNodes == nodeIds.length) {
+            int size = Math.max(numNodes * 2, 1024);
+            nodeIds = Arrays.copyOf(nodeIds, size);
+            nodeCoordinates = Arrays.copyOf(nodeCoordinates, size * 2);
+        }
+        int latitudeE6 = (int) Math.round(parseLat(lat) * 1E6);
+        int longitudeE6 = (int) Math.round(parseLon(lon) * 1E6);
+
+        nodeIds[numNodes] = id;
+        nodeCoordinates[numNodes * 2] = latitudeE6;
+        nodeCoordinates[numNodes * 2 + 1] = longitudeE6;
+        numNodes++;
+
+        if (tags.size() > 0) {
+            mPoints[0] = latitudeE6;
+            mPoints[1] = longitudeE6;
+            encode(GeometryType.POINT, tags, 1);
+        }
+    }
+
+    private void encode(GeometryType type, TagSet tags, int numPoints) {
+        try {
+            ElementStore.encode(mOutput, type.nativeInt, tags, mPoints, numPoints);
+        } catch (IOException e) {
+            /* not thrown by ByteArrayOutputStream */
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Override
+    protected void parseNodes(List<Osmformat.Node> nodes) {
+        if (mNodeStore != null)
+            return;
+
+        for (Osmformat.Node n : nodes) {
+            TagSet tags = tags(n.getKeysCount(), n.getKeysList(), n.getValsList());
+            addNode(n.getId(), n.getLat(), n.getLon(), tags);
+        }
+    }
+
+    @Override
+    protected void parseDense(Osmformat.DenseNodes nodes) {
+        if (mNodeStore != null)
+            return;
+
+        long id = 0, lat = 0, lon = 0;
+        /* index into the keys and values, empty when no node has tags */
+        int j = 0;
+        int numKeysVals = nodes.getKeysValsCount();
+        TagSet tags = mElement.tags;
+
+        for (int i = 0, n = nodes.getIdCount(); i < n; i++) {
+            id += nodes.getId(i);
+            lat += nodes.getLat(i);
+            lon += nodes.getLon(i);
+
+            tags.clear();
+            if (numKeysVals > 0) {
+                while (nodes.getKeysVals(j) != 0) {
+                    String key = getStringById(nodes.getKeysVals(j++));
+                    String value = getStringById(nodes.getKeysVals(j++));
+                    tags.add(new Tag(key, value));
+                }
+                /* skip the delimiter */
+                j++;
+            }
+            addNode(id, lat, lon, tags);
+        }
+    }
+
+    @Override
+    protected void parseWays(List<Osmformat.Way> ways) {
+        /* called for each group of the block */
+        if (ways.isEmpty())
+            return;
+        hasWays = true;
+        if (mNodeStore == null)
+            return;
+
+        for (Osmformat.Way w : ways) {
+            int numTags = w.getKeysCount();
+            int numRefs = w.getRefsCount();
+            if (numTags == 0 || numRefs < 2)
+                continue;
+
+            if (mPoints.length < numRefs * 2)
+                mPoints = new int[numRefs * 2];
+
+            long ref = 0;
+            int numPoints = 0;
+            for (int i = 0; i < numRefs; i++) {
+                ref += w.getRefs(i);
+                long node = mNodeStore.find(ref);
+                if (node < 0)
+                    continue;
+                mPoints[numPoints * 2] = mNodeStore.getLatitudeE6(node);
+                mPoints[numPoints * 2 + 1] = mNodeStore.getLongitudeE6(node);
+                numPoints++;
+            }
+            if (numPoints < 2)
+                continue;
+
+            TagSet tags = tags(numTags, w.getKeysList(), w.getValsList());
+            int last = (numPoints - 1) * 2;
+            boolean closed = numPoints > 3
+                    && mPoints[0] == mPoints[last] && mPoints[1] == mPoints[last + 1];
+            encode(closed && OSMUtils.isArea(mElement) ? GeometryType.POLY : GeometryType.LINE,
+                    tags, numPoints);
+        }
+    }
+
+    @Override
+    protected void parseRelations(List<Osmformat.Relation> relations) {
+        if (!relations.isEmpty())
+            hasRelations = true;
+    }
+
+    @Override
+    public void parse(Osmformat.HeaderBlock block) {
+        for (String feature : block.getRequiredFeaturesList()) {
+            if (!"OsmSchema-V0.6".equals(feature) && !"DenseNodes".equals(feature))
+                throw new IllegalArgumentException("File requires unknown feature: " + feature);
+        }
+    }
+
+    @Override
+    public void complete() {
+    }
+}
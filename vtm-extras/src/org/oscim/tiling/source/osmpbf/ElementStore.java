@@ -0,0 +1,315 @@
+/*
+ * This file is part of the OpenScienceMap project (http://www.opensciencemap.org).
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.oscim.tiling.source.osmpbf;
+
+import org.oscim.core.MercatorProjection;
+import org.oscim.core.TagSet;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/**
+ * Map elements in a file, indexed by the tiles at {@link #INDEX_ZOOM}
+ * which they intersect.
+ * <p>
+ * An element is stored as: the length of the following data (int), the
+ * geometry type (byte), the bounding box in microdegrees (4 int), the
+ * number of tags (short), the tags as UTF-8 key and value prefixed by their
+ * length (short), the number of points (int) and the points as latitude
+ * and longitude in microdegrees (2 int).
+ * <p>
+ * The index is a memory mapped list of element offsets, ordered by tile.
+ * Only the start of each tile in the list is kept in memory.
+ */
+final class ElementStore implements Closeable {
+    static final Charset UTF8 = Charset.forName("UTF-8");
+
+    static final byte INDEX_ZOOM = 14;
+
+    /* length, type and bounding box */
+    static final int HEADER_SIZE = 4 + 1 + 4 * 4;
+
+    /**
+     * Maximum number of tiles in the index.
+     */
+    private static final int MAX_TILES = 1 << 24;
+
+    private final File mFile;
+    private final File mIndexFile;
+    private OutputStream mOutput;
+    private long mSize;
+
+    /* position of the next element in a sequential pass */
+    private long mPosition;
+
+    private RandomAccessFile mInput;
+    private FileChannel mChannel;
+
+    private int mTileLeft, mTileTop, mTilesWidth, mTilesHeight;
+    private long[] mTileStart;
+    private MappedFile mIndex;
+
+    ElementStore(File file, File indexFile) throws IOException {
+        mFile = file;
+        mIndexFile = indexFile;
+        mOutput = new BufferedOutputStream(new FileOutputStream(file), 1 << 16);
+    }
+
+    /**
+     * Encode an element.
+     *
+     * @param points    latitude and longitude of the points in microdegrees.
+     * @param numPoints the number of points.
+     */
+    static void encode(DataOutputStream out, int type, TagSet tags,
+                       int[] points, int numPoints) throws IOException {
+        int minLat = Integer.MAX_VALUE, minLon = Integer.MAX_VALUE;
+        int maxLat = Integer.MIN_VALUE, maxLon = Integer.MIN_VALUE;
+        for (int i = 0; i < numPoints * 2; i += 2) {
+            minLat = Math.min(minLat, points[i]);
+            minLon = Math.min(minLon, points[i + 1]);
+            maxLat = Math.max(maxLat, points[i]);
+            maxLon = Math.max(maxLon, points[i + 1]);
+        }
+
+        int numTags = Math.min(tags.size(), Short.MAX_VALUE);
+        byte[][] strings = new byte[numTags * 2][];
+        int length = HEADER_SIZE - 4 + 2 + 4 + numPoints * 8;
+        for (int i = 0; i < numTags; i++) {
+            strings[i * 2] = utf8(tags.get(i).key);
+            strings[i * 2 + 1] = utf8(tags.get(i).value);
+            length += 4 + strings[i * 2].length + strings[i * 2 + 1].length;
+        }
+
+        out.writeInt(length);
+        out.writeByte(type);
+        out.writeInt(minLat);
+        out.writeInt(minLon);
+        out.writeInt(maxLat);
+        out.writeInt(maxLon);
+        out.writeShort(numTags);
+        for (byte[] string : strings) {
+            out.writeShort(string.length);
+            out.write(string);
+        }
+        out.writeInt(numPoints);
+        for (int i = 0; i < numPoints * 2; i++)
+            out.writeInt(points[i]);
+    }
+
+    private static byte[] utf8(String s) {
+        byte[] bytes = s.getBytes(UTF8);
+        /* the length is stored as short */
+        return bytes.length <= Short.MAX_VALUE ? bytes : Arrays.copyOf(bytes, Short.MAX_VALUE);
+    }
+
+    /**
+     * Add encoded elements.
+     */
+    void add(byte[] data, int length) throws IOException {
+        mOutput.write(data, 0, length);
+        mSize += length;
+    }
+
+    /**
+     * Build the index for the tiles covering the given area.
+     */
+    void complete(int minLatitudeE6, int minLongitudeE6,
+                  int maxLatitudeE6, int maxLongitudeE6) throws IOException {
+        mOutput.close();
+        mOutput = null;
+
+        if (mSize > 0) {
+            mTileLeft = tileX(minLongitudeE6);
+            mTileTop = tileY(maxLatitudeE6);
+            mTilesWidth = tileX(maxLongitudeE6) - mTileLeft + 1;
+            mTilesHeight = tileY(minLatitudeE6) - mTileTop + 1;
+        }
+        if ((long) mTilesWidth * mTilesHeight > MAX_TILES)
+            throw new IOException("area too large: " + mTilesWidth + "x" + mTilesHeight + " tiles");
+
+        /* count the elements of each tile */
+        long[] start = new long[mTilesWidth * mTilesHeight + 1];
+        int[] bounds = new int[4];
+        DataInputStream in = open();
+        try {
+            while (next(in, bounds) >= 0) {
+                for (int y = tileY(bounds[2]); y <= tileY(bounds[0]); y++)
+                    for (int x = tileX(bounds[1]); x <= tileX(bounds[3]); x++)
+                        start[index(x, y) + 1]++;
+            }
+        } finally {
+            in.close();
+        }
+        for (int i = 1; i < start.length; i++)
+            start[i] += start[i - 1];
+
+        mIndex = new MappedFile(mIndexFile, start[start.length - 1] * 8, true);
+
+        /* add the offsets of the elements, the positions are not in memory */
+        int[] count = new int[start.length - 1];
+        in = open();
+        try {
+            long offset;
+            while ((offset = next(in, bounds)) >= 0) {
+                for (int y = tileY(bounds[2]); y <= tileY(bounds[0]); y++) {
+                    for (int x = tileX(bounds[1]); x <= tileX(bounds[3]); x++) {
+                        int i = index(x, y);
+                        mIndex.putLong((start[i] + count[i]++) * 8, offset);
+                    }
+                }
+            }
+        } finally {
+            in.close();
+        }
+        mTileStart = start;
+
+        mInput = new RandomAccessFile(mFile, "r");
+        mChannel = mInput.getChannel();
+    }
+
+    private DataInputStream open() throws IOException {
+        mPosition = 0;
+        return new DataInputStream(new BufferedInputStream(new FileInputStream(mFile), 1 << 16));
+    }
+
+    /**
+     * Read the bounding box of the next element of a sequential pass.
+     *
+     * @return the offset of the element, or -1 at the end.
+     */
+    private long next(DataInputStream in, int[] bounds) throws IOException {
+        int length;
+        try {
+            length = in.readInt();
+        } catch (EOFException e) {
+            return -1;
+        }
+        in.readByte();
+        for (int i = 0; i < 4; i++)
+            bounds[i] = in.readInt();
+
+        int skip = length - (HEADER_SIZE - 4);
+        while (skip > 0) {
+            int n = in.skipBytes(skip);
+            if (n <= 0)
+                throw new EOFException();
+            skip -= n;
+        }
+
+        long offset = mPosition;
+        mPosition += 4 + length;
+        return offset;
+    }
+
+    private int index(int x, int y) {
+        return (y - mTileTop) * mTilesWidth + (x - mTileLeft);
+    }
+
+    private static int tileX(int longitudeE6) {
+        return MercatorProjection.longitudeToTileX(longitudeE6 / 1E6, INDEX_ZOOM);
+    }
+
+    private static int tileY(int latitudeE6) {
+        return MercatorProjection.latitudeToTileY(latitudeE6 / 1E6, INDEX_ZOOM);
+    }
+
+    /**
+     * @return the position of the first element of the tile at
+     * {@link #INDEX_ZOOM} in the index, or -1 when it is outside.
+     */
+    long getTileStart(int tileX, int tileY) {
+        if (mTileStart == null || tileX < mTileLeft || tileY < mTileTop
+                || tileX >= mTileLeft + mTilesWidth || tileY >= mTileTop + mTilesHeight)
+            return -1;
+        return mTileStart[index(tileX, tileY)];
+    }
+
+    /**
+     * @return the position after the last element of the tile.
+     */
+    long getTileEnd(int tileX, int tileY) {
+        return mTileStart[index(tileX, tileY) + 1];
+    }
+
+    /**
+     * @return the offset of the element at 'position' of the index.
+     */
+    long getOffset(long position) {
+        return mIndex.getLong(position * 8);
+    }
+
+    /**
+     * Read the element at 'offset' into 'buffer', from position 0 to its
+     * limit. The buffer is replaced when it is too small.
+     * [Threadsafe]
+     *
+     * @return the buffer.
+     */
+    ByteBuffer read(long offset, ByteBuffer buffer) throws IOException {
+        /* read the element, or as much as fits into the buffer */
+        buffer.clear();
+        buffer.limit((int) Math.min(buffer.capacity(), mSize - offset));
+        fill(offset, buffer);
+
+        int length = 4 + buffer.getInt(0);
+        if (length > buffer.capacity()) {
+            ByteBuffer b = ByteBuffer.allocate(Math.max(length, buffer.capacity() * 2));
+            buffer.flip();
+            b.put(buffer);
+            buffer = b;
+        }
+        buffer.limit(length);
+        fill(offset, buffer);
+
+        buffer.position(0);
+        return buffer;
+    }
+
+    private void fill(long offset, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (mChannel.read(buffer, offset + buffer.position()) < 0)
+                throw new EOFException();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (mOutput != null)
+            mOutput.close();
+        if (mInput != null)
+            mInput.close();
+        if (mIndex != null)
+            mIndex.close();
+        if (!mFile.delete())
+            mFile.deleteOnExit();
+        if (!mIndexFile.delete())
+            mIndexFile.deleteOnExit();
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * This file is part of the OpenScienceMap project (http://www.opensciencemap.org).
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.oscim.tiling.source.osmpbf;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * A file mapped in chunks, for files larger than one mapping. Values are
+ * aligned to their size, so that a value is never split between chunks.
+ * Absolute reads are thread-safe.
+ */
+final class MappedFile implements Closeable {
+    private static final int CHUNK_SHIFT = 30;
+    private static final long CHUNK_MASK = (1L << CHUNK_SHIFT) - 1;
+
+    private final RandomAccessFile mFile;
+    private final MappedByteBuffer[] mChunks;
+
+    /**
+     * Map 'size' bytes of 'file', the file is extended when writable.
+     */
+    MappedFile(File file, long size, boolean writable) throws IOException {
+        mFile = new RandomAccessFile(file, writable ? "rw" : "r");
+        try {
+            if (writable)
+                mFile.setLength(size);
+
+            FileChannel.MapMode mode = writable ? FileChannel.MapMode.READ_WRITE
+                    : FileChannel.MapMode.READ_ONLY;
+
+            mChunks = new MappedByteBuffer[(int) ((size + CHUNK_MASK) >>> CHUNK_SHIFT)];
+            for (int i = 0; i < mChunks.length; i++) {
+                long position = (long) i << CHUNK_SHIFT;
+                long length = Math.min(size - position, 1L << CHUNK_SHIFT);
+                mChunks[i] = mFile.getChannel().map(mode, position, length);
+            }
+        } catch (IOException e) {
+            mFile.close();
+            throw e;
+        }
+    }
+
+    long getLong(long position) {
+        return mChunks[(int) (position >>> CHUNK_SHIFT)].getLong((int) (position & CHUNK_MASK));
+    }
+
+    int getInt(long position) {
+        return mChunks[(int) (position >>> CHUNK_SHIFT)].getInt((int) (position & CHUNK_MASK));
+    }
+
+    void putLong(long position, long value) {
+        mChunks[(int) (position >>> CHUNK_SHIFT)].putLong((int) (position & CHUNK_MASK), value);
+    }
+
+    @Override
+    public void close() throws IOException {
+        mFile.close();
+    }
+}
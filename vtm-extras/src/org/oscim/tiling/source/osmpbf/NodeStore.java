@@ -0,0 +1,112 @@
+/*
+ * This file is part of the OpenScienceMap project (http://www.opensciencemap.org).
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.oscim.tiling.source.osmpbf;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/**
+ * Coordinates of all nodes in a memory mapped file, sorted by id. Nodes
+ * are added in ascending order of their ids and found by binary search.
+ */
+final class NodeStore implements Closeable {
+    /* id, latitude, longitude */
+    private static final int RECORD_SIZE = 16;
+
+    private final File mFile;
+    private DataOutputStream mOutput;
+    private MappedFile mMapped;
+
+    private long mSize;
+    private long mLastId = Long.MIN_VALUE;
+
+    int minLatitudeE6 = Integer.MAX_VALUE, minLongitudeE6 = Integer.MAX_VALUE;
+    int maxLatitudeE6 = Integer.MIN_VALUE, maxLongitudeE6 = Integer.MIN_VALUE;
+
+    NodeStore(File file) throws IOException {
+        mFile = file;
+        mOutput = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16));
+    }
+
+    void add(long id, int latitudeE6, int longitudeE6) throws IOException {
+        if (id <= mLastId && mSize > 0)
+            throw new IOException("nodes are not sorted by id: " + id);
+        mLastId = id;
+
+        mOutput.writeLong(id);
+        mOutput.writeInt(latitudeE6);
+        mOutput.writeInt(longitudeE6);
+        mSize++;
+
+        minLatitudeE6 = Math.min(minLatitudeE6, latitudeE6);
+        minLongitudeE6 = Math.min(minLongitudeE6, longitudeE6);
+        maxLatitudeE6 = Math.max(maxLatitudeE6, latitudeE6);
+        maxLongitudeE6 = Math.max(maxLongitudeE6, longitudeE6);
+    }
+
+    /**
+     * Map the added nodes for {@link #find}.
+     */
+    void complete() throws IOException {
+        mOutput.close();
+        mOutput = null;
+        mMapped = new MappedFile(mFile, mSize * RECORD_SIZE, false);
+    }
+
+    long size() {
+        return mSize;
+    }
+
+    /**
+     * @return the index of the node, or -1 when it is missing.
+     * [Threadsafe]
+     */
+    long find(long id) {
+        long lo = 0, hi = mSize - 1;
+        while (lo <= hi) {
+            long mid = (lo + hi) >>> 1;
+            long midId = mMapped.getLong(mid * RECORD_SIZE);
+            if (midId < id)
+                lo = mid + 1;
+            else if (midId > id)
+                hi = mid - 1;
+            else
+                return mid;
+        }
+        return -1;
+    }
+
+    int getLatitudeE6(long index) {
+        return mMapped.getInt(index * RECORD_SIZE + 8);
+    }
+
+    int getLongitudeE6(long index) {
+        return mMapped.getInt(index * RECORD_SIZE + 12);
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (mOutput != null)
+            mOutput.close();
+        if (mMapped != null)
+            mMapped.close();
+        if (!mFile.delete())
+            mFile.deleteOnExit();
+    }
+}
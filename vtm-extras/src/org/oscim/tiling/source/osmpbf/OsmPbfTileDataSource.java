@@ -0,0 +1,204 @@
+/*
+ * This file is part of the OpenScienceMap project (http://www.opensciencemap.org).
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.oscim.tiling.source.osmpbf;
+
+import org.oscim.backend.CanvasAdapter;
+import org.oscim.core.BoundingBox;
+import org.oscim.core.GeometryBuffer.GeometryType;
+import org.oscim.core.MapElement;
+import org.oscim.core.Tag;
+import org.oscim.core.Tile;
+import org.oscim.layers.tile.MapTile;
+import org.oscim.tiling.ITileDataSink;
+import org.oscim.tiling.ITileDataSource;
+import org.oscim.utils.geom.TileClipper;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.logging.Logger;
+
+import static org.oscim.core.MercatorProjection.latitudeToY;
+import static org.oscim.core.MercatorProjection.longitudeToX;
+import static org.oscim.tiling.QueryResult.FAILED;
+import static org.oscim.tiling.QueryResult.SUCCESS;
+
+/**
+ * Reads the elements of a tile from the {@link ElementStore} and clips
+ * them to the tile.
+ */
+class OsmPbfTileDataSource implements ITileDataSource {
+    private static final Logger log = Logger.getLogger(OsmPbfTileDataSource.class.getName());
+
+    private final ElementStore mStore;
+
+    private final MapElement mElement = new MapElement();
+    private final TileClipper mClipper;
+    private ByteBuffer mBuffer = ByteBuffer.allocate(1 << 14);
+
+    /* offsets of the elements of the index tiles of a query */
+    private long[] mOffsets = new long[1024];
+
+    private double mTileX, mTileY, mTileScale;
+    private int mMinLat, mMinLon, mMaxLat, mMaxLon;
+
+    private volatile boolean mCanceled;
+
+    OsmPbfTileDataSource(ElementStore store) {
+        mStore = store;
+
+        int buffer = (int) (16 * CanvasAdapter.getScale() + 0.5f);
+        mClipper = new TileClipper(-buffer, -buffer, Tile.SIZE + buffer, Tile.SIZE + buffer);
+    }
+
+    @Override
+    public void query(MapTile tile, ITileDataSink sink) {
+        mCanceled = false;
+
+        mTileScale = 1 << tile.zoomLevel;
+        mTileX = tile.tileX / mTileScale;
+        mTileY = tile.tileY / mTileScale;
+        mTileScale *= Tile.SIZE;
+
+        BoundingBox bbox = tile.getBoundingBox();
+        mMinLat = bbox.minLatitudeE6;
+        mMinLon = bbox.minLongitudeE6;
+        mMaxLat = bbox.maxLatitudeE6;
+        mMaxLon = bbox.maxLongitudeE6;
+
+        /* tiles of the index covered by the tile */
+        int x0, y0, x1, y1;
+        int dz = tile.zoomLevel - ElementStore.INDEX_ZOOM;
+        if (dz >= 0) {
+            x0 = x1 = tile.tileX >> dz;
+            y0 = y1 = tile.tileY >> dz;
+        } else {
+            x0 = tile.tileX << -dz;
+            y0 = tile.tileY << -dz;
+            x1 = x0 + (1 << -dz) - 1;
+            y1 = y0 + (1 << -dz) - 1;
+        }
+
+        int numOffsets = 0;
+        for (int y = y0; y <= y1; y++) {
+            for (int x = x0; x <= x1; x++) {
+                long start = mStore.getTileStart(x, y);
+                if (start < 0)
+                    continue;
+                long end = mStore.getTileEnd(x, y);
+                int size = (int) (numOffsets + end - start);
+                if (size > mOffsets.length)
+                    mOffsets = Arrays.copyOf(mOffsets, Math.max(size, mOffsets.length * 2));
+                for (long i = start; i < end; i++)
+                    mOffsets[numOffsets++] = mStore.getOffset(i);
+            }
+        }
+
+        /* elements intersecting several index tiles are listed in each,
+         * sorted their duplicates are adjacent */
+        if (x0 != x1 || y0 != y1)
+            Arrays.sort(mOffsets, 0, numOffsets);
+
+        try {
+            for (int i = 0; i < numOffsets; i++) {
+                if (mCanceled) {
+                    sink.completed(FAILED);
+                    return;
+                }
+                long offset = mOffsets[i];
+                if (i > 0 && offset == mOffsets[i - 1])
+                    continue;
+                mBuffer = mStore.read(offset, mBuffer);
+                if (decode(mBuffer))
+                    sink.process(mElement);
+            }
+        } catch (IOException e) {
+            log.warning(e.toString());
+            sink.completed(FAILED);
+            return;
+        }
+        sink.completed(SUCCESS);
+    }
+
+    /**
+     * @return true when the element is in the tile.
+     */
+    private boolean decode(ByteBuffer buffer) {
+        /* skip length */
+        buffer.position(4);
+        int type = buffer.get();
+        int minLat = buffer.getInt();
+        int minLon = buffer.getInt();
+        int maxLat = buffer.getInt();
+        int maxLon = buffer.getInt();
+        if (minLat > mMaxLat || maxLat < mMinLat || minLon > mMaxLon || maxLon < mMinLon)
+            return false;
+
+        MapElement e = mElement;
+        e.clear();
+        e.tags.clear();
+
+        int numTags = buffer.getShort();
+        for (int i = 0; i < numTags; i++) {
+            String key = readString(buffer);
+            String value = readString(buffer);
+            e.tags.add(new Tag(key, value));
+        }
+
+        int numPoints = buffer.getInt();
+        if (type == GeometryType.POINT.nativeInt) {
+            e.startPoints();
+            addPoint(buffer);
+            /* points are only added to the tile which contains them */
+            return e.points[0] >= 0 && e.points[0] < Tile.SIZE
+                    && e.points[1] >= 0 && e.points[1] < Tile.SIZE;
+        }
+
+        if (type == GeometryType.POLY.nativeInt) {
+            e.startPolygon();
+            /* the last point repeats the first */
+            numPoints--;
+        } else {
+            e.startLine();
+        }
+        for (int i = 0; i < numPoints; i++)
+            addPoint(buffer);
+
+        return mClipper.clip(e);
+    }
+
+    private void addPoint(ByteBuffer buffer) {
+        double lat = buffer.getInt() / 1E6;
+        double lon = buffer.getInt() / 1E6;
+        mElement.addPoint((float) ((longitudeToX(lon) - mTileX) * mTileScale),
+                (float) ((latitudeToY(lat) - mTileY) * mTileScale));
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        int length = buffer.getShort();
+        String s = new String(buffer.array(), buffer.position(), length, ElementStore.UTF8);
+        buffer.position(buffer.position() + length);
+        return s;
+    }
+
+    @Override
+    public void dispose() {
+    }
+
+    @Override
+    public void cancel() {
+        mCanceled = true;
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ * This file is part of the OpenScienceMap project (http://www.opensciencemap.org).
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.oscim.tiling.source.osmpbf;
+
+import org.oscim.map.Viewport;
+import org.oscim.tiling.ITileDataSource;
+import org.oscim.tiling.OverzoomTileDataSource;
+import org.oscim.tiling.TileSource;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.logging.Logger;
+
+/**
+ * Renders an OSM PBF file without loading it into memory.
+ * <p>
+ * On {@link #open()} the nodes and the tagged nodes and ways of the file
+ * are written to temporary files and indexed by tile. The file must be
+ * sorted by type and id. Relations, and thus multipolygons, are not read.
+ */
+public class OsmPbfTileSource extends TileSource {
+    private static final Logger log = Logger.getLogger(OsmPbfTileSource.class.getName());
+
+    private File mCacheDirectory;
+    private int mThreads = Runtime.getRuntime().availableProcessors();
+
+    private NodeStore mNodes;
+    private ElementStore mElements;
+
+    public OsmPbfTileSource() {
+        /* lower zoom levels read too many tiles of the index */
+        this(12, Viewport.MAX_ZOOM_LEVEL);
+    }
+
+    public OsmPbfTileSource(int zoomMin, int zoomMax) {
+        super(zoomMin, zoomMax);
+    }
+
+    public OsmPbfTileSource(int zoomMin, int zoomMax, int overZoom) {
+        super(zoomMin, zoomMax, overZoom);
+    }
+
+    public boolean setPbfFile(String filename) {
+        setOption("file", filename);
+
+        File file = new File(filename);
+        return file.isFile() && file.canRead();
+    }
+
+    /**
+     * @param directory the directory of the temporary files, by default
+     *                  the system temporary directory.
+     */
+    public void setCacheDirectory(File directory) {
+        mCacheDirectory = directory;
+    }
+
+    /**
+     * @param threads the number of threads to decode the file.
+     */
+    public void setThreads(int threads) {
+        mThreads = threads;
+    }
+
+    @Override
+    public OpenResult open() {
+        if (!options.containsKey("file"))
+            return new OpenResult("no pbf file set");
+
+        File file = new File(options.get("file"));
+        if (!file.isFile() || !file.canRead())
+            return new OpenResult("cannot read file: " + file);
+
+        close();
+        try {
+            mNodes = new NodeStore(File.createTempFile("nodes", ".bin", mCacheDirectory));
+            mElements = new ElementStore(File.createTempFile("elements", ".bin", mCacheDirectory),
+                    File.createTempFile("index", ".bin", mCacheDirectory));
+
+            long time = System.currentTimeMillis();
+            new PbfImporter(file, mThreads).run(mNodes, mElements);
+            log.fine("imported " + mNodes.size() + " nodes in "
+                    + (System.currentTimeMillis() - time) + "ms");
+
+            /* only the elements are needed for the tiles */
+            mNodes.close();
+            mNodes = null;
+        } catch (IOException e) {
+            log.severe(e.toString());
+            close();
+            return new OpenResult(e.toString());
+        }
+        return OpenResult.SUCCESS;
+    }
+
+    @Override
+    public ITileDataSource getDataSource() {
+        return new OverzoomTileDataSource(new OsmPbfTileDataSource(mElements), mOverZoom);
+    }
+
+    @Override
+    public void close() {
+        try {
+            if (mNodes != null)
+                mNodes.close();
+            if (mElements != null)
+                mElements.close();
+        } catch (IOException e) {
+            log.severe(e.toString());
+        }
+        mNodes = null;
+        mElements = null;
+    }
+}
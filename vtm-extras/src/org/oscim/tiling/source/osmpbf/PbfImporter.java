@@ -0,0 +1,264 @@
+/*
+ * This file is part of the OpenScienceMap project (http://www.opensciencemap.org).
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.oscim.tiling.source.osmpbf;
+
+import org.openstreetmap.osmosis.osmbinary.Fileformat;
+import org.openstreetmap.osmosis.osmbinary.Osmformat;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Reads a PBF file into a {@link NodeStore} and an {@link ElementStore}.
+ * <p>
+ * The file must be sorted by type and id, as produced by the usual tools:
+ * the nodes are read in a first pass, the ways in a second pass starting
+ * at the first block with ways. Blocks are decompressed and decoded by a
+ * pool of threads and added in the order of the file. Only a few blocks
+ * are in memory at a time.
+ */
+final class PbfImporter {
+
+    /* limits of the file format */
+    private static final int MAX_HEADER_SIZE = 64 * 1024;
+    private static final int MAX_BLOB_SIZE = 32 * 1024 * 1024;
+
+    private final File mFile;
+    private final int mThreads;
+
+    /* position in the file */
+    private long mPosition;
+
+    PbfImporter(File file, int threads) {
+        mFile = file;
+        mThreads = Math.max(threads, 1);
+    }
+
+    void run(NodeStore nodes, ElementStore elements) throws IOException {
+        ExecutorService executor = Executors.newFixedThreadPool(mThreads);
+        try {
+            long wayOffset = readNodes(executor, nodes, elements);
+            nodes.complete();
+            if (wayOffset >= 0)
+                readWays(executor, wayOffset, nodes, elements);
+        } finally {
+            executor.shutdownNow();
+        }
+        elements.complete(nodes.minLatitudeE6, nodes.minLongitudeE6,
+                nodes.maxLatitudeE6, nodes.maxLongitudeE6);
+    }
+
+    /**
+     * @return the offset of the first block with ways or relations, or -1.
+     */
+    private long readNodes(ExecutorService executor, NodeStore nodes,
+                           ElementStore elements) throws IOException {
+        ArrayDeque<Task> tasks = new ArrayDeque<>();
+        long wayOffset = -1;
+
+        DataInputStream in = open(0);
+        try {
+            Task task;
+            while (wayOffset < 0 && (task = next(in, null)) != null) {
+                if (task.decode)
+                    tasks.add(task.submit(executor));
+                if (tasks.size() >= mThreads * 2)
+                    wayOffset = addNodes(tasks.poll(), nodes, elements, wayOffset);
+            }
+            /* the pending blocks may still contain nodes */
+            while (!tasks.isEmpty())
+                wayOffset = addNodes(tasks.poll(), nodes, elements, wayOffset);
+        } finally {
+            cancel(tasks);
+            in.close();
+        }
+        return wayOffset;
+    }
+
+    private static long addNodes(Task task, NodeStore nodes, ElementStore elements,
+                                 long wayOffset) throws IOException {
+        BlockDecoder decoder = task.get();
+        for (int i = 0; i < decoder.numNodes; i++)
+            nodes.add(decoder.nodeIds[i], decoder.nodeCoordinates[i * 2],
+                    decoder.nodeCoordinates[i * 2 + 1]);
+        elements.add(decoder.elements.toByteArray(), decoder.elements.size());
+
+        if (wayOffset < 0 && (decoder.hasWays || decoder.hasRelations))
+            return task.offset;
+        return wayOffset;
+    }
+
+    private void readWays(ExecutorService executor, long offset, NodeStore nodes,
+                          ElementStore elements) throws IOException {
+        ArrayDeque<Task> tasks = new ArrayDeque<>();
+        boolean done = false;
+
+        DataInputStream in = open(offset);
+        try {
+            Task task;
+            while (!done && (task = next(in, nodes)) != null) {
+                if (task.decode)
+                    tasks.add(task.submit(executor));
+                if (tasks.size() >= mThreads * 2)
+                    done = addWays(tasks.poll(), elements);
+            }
+            while (!tasks.isEmpty())
+                addWays(tasks.poll(), elements);
+        } finally {
+            cancel(tasks);
+            in.close();
+        }
+    }
+
+    /**
+     * @return true when the block only has relations, which follow the ways.
+     */
+    private static boolean addWays(Task task, ElementStore elements) throws IOException {
+        BlockDecoder decoder = task.get();
+        elements.add(decoder.elements.toByteArray(), decoder.elements.size());
+        return decoder.hasRelations && !decoder.hasWays;
+    }
+
+    private static void cancel(ArrayDeque<Task> tasks) {
+        for (Task task : tasks)
+            task.future.cancel(true);
+    }
+
+    private DataInputStream open(long offset) throws IOException {
+        FileInputStream fis = new FileInputStream(mFile);
+        fis.getChannel().position(offset);
+        mPosition = offset;
+        return new DataInputStream(new BufferedInputStream(fis, 1 << 16));
+    }
+
+    /**
+     * Read the next block of the file. The header block is decoded
+     * directly, the returned task has nothing to decode then.
+     *
+     * @return the block, or null at the end of the file.
+     */
+    private Task next(DataInputStream in, NodeStore nodes) throws IOException {
+        int headerSize;
+        try {
+            headerSize = in.readInt();
+        } catch (EOFException e) {
+            return null;
+        }
+        if (headerSize < 0 || headerSize > MAX_HEADER_SIZE)
+            throw new IOException("invalid blob header size: " + headerSize);
+
+        byte[] header = new byte[headerSize];
+        in.readFully(header);
+        Fileformat.BlobHeader blobHeader = Fileformat.BlobHeader.parseFrom(header);
+
+        int size = blobHeader.getDatasize();
+        if (size < 0 || size > MAX_BLOB_SIZE)
+            throw new IOException("invalid blob size: " + size);
+
+        byte[] data = new byte[size];
+        in.readFully(data);
+
+        long offset = mPosition;
+        mPosition += 4 + headerSize + size;
+
+        String type = blobHeader.getType();
+        if ("OSMHeader".equals(type)) {
+            Osmformat.HeaderBlock block = Osmformat.HeaderBlock.parseFrom(decompress(data));
+            try {
+                new BlockDecoder(null).parse(block);
+            } catch (IllegalArgumentException e) {
+                throw new IOException(e.getMessage());
+            }
+        }
+        /* unknown blocks are skipped */
+        return new Task(offset, "OSMData".equals(type) ? data : null, nodes);
+    }
+
+    private static byte[] decompress(byte[] data) throws IOException {
+        Fileformat.Blob blob = Fileformat.Blob.parseFrom(data);
+        if (blob.hasRaw())
+            return blob.getRaw().toByteArray();
+
+        if (!blob.hasZlibData())
+            throw new IOException("unsupported blob compression");
+
+        byte[] raw = new byte[blob.getRawSize()];
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(blob.getZlibData().toByteArray());
+            inflater.inflate(raw);
+            if (!inflater.finished())
+                throw new IOException("invalid blob raw size: " + raw.length);
+        } catch (DataFormatException e) {
+            throw new IOException(e.toString());
+        } finally {
+            inflater.end();
+        }
+        return raw;
+    }
+
+    private static final class Task implements Callable<BlockDecoder> {
+        final long offset;
+        final boolean decode;
+        private final byte[] mData;
+        private final NodeStore mNodes;
+        Future<BlockDecoder> future;
+
+        Task(long offset, byte[] data, NodeStore nodes) {
+            this.offset = offset;
+            decode = data != null;
+            mData = data;
+            mNodes = nodes;
+        }
+
+        Task submit(ExecutorService executor) {
+            future = executor.submit(this);
+            return this;
+        }
+
+        @Override
+        public BlockDecoder call() throws IOException {
+            BlockDecoder decoder = new BlockDecoder(mNodes);
+            decoder.parse(Osmformat.PrimitiveBlock.parseFrom(decompress(mData)));
+            return decoder;
+        }
+
+        BlockDecoder get() throws IOException {
+            try {
+                return future.get();
+            } catch (InterruptedException e) {
+                throw new InterruptedIOException();
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof IOException)
+                    throw (IOException) cause;
+                throw new IOException(cause.toString());
+            }
+        }
+    }
+}
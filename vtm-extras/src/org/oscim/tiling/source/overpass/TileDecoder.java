@@ -18,133 +18,217 @@
  */
 package org.oscim.tiling.source.overpass;
 
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
 import org.oscim.core.GeometryBuffer.GeometryType;
 import org.oscim.core.MapElement;
 import org.oscim.core.Tag;
 import org.oscim.core.TagSet;
 import org.oscim.core.Tile;
-import org.oscim.core.osm.OsmData;
-import org.oscim.core.osm.OsmElement;
-import org.oscim.core.osm.OsmNode;
-import org.oscim.core.osm.OsmRelation;
-import org.oscim.core.osm.OsmWay;
+import org.oscim.core.osm.CoordinateMap;
 import org.oscim.tiling.ITileDataSink;
 import org.oscim.tiling.source.ITileDecoder;
 import org.oscim.tiling.source.mapfile.OSMUtils;
-import org.oscim.utils.overpass.OverpassAPIReader;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.Arrays;
+import java.util.logging.Logger;
 
 import static org.oscim.core.MercatorProjection.latitudeToY;
 import static org.oscim.core.MercatorProjection.longitudeToX;
 
+/**
+ * Decodes the JSON output of the Overpass API while it is parsed: tagged
+ * nodes and ways are passed to the sink as soon as they are read. Way
+ * nodes are resolved from the coordinates of the nodes read before.
+ * <p>
+ * Not thread-safe, each data source has its own decoder.
+ */
 public class TileDecoder implements ITileDecoder {
+    private static final Logger log = Logger.getLogger(TileDecoder.class.getName());
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
 
     private final MapElement mMapElement;
     private ITileDataSink mTileDataSink;
 
     private double mTileY, mTileX, mTileScale;
 
+    /* projected coordinates of all nodes of the current tile */
+    private final CoordinateMap mNodes = new CoordinateMap(1024);
+
+    /* way nodes, as index in mNodes */
+    private int[] mWayNodes = new int[256];
+
     public TileDecoder() {
         mMapElement = new MapElement();
         mMapElement.layer = 5;
     }
 
-    public synchronized boolean decode(Tile tile, ITileDataSink sink, InputStream is) {
+    @Override
+    public boolean decode(Tile tile, ITileDataSink sink, InputStream is) {
         mTileDataSink = sink;
         mTileScale = 1 << tile.zoomLevel;
         mTileX = tile.tileX / mTileScale;
         mTileY = tile.tileY / mTileScale;
         mTileScale *= Tile.SIZE;
 
-        OsmData data;
         try {
-            OverpassAPIReader reader = new OverpassAPIReader();
-            reader.parse(is);
-            data = reader.getData();
+            JsonParser jp = JSON_FACTORY.createParser(is);
+
+            JsonToken t;
+            while ((t = jp.nextToken()) != null) {
+                if (t == JsonToken.START_OBJECT) {
+                    jp.nextToken();
+
+                    String name = jp.getCurrentName();
+                    jp.nextToken();
+
+                    if ("type".equals(name)) {
+                        String type = jp.getText();
+
+                        if ("node".equals(type))
+                            parseNode(jp);
+
+                        else if ("way".equals(type))
+                            parseWay(jp);
+
+                        /* relations are not decoded */
+                        else if ("relation".equals(type))
+                            skipElement(jp);
+                    }
+                }
+            }
+        } catch (JsonParseException e) {
+            log.warning(e.toString());
         } catch (IOException e) {
-            e.printStackTrace();
+            log.warning(e.toString());
             return false;
+        } finally {
+            mNodes.clear();
         }
-        for (OsmNode element : data.getNodes())
-            parseFeature(element);
-        for (OsmWay element : data.getWays())
-            parseFeature(element);
-        for (OsmRelation element : data.getRelations())
-            parseFeature(element);
-
         return true;
     }
 
-    private synchronized void parseFeature(OsmElement element) {
-        if (element.tags == null || element.tags.size() == 0)
-            return;
+    private void parseNode(JsonParser jp) throws IOException {
+        MapElement e = mMapElement;
+        e.clear();
+        e.tags.clear();
 
-        synchronized (mMapElement) {
-            mMapElement.clear();
-            mMapElement.tags.clear();
+        long id = 0;
+        double lat = 0, lon = 0;
 
-            mMapElement.tags.set(element.tags);
-            //add tag information
-            decodeTags(mMapElement);
+        while (jp.nextToken() != JsonToken.END_OBJECT) {
+            String name = jp.getCurrentName();
+            jp.nextToken();
 
-            parseGeometry(element);
+            if ("id".equals(name))
+                id = jp.getLongValue();
 
-            if (mMapElement.type == GeometryType.NONE)
-                return;
+            else if ("lat".equals(name))
+                lat = jp.getDoubleValue();
 
-            mTileDataSink.process(mMapElement);
+            else if ("lon".equals(name))
+                lon = jp.getDoubleValue();
+
+            else if ("tags".equals(name))
+                parseTags(jp, e.tags);
+
+            else
+                jp.skipChildren();
         }
+
+        double x = longitudeToX(lon);
+        double y = latitudeToY(lat);
+        mNodes.put(id, x, y);
+
+        if (e.tags.size() == 0)
+            return;
+
+        //add tag information
+        decodeTags(e);
+
+        e.type = GeometryType.POINT;
+        e.startPoints();
+        addPoint(x, y);
+
+        mTileDataSink.process(e);
     }
 
-    private void parseGeometry(OsmElement element) {
+    private void parseWay(JsonParser jp) throws IOException {
+        MapElement e = mMapElement;
+        e.clear();
+        e.tags.clear();
+
+        int numNodes = 0;
+
+        while (jp.nextToken() != JsonToken.END_OBJECT) {
+            String name = jp.getCurrentName();
+            jp.nextToken();
+
+            if ("nodes".equals(name)) {
+                while (jp.nextToken() != JsonToken.END_ARRAY) {
+                    int node = mNodes.indexOf(jp.getLongValue());
+                    /* skip missing nodes */
+                    if (node < 0)
+                        continue;
+                    if (numNodes == mWayNodes.length)
+                        mWayNodes = Arrays.copyOf(mWayNodes, numNodes * 2);
+                    mWayNodes[numNodes++] = node;
+                }
+            } else if ("tags".equals(name))
+                parseTags(jp, e.tags);
+
+            else
+                jp.skipChildren();
+        }
+
+        /* untagged or all nodes missing */
+        if (e.tags.size() == 0 || numNodes < 2)
+            return;
+
+        //add tag information
+        decodeTags(e);
+
         //TODO mulipolygons
-        if (element instanceof OsmWay) {
-            boolean linearFeature = !OSMUtils.isArea(mMapElement);
-            if (linearFeature) {
-                mMapElement.type = GeometryType.LINE;
-                parseLine((OsmWay) element);
-            } else {
-                mMapElement.type = GeometryType.POLY;
-                parsePolygon((OsmWay) element);
-            }
-        } else if (element instanceof OsmNode) {
-            mMapElement.type = GeometryType.POINT;
-            mMapElement.startPoints();
-            parseCoordinate((OsmNode) element);
+        boolean linearFeature = !OSMUtils.isArea(e);
+        if (linearFeature) {
+            e.type = GeometryType.LINE;
+            e.startLine();
+        } else {
+            e.type = GeometryType.POLY;
+            e.startPolygon();
         }
-    }
 
-    private void parsePolygon(OsmWay element) {
-        //int ring = 0;
+        for (int i = 0; i < numNodes; i++)
+            addPoint(mNodes.getX(mWayNodes[i]), mNodes.getY(mWayNodes[i]));
 
-        //for (element.rings) {
-        //if (ring == 0)
-        mMapElement.startPolygon();
-        //else
-        //    mMapElement.startHole();
+        if (!linearFeature)
+            e.removeLastPoint();
 
-        //ring++;
-        parseCoordSequence(element);
-        mMapElement.removeLastPoint();
-        //}
+        mTileDataSink.process(e);
     }
 
-    private void parseLine(OsmWay element) {
-        mMapElement.startLine();
-        parseCoordSequence(element);
+    private static void skipElement(JsonParser jp) throws IOException {
+        while (jp.nextToken() != JsonToken.END_OBJECT)
+            jp.skipChildren();
     }
 
-    private void parseCoordSequence(OsmWay element) {
-        for (OsmNode node : element.nodes)
-            parseCoordinate(node);
+    private static void parseTags(JsonParser jp, TagSet tags) throws IOException {
+        while (jp.nextToken() != JsonToken.END_OBJECT) {
+            String key = jp.getCurrentName();
+            jp.nextToken();
+            tags.add(new Tag(key, jp.getText(), false));
+        }
     }
 
-    private void parseCoordinate(OsmNode element) {
-        mMapElement.addPoint((float) ((longitudeToX(element.lon) - mTileX) * mTileScale),
-                (float) ((latitudeToY(element.lat) - mTileY) * mTileScale));
-
+    private void addPoint(double x, double y) {
+        mMapElement.addPoint((float) ((x - mTileX) * mTileScale),
+                (float) ((y - mTileY) * mTileScale));
     }
 
     private void decodeTags(MapElement mapElement) {
@@ -0,0 +1,97 @@
+/*
+ * This file is part of the OpenScienceMap project (http://www.opensciencemap.org).
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.oscim.core.osm;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class CoordinateMapTest {
+
+    @Test
+    public void shouldReturnMissingKeys() {
+        CoordinateMap map = new CoordinateMap(8);
+        Assert.assertEquals(-1, map.indexOf(1));
+
+        map.put(1, 10, 20);
+        Assert.assertEquals(-1, map.indexOf(2));
+        Assert.assertEquals(-1, map.indexOf(-1));
+        Assert.assertEquals(-1, map.indexOf(0));
+    }
+
+    @Test
+    public void shouldReplaceCoordinates() {
+        CoordinateMap map = new CoordinateMap(8);
+        map.put(5, 1, 2);
+        map.put(5, 3, 4);
+
+        Assert.assertEquals(1, map.size());
+        int index = map.indexOf(5);
+        Assert.assertEquals(3, map.getX(index), 0);
+        Assert.assertEquals(4, map.getY(index), 0);
+    }
+
+    @Test
+    public void shouldResolveCollisions() {
+        /* more ids than slots of the initial table, so that probing
+         * sequences overlap, also after growing */
+        CoordinateMap map = new CoordinateMap(8);
+        int n = 1000;
+        for (int i = 0; i < n; i++) {
+            long id = (long) i << 32 | i;
+            map.put(id, i, -i);
+            map.put(-id, -i, i);
+        }
+        Assert.assertEquals(2 * n - 1, map.size());
+
+        for (int i = 0; i < n; i++) {
+            long id = (long) i << 32 | i;
+            int index = map.indexOf(id);
+            Assert.assertEquals(i, map.getX(index), 0);
+            Assert.assertEquals(-i, map.getY(index), 0);
+
+            if (i > 0) {
+                index = map.indexOf(-id);
+                Assert.assertEquals(-i, map.getX(index), 0);
+                Assert.assertEquals(i, map.getY(index), 0);
+            }
+        }
+        Assert.assertEquals(-1, map.indexOf((long) n << 32 | n));
+    }
+
+    @Test
+    public void shouldKeepInsertionOrderWhenGrowing() {
+        CoordinateMap map = new CoordinateMap(8);
+        for (int i = 0; i < 100; i++)
+            map.put(1000 - i, i, i);
+
+        for (int i = 0; i < 100; i++)
+            Assert.assertEquals(i, map.indexOf(1000 - i));
+    }
+
+    @Test
+    public void shouldClear() {
+        CoordinateMap map = new CoordinateMap(8);
+        for (int i = 0; i < 20; i++)
+            map.put(i, i, i);
+        map.clear();
+
+        Assert.assertEquals(0, map.size());
+        for (int i = 0; i < 20; i++)
+            Assert.assertEquals(-1, map.indexOf(i));
+
+        map.put(7, 1, 1);
+        Assert.assertEquals(0, map.indexOf(7));
+    }
+}
@@ -0,0 +1,149 @@
+/*
+ * This file is part of the OpenScienceMap project (http://www.opensciencemap.org).
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.oscim.tiling.source.osmpbf;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.oscim.core.GeometryBuffer.GeometryType;
+import org.oscim.core.MercatorProjection;
+import org.oscim.core.Tag;
+import org.oscim.core.TagSet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+public class ElementStoreTest {
+
+    private ElementStore mStore;
+
+    @Before
+    public void setUp() throws IOException {
+        mStore = new ElementStore(File.createTempFile("elements", ".bin"),
+                File.createTempFile("elements", ".idx"));
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        mStore.close();
+    }
+
+    /**
+     * Add an element of microdegree 'points'.
+     */
+    static void add(ElementStore store, GeometryType type, TagSet tags,
+                    int... points) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        ElementStore.encode(out, type.nativeInt, tags, points, points.length / 2);
+        out.close();
+        store.add(bytes.toByteArray(), bytes.size());
+    }
+
+    static TagSet tags(String key, String value) {
+        TagSet tags = new TagSet();
+        tags.add(new Tag(key, value));
+        return tags;
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getShort()];
+        buffer.get(bytes);
+        return new String(bytes, ElementStore.UTF8);
+    }
+
+    private static void check(ByteBuffer buffer, GeometryType type, String key,
+                              String value, int[] points) {
+        Assert.assertEquals(0, buffer.position());
+        Assert.assertEquals(buffer.limit(), 4 + buffer.getInt());
+        Assert.assertEquals(type.nativeInt, buffer.get());
+
+        int minLat = Integer.MAX_VALUE, maxLon = Integer.MIN_VALUE;
+        for (int i = 0; i < points.length; i += 2) {
+            minLat = Math.min(minLat, points[i]);
+            maxLon = Math.max(maxLon, points[i + 1]);
+        }
+        Assert.assertEquals(minLat, buffer.getInt());
+        buffer.getInt();
+        buffer.getInt();
+        Assert.assertEquals(maxLon, buffer.getInt());
+
+        Assert.assertEquals(1, buffer.getShort());
+        Assert.assertEquals(key, readString(buffer));
+        Assert.assertEquals(value, readString(buffer));
+
+        Assert.assertEquals(points.length / 2, buffer.getInt());
+        for (int point : points)
+            Assert.assertEquals(point, buffer.getInt());
+        Assert.assertFalse(buffer.hasRemaining());
+    }
+
+    @Test
+    public void shouldReadElements() throws IOException {
+        int[] point = {52500000, 13400000};
+
+        /* larger than the initial read buffer */
+        int[] line = new int[2 * 1000];
+        for (int i = 0; i < line.length; i += 2) {
+            line[i] = 52500000 + i;
+            line[i + 1] = 13400000 + i * 10;
+        }
+
+        add(mStore, GeometryType.POINT, tags("amenity", "cafe"), point);
+        add(mStore, GeometryType.LINE, tags("highway", "primary"), line);
+        mStore.complete(52500000, 13400000, 52501998, 13419980);
+
+        int x = MercatorProjection.longitudeToTileX(13.4, ElementStore.INDEX_ZOOM);
+        int y = MercatorProjection.latitudeToTileY(52.5, ElementStore.INDEX_ZOOM);
+        long start = mStore.getTileStart(x, y);
+        Assert.assertEquals(2, mStore.getTileEnd(x, y) - start);
+
+        ByteBuffer buffer = ByteBuffer.allocate(64);
+        buffer = mStore.read(mStore.getOffset(start), buffer);
+        Assert.assertEquals(64, buffer.capacity());
+        check(buffer, GeometryType.POINT, "amenity", "cafe", point);
+
+        buffer = mStore.read(mStore.getOffset(start + 1), buffer);
+        Assert.assertTrue(buffer.capacity() > 8 * 1000);
+        check(buffer, GeometryType.LINE, "highway", "primary", line);
+
+        /* the point again, into the grown buffer */
+        buffer = mStore.read(mStore.getOffset(start), buffer);
+        check(buffer, GeometryType.POINT, "amenity", "cafe", point);
+    }
+
+    @Test
+    public void shouldIndexElementsInAllTheirTiles() throws IOException {
+        add(mStore, GeometryType.LINE, tags("highway", "primary"),
+                52500000, 13370000, 52500000, 13440000);
+        mStore.complete(52500000, 13370000, 52500000, 13440000);
+
+        int x0 = MercatorProjection.longitudeToTileX(13.37, ElementStore.INDEX_ZOOM);
+        int x1 = MercatorProjection.longitudeToTileX(13.44, ElementStore.INDEX_ZOOM);
+        int y = MercatorProjection.latitudeToTileY(52.5, ElementStore.INDEX_ZOOM);
+        Assert.assertTrue(x1 > x0);
+
+        for (int x = x0; x <= x1; x++) {
+            long start = mStore.getTileStart(x, y);
+            Assert.assertEquals(1, mStore.getTileEnd(x, y) - start);
+            Assert.assertEquals(0, mStore.getOffset(start));
+        }
+        Assert.assertEquals(-1, mStore.getTileStart(x1 + 1, y));
+    }
+}
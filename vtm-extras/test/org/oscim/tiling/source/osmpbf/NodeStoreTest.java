@@ -0,0 +1,88 @@
+/*
+ * This file is part of the OpenScienceMap project (http://www.opensciencemap.org).
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.oscim.tiling.source.osmpbf;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+
+public class NodeStoreTest {
+
+    private NodeStore mStore;
+
+    @Before
+    public void setUp() throws IOException {
+        mStore = new NodeStore(File.createTempFile("nodes", ".bin"));
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        mStore.close();
+    }
+
+    @Test
+    public void shouldFindNodesById() throws IOException {
+        for (int i = 0; i < 1000; i++)
+            mStore.add(i * 3L - 100, i, -i);
+        mStore.complete();
+
+        Assert.assertEquals(1000, mStore.size());
+        for (int i = 0; i < 1000; i++) {
+            long index = mStore.find(i * 3L - 100);
+            Assert.assertEquals(i, index);
+            Assert.assertEquals(i, mStore.getLatitudeE6(index));
+            Assert.assertEquals(-i, mStore.getLongitudeE6(index));
+        }
+
+        Assert.assertEquals(0, mStore.minLatitudeE6);
+        Assert.assertEquals(999, mStore.maxLatitudeE6);
+        Assert.assertEquals(-999, mStore.minLongitudeE6);
+        Assert.assertEquals(0, mStore.maxLongitudeE6);
+    }
+
+    @Test
+    public void shouldNotFindMissingNodes() throws IOException {
+        for (int i = 0; i < 10; i++)
+            mStore.add(i * 2, 0, 0);
+        mStore.complete();
+
+        Assert.assertEquals(-1, mStore.find(-1));
+        Assert.assertEquals(-1, mStore.find(5));
+        Assert.assertEquals(-1, mStore.find(19));
+        Assert.assertEquals(-1, mStore.find(Long.MAX_VALUE));
+    }
+
+    @Test
+    public void shouldNotFindNodesInEmptyStore() throws IOException {
+        mStore.complete();
+        Assert.assertEquals(-1, mStore.find(0));
+    }
+
+    @Test(expected = IOException.class)
+    public void shouldRejectUnsortedNodes() throws IOException {
+        mStore.add(2, 0, 0);
+        mStore.add(1, 0, 0);
+    }
+
+    @Test(expected = IOException.class)
+    public void shouldRejectDuplicateNodes() throws IOException {
+        mStore.add(2, 0, 0);
+        mStore.add(2, 0, 0);
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ * This file is part of the OpenScienceMap project (http://www.opensciencemap.org).
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.oscim.tiling.source.osmpbf;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.oscim.backend.canvas.Bitmap;
+import org.oscim.core.GeometryBuffer.GeometryType;
+import org.oscim.core.MapElement;
+import org.oscim.core.MercatorProjection;
+import org.oscim.layers.tile.MapTile;
+import org.oscim.tiling.ITileDataSink;
+import org.oscim.tiling.QueryResult;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+public class OsmPbfTileDataSourceTest {
+
+    private ElementStore mStore;
+
+    static class Sink implements ITileDataSink {
+        final List<MapElement> elements = new ArrayList<>();
+        QueryResult result;
+
+        @Override
+        public void process(MapElement element) {
+            elements.add(new MapElement(element));
+        }
+
+        @Override
+        public void setTileImage(Bitmap bitmap) {
+        }
+
+        @Override
+        public void completed(QueryResult result) {
+            this.result = result;
+        }
+    }
+
+    @Before
+    public void setUp() throws IOException {
+        mStore = new ElementStore(File.createTempFile("elements", ".bin"),
+                File.createTempFile("elements", ".idx"));
+
+        /* a line across several tiles at the index zoom-level */
+        ElementStoreTest.add(mStore, GeometryType.LINE,
+                ElementStoreTest.tags("highway", "primary"),
+                52500000, 13370000, 52500000, 13440000);
+        ElementStoreTest.add(mStore, GeometryType.POINT,
+                ElementStoreTest.tags("amenity", "cafe"),
+                52500000, 13400000);
+        mStore.complete(52500000, 13370000, 52500000, 13440000);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        mStore.close();
+    }
+
+    private Sink query(double lat, double lon, int zoom) {
+        MapTile tile = new MapTile(MercatorProjection.longitudeToTileX(lon, (byte) zoom),
+                MercatorProjection.latitudeToTileY(lat, (byte) zoom), zoom);
+        Sink sink = new Sink();
+        new OsmPbfTileDataSource(mStore).query(tile, sink);
+        Assert.assertEquals(QueryResult.SUCCESS, sink.result);
+        return sink;
+    }
+
+    private static int count(Sink sink, GeometryType type) {
+        int n = 0;
+        for (MapElement e : sink.elements) {
+            if (e.type == type)
+                n++;
+        }
+        return n;
+    }
+
+    @Test
+    public void shouldAddElementsOnceAcrossIndexTiles() {
+        /* covers 4x4 tiles of the index */
+        Sink sink = query(52.5, 13.4, ElementStore.INDEX_ZOOM - 2);
+        Assert.assertEquals(2, sink.elements.size());
+        Assert.assertEquals(1, count(sink, GeometryType.LINE));
+        Assert.assertEquals(1, count(sink, GeometryType.POINT));
+        Assert.assertEquals("primary", sink.elements.get(0).tags.getValue("highway"));
+    }
+
+    @Test
+    public void shouldAddElementsOfIndexTile() {
+        Sink sink = query(52.5, 13.38, ElementStore.INDEX_ZOOM);
+        Assert.assertEquals(1, sink.elements.size());
+        Assert.assertEquals(1, count(sink, GeometryType.LINE));
+
+        sink = query(52.5, 13.4, ElementStore.INDEX_ZOOM + 1);
+        Assert.assertEquals(1, count(sink, GeometryType.LINE));
+        Assert.assertEquals(1, count(sink, GeometryType.POINT));
+    }
+
+    @Test
+    public void shouldNotAddElementsOutsideOfIndex() {
+        Sink sink = query(48, 11, ElementStore.INDEX_ZOOM - 2);
+        Assert.assertEquals(0, sink.elements.size());
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ * This file is part of the OpenScienceMap project (http://www.opensciencemap.org).
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.oscim.tiling.source.overpass;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.oscim.backend.canvas.Bitmap;
+import org.oscim.core.GeometryBuffer.GeometryType;
+import org.oscim.core.MapElement;
+import org.oscim.core.Tile;
+import org.oscim.tiling.ITileDataSink;
+import org.oscim.tiling.QueryResult;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+public class TileDecoderTest {
+
+    private static final String RESPONSE = "{\"version\": 0.6, \"generator\": \"test\","
+            + " \"elements\": ["
+            + "{\"type\": \"node\", \"id\": 1, \"lat\": 0, \"lon\": 0,"
+            + " \"tags\": {\"amenity\": \"cafe\", \"name\": \"Cafe\"}},"
+            + "{\"type\": \"node\", \"id\": 2, \"lat\": 10, \"lon\": 10},"
+            + "{\"type\": \"node\", \"id\": 3, \"lat\": 10, \"lon\": 20},"
+            + "{\"type\": \"node\", \"id\": 4, \"lat\": 20, \"lon\": 20},"
+            + "{\"type\": \"node\", \"id\": 5, \"lat\": 20, \"lon\": 10},"
+            + "{\"type\": \"way\", \"id\": 10, \"nodes\": [2, 3, 99, 4],"
+            + " \"tags\": {\"highway\": \"residential\"}},"
+            + "{\"type\": \"way\", \"id\": 11, \"nodes\": [2, 3, 4, 5, 2],"
+            + " \"tags\": {\"building\": \"yes\"}},"
+            + "{\"type\": \"way\", \"id\": 12, \"nodes\": [2, 3]},"
+            + "{\"type\": \"relation\", \"id\": 20,"
+            + " \"members\": [{\"type\": \"way\", \"ref\": 11, \"role\": \"outer\"}],"
+            + " \"tags\": {\"type\": \"multipolygon\"}}"
+            + "]}";
+
+    static class Sink implements ITileDataSink {
+        final List<MapElement> elements = new ArrayList<>();
+        QueryResult result;
+
+        @Override
+        public void process(MapElement element) {
+            elements.add(new MapElement(element));
+        }
+
+        @Override
+        public void setTileImage(Bitmap bitmap) {
+        }
+
+        @Override
+        public void completed(QueryResult result) {
+            this.result = result;
+        }
+    }
+
+    private static Sink decode(String json) {
+        Sink sink = new Sink();
+        InputStream is = new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8));
+        Assert.assertTrue(new TileDecoder().decode(new Tile(0, 0, (byte) 0), sink, is));
+        return sink;
+    }
+
+    @Test
+    public void shouldDecodeNodesAndWays() {
+        List<MapElement> elements = decode(RESPONSE).elements;
+
+        /* untagged nodes and ways and relations are not passed on */
+        Assert.assertEquals(3, elements.size());
+
+        MapElement node = elements.get(0);
+        Assert.assertEquals(GeometryType.POINT, node.type);
+        Assert.assertEquals("cafe", node.tags.getValue("amenity"));
+        Assert.assertEquals("Cafe", node.tags.getValue("name"));
+        Assert.assertEquals(2, node.pointNextPos);
+        Assert.assertEquals(Tile.SIZE / 2, node.points[0], 1e-3);
+        Assert.assertEquals(Tile.SIZE / 2, node.points[1], 1e-3);
+
+        MapElement building = elements.get(2);
+        Assert.assertEquals(GeometryType.POLY, building.type);
+        Assert.assertEquals("yes", building.tags.getValue("building"));
+        /* the closing node is removed */
+        Assert.assertEquals(8, building.index[0]);
+    }
+
+    @Test
+    public void shouldSkipMissingNodes() {
+        MapElement way = decode(RESPONSE).elements.get(1);
+
+        Assert.assertEquals(GeometryType.LINE, way.type);
+        Assert.assertEquals("residential", way.tags.getValue("highway"));
+        Assert.assertEquals(6, way.index[0]);
+
+        /* node 4 follows node 3 */
+        MapElement building = decode(RESPONSE).elements.get(2);
+        Assert.assertEquals(building.points[4], way.points[4], 0);
+        Assert.assertEquals(building.points[5], way.points[5], 0);
+    }
+
+    @Test
+    public void shouldNotResolveNodesOfPreviousResponse() {
+        TileDecoder decoder = new TileDecoder();
+        Sink sink = new Sink();
+        Tile tile = new Tile(0, 0, (byte) 0);
+        decoder.decode(tile, sink, new ByteArrayInputStream(
+                RESPONSE.getBytes(StandardCharsets.UTF_8)));
+
+        sink = new Sink();
+        String way = "{\"elements\": [{\"type\": \"way\", \"id\": 10, \"nodes\": [2, 3],"
+                + " \"tags\": {\"highway\": \"residential\"}}]}";
+        decoder.decode(tile, sink, new ByteArrayInputStream(
+                way.getBytes(StandardCharsets.UTF_8)));
+
+        /* without nodes the way is skipped */
+        Assert.assertEquals(0, sink.elements.size());
+    }
+}
@@ -0,0 +1,573 @@
+/*
+ * This file is part of the OpenScienceMap project (http://www.opensciencemap.org).
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.oscim.tiling.source.mvt;
+
+import org.oscim.core.MapElement;
+import org.oscim.core.Tag;
+import org.oscim.core.Tile;
+import org.oscim.tiling.ITileDataSink;
+import org.oscim.tiling.source.PbfDecoder;
+import org.oscim.utils.Parameters;
+import org.oscim.utils.geom.SimplifyDP;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.logging.Logger;
+
+/**
+ * Streaming Mapbox Vector Tile decoder.
+ * <p/>
+ * Decodes the command / zigzag encoded geometries directly into a reused
+ * {@link MapElement}. The key / value tables are resolved once per layer,
+ * each key / value pair used by the features of a layer creates only one
+ * {@link Tag}.
+ *
+ * @see <a href="https://github.com/mapbox/vector-tile-spec">Vector Tile Specification</a>
+ */
+public class MvtTileDecoder extends PbfDecoder {
+    private static final Logger log = Logger.getLogger(MvtTileDecoder.class.getName());
+
+    /**
+     * Reduce points on-the-fly while reading from vector maps.
+     */
+    public static int SIMPLIFICATION_MIN_ZOOM = 8;
+    public static int SIMPLIFICATION_MAX_ZOOM = 11;
+
+    private static final int TAG_TILE_LAYERS = 3;
+
+    private static final int TAG_LAYER_VERSION = 15;
+    private static final int TAG_LAYER_NAME = 1;
+    private static final int TAG_LAYER_FEATURES = 2;
+    private static final int TAG_LAYER_KEYS = 3;
+    private static final int TAG_LAYER_VALUES = 4;
+    private static final int TAG_LAYER_EXTENT = 5;
+
+    private static final int TAG_FEATURE_TAGS = 2;
+    private static final int TAG_FEATURE_TYPE = 3;
+    private static final int TAG_FEATURE_GEOMETRY = 4;
+
+    private static final int TAG_VALUE_STRING = 1;
+    private static final int TAG_VALUE_FLOAT = 2;
+    private static final int TAG_VALUE_DOUBLE = 3;
+    private static final int TAG_VALUE_LONG = 4;
+    private static final int TAG_VALUE_UINT = 5;
+    private static final int TAG_VALUE_SINT = 6;
+    private static final int TAG_VALUE_BOOL = 7;
+
+    private static final int TAG_GEOM_POINT = 1;
+    private static final int TAG_GEOM_LINE = 2;
+    private static final int TAG_GEOM_POLYGON = 3;
+
+    private static final int MOVE_TO = 1;
+    private static final int LINE_TO = 2;
+    private static final int CLOSE_PATH = 7;
+
+    private static final int WIRE_VARINT = 0;
+    private static final int WIRE_FIXED64 = 1;
+    private static final int WIRE_LENGTH = 2;
+    private static final int WIRE_FIXED32 = 5;
+
+    /* kinds of layer keys */
+    private static final int KEY_TAG = 0;
+    private static final int KEY_SKIP = 1;
+    private static final int KEY_NAME_FALLBACK = 2;
+    private static final int KEY_NAME_LOCALE = 3;
+
+    private static final int DEFAULT_EXTENT = 4096;
+
+    private final String mLocale;
+    private final MapElement mMapElement;
+    private final SimplifyDP mSimplifyDP;
+
+    private Tile mTile;
+    private ITileDataSink mTileDataSink;
+
+    /* layer key / value tables */
+    private final ArrayList<String> mKeys = new ArrayList<>();
+    private final ArrayList<String> mValues = new ArrayList<>();
+    private int[] mKeyKinds = new int[64];
+
+    /* tags of the current layer by key / value pair */
+    private long[] mTagPairs = new long[256];
+    private Tag[] mTags = new Tag[256];
+    private int mNumTags;
+
+    /* key / value indices of the current feature */
+    private int[] mFeatureTags = new int[64];
+    private int mNumFeatureTags;
+
+    /* current polygon ring */
+    private float[] mRing = new float[256];
+
+    private float mScale;
+    private float mTolerance;
+
+    public MvtTileDecoder() {
+        this("");
+    }
+
+    public MvtTileDecoder(String locale) {
+        mLocale = locale;
+        mMapElement = new MapElement();
+        mSimplifyDP = new SimplifyDP();
+    }
+
+    @Override
+    public boolean decode(Tile tile, ITileDataSink sink, InputStream is)
+            throws IOException {
+
+        setInputStream(is);
+        mTile = tile;
+        mTileDataSink = sink;
+
+        mTolerance = 0;
+        if (Parameters.SIMPLIFICATION_TOLERANCE > 0
+                && tile.zoomLevel >= SIMPLIFICATION_MIN_ZOOM && tile.zoomLevel <= SIMPLIFICATION_MAX_ZOOM) {
+            /* tolerance in tile extent units */
+            mTolerance = Parameters.SIMPLIFICATION_TOLERANCE * 10;
+        }
+
+        int val;
+        while (hasData() && (val = decodeVarint32()) > 0) {
+            // read tag and wire type
+            int tag = (val >>> 3);
+
+            if (tag == TAG_TILE_LAYERS)
+                decodeLayer();
+            else
+                skip(val & 0x07);
+        }
+        return true;
+    }
+
+    /**
+     * Decodes a layer. The layer is read into the buffer completely, as the
+     * key / value tables are usually stored after the features: the first
+     * pass reads the tables, the second pass decodes the features.
+     */
+    private void decodeLayer() throws IOException {
+        int bytes = decodeVarint32();
+        if (fillBuffer(bytes) < bytes)
+            error(mTile + " truncated layer");
+
+        int start = bufferPos;
+        int end = start + bytes;
+
+        mKeys.clear();
+        mValues.clear();
+        String name = null;
+        int extent = DEFAULT_EXTENT;
+        int numFeatures = 0;
+
+        while (bufferPos < end) {
+            int val = decodeVarint32();
+            int tag = (val >>> 3);
+
+            switch (tag) {
+                case TAG_LAYER_KEYS:
+                    mKeys.add(decodeString().intern());
+                    break;
+
+                case TAG_LAYER_VALUES:
+                    mValues.add(decodeValue());
+                    break;
+
+                case TAG_LAYER_FEATURES:
+                    numFeatures++;
+                    skip(val & 0x07);
+                    break;
+
+                case TAG_LAYER_NAME:
+                    name = decodeString();
+                    break;
+
+                case TAG_LAYER_EXTENT:
+                    extent = decodeVarint32();
+                    break;
+
+                case TAG_LAYER_VERSION:
+                default:
+                    skip(val & 0x07);
+                    break;
+            }
+        }
+
+        if (numFeatures == 0 || name == null) {
+            bufferPos = end;
+            return;
+        }
+
+        mScale = (float) extent / Tile.SIZE;
+        classifyKeys();
+        Arrays.fill(mTags, null);
+        mNumTags = 0;
+
+        Tag layerTag = new Tag("layer", name);
+
+        bufferPos = start;
+        while (bufferPos < end) {
+            int val = decodeVarint32();
+            int tag = (val >>> 3);
+
+            if (tag == TAG_LAYER_FEATURES)
+                decodeFeature(layerTag);
+            else
+                skip(val & 0x07);
+        }
+    }
+
+    private void classifyKeys() {
+        int numKeys = mKeys.size();
+        if (mKeyKinds.length < numKeys)
+            mKeyKinds = new int[numKeys];
+
+        for (int i = 0; i < numKeys; i++) {
+            String key = mKeys.get(i);
+            int kind = KEY_TAG;
+            if (key.startsWith(Tag.KEY_NAME)) {
+                int len = key.length();
+                if (len == 4)
+                    kind = KEY_NAME_FALLBACK;
+                else if (len >= 7 && mLocale.equals(key.substring(5)))
+                    kind = KEY_NAME_LOCALE;
+                else
+                    kind = KEY_SKIP;
+            }
+            mKeyKinds[i] = kind;
+        }
+    }
+
+    private void decodeFeature(Tag layerTag) throws IOException {
+        int bytes = decodeVarint32();
+        int end = bufferPos + bytes;
+
+        int type = 0;
+        int geomStart = -1;
+        mNumFeatureTags = 0;
+
+        while (bufferPos < end) {
+            int val = decodeVarint32();
+            int tag = (val >>> 3);
+
+            switch (tag) {
+                case TAG_FEATURE_TAGS:
+                    decodeFeatureTags();
+                    break;
+
+                case TAG_FEATURE_TYPE:
+                    type = decodeVarint32();
+                    break;
+
+                case TAG_FEATURE_GEOMETRY:
+                    /* type may follow the geometry */
+                    geomStart = bufferPos;
+                    skip(val & 0x07);
+                    break;
+
+                default:
+                    skip(val & 0x07);
+                    break;
+            }
+        }
+
+        if (geomStart < 0 || type < TAG_GEOM_POINT || type > TAG_GEOM_POLYGON)
+            return;
+
+        MapElement e = mMapElement;
+        e.clear();
+        e.tags.clear();
+        e.tags.add(layerTag);
+        addFeatureTags(e);
+
+        bufferPos = geomStart;
+        decodeGeometry(type, e);
+        bufferPos = end;
+
+        if (e.getNumPoints() == 0)
+            return;
+
+        mTileDataSink.process(e);
+    }
+
+    private void decodeFeatureTags() throws IOException {
+        int bytes = decodeVarint32();
+        int end = bufferPos + bytes;
+
+        int cnt = 0;
+        while (bufferPos < end) {
+            if (cnt == mFeatureTags.length)
+                mFeatureTags = Arrays.copyOf(mFeatureTags, cnt * 2);
+            mFeatureTags[cnt++] = decodeVarint32Filled();
+        }
+        mNumFeatureTags = cnt & ~1;
+    }
+
+    private void addFeatureTags(MapElement e) {
+        int numKeys = mKeys.size();
+        int numValues = mValues.size();
+
+        Tag fallbackName = null;
+        boolean hasName = false;
+
+        for (int i = 0; i < mNumFeatureTags; i += 2) {
+            int key = mFeatureTags[i];
+            int value = mFeatureTags[i + 1];
+            if (key >= numKeys || value >= numValues) {
+                log.fine(mTile + " invalid tag " + key + "=" + value);
+                continue;
+            }
+
+            switch (mKeyKinds[key]) {
+                case KEY_TAG:
+                    e.tags.add(getTag(key, value));
+                    break;
+                case KEY_NAME_LOCALE:
+                    hasName = true;
+                    e.tags.add(getTag(key, value));
+                    break;
+                case KEY_NAME_FALLBACK:
+                    fallbackName = getTag(key, value);
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        if (!hasName && fallbackName != null)
+            e.tags.add(fallbackName);
+    }
+
+    /**
+     * @return the tag for the key / value pair, created once per layer.
+     */
+    private Tag getTag(int key, int value) {
+        long pair = ((long) key << 32) | value;
+
+        int mask = mTags.length - 1;
+        int slot = (int) ((pair ^ (pair >>> 29)) * 0x9E3779B1L >>> 7) & mask;
+
+        while (mTags[slot] != null) {
+            if (mTagPairs[slot] == pair)
+                return mTags[slot];
+            slot = (slot + 1) & mask;
+        }
+
+        String val = mValues.get(value);
+        Tag tag;
+        if (mKeyKinds[key] == KEY_TAG)
+            tag = new Tag(mKeys.get(key), val);
+        else
+            tag = new Tag(Tag.KEY_NAME, val, false);
+
+        if ((mNumTags + 1) * 2 > mTags.length) {
+            growTags();
+            return getTag(key, value);
+        }
+
+        mTagPairs[slot] = pair;
+        mTags[slot] = tag;
+        mNumTags++;
+        return tag;
+    }
+
+    private void growTags() {
+        long[] pairs = mTagPairs;
+        Tag[] tags = mTags;
+
+        mTagPairs = new long[pairs.length * 2];
+        mTags = new Tag[tags.length * 2];
+        int mask = mTags.length - 1;
+
+        for (int i = 0; i < tags.length; i++) {
+            if (tags[i] == null)
+                continue;
+            long pair = pairs[i];
+            int slot = (int) ((pair ^ (pair >>> 29)) * 0x9E3779B1L >>> 7) & mask;
+            while (mTags[slot] != null)
+                slot = (slot + 1) & mask;
+            mTagPairs[slot] = pair;
+            mTags[slot] = tags[i];
+        }
+    }
+
+    private void decodeGeometry(int type, MapElement e) throws IOException {
+        int bytes = decodeVarint32();
+        int end = bufferPos + bytes;
+
+        int x = 0;
+        int y = 0;
+        int ringLength = 0;
+
+        /* sign of the exterior rings area, given by the first ring */
+        int exterior = 0;
+        boolean polygon = false;
+
+        if (type == TAG_GEOM_POINT)
+            e.startPoints();
+
+        while (bufferPos < end) {
+            int val = decodeVarint32Filled();
+            int cmd = val & 0x07;
+            int count = val >>> 3;
+
+            if (cmd == CLOSE_PATH) {
+                if (type != TAG_GEOM_POLYGON)
+                    continue;
+
+                float area = ringArea(ringLength);
+                if (area == 0 || ringLength < 6)
+                    continue;
+
+                int sign = area > 0 ? 1 : -1;
+                if (exterior == 0)
+                    exterior = sign;
+
+                if (sign == exterior) {
+                    e.startPolygon();
+                    polygon = true;
+                } else if (polygon) {
+                    e.startHole();
+                } else {
+                    /* hole without exterior ring */
+                    continue;
+                }
+                addRing(e, ringLength);
+                continue;
+            }
+
+            if (cmd != MOVE_TO && cmd != LINE_TO) {
+                log.fine(mTile + " invalid geometry command " + cmd);
+                bufferPos = end;
+                return;
+            }
+
+            for (int i = 0; i < count; i++) {
+                x += deZigZag(decodeVarint32Filled());
+                y += deZigZag(decodeVarint32Filled());
+
+                if (type == TAG_GEOM_POLYGON) {
+                    if (cmd == MOVE_TO)
+                        ringLength = 0;
+                    if (ringLength + 2 > mRing.length)
+                        mRing = Arrays.copyOf(mRing, ringLength * 2);
+                    mRing[ringLength++] = x;
+                    mRing[ringLength++] = y;
+                } else {
+                    if (type == TAG_GEOM_LINE && cmd == MOVE_TO)
+                        e.startLine();
+                    e.addPoint(x / mScale, y / mScale);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return twice the signed area of the current ring.
+     */
+    private float ringArea(int length) {
+        float[] ring = mRing;
+        double area = 0;
+        for (int i = 0, j = length - 2; i < length; j = i, i += 2)
+            area += (double) ring[j] * ring[i + 1] - (double) ring[i] * ring[j + 1];
+        return (float) area;
+    }
+
+    private void addRing(MapElement e, int length) {
+        float[] ring = mRing;
+
+        if (mTolerance > 0 && length > 6
+                && !e.tags.contains(Parameters.SIMPLIFICATION_EXCEPTIONS)) {
+            int simplified = mSimplifyDP.simplify(ring, 0, length, 0, mTolerance * mTolerance);
+            if (simplified >= 6)
+                length = simplified;
+        }
+
+        for (int i = 0; i < length; i += 2)
+            e.addPoint(ring[i] / mScale, ring[i + 1] / mScale);
+    }
+
+    private String decodeValue() throws IOException {
+        int bytes = decodeVarint32();
+        int end = bufferPos + bytes;
+
+        String value = null;
+
+        while (bufferPos < end) {
+            int val = decodeVarint32();
+            int tag = (val >>> 3);
+
+            switch (tag) {
+                case TAG_VALUE_STRING:
+                    value = decodeString();
+                    break;
+
+                case TAG_VALUE_FLOAT:
+                    value = String.valueOf(decodeFloat());
+                    break;
+
+                case TAG_VALUE_DOUBLE:
+                    value = String.valueOf(decodeDouble());
+                    break;
+
+                case TAG_VALUE_LONG:
+                case TAG_VALUE_UINT:
+                    value = String.valueOf(decodeVarint64());
+                    break;
+
+                case TAG_VALUE_SINT:
+                    long v = decodeVarint64();
+                    value = String.valueOf((v >>> 1) ^ -(v & 1));
+                    break;
+
+                case TAG_VALUE_BOOL:
+                    value = String.valueOf(decodeVarint32() != 0);
+                    break;
+
+                default:
+                    skip(val & 0x07);
+                    break;
+            }
+        }
+        return value;
+    }
+
+    /**
+     * Skips a field of the given wire type.
+     */
+    private void skip(int wireType) throws IOException {
+        switch (wireType) {
+            case WIRE_VARINT:
+                decodeVarint64();
+                break;
+            case WIRE_FIXED64:
+                fillBuffer(8);
+                bufferPos += 8;
+                break;
+            case WIRE_LENGTH:
+                int bytes = decodeVarint32();
+                fillBuffer(bytes);
+                bufferPos += bytes;
+                break;
+            case WIRE_FIXED32:
+                fillBuffer(4);
+                bufferPos += 4;
+                break;
+            default:
+                error(mTile + " invalid wire type " + wireType);
+        }
+    }
+}
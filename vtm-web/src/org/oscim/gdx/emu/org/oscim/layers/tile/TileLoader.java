@@ -58,6 +58,16 @@ public abstract class TileLoader implements ITileDataSink {
         return mPausing;
     }
 
+    protected boolean isLoadCanceled() {
+        return mPausing;
+    }
+
+    protected void beginCpuWork() {
+    }
+
+    protected void endCpuWork() {
+    }
+
     public boolean isPausing() {
         return mPausing;
     }
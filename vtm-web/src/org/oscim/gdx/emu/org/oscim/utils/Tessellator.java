@@ -11,6 +11,11 @@ import java.util.logging.Logger;
 public class Tessellator {
     private static final Logger log = Logger.getLogger(Tessellator.class.getName());
 
+    /**
+     * MeshBucket uses the TessJNI emulation.
+     */
+    public static boolean USE_JNI = true;
+
     public static int tessellate(GeometryBuffer geom, float scale,
                                  VertexData outPoints, VertexData outTris, int vertexOffset) {
 
@@ -102,6 +107,14 @@ public class Tessellator {
         return numIndices;
     }
 
+    /**
+     * Only used without JNI, which is always used here.
+     */
+    public static int[] triangulate(GeometryBuffer geom) {
+        log.fine("triangulate not supported");
+        return new int[0];
+    }
+
     public static int tessellate(float[] points, int ppos, int plen, int[] index,
                                  int ipos, int rings, int vertexOffset, VertexData outTris) {
 
@@ -16,78 +16,296 @@
  */
 package org.oscim.layers.tile;
 
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Logger;
 
 import static org.oscim.layers.tile.MapTile.State.*;
 
 /**
  * A JobQueue keeps the list of pending jobs for a MapView and prioritizes them.
+ * <p/>
+ * TileManager passes the jobs of each update: new jobs are added, queued
+ * jobs are re-prioritized and queued jobs which are no longer needed are
+ * removed. The jobs are then ordered by priority class and distance, with
+ * a binary heap, and published as an immutable list.
+ * <p/>
+ * TileLoaders poll from the published list without locking, a job is
+ * taken by advancing the cursor of the list. Only update() and clear(),
+ * which run on the main thread, synchronize.
  */
 public class JobQueue {
 
     private static final Logger log = Logger.getLogger(JobQueue.class.getName());
 
-    private int mCurrentJob = 0;
-    private MapTile[] mJobs;
+    /**
+     * Priority class of tiles in the current view.
+     */
+    public static final int PRIORITY_VISIBLE = 0;
+
+    /**
+     * Priority class of parent tiles used as proxy while zooming.
+     */
+    public static final int PRIORITY_PARENT = 1;
+
+    /**
+     * Priority class of tiles loaded ahead of the map motion.
+     */
+    public static final int PRIORITY_PREFETCH = 2;
 
     /**
-     * @param tiles the jobs to be added to this queue.
+     * Jobs of an update in order of priority. Jobs before 'next' are
+     * taken by TileLoaders.
      */
-    public synchronized void setJobs(MapTile[] tiles) {
-        mJobs = tiles;
-        mCurrentJob = 0;
+    private static final class Jobs {
+        final MapTile[] tiles;
+        final int size;
+        final AtomicInteger next = new AtomicInteger();
+
+        Jobs(MapTile[] tiles, int size) {
+            this.tiles = tiles;
+            this.size = size;
+        }
+
+        /**
+         * @return the index of the taken job or -1 when all jobs are taken.
+         */
+        int take() {
+            while (true) {
+                int i = next.get();
+                if (i >= size)
+                    return -1;
+                if (next.compareAndSet(i, i + 1))
+                    return i;
+            }
+        }
+
+        /**
+         * Take all remaining jobs.
+         *
+         * @return the number of jobs which were taken before.
+         */
+        int close() {
+            return Math.min(next.getAndSet(size), size);
+        }
     }
 
+    private static final Jobs EMPTY = new Jobs(new MapTile[0], 0);
+
+    private volatile Jobs mJobs = EMPTY;
+
+    /* heap to order the jobs in update() */
+    private MapTile[] mTiles = new MapTile[64];
+    private int[] mPriority = new int[64];
+    private float[] mDistance = new float[64];
+
+    private int mSerial;
+
     /**
-     * Removes all jobs from this queue.
+     * Take the published jobs back from the TileLoaders. Jobs which were
+     * polled are no longer queued, the remaining ones are added to the
+     * heap in any order.
+     *
+     * @return the number of remaining jobs.
      */
-    public synchronized void clear() {
-        if (mJobs == null) {
-            mCurrentJob = 0;
-            return;
+    private int unpublish() {
+        Jobs jobs = mJobs;
+        mJobs = EMPTY;
+
+        int taken = jobs.close();
+        for (int i = 0; i < taken; i++)
+            jobs.tiles[i].jobIndex = -1;
+
+        int size = jobs.size - taken;
+        while (mTiles.length < size)
+            grow();
+        for (int i = 0; i < size; i++) {
+            MapTile t = jobs.tiles[taken + i];
+            mTiles[i] = t;
+            t.jobIndex = i;
         }
-        MapTile[] tiles = mJobs;
+        return size;
+    }
 
-        for (int i = mCurrentJob, n = mJobs.length; i < n; i++) {
+    /**
+     * Update the queue with the jobs of the current TileManager update.
+     * Tiles in NONE state are set to LOADING and added, queued tiles are
+     * re-prioritized with their current {@link MapTile#distance} and tiles
+     * which are already polled by a TileLoader are skipped. Queued tiles
+     * which are not passed are removed and set to NONE.
+     *
+     * @param tiles      the tiles to be loaded, may contain duplicates.
+     * @param priorities the priority classes of the tiles.
+     * @param numTiles   the number of tiles.
+     */
+    public synchronized void update(MapTile[] tiles, int[] priorities, int numTiles) {
+        int serial = ++mSerial;
+        int size = unpublish();
+
+        for (int i = 0; i < numTiles; i++) {
             MapTile t = tiles[i];
-            if (t.state(LOADING | CANCEL)) {
-                t.setState(NONE);
+            int priority = priorities[i];
+            int idx = t.jobIndex;
+
+            if (idx >= 0) {
+                if (t.jobSerial == serial) {
+                    /* duplicate, keep the higher priority */
+                    if (priority < mPriority[idx])
+                        mPriority[idx] = priority;
+                    continue;
+                }
+                if (t.state(CANCEL)) {
+                    /* canceled while queued, but needed again */
+                    t.setState(NONE);
+                    t.setState(LOADING);
+                }
+            } else if (t.state(NONE)) {
+                t.setState(LOADING);
+                if (size == mTiles.length)
+                    grow();
+                idx = size++;
+                mTiles[idx] = t;
+                t.jobIndex = idx;
+            } else {
+                /* being loaded or loaded */
+                continue;
+            }
+            t.jobSerial = serial;
+            mPriority[idx] = priority;
+            mDistance[idx] = t.distance;
+        }
+
+        /* remove jobs which were not passed */
+        int cnt = 0;
+        for (int i = 0; i < size; i++) {
+            MapTile t = mTiles[i];
+            if (t.jobSerial == serial) {
+                mTiles[cnt] = t;
+                mPriority[cnt] = mPriority[i];
+                mDistance[cnt] = mDistance[i];
+                t.jobIndex = cnt++;
             } else {
-                log.fine("Wrong tile in queue " + t + " " + t.state());
+                release(t);
+            }
+        }
+        Arrays.fill(mTiles, cnt, size, null);
+
+        /* restore heap order */
+        for (int i = (cnt >> 1) - 1; i >= 0; i--)
+            siftDown(i, cnt);
+
+        /* publish in order of priority */
+        MapTile[] jobs = new MapTile[cnt];
+        for (int i = 0; i < jobs.length; i++) {
+            MapTile t = mTiles[0];
+            t.jobIndex = i;
+            jobs[i] = t;
+
+            int n = cnt - 1 - i;
+            if (n > 0) {
+                move(n, 0);
+                siftDown(0, n);
             }
-            tiles[i] = null;
+            mTiles[n] = null;
+        }
+        mJobs = new Jobs(jobs, cnt);
+    }
+
+    /**
+     * Removes all jobs from this queue.
+     */
+    public synchronized void clear() {
+        for (int i = 0, n = unpublish(); i < n; i++) {
+            release(mTiles[i]);
+            mTiles[i] = null;
+        }
+    }
+
+    private static void release(MapTile t) {
+        t.jobIndex = -1;
+        if (t.state(LOADING | CANCEL)) {
+            t.setState(NONE);
+        } else {
+            log.fine("Wrong tile in queue " + t + " " + t.state());
         }
-        mCurrentJob = 0;
-        mJobs = null;
+    }
+
+    /**
+     * @return the number of queued jobs.
+     */
+    public int size() {
+        Jobs jobs = mJobs;
+        return Math.max(jobs.size - jobs.next.get(), 0);
     }
 
     /**
      * @return true if this queue contains no jobs, false otherwise.
      */
-    public synchronized boolean isEmpty() {
-        return (mJobs == null);
+    public boolean isEmpty() {
+        return size() == 0;
     }
 
     /**
      * @return the most important job from this queue or null, if empty.
      */
-    public synchronized MapTile poll() {
-        if (mJobs == null)
-            return null;
-
-        if (mCurrentJob == 0) {
-            int len = mJobs.length;
-            if (len > 1)
-                TileDistanceSort.sort(mJobs, 0, len);
+    public MapTile poll() {
+        while (true) {
+            Jobs jobs = mJobs;
+            int i = jobs.take();
+            if (i >= 0)
+                return jobs.tiles[i];
+
+            /* retry when update() published new jobs meanwhile */
+            if (jobs == mJobs)
+                return null;
         }
+    }
 
-        MapTile t = mJobs[mCurrentJob];
-        mJobs[mCurrentJob] = null;
+    private boolean less(int a, int b) {
+        if (mPriority[a] != mPriority[b])
+            return mPriority[a] < mPriority[b];
 
-        if (++mCurrentJob == mJobs.length)
-            mJobs = null;
+        return mDistance[a] < mDistance[b];
+    }
 
-        return t;
+    private void move(int from, int to) {
+        MapTile t = mTiles[from];
+        mTiles[to] = t;
+        mPriority[to] = mPriority[from];
+        mDistance[to] = mDistance[from];
+        t.jobIndex = to;
+    }
+
+    private void siftDown(int pos, int size) {
+        MapTile t = mTiles[pos];
+        int priority = mPriority[pos];
+        float distance = mDistance[pos];
+
+        while (true) {
+            int child = (pos << 1) + 1;
+            if (child >= size)
+                break;
+
+            if (child + 1 < size && less(child + 1, child))
+                child++;
+
+            int p = mPriority[child];
+            if (p > priority || (p == priority && mDistance[child] >= distance))
+                break;
+
+            move(child, pos);
+            pos = child;
+        }
+        mTiles[pos] = t;
+        mPriority[pos] = priority;
+        mDistance[pos] = distance;
+        t.jobIndex = pos;
+    }
 
+    private void grow() {
+        int size = mTiles.length * 2;
+        mTiles = Arrays.copyOf(mTiles, size);
+        mPriority = Arrays.copyOf(mPriority, size);
+        mDistance = Arrays.copyOf(mDistance, size);
     }
 }
@@ -127,6 +127,18 @@ public class MapTile extends Tile {
      */
     int lastDraw = 0;
 
+    /**
+     * Position in JobQueue or -1 when not queued, only accessed by
+     * JobQueue.update() and clear(). Polled tiles keep their position
+     * until the next update.
+     */
+    int jobIndex = -1;
+
+    /**
+     * JobQueue update in which this tile was last queued
+     */
+    int jobSerial;
+
     /**
      * Keep track which tiles are locked as proxy for this tile
      */
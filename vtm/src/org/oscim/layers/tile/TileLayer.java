@@ -24,6 +24,7 @@ import org.oscim.layers.Layer;
 import org.oscim.map.Map;
 import org.oscim.map.Map.UpdateListener;
 import org.oscim.tiling.TileSource;
+import org.oscim.utils.Parameters;
 
 public abstract class TileLayer extends Layer implements UpdateListener {
 
@@ -37,6 +38,11 @@ public abstract class TileLayer extends Layer implements UpdateListener {
 
     protected TileLoader[] mTileLoader;
 
+    /**
+     * Runs the loaders when {@link Parameters#TILE_LOADER_EXECUTOR} is set.
+     */
+    protected TileLoaderExecutor mLoaderExecutor;
+
     protected TileSource mTileSource;
 
     public TileLayer(Map map, TileManager tileManager, TileRenderer renderer) {
@@ -65,16 +71,27 @@ public abstract class TileLayer extends Layer implements UpdateListener {
     }
 
     protected void initLoader(int numLoaders) {
+        /* loads on the executor mostly wait for I/O */
+        if (Parameters.TILE_LOADER_EXECUTOR)
+            numLoaders = Math.max(numLoaders, Parameters.TILE_LOADER_EXECUTOR_LOADS);
+
         mTileLoader = new TileLoader[numLoaders];
 
-        for (int i = 0; i < numLoaders; i++) {
+        for (int i = 0; i < numLoaders; i++)
             mTileLoader[i] = createLoader();
-            mTileLoader[i].start();
+
+        if (Parameters.TILE_LOADER_EXECUTOR) {
+            mLoaderExecutor = new TileLoaderExecutor(mTileManager, mTileLoader);
+            return;
         }
+        for (TileLoader loader : mTileLoader)
+            loader.start();
     }
 
     /**
-     * Get number of loader threads. Default is 4.
+     * Get number of loader threads. Default is 4. With
+     * {@link Parameters#TILE_LOADER_EXECUTOR} at least
+     * {@link Parameters#TILE_LOADER_EXECUTOR_LOADS} loads run concurrently.
      */
     protected int getNumLoaders() {
         return mNumLoaders;
@@ -108,6 +125,10 @@ public abstract class TileLayer extends Layer implements UpdateListener {
 
     @Override
     public void onDetach() {
+        if (mLoaderExecutor != null) {
+            mLoaderExecutor.pause(false);
+            mLoaderExecutor.finish();
+        }
         for (TileLoader loader : mTileLoader) {
             loader.pause();
             loader.finish();
@@ -118,11 +139,19 @@ public abstract class TileLayer extends Layer implements UpdateListener {
     }
 
     void notifyLoaders() {
+        if (mLoaderExecutor != null) {
+            mLoaderExecutor.go();
+            return;
+        }
         for (TileLoader loader : mTileLoader)
             loader.go();
     }
 
     protected void pauseLoaders(boolean wait) {
+        if (mLoaderExecutor != null) {
+            mLoaderExecutor.pause(wait);
+            return;
+        }
         for (TileLoader loader : mTileLoader) {
             loader.cancel();
 
@@ -140,6 +169,10 @@ public abstract class TileLayer extends Layer implements UpdateListener {
     }
 
     protected void resumeLoaders() {
+        if (mLoaderExecutor != null) {
+            mLoaderExecutor.proceed();
+            return;
+        }
         for (TileLoader loader : mTileLoader)
             loader.proceed();
     }
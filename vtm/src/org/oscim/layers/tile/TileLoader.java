@@ -33,6 +33,16 @@ public abstract class TileLoader extends PausableThread implements ITileDataSink
     private final String THREAD_NAME;
     private final TileManager mTileManager;
 
+    /**
+     * executor running this loader, null when running as thread
+     */
+    TileLoaderExecutor mExecutor;
+
+    /**
+     * true while holding a processor of the executor
+     */
+    private boolean mCpuWork;
+
     /**
      * currently processed tile
      */
@@ -64,6 +74,8 @@ public abstract class TileLoader extends PausableThread implements ITileDataSink
         } catch (Throwable t) {
             t.printStackTrace();
             completed(FAILED);
+        } finally {
+            endCpuWork();
         }
     }
 
@@ -82,6 +94,36 @@ public abstract class TileLoader extends PausableThread implements ITileDataSink
         return mTileManager.hasTileJobs();
     }
 
+    /**
+     * @return true when the current job should be canceled.
+     */
+    protected boolean isLoadCanceled() {
+        if (mExecutor != null)
+            return mExecutor.isPaused();
+        return isCanceled();
+    }
+
+    /**
+     * Called before CPU bound work like decoding, theme matching and bucket
+     * compilation. When loading with a {@link TileLoaderExecutor} this
+     * blocks while all processors are busy with such work. Calls while the
+     * work has begun have no effect. The work ends with {@link #endCpuWork()}
+     * or at the latest when the job is done.
+     */
+    protected void beginCpuWork() {
+        if (mExecutor != null && !mCpuWork) {
+            mExecutor.acquireCpu();
+            mCpuWork = true;
+        }
+    }
+
+    protected void endCpuWork() {
+        if (mCpuWork) {
+            mCpuWork = false;
+            mExecutor.releaseCpu();
+        }
+    }
+
     public abstract void dispose();
 
     public abstract void cancel();
@@ -94,7 +136,7 @@ public abstract class TileLoader extends PausableThread implements ITileDataSink
     public void completed(QueryResult result) {
         boolean ok = (result == SUCCESS);
 
-        if (ok && (isCanceled() || isInterrupted()))
+        if (ok && (isLoadCanceled() || (mExecutor == null && isInterrupted())))
             result = QueryResult.FAILED;
 
         mTileManager.jobCompleted(mTile, result);
@@ -0,0 +1,247 @@
+/*
+ * This file is part of the OpenScienceMap project (http://www.opensciencemap.org).
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.oscim.layers.tile;
+
+import java.lang.reflect.Method;
+import java.util.ArrayDeque;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Runs {@link TileLoader} jobs on an {@link ExecutorService} instead of
+ * dedicated loader threads.
+ * <p>
+ * The loaders are only used as per-job state: a task takes an idle loader,
+ * loads tiles while there are jobs and returns the loader. The number of
+ * loaders therefore limits the number of concurrent loads, which should be
+ * larger than the number of processors to overlap I/O with decoding.
+ * <p>
+ * CPU bound work of the loaders, i.e. decoding, theme matching and bucket
+ * compilation (see {@link TileLoader#beginCpuWork()}), is limited to the
+ * number of available processors.
+ * <p>
+ * The default executor uses platform threads, which keep their thread local
+ * caches (e.g. of the Triangulator) between jobs. An executor with virtual
+ * threads ({@link #newVirtualThreadExecutor()}) can be passed explicitly.
+ */
+public class TileLoaderExecutor {
+    private static final Logger log = Logger.getLogger(TileLoaderExecutor.class.getName());
+
+    private static final Semaphore CPU_PERMITS =
+            new Semaphore(Runtime.getRuntime().availableProcessors());
+
+    private final TileManager mTileManager;
+    private final TileLoader[] mLoaders;
+    private final ArrayDeque<TileLoader> mIdle;
+    private final ExecutorService mExecutor;
+    private final boolean mOwnExecutor;
+
+    private volatile boolean mPaused;
+    private boolean mFinished;
+    private int mRunning;
+
+    /**
+     * @param tileManager the TileManager providing the jobs
+     * @param loaders     the loaders, must not be started as threads
+     */
+    public TileLoaderExecutor(TileManager tileManager, TileLoader[] loaders) {
+        this(tileManager, loaders, newExecutor(), true);
+    }
+
+    /**
+     * @param executor the executor to run the loaders, it is not shut down
+     *                 by {@link #finish()}
+     */
+    public TileLoaderExecutor(TileManager tileManager, TileLoader[] loaders,
+                              ExecutorService executor) {
+        this(tileManager, loaders, executor, false);
+    }
+
+    private TileLoaderExecutor(TileManager tileManager, TileLoader[] loaders,
+                               ExecutorService executor, boolean ownExecutor) {
+        mTileManager = tileManager;
+        mLoaders = loaders;
+        mExecutor = executor;
+        mOwnExecutor = ownExecutor;
+
+        mIdle = new ArrayDeque<>(loaders.length);
+        for (TileLoader loader : loaders) {
+            loader.mExecutor = this;
+            mIdle.add(loader);
+        }
+    }
+
+    /**
+     * @return a cached pool of daemon threads.
+     */
+    public static ExecutorService newExecutor() {
+        return Executors.newCachedThreadPool(new ThreadFactory() {
+            private int id;
+
+            @Override
+            public synchronized Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "TileLoaderExecutor" + (id++));
+                t.setDaemon(true);
+                t.setPriority((Thread.NORM_PRIORITY + Thread.MIN_PRIORITY) / 2);
+                return t;
+            }
+        });
+    }
+
+    /**
+     * @return an executor using virtual threads (Java 21+), or null when the
+     * runtime does not support them.
+     */
+    public static ExecutorService newVirtualThreadExecutor() {
+        try {
+            Method m = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) m.invoke(null);
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    /**
+     * Dispatch idle loaders while there are tile jobs.
+     */
+    public void go() {
+        while (true) {
+            TileLoader loader;
+            synchronized (this) {
+                if (mPaused || mFinished || mIdle.isEmpty()
+                        || !mTileManager.hasTileJobs())
+                    return;
+
+                loader = mIdle.poll();
+                mRunning++;
+            }
+            try {
+                mExecutor.execute(new Worker(loader));
+            } catch (RejectedExecutionException e) {
+                log.log(Level.WARNING, "rejected", e);
+                release(loader);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Cancel running jobs and stop dispatching new ones.
+     *
+     * @param wait wait until all running jobs have completed
+     */
+    public void pause(boolean wait) {
+        synchronized (this) {
+            mPaused = true;
+        }
+        for (TileLoader loader : mLoaders)
+            loader.cancel();
+
+        if (wait)
+            awaitPausing();
+    }
+
+    /**
+     * Continue dispatching jobs after {@link #pause(boolean)}.
+     */
+    public void proceed() {
+        synchronized (this) {
+            if (mFinished)
+                return;
+            mPaused = false;
+        }
+        go();
+    }
+
+    public boolean isPaused() {
+        return mPaused;
+    }
+
+    /**
+     * @return true when no jobs are running.
+     */
+    public synchronized boolean isPausing() {
+        return mRunning == 0;
+    }
+
+    /**
+     * Wait until no jobs are running.
+     */
+    public synchronized void awaitPausing() {
+        boolean interrupted = false;
+        while (mRunning > 0) {
+            try {
+                wait(100);
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted)
+            Thread.currentThread().interrupt();
+    }
+
+    /**
+     * Stop dispatching jobs and shut down an own executor.
+     */
+    public void finish() {
+        synchronized (this) {
+            mFinished = true;
+            mPaused = true;
+        }
+        if (mOwnExecutor)
+            mExecutor.shutdown();
+    }
+
+    void acquireCpu() {
+        CPU_PERMITS.acquireUninterruptibly();
+    }
+
+    void releaseCpu() {
+        CPU_PERMITS.release();
+    }
+
+    private void release(TileLoader loader) {
+        synchronized (this) {
+            mIdle.add(loader);
+            mRunning--;
+            notifyAll();
+        }
+    }
+
+    private final class Worker implements Runnable {
+        private final TileLoader mLoader;
+
+        Worker(TileLoader loader) {
+            mLoader = loader;
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (!mPaused && mTileManager.hasTileJobs())
+                    mLoader.doWork();
+            } finally {
+                release(mLoader);
+            }
+            /* jobs may have been added after the last check */
+            go();
+        }
+    }
+}
@@ -27,6 +27,7 @@ import org.oscim.layers.tile.MapTile.TileNode;
 import org.oscim.map.Map;
 import org.oscim.map.Viewport;
 import org.oscim.renderer.BufferObject;
+import org.oscim.renderer.RenderStats;
 import org.oscim.tiling.QueryResult;
 import org.oscim.utils.ScanBox;
 import org.oscim.utils.quadtree.TileIndex;
@@ -97,9 +98,11 @@ public class TileManager {
     private int mTilesToUpload;
 
     /**
-     * new tile jobs for MapWorkers
+     * tile jobs of the current update for MapWorkers
      */
-    private final ArrayList<MapTile> mJobs;
+    private MapTile[] mJobs = new MapTile[64];
+    private int[] mJobPriorities = new int[64];
+    private int mNumJobs;
 
     /**
      * counter to check whether current TileSet has changed
@@ -127,6 +130,25 @@ public class TileManager {
     private double mLevelUpThreshold = 1;
     private double mLevelDownThreshold = 2;
 
+    /**
+     * prefetch: time in milliseconds the map motion is extrapolated
+     */
+    private static final int PREFETCH_TIME = 500;
+
+    private int mPrefetchBudget = 8;
+    private final MapPosition mPrefetchPos = new MapPosition();
+
+    /* map motion in map units per millisecond */
+    private double mMotionX, mMotionY;
+    private double mPrevX, mPrevY, mPrevScale;
+    private long mPrevTime;
+
+    /* prefetch candidates of the current scan */
+    private int[] mCandidateX = new int[64];
+    private int[] mCandidateY = new int[64];
+    private float[] mCandidateDist = new float[64];
+    private int mNumCandidates;
+
     private final TileIndex<TileNode, MapTile> mIndex =
             new TileIndex<TileNode, MapTile>() {
                 @Override
@@ -166,7 +188,6 @@ public class TileManager {
         mViewport = map.viewport();
 
         jobQueue = new JobQueue();
-        mJobs = new ArrayList<MapTile>();
         mTiles = new MapTile[mCacheLimit];
 
         mTilesEnd = 0;
@@ -187,6 +208,21 @@ public class TileManager {
         mLevelUpThreshold = clamp(up, 1, 2);
     }
 
+    /**
+     * Set the number of tiles which are loaded ahead of the map motion,
+     * e.g. along a fling or at the end of an animation. Prefetched tiles
+     * are loaded after visible tiles.
+     *
+     * @param budget max number of prefetched tiles per update, 0 disables prefetching.
+     */
+    public void setPrefetchBudget(int budget) {
+        mPrefetchBudget = budget;
+    }
+
+    public int getPrefetchBudget() {
+        return mPrefetchBudget;
+    }
+
     public MapTile getTile(int x, int y, int z) {
         synchronized (mTilelock) {
             return mIndex.getTile(x, y, z);
@@ -245,15 +281,12 @@ public class TileManager {
             mPrevZoomlevel = pos.zoomLevel;
             init();
         }
-        /* clear JobQueue and set tiles to state == NONE.
-         * one could also append new tiles and sort in JobQueue
-         * but this has the nice side-effect that MapWorkers dont
-         * start with old jobs while new jobs are calculated, which
-         * should increase the chance that they are free when new
-         * jobs come in. */
-        jobQueue.clear();
+        /* collect jobs of this update, JobQueue keeps queued jobs
+         * which are still needed and drops the others. */
+        mNumJobs = 0;
 
         if (pos.zoomLevel < mMinZoom) {
+            jobQueue.clear();
             if (mCurrentTiles.cnt > 0 && pos.zoomLevel < mMinZoom - 4) {
                 synchronized (mTilelock) {
                     mCurrentTiles.releaseTiles();
@@ -295,8 +328,10 @@ public class TileManager {
                 if (z <= tileZoom && z > match)
                     match = z;
             }
-            if (match == 0)
+            if (match == 0) {
+                jobQueue.clear();
                 return false;
+            }
 
             tileZoom = match;
         }
@@ -361,21 +396,30 @@ public class TileManager {
             mMap.render();
         }
 
-        /* Add tile jobs to queue */
-        if (mJobs.isEmpty())
-            return false;
+        if (mPrefetchBudget > 0 && mZoomTable == null)
+            prefetch(pos, tileZoom);
+
+        /* update tile jobs in queue, sets new tiles to state == LOADING */
+        updateDistances(mJobs, mNumJobs, pos);
+        jobQueue.update(mJobs, mJobPriorities, mNumJobs);
+        if (RenderStats.isEnabled())
+            RenderStats.QUEUE_DEPTH.record(jobQueue.size());
 
-        MapTile[] jobs = new MapTile[mJobs.size()];
-        jobs = mJobs.toArray(jobs);
-        updateDistances(jobs, jobs.length, pos);
+        int numJobs = mNumJobs;
+        Arrays.fill(mJobs, 0, numJobs, null);
+        mNumJobs = 0;
 
-        /* sets tiles to state == LOADING */
-        jobQueue.setJobs(jobs);
-        mJobs.clear();
+        if (numJobs == 0)
+            return false;
 
         if (mCacheReduce < mCacheLimit / 2) {
-            if (BufferObject.isMaxFill()) {
-                mCacheReduce += 10;
+            long usage = BufferObject.getMemoryUsage();
+            long limit = BufferObject.getMemoryLimit();
+            if (usage > limit && mTilesCount > 0) {
+                /* estimate tiles to drop from the average buffer size per tile */
+                long perTile = Math.max(usage / mTilesCount, 1);
+                int reduce = (int) Math.min((usage - limit) / perTile + 1, 10);
+                mCacheReduce = Math.min(mCacheReduce + reduce, mCacheLimit / 2);
                 if (dbg)
                     log.fine("reduce cache " + (mCacheLimit - mCacheReduce));
             } else {
@@ -439,13 +483,9 @@ public class TileManager {
         if (tile == null) {
             TileNode n = mIndex.add(x, y, zoomLevel);
             tile = n.item = new MapTile(n, x, y, zoomLevel);
-            tile.setState(LOADING);
-            mJobs.add(tile);
             addToCache(tile);
-        } else if (!tile.isActive()) {
-            tile.setState(LOADING);
-            mJobs.add(tile);
         }
+        addJob(tile, JobQueue.PRIORITY_VISIBLE);
 
         if (mLoadParent && (zoomLevel > mMinZoom) && (mZoomTable == null)) {
             /* prefetch parent */
@@ -454,17 +494,108 @@ public class TileManager {
                 TileNode n = mIndex.add(x >> 1, y >> 1, zoomLevel - 1);
                 p = n.item = new MapTile(n, x >> 1, y >> 1, zoomLevel - 1);
                 addToCache(p);
-                /* this prevents to add tile twice to queue */
-                p.setState(LOADING);
-                mJobs.add(p);
-            } else if (!p.isActive()) {
-                p.setState(LOADING);
-                mJobs.add(p);
             }
+            addJob(p, JobQueue.PRIORITY_PARENT);
         }
         return tile;
     }
 
+    /**
+     * Add a job for a tile which is not loaded yet or still queued.
+     * Duplicates are resolved by JobQueue.
+     */
+    private boolean addJob(MapTile tile, int priority) {
+        if (!tile.state(NONE | LOADING | CANCEL))
+            return false;
+
+        if (mNumJobs == mJobs.length) {
+            mJobs = Arrays.copyOf(mJobs, mNumJobs * 2);
+            mJobPriorities = Arrays.copyOf(mJobPriorities, mNumJobs * 2);
+        }
+        mJobs[mNumJobs] = tile;
+        mJobPriorities[mNumJobs] = priority;
+        mNumJobs++;
+        return true;
+    }
+
+    /**
+     * Add jobs for tiles ahead of the map motion: at the predicted end of
+     * an animation or, when the end is not known, where the current motion
+     * leads within PREFETCH_TIME.
+     */
+    private void prefetch(MapPosition pos, int tileZoom) {
+        long now = System.currentTimeMillis();
+        long dt = now - mPrevTime;
+
+        double dx = pos.x - mPrevX;
+        if (dx > 0.5)
+            dx -= 1;
+        else if (dx < -0.5)
+            dx += 1;
+
+        if (dt > 0 && dt < PREFETCH_TIME && pos.scale == mPrevScale) {
+            /* smooth motion over a few updates */
+            mMotionX = (mMotionX + dx / dt) * 0.5;
+            mMotionY = (mMotionY + (pos.y - mPrevY) / dt) * 0.5;
+        } else if (dt != 0) {
+            mMotionX = 0;
+            mMotionY = 0;
+        }
+        mPrevX = pos.x;
+        mPrevY = pos.y;
+        mPrevScale = pos.scale;
+        mPrevTime = now;
+
+        MapPosition p = mPrefetchPos;
+        int zoom = tileZoom;
+
+        if (mMap.animator().getPredictedEndPosition(p)) {
+            zoom = clamp(p.zoomLevel, mMinZoom, mMaxZoom);
+        } else {
+            p.copy(pos);
+            p.x += mMotionX * PREFETCH_TIME;
+            p.y += mMotionY * PREFETCH_TIME;
+        }
+
+        /* nothing to prefetch when motion stays within the scanned border */
+        double tileScale = pos.scale * Tile.SIZE;
+        if (zoom == tileZoom
+                && Math.abs(p.x - pos.x) * tileScale < Tile.SIZE / 2
+                && Math.abs(p.y - pos.y) * tileScale < Tile.SIZE / 2)
+            return;
+
+        mNumCandidates = 0;
+        mPrefetchScanBox.scan(p.x, p.y, p.scale, zoom, mMapPlane);
+
+        /* add the candidates closest to the predicted position */
+        int numPrefetch = 0;
+        while (numPrefetch < mPrefetchBudget && mNumCandidates > 0) {
+            int min = 0;
+            for (int i = 1; i < mNumCandidates; i++) {
+                if (mCandidateDist[i] < mCandidateDist[min])
+                    min = i;
+            }
+            if (addPrefetchTile(mCandidateX[min], mCandidateY[min], zoom))
+                numPrefetch++;
+
+            mNumCandidates--;
+            mCandidateX[min] = mCandidateX[mNumCandidates];
+            mCandidateY[min] = mCandidateY[mNumCandidates];
+            mCandidateDist[min] = mCandidateDist[mNumCandidates];
+        }
+    }
+
+    private boolean addPrefetchTile(int x, int y, int zoomLevel) {
+        MapTile tile = mIndex.getTile(x, y, zoomLevel);
+
+        if (tile == null) {
+            TileNode n = mIndex.add(x, y, zoomLevel);
+            tile = n.item = new MapTile(n, x, y, zoomLevel);
+            addToCache(tile);
+        }
+        return addJob(tile, JobQueue.PRIORITY_PREFETCH);
+    }
+
     private void addToCache(MapTile tile) {
 
         if (mTilesEnd == mTiles.length) {
@@ -735,6 +866,46 @@ public class TileManager {
         }
     };
 
+    private final ScanBox mPrefetchScanBox = new ScanBox() {
+
+        @Override
+        protected void setVisible(int y, int x1, int x2) {
+            int xmax = 1 << mZoom;
+            long cx = (long) (mPrefetchPos.x * xmax);
+            long cy = (long) (mPrefetchPos.y * xmax);
+
+            for (int x = x1; x < x2; x++) {
+                int xx = x;
+                if (x < 0 || x >= xmax) {
+                    /* flip-around date line */
+                    if (x < 0)
+                        xx = xmax + x;
+                    else
+                        xx = x - xmax;
+
+                    if (xx < 0 || xx >= xmax)
+                        continue;
+                }
+
+                /* skip visible and loaded tiles */
+                MapTile tile = mIndex.getTile(xx, y, mZoom);
+                if (tile != null && (tile.isLocked() || !tile.state(NONE | LOADING | CANCEL)))
+                    continue;
+
+                int cnt = mNumCandidates;
+                if (cnt == mCandidateX.length) {
+                    mCandidateX = Arrays.copyOf(mCandidateX, cnt * 2);
+                    mCandidateY = Arrays.copyOf(mCandidateY, cnt * 2);
+                    mCandidateDist = Arrays.copyOf(mCandidateDist, cnt * 2);
+                }
+                mCandidateX[cnt] = xx;
+                mCandidateY[cnt] = y;
+                mCandidateDist[cnt] = (float) ((x - cx) * (x - cx) + (y - cy) * (y - cy));
+                mNumCandidates = cnt + 1;
+            }
+        }
+    };
+
     public MapTile getTile(int tileX, int tileY, byte zoomLevel) {
         return mIndex.getTile(tileX, tileY, zoomLevel);
     }
@@ -22,6 +22,7 @@ import org.oscim.renderer.BufferObject;
 import org.oscim.renderer.GLViewport;
 import org.oscim.renderer.LayerRenderer;
 import org.oscim.renderer.MapRenderer;
+import org.oscim.renderer.RenderStats;
 import org.oscim.renderer.bucket.RenderBuckets;
 import org.oscim.utils.ScanBox;
 
@@ -117,10 +118,12 @@ public abstract class TileRenderer extends LayerRenderer {
             }
         }
         /* prepare tiles for rendering */
+        long start = RenderStats.begin();
         if (compileTileLayers(mDrawTiles.tiles, mDrawTiles.cnt + mProxyTileCnt) > 0) {
             mUploadSerial++;
             BufferObject.checkBufferUsage(false);
         }
+        RenderStats.end(RenderStats.COMPILE_TIME, start);
         setReady(true);
     }
 
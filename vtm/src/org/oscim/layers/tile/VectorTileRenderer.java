@@ -21,11 +21,15 @@ import org.oscim.backend.GL;
 import org.oscim.backend.canvas.Color;
 import org.oscim.core.Tile;
 import org.oscim.renderer.GLMatrix;
+import org.oscim.renderer.GLState;
 import org.oscim.renderer.GLViewport;
 import org.oscim.renderer.MapRenderer;
 import org.oscim.renderer.bucket.*;
+import org.oscim.theme.styles.LineStyle;
 import org.oscim.utils.FastMath;
+import org.oscim.utils.Parameters;
 
+import java.util.Arrays;
 import java.util.logging.Logger;
 
 import static org.oscim.backend.GLAdapter.gl;
@@ -52,6 +56,28 @@ public class VectorTileRenderer extends TileRenderer {
      */
     protected int mDrawSerial;
 
+    /* tiles, buckets and current bucket of a batch */
+    private MapTile[] mBatchTiles = new MapTile[0];
+    private RenderBuckets[] mBatchBuckets = new RenderBuckets[0];
+    private RenderBucket[] mBatchCursor = new RenderBucket[0];
+
+    /* line buckets of one style and their tile index in batch */
+    private LineBucket[] mBatchLines = new LineBucket[0];
+    private int[] mBatchIndex = new int[0];
+
+    private GLViewport mBatchViewport;
+
+    private final LineBucket.Renderer.Batch mLineBatch = new LineBucket.Renderer.Batch() {
+        @Override
+        public RenderBuckets setTile(int i) {
+            int t = mBatchIndex[i];
+            setMatrix(mBatchTiles[t], mBatchViewport);
+            mBatchBuckets[t].bind();
+            PolygonBucket.Renderer.useStencilId(t + 1);
+            return mBatchBuckets[t];
+        }
+    };
+
     @Override
     public synchronized void render(GLViewport v) {
 
@@ -91,6 +117,10 @@ public class VectorTileRenderer extends TileRenderer {
             }
         }
 
+        if (Parameters.BATCH_RENDERING && mClipMode == PolygonBucket.CLIP_STENCIL
+                && drawBatched(tiles, tileCnt, v))
+            return;
+
         /* draw visible tiles */
         for (int i = 0; i < tileCnt; i++) {
             MapTile t = tiles[i];
@@ -167,19 +197,7 @@ public class VectorTileRenderer extends TileRenderer {
             return;
         }
 
-        /* place tile relative to map position */
-        double tileScale = Tile.SIZE * v.pos.scale;
-        float x = (float) ((tile.x - v.pos.x) * tileScale);
-        float y = (float) ((tile.y - v.pos.y) * tileScale);
-
-        /* scale relative to zoom-level of this tile */
-        float scale = (float) (v.pos.scale / (1 << tile.zoomLevel));
-
-        v.mvp.setTransScale(x, y, scale / COORD_SCALE);
-        v.mvp.multiplyLhs(v.viewproj);
-
-        mClipMVP.setTransScale(x, y, scale / COORD_SCALE);
-        mClipMVP.multiplyLhs(mClipProj);
+        float scale = setMatrix(tile, v);
 
         float zoomDiv = FastMath.pow(tile.zoomLevel - v.pos.zoomLevel);
 
@@ -225,13 +243,213 @@ public class VectorTileRenderer extends TileRenderer {
             buckets.bind();
         }
 
+        drawOver(tile, v, proxyLevel, PolygonBucket.Renderer.CLIP_BIT,
+                PolygonBucket.Renderer.CLIP_BIT);
+    }
+
+    /**
+     * Draw all visible tiles level by level, so that line buckets with the
+     * same style can be drawn for all tiles with one program and style setup.
+     * Each tile region is marked with an id in the stencil buffer to clip
+     * the buckets of a tile. Polygons still use the stencil method per tile,
+     * the id is restored afterwards.
+     *
+     * @return false when the tiles cannot be batched, i.e. when they have
+     * different zoom-levels or there are too many.
+     */
+    private boolean drawBatched(MapTile[] tiles, int tileCnt, GLViewport v) {
+        int n = 0;
+        int zoom = -1;
+
+        for (int i = 0; i < tileCnt; i++) {
+            MapTile t = tiles[i];
+            if (!t.isVisible || !t.state(READY) || t.lastDraw == mDrawSerial)
+                continue;
+
+            RenderBuckets buckets = (t.holder == null)
+                    ? t.getBuckets()
+                    : t.holder.getBuckets();
+
+            if (buckets == null || buckets.vbo == null)
+                continue;
+
+            if (zoom < 0)
+                zoom = t.zoomLevel;
+            else if (zoom != t.zoomLevel || n == PolygonBucket.Renderer.CLIP_BIT - 1) {
+                clearBatch(n);
+                return false;
+            }
+
+            if (n == mBatchTiles.length) {
+                int size = Math.max(16, n * 2);
+                mBatchTiles = Arrays.copyOf(mBatchTiles, size);
+                mBatchBuckets = Arrays.copyOf(mBatchBuckets, size);
+                mBatchCursor = Arrays.copyOf(mBatchCursor, size);
+                mBatchLines = Arrays.copyOf(mBatchLines, size);
+                mBatchIndex = Arrays.copyOf(mBatchIndex, size);
+            }
+            mBatchTiles[n] = t;
+            mBatchBuckets[n] = buckets;
+            mBatchCursor[n] = buckets.get();
+            n++;
+        }
+
+        if (n == 0)
+            return false;
+
+        mBatchViewport = v;
+        float scale = (float) (v.pos.scale / (1 << zoom));
+        float zoomDiv = FastMath.pow(zoom - v.pos.zoomLevel);
+
+        /* mark tile regions */
+        for (int i = 0; i < n; i++) {
+            mBatchTiles[i].lastDraw = mDrawSerial;
+            setMatrix(mBatchTiles[i], v);
+            mBatchBuckets[i].bind();
+            PolygonBucket.Renderer.drawStencilId(mClipMVP, i + 1);
+        }
+
+        while (true) {
+            int level = Integer.MAX_VALUE;
+            for (int i = 0; i < n; i++) {
+                RenderBucket b = mBatchCursor[i];
+                if (b != null && b.getLevel() < level)
+                    level = b.getLevel();
+            }
+            if (level == Integer.MAX_VALUE)
+                break;
+
+            int numLines = 0;
+            LineStyle style = null;
+
+            for (int i = 0; i < n; i++) {
+                RenderBucket b = mBatchCursor[i];
+                if (b == null || b.getLevel() != level)
+                    continue;
+
+                if (b.type == LINE) {
+                    LineBucket lb = (LineBucket) b;
+                    if (style == null)
+                        style = lb.line;
+
+                    if (lb.line == style) {
+                        mBatchLines[numLines] = lb;
+                        mBatchIndex[numLines++] = i;
+                        mBatchCursor[i] = b.next;
+                        continue;
+                    }
+                }
+                mBatchCursor[i] = drawBatchBucket(i, b, v, scale, zoomDiv);
+            }
+
+            if (numLines > 0) {
+                GLState.test(false, true);
+                LineBucket.Renderer.drawBatch(mBatchLines, numLines, v, scale, mLineBatch);
+            }
+        }
+
+        for (int i = 0; i < n; i++) {
+            setMatrix(mBatchTiles[i], v);
+            mBatchBuckets[i].bind();
+            drawOver(mBatchTiles[i], v, 0, i + 1, 0xFF);
+        }
+
+        clearBatch(n);
+        return true;
+    }
+
+    /**
+     * Release the tiles and buckets of the first 'n' batch slots.
+     */
+    private void clearBatch(int n) {
+        Arrays.fill(mBatchTiles, 0, n, null);
+        Arrays.fill(mBatchBuckets, 0, n, null);
+        Arrays.fill(mBatchCursor, 0, n, null);
+        Arrays.fill(mBatchLines, 0, n, null);
+        mBatchViewport = null;
+    }
+
+    /**
+     * Draw bucket 'b' (and following buckets of the same type) of tile 'i'
+     * of a batch.
+     *
+     * @return the next bucket to draw
+     */
+    private RenderBucket drawBatchBucket(int i, RenderBucket b, GLViewport v,
+                                         float scale, float zoomDiv) {
+        RenderBuckets buckets = mBatchBuckets[i];
+        setMatrix(mBatchTiles[i], v);
+        buckets.bind();
+
+        if (b.type == POLYGON) {
+            PolygonBucket.Renderer.clip(mClipMVP, PolygonBucket.CLIP_STENCIL);
+            b = PolygonBucket.Renderer.draw(b, v, zoomDiv, true);
+
+            /* restore tile id */
+            buckets.bind();
+            PolygonBucket.Renderer.drawStencilId(mClipMVP, i + 1);
+            return b;
+        }
+
+        GLState.test(false, true);
+        PolygonBucket.Renderer.useStencilId(i + 1);
+
+        switch (b.type) {
+            case LINE:
+                return LineBucket.Renderer.draw(b, v, scale, buckets);
+            case TEXLINE:
+                return LineTexBucket.Renderer.draw(b, v, zoomDiv, buckets);
+            case MESH:
+                return MeshBucket.Renderer.draw(b, v);
+            case HAIRLINE:
+                return HairLineBucket.Renderer.draw(b, v);
+            case BITMAP:
+                return BitmapBucket.Renderer.draw(b, v, 1, mLayerAlpha);
+            case CIRCLE:
+                return CircleBucket.Renderer.draw(b, v);
+            default:
+                /* just in case */
+                log.severe("unknown layer " + b.type);
+                return b.next;
+        }
+    }
+
+    /**
+     * Set v.mvp and the clip matrix to draw the tile relative to the map
+     * position.
+     *
+     * @return scale relative to zoom-level of the tile
+     */
+    private float setMatrix(MapTile tile, GLViewport v) {
+        /* place tile relative to map position */
+        double tileScale = Tile.SIZE * v.pos.scale;
+        float x = (float) ((tile.x - v.pos.x) * tileScale);
+        float y = (float) ((tile.y - v.pos.y) * tileScale);
+
+        /* scale relative to zoom-level of this tile */
+        float scale = (float) (v.pos.scale / (1 << tile.zoomLevel));
+
+        v.mvp.setTransScale(x, y, scale / COORD_SCALE);
+        v.mvp.multiplyLhs(v.viewproj);
+
+        mClipMVP.setTransScale(x, y, scale / COORD_SCALE);
+        mClipMVP.multiplyLhs(mClipProj);
+
+        return scale;
+    }
+
+    /**
+     * Fade in the tile region marked by stencil 'ref' and 'mask' and
+     * clear the stencil buffer.
+     */
+    private void drawOver(MapTile tile, GLViewport v, int proxyLevel, int ref, int mask) {
         if (debugOverdraw) {
             if (tile.zoomLevel > v.pos.zoomLevel)
-                PolygonBucket.Renderer.drawOver(mClipMVP, Color.BLUE, 0.5f);
+                PolygonBucket.Renderer.drawOver(mClipMVP, Color.BLUE, 0.5f, ref, mask);
             else if (tile.zoomLevel < v.pos.zoomLevel)
-                PolygonBucket.Renderer.drawOver(mClipMVP, Color.RED, 0.5f);
+                PolygonBucket.Renderer.drawOver(mClipMVP, Color.RED, 0.5f, ref, mask);
             else
-                PolygonBucket.Renderer.drawOver(mClipMVP, Color.GREEN, 0.5f);
+                PolygonBucket.Renderer.drawOver(mClipMVP, Color.GREEN, 0.5f, ref, mask);
 
             return;
         }
@@ -252,12 +470,12 @@ public class VectorTileRenderer extends TileRenderer {
         long dTime = MapRenderer.frametime - fadeTime;
 
         if (mOverdrawColor == 0 || dTime > FADE_TIME) {
-            PolygonBucket.Renderer.drawOver(mClipMVP, 0, 1);
+            PolygonBucket.Renderer.drawOver(mClipMVP, 0, 1, ref, mask);
             return;
         }
 
         float fade = 1 - dTime / FADE_TIME;
-        PolygonBucket.Renderer.drawOver(mClipMVP, mOverdrawColor, fade * fade);
+        PolygonBucket.Renderer.drawOver(mClipMVP, mOverdrawColor, fade * fade, ref, mask);
 
         MapRenderer.animate();
     }
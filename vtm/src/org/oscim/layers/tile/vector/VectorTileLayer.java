@@ -19,6 +19,8 @@
 package org.oscim.layers.tile.vector;
 
 import org.oscim.core.MapElement;
+import org.oscim.core.MapPosition;
+import org.oscim.event.Event;
 import org.oscim.layers.tile.*;
 import org.oscim.map.Map;
 import org.oscim.renderer.bucket.RenderBuckets;
@@ -26,6 +28,7 @@ import org.oscim.theme.IRenderTheme;
 import org.oscim.theme.styles.RenderStyle;
 import org.oscim.tiling.TileSource;
 import org.oscim.tiling.TileSource.OpenResult;
+import org.oscim.tiling.cache.MapElementCache;
 import org.oscim.utils.pool.Inlist.List;
 import org.oscim.utils.pool.LList;
 
@@ -45,6 +48,8 @@ public class VectorTileLayer extends TileLayer {
 
     private IRenderTheme mTheme;
 
+    private MapElementCache mElementCache;
+
     public VectorTileLayer(Map map, TileSource tileSource) {
         this(map, new TileManager(map,
                         100),
@@ -124,6 +129,8 @@ public class VectorTileLayer extends TileLayer {
         mTileManager.clearJobs();
 
         mTheme = theme;
+        if (mElementCache != null)
+            mElementCache.clear();
         //    for (TileLoader l : mTileLoader)
         //    ((VectorTileLoader) l).setRenderTheme(theme);
 
@@ -136,6 +143,29 @@ public class VectorTileLayer extends TileLayer {
         return mTheme;
     }
 
+    /**
+     * Set a {@link MapElementCache} to keep the decoded data of tiles, which
+     * were removed from the tile cache. The cache is cleared on
+     * {@link Map#CLEAR_EVENT} and theme changes.
+     *
+     * @param cache the cache or null to disable it.
+     */
+    public void setElementCache(MapElementCache cache) {
+        mElementCache = cache;
+    }
+
+    public MapElementCache getElementCache() {
+        return mElementCache;
+    }
+
+    @Override
+    public void onMapEvent(Event event, MapPosition mapPosition) {
+        if (event == Map.CLEAR_EVENT && mElementCache != null)
+            mElementCache.clear();
+
+        super.onMapEvent(event, mapPosition);
+    }
+
     /**
      * Hook to intercept tile data processing. Called concurently by tile
      * loader threads, so dont keep tile specific state.
@@ -21,12 +21,14 @@ import org.oscim.core.GeometryBuffer.GeometryType;
 import org.oscim.core.*;
 import org.oscim.layers.tile.MapTile;
 import org.oscim.layers.tile.TileLoader;
+import org.oscim.renderer.RenderStats;
 import org.oscim.renderer.bucket.*;
 import org.oscim.theme.IRenderTheme;
 import org.oscim.theme.RenderTheme;
 import org.oscim.theme.styles.*;
 import org.oscim.tiling.ITileDataSource;
 import org.oscim.tiling.QueryResult;
+import org.oscim.tiling.cache.MapElementCache;
 import org.oscim.utils.Constants;
 
 import java.util.logging.Logger;
@@ -73,6 +75,19 @@ public class VectorTileLoader extends TileLoader implements RenderStyle.Callback
 
     private final VectorTileLayer mTileLayer;
 
+    /**
+     * sink of the element cache of the layer, when used
+     */
+    private MapElementCache.CacheSink mCacheSink;
+
+    /**
+     * start time of the current tile and time spent in theme matching and
+     * bucket building, only measured when RenderStats are enabled
+     */
+    private long mLoadStart;
+    private long mMatchTime;
+    private long mBuildTime;
+
     public VectorTileLoader(VectorTileLayer tileLayer) {
         super(tileLayer.getManager());
         mTileLayer = tileLayer;
@@ -116,9 +131,23 @@ public class VectorTileLoader extends TileLoader implements RenderStyle.Callback
         mBuckets = new RenderBuckets();
         tile.data = mBuckets;
 
+        mLoadStart = RenderStats.begin();
+        mMatchTime = 0;
+        mBuildTime = 0;
+
         try {
-            /* query data source, which calls process() callback */
-            mTileDataSource.query(tile, this);
+            MapElementCache cache = mTileLayer.getElementCache();
+            if (cache == null) {
+                /* query data source, which calls process() callback */
+                mTileDataSource.query(tile, this);
+            } else {
+                if (mCacheSink == null || mCacheSink.getCache() != cache)
+                    mCacheSink = cache.newSink();
+
+                /* load from cache or query data source and record tile */
+                if (!mCacheSink.load(tile, renderTheme, this))
+                    mTileDataSource.query(tile, mCacheSink.record(tile, renderTheme, this));
+            }
         } catch (NullPointerException e) {
             log.fine("NPE " + tile + " " + e);
             e.printStackTrace();
@@ -134,12 +163,31 @@ public class VectorTileLoader extends TileLoader implements RenderStyle.Callback
     public void completed(QueryResult result) {
         boolean ok = (result == QueryResult.SUCCESS);
 
-        mTileLayer.callHooksComplete(mTile, ok);
+        long start = mLoadStart != 0 ? System.nanoTime() : 0;
+
+        beginCpuWork();
+        try {
+            mTileLayer.callHooksComplete(mTile, ok);
+
+            /* finish buckets- tessellate and cleanup on worker-thread */
+            mBuckets.prepare();
 
-        /* finish buckets- tessellate and cleanup on worker-thread */
-        mBuckets.prepare();
+            /* pack vertex data, the render-thread only uploads it */
+            if (ok)
+                mBuckets.pack(true);
+        } finally {
+            endCpuWork();
+        }
         clearState();
 
+        if (start != 0) {
+            long buildTime = mBuildTime + System.nanoTime() - start;
+            RenderStats.TILE_DECODE.record(start - mLoadStart - mMatchTime - mBuildTime);
+            RenderStats.TILE_MATCH.record(mMatchTime);
+            RenderStats.TILE_BUILD.record(buildTime);
+            mLoadStart = 0;
+        }
+
         super.completed(result);
     }
 
@@ -179,9 +227,13 @@ public class VectorTileLoader extends TileLoader implements RenderStyle.Callback
 
     @Override
     public void process(MapElement element) {
-        if (isCanceled() || !mTile.state(LOADING))
+        if (isLoadCanceled() || !mTile.state(LOADING))
             return;
 
+        /* decoding has started, elements are matched and built until
+         * completed() */
+        beginCpuWork();
+
         if (mTileLayer.callProcessHooks(mTile, mBuckets, element))
             return;
 
@@ -191,12 +243,24 @@ public class VectorTileLoader extends TileLoader implements RenderStyle.Callback
 
         mElement = element;
 
-        /* get and apply render instructions */
+        long start = mLoadStart != 0 ? System.nanoTime() : 0;
+
+        /* get render instructions */
+        RenderStyle[] style = renderTheme.matchElement(element.type, tags, mTile.zoomLevel);
+
+        long matched = start != 0 ? System.nanoTime() : 0;
+
+        /* apply render instructions */
         if (element.type == GeometryType.POINT) {
-            renderNode(renderTheme.matchElement(element.type, tags, mTile.zoomLevel));
+            renderNode(style);
         } else {
             mCurBucket = getValidLayer(element.layer) * renderTheme.getLevels() * (element.level > 0 ? element.level : 1);
-            renderWay(renderTheme.matchElement(element.type, tags, mTile.zoomLevel));
+            renderWay(style);
+        }
+
+        if (start != 0) {
+            mMatchTime += matched - start;
+            mBuildTime += System.nanoTime() - matched;
         }
         clearState();
     }
@@ -40,6 +40,11 @@ final class Label extends TextItem {
     public int active;
     public OBB2D bbox;
 
+    /**
+     * position in the list of placed labels, 0 when not placed
+     */
+    int seq;
+
     public Label clone(TextItem ti) {
         this.label = ti.label;
         this.text = ti.text;
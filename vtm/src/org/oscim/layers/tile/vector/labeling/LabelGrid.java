@@ -0,0 +1,210 @@
+/*
+ * This file is part of the OpenScienceMap project (http://www.opensciencemap.org).
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.oscim.layers.tile.vector.labeling;
+
+import java.util.Arrays;
+
+/**
+ * Spatial hash of placed labels over screen space, so that a candidate
+ * label is only tested against labels nearby.
+ * <p>
+ * Labels are added to all cells covered by their bounds. Cells are hashed
+ * to a fixed number of buckets, collisions only add candidates. Labels
+ * with the same text are hashed to separate buckets for the repeat
+ * proximity check, which does not depend on the position.
+ * <p>
+ * Removed labels are not taken out of the buckets, {@link Label#seq} is
+ * 0 for labels which are not placed.
+ */
+final class LabelGrid {
+
+    static final int CELL_SIZE = 64;
+
+    private static final int BUCKETS = 2048;
+    private static final int MASK = BUCKETS - 1;
+
+    /**
+     * Labels covering more cells are added to the overflow bucket.
+     */
+    private static final int MAX_CELLS = 32;
+
+    private final Label[][] mCells = new Label[BUCKETS][];
+    private final int[] mCellCount = new int[BUCKETS];
+
+    private final Label[][] mTexts = new Label[BUCKETS][];
+    private final int[] mTextCount = new int[BUCKETS];
+
+    private Label[] mOverflow = new Label[8];
+    private int mOverflowCount;
+
+    /* labels by seq */
+    private Label[] mLabels = new Label[64];
+
+    /* labels found by query, bit per seq */
+    private long[] mFound = new long[1];
+    private int mFoundMin;
+    private int mFoundMax;
+
+    /* result of query, seq of labels */
+    private int[] mResult = new int[32];
+    private int mResultCount;
+
+    void clear() {
+        for (int i = 0; i < BUCKETS; i++) {
+            if (mCellCount[i] > 0)
+                Arrays.fill(mCells[i], 0, mCellCount[i], null);
+            if (mTextCount[i] > 0)
+                Arrays.fill(mTexts[i], 0, mTextCount[i], null);
+        }
+        Arrays.fill(mCellCount, 0);
+        Arrays.fill(mTextCount, 0);
+        Arrays.fill(mOverflow, 0, mOverflowCount, null);
+        mOverflowCount = 0;
+        Arrays.fill(mLabels, null);
+        mResultCount = 0;
+    }
+
+    /**
+     * Add label with the screen bounds. {@link Label#seq} must be set.
+     */
+    void add(Label l, float minX, float minY, float maxX, float maxY) {
+        if (l.seq >= mLabels.length) {
+            mLabels = Arrays.copyOf(mLabels, Math.max(l.seq + 1, mLabels.length * 2));
+            mFound = new long[(mLabels.length >> 6) + 1];
+        }
+        mLabels[l.seq] = l;
+
+        if (l.label != null)
+            addTo(mTexts, mTextCount, l.label.hashCode() & MASK, l);
+
+        /* also catches NaN */
+        if (!isSmall(minX, minY, maxX, maxY)) {
+            if (mOverflowCount == mOverflow.length)
+                mOverflow = Arrays.copyOf(mOverflow, mOverflowCount * 2);
+            mOverflow[mOverflowCount++] = l;
+            return;
+        }
+
+        int x1 = cell(minX);
+        int y1 = cell(minY);
+        int x2 = cell(maxX);
+        int y2 = cell(maxY);
+
+        for (int y = y1; y <= y2; y++)
+            for (int x = x1; x <= x2; x++)
+                addTo(mCells, mCellCount, hash(x, y), l);
+    }
+
+    /**
+     * Collect placed labels which may overlap the bounds and, when
+     * 'text' is not null, labels with this text.
+     *
+     * @return number of labels, see {@link #get(int)}. Labels are sorted
+     * by descending {@link Label#seq}, i.e. in the order of the list of
+     * placed labels.
+     */
+    int query(float minX, float minY, float maxX, float maxY, String text) {
+        mFoundMin = Integer.MAX_VALUE;
+        mFoundMax = -1;
+
+        if (text != null) {
+            int h = text.hashCode() & MASK;
+            collect(mTexts[h], mTextCount[h]);
+        }
+
+        collect(mOverflow, mOverflowCount);
+
+        if (!isSmall(minX, minY, maxX, maxY)) {
+            /* large query, test all */
+            for (int i = 0; i < BUCKETS; i++)
+                collect(mCells[i], mCellCount[i]);
+        } else {
+            int x1 = cell(minX);
+            int y1 = cell(minY);
+            int x2 = cell(maxX);
+            int y2 = cell(maxY);
+
+            for (int y = y1; y <= y2; y++) {
+                for (int x = x1; x <= x2; x++) {
+                    int h = hash(x, y);
+                    collect(mCells[h], mCellCount[h]);
+                }
+            }
+        }
+
+        /* seq in descending order */
+        int n = 0;
+        for (int w = mFoundMax; w >= mFoundMin; w--) {
+            long bits = mFound[w];
+            if (bits == 0)
+                continue;
+            mFound[w] = 0;
+
+            while (bits != 0) {
+                int b = 63 - Long.numberOfLeadingZeros(bits);
+                bits &= ~(1L << b);
+
+                if (n == mResult.length)
+                    mResult = Arrays.copyOf(mResult, n * 2);
+                mResult[n++] = (w << 6) + b;
+            }
+        }
+        mResultCount = n;
+        return n;
+    }
+
+    Label get(int i) {
+        return mLabels[mResult[i]];
+    }
+
+    private void collect(Label[] bucket, int count) {
+        for (int i = 0; i < count; i++) {
+            int seq = bucket[i].seq;
+            if (seq == 0)
+                continue;
+
+            int w = seq >> 6;
+            mFound[w] |= 1L << seq;
+            if (w < mFoundMin)
+                mFoundMin = w;
+            if (w > mFoundMax)
+                mFoundMax = w;
+        }
+    }
+
+    private static void addTo(Label[][] buckets, int[] counts, int h, Label l) {
+        Label[] b = buckets[h];
+        int n = counts[h];
+        if (b == null)
+            b = buckets[h] = new Label[4];
+        else if (n == b.length)
+            b = buckets[h] = Arrays.copyOf(b, n * 2);
+
+        b[n] = l;
+        counts[h] = n + 1;
+    }
+
+    private static boolean isSmall(float minX, float minY, float maxX, float maxY) {
+        return maxX - minX < MAX_CELLS * CELL_SIZE && maxY - minY < MAX_CELLS * CELL_SIZE;
+    }
+
+    private static int cell(float v) {
+        return (int) Math.floor(v / CELL_SIZE);
+    }
+
+    private static int hash(int x, int y) {
+        return (x * 73856093 ^ y * 19349663) & MASK;
+    }
+}
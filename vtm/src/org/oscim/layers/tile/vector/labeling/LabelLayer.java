@@ -29,6 +29,8 @@ import org.oscim.layers.tile.ZoomLimiter;
 import org.oscim.layers.tile.vector.VectorTileLayer;
 import org.oscim.map.Map;
 import org.oscim.map.Viewport;
+import org.oscim.renderer.RenderStats;
+import org.oscim.renderer.bucket.GlyphAtlas;
 import org.oscim.utils.async.SimpleWorker;
 import java.util.logging.Logger;
 
@@ -45,6 +47,8 @@ public class LabelLayer extends Layer implements Map.UpdateListener, TileManager
     private static final int ZOOM_LIMIT = Viewport.MAX_ZOOM_LEVEL;
 
     private final LabelPlacement mLabelPlacer;
+    /* glyphs of the labels of this layer */
+    private final GlyphAtlas mGlyphAtlas;
     private final Worker mWorker;
     private final ZoomLimiter mZoomLimiter;
 
@@ -64,6 +68,7 @@ public class LabelLayer extends Layer implements Map.UpdateListener, TileManager
                 map.viewport().getMaxZoomLevel(), zoomLimit);
 
         mLabelPlacer = new LabelPlacement(map, l.tileRenderer(), mZoomLimiter);
+        mGlyphAtlas = new GlyphAtlas();
         mWorker = new Worker(map);
         mRenderer = new TextRenderer(mWorker);
 
@@ -74,13 +79,17 @@ public class LabelLayer extends Layer implements Map.UpdateListener, TileManager
     class Worker extends SimpleWorker<LabelTask> {
 
         public Worker(Map map) {
-            super(map, 50, new LabelTask(), new LabelTask());
+            super(map, 50, new LabelTask(mGlyphAtlas), new LabelTask(mGlyphAtlas));
         }
 
         @Override
         public boolean doWork(LabelTask t) {
 
-            if (mLabelPlacer.updateLabels(t)) {
+            long start = RenderStats.begin();
+            boolean changed = mLabelPlacer.updateLabels(t);
+            RenderStats.end(RenderStats.LABEL_TIME, start);
+
+            if (changed) {
 	        log.info("VTM label layer - render");
                 mMap.render();
                 return true;
@@ -128,14 +137,18 @@ public class LabelLayer extends Layer implements Map.UpdateListener, TileManager
     @Override
     public void onDetach() {
         mWorker.cancel(true);
+        mGlyphAtlas.clear();
         super.onDetach();
     }
 
     @Override
     public void onMapEvent(Event event, MapPosition mapPosition) {
 
-        if (event == Map.CLEAR_EVENT)
+        if (event == Map.CLEAR_EVENT) {
             mWorker.cancel(true);
+            /* styles of a previous theme */
+            mGlyphAtlas.clear();
+        }
 
         if (!isEnabled())
             return;
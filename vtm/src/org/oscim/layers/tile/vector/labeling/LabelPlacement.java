@@ -36,6 +36,7 @@ import org.oscim.utils.Parameters;
 import org.oscim.utils.geom.OBB2D;
 
 import java.util.logging.Logger;
+import java.util.Arrays;
 import java.util.HashSet;
 import java.util.Set;
 
@@ -55,6 +56,16 @@ public class LabelPlacement {
     private static final float MIN_CAPTION_DIST = 5;
     private static final float MIN_WAY_DIST = 3;
 
+    /**
+     * distance of way labels to check for overlaps
+     */
+    private static final float BBOX_DIST = 100;
+
+    /**
+     * max rotation in degree for incremental updates
+     */
+    private static final float MAX_INCREMENTAL_ROTATION = 5;
+
     /**
      * thread local pool of for unused label items
      */
@@ -70,6 +81,14 @@ public class LabelPlacement {
      */
     private Label mLabels;
 
+    /**
+     * current labels by screen position
+     */
+    private final LabelGrid mGrid = new LabelGrid();
+    private int mSeq;
+    /* max width + height of bbox of current labels */
+    private float mMaxExtent;
+
     private float mSquareRadius;
 
     /**
@@ -81,6 +100,30 @@ public class LabelPlacement {
     /* Zoom level of current tiles (initial value doesn't matter) */
     private Integer mZoom = Viewport.MIN_ZOOM_LEVEL;
 
+    /* state of the last update, for incremental updates */
+    private boolean mPlaced;
+    private int mLastZoom;
+    private double mLastScale;
+    private float mLastBearing;
+    private float mLastRadius;
+    private double mLastTileX;
+    private double mLastTileY;
+    /* position of the last full update */
+    private double mFullTileX;
+    private double mFullTileY;
+    private float mFullBearing;
+    /* labeled tiles and their data */
+    private MapTile[] mLastTiles = new MapTile[0];
+    private LabelTileData[] mLastData = new LabelTileData[0];
+    private int mLastCnt;
+    /* extents (minX, minY, maxX, maxY) of labels which were removed in
+     * the last and the current update, labels of known tiles within
+     * them may be placed now. the first mFreedLast are from the last
+     * update. */
+    private float[] mFreed = new float[4 * 16];
+    private int mFreedCnt;
+    private int mFreedLast;
+
     public LabelPlacement(Map map, TileRenderer tileRenderer, ZoomLimiter zoomLimiter) {
         mMap = map;
         mTileRenderer = tileRenderer;
@@ -92,6 +135,8 @@ public class LabelPlacement {
      */
     private Label removeLabel(Label l) {
         Label ret = (Label) l.next;
+        l.seq = 0;
+        addFreed(l);
         mLabels = (Label) mPool.release(mLabels, l);
         return ret;
     }
@@ -99,25 +144,126 @@ public class LabelPlacement {
     public void addLabel(Label l) {
         l.next = mLabels;
         mLabels = l;
+        l.seq = ++mSeq;
+
+        if (l.bbox == null) {
+            mGrid.add(l, Float.NaN, Float.NaN, Float.NaN, Float.NaN);
+            return;
+        }
+
+        float[] v = l.bbox.vec;
+        float minX = Math.min(Math.min(v[0], v[2]), Math.min(v[4], v[6]));
+        float minY = Math.min(Math.min(v[1], v[3]), Math.min(v[5], v[7]));
+        float maxX = Math.max(Math.max(v[0], v[2]), Math.max(v[4], v[6]));
+        float maxY = Math.max(Math.max(v[1], v[3]), Math.max(v[5], v[7]));
+        mMaxExtent = Math.max(mMaxExtent, (maxX - minX) + (maxY - minY));
+
+        if (!l.text.caption) {
+            minX = Math.min(minX, Math.min(l.x1, l.x2));
+            minY = Math.min(minY, Math.min(l.y1, l.y2));
+            maxX = Math.max(maxX, Math.max(l.x1, l.x2));
+            maxY = Math.max(maxY, Math.max(l.y1, l.y2));
+        }
+        mGrid.add(l, minX, minY, maxX, maxY);
+    }
+
+    /**
+     * Remember the extent of a label which was placed before and is
+     * removed now.
+     */
+    private void addFreed(Label l) {
+        if (l.bbox == null)
+            return;
+
+        if (mFreed.length < (mFreedCnt + 1) * 4)
+            mFreed = Arrays.copyOf(mFreed, mFreed.length * 2);
+
+        float[] v = l.bbox.vec;
+        float minX = Math.min(Math.min(v[0], v[2]), Math.min(v[4], v[6]));
+        float minY = Math.min(Math.min(v[1], v[3]), Math.min(v[5], v[7]));
+        float maxX = Math.max(Math.max(v[0], v[2]), Math.max(v[4], v[6]));
+        float maxY = Math.max(Math.max(v[1], v[3]), Math.max(v[5], v[7]));
+
+        if (!l.text.caption) {
+            minX = Math.min(minX, Math.min(l.x1, l.x2));
+            minY = Math.min(minY, Math.min(l.y1, l.y2));
+            maxX = Math.max(maxX, Math.max(l.x1, l.x2));
+            maxY = Math.max(maxY, Math.max(l.y1, l.y2));
+        }
+        int i = mFreedCnt++ * 4;
+        mFreed[i] = minX;
+        mFreed[i + 1] = minY;
+        mFreed[i + 2] = maxX;
+        mFreed[i + 3] = maxY;
+    }
+
+    /**
+     * Keep the extents of labels removed in the last update, moved by
+     * the offset ox, oy, and drop the older ones.
+     */
+    private void moveFreed(float ox, float oy) {
+        int n = 0;
+        for (int i = mFreedLast * 4, end = mFreedCnt * 4; i < end; i += 4, n += 4) {
+            mFreed[n] = mFreed[i] - ox;
+            mFreed[n + 1] = mFreed[i + 1] - oy;
+            mFreed[n + 2] = mFreed[i + 2] - ox;
+            mFreed[n + 3] = mFreed[i + 3] - oy;
+        }
+        mFreedCnt = mFreedLast = n / 4;
+    }
+
+    /**
+     * @return true when a label with extent minX, minY, maxX, maxY may
+     * have been rejected by a label that is removed now, i.e. it is
+     * within the overlap or repeat distance of a removed label.
+     */
+    private boolean isFreed(float minX, float minY, float maxX, float maxY) {
+        float d = Math.max(BBOX_DIST, (float) Parameters.REPEAT_PROXIMITY);
+        for (int i = 0, end = mFreedCnt * 4; i < end; i += 4) {
+            if (minX < mFreed[i + 2] + d && maxX > mFreed[i] - d
+                    && minY < mFreed[i + 3] + d && maxY > mFreed[i + 1] - d)
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Query labels which may overlap the bbox of l.
+     * <p>
+     * OBB2D.overlaps() only tests the axes of l, so labels which are
+     * within their own extent of the bbox of l have to be tested too.
+     */
+    private int queryOverlaps(Label l) {
+        float[] v = l.bbox.vec;
+        float d = mMaxExtent;
+        return mGrid.query(Math.min(Math.min(v[0], v[2]), Math.min(v[4], v[6])) - d,
+                Math.min(Math.min(v[1], v[3]), Math.min(v[5], v[7])) - d,
+                Math.max(Math.max(v[0], v[2]), Math.max(v[4], v[6])) + d,
+                Math.max(Math.max(v[1], v[3]), Math.max(v[5], v[7])) + d,
+                null);
     }
 
     private byte checkOverlap(Label l) {
 
-  //      log.info("DWN checkOverlap for label " + l.label);
-        for (Label o = mLabels; o != null; ) {
+        /* only labels within BBOX_DIST or with the same text are
+         * considered, see Label.bboxOverlaps() */
+        int n = mGrid.query(Math.min(l.x1, l.x2) - BBOX_DIST,
+                Math.min(l.y1, l.y2) - BBOX_DIST,
+                Math.max(l.x1, l.x2) + BBOX_DIST,
+                Math.max(l.y1, l.y2) + BBOX_DIST,
+                l.label);
+
+        for (int i = 0; i < n; i++) {
+            Label o = mGrid.get(i);
+
+            /* removed */
+            if (o.seq == 0)
+                continue;
+
             //check bounding box and repeat proximity
- //           log.info("DWN check bbox overlap for label " + o.label);
-            if (!Label.bboxOverlaps(l, o, 100)) {
-		if (!Label.withinRepeatProximity(l, o)) {
-//		    log.info("DWN Label is NOT within repeat proximity to " + o.label);
-                    o = (Label) o.next;
-                    continue;
-		} else {
-//		    log.info("DWN Label is within repeat proximity to " + o.label);
-		}
-            } else {
-//                log.info("DWN bounding box overlaps bbox overlap for label " + o.label);
-	    }
+            if (!Label.bboxOverlaps(l, o, BBOX_DIST)
+                    && !Label.withinRepeatProximity(l, o))
+                continue;
 
             if (Label.shareText(l, o)) {
                 // keep the label that was active earlier
@@ -126,7 +272,7 @@ public class LabelPlacement {
 
                 // keep the label with longer segment
                 if (o.length < l.length) {
-                    o = removeLabel(o);
+                    removeLabel(o);
                     continue;
                 }
                 // keep other
@@ -140,18 +286,23 @@ public class LabelPlacement {
                         && (o.text.priority > l.text.priority
                         || o.length < l.length)) {
 
-                    o = removeLabel(o);
+                    removeLabel(o);
                     continue;
                 }
                 // keep other
                 return 1;
             }
-            o = (Label) o.next;
         }
         return 0;
     }
 
     private boolean isVisible(float x, float y) {
+        return isVisible(x, y, 0, 0);
+    }
+
+    private boolean isVisible(float x, float y, float ox, float oy) {
+        x += ox;
+        y += oy;
         // rough filter
         float dist = x * x + y * y;
         if (dist > mSquareRadius)
@@ -161,16 +312,26 @@ public class LabelPlacement {
     }
 
     private boolean wayIsVisible(Label ti) {
+        return wayIsVisible(ti, 0, 0);
+    }
+
+    private boolean wayIsVisible(Label ti, float ox, float oy) {
         // rough filter
-        float dist = ti.x * ti.x + ti.y * ti.y;
+        float x = ti.x + ox;
+        float y = ti.y + oy;
+        float dist = x * x + y * y;
         if (dist < mSquareRadius)
             return true;
 
-        dist = ti.x1 * ti.x1 + ti.y1 * ti.y1;
+        x = ti.x1 + ox;
+        y = ti.y1 + oy;
+        dist = x * x + y * y;
         if (dist < mSquareRadius)
             return true;
 
-        dist = ti.x2 * ti.x2 + ti.y2 * ti.y2;
+        x = ti.x2 + ox;
+        y = ti.y2 + oy;
+        dist = x * x + y * y;
         if (dist < mSquareRadius)
             return true;
 
@@ -180,6 +341,7 @@ public class LabelPlacement {
     private Label getLabel() {
         Label l = (Label) mPool.get();
         l.active = Integer.MAX_VALUE;
+        l.seq = 0;
 
         return l;
     }
@@ -206,8 +368,13 @@ public class LabelPlacement {
         l.y2 = l.y + h;
     }
 
+    /**
+     * @param known  tile was labeled in the last update, only labels which
+     *               were not visible at offset ox, oy or which are near a
+     *               removed label are added.
+     */
     private Label addWayLabels(MapTile t, Label l, float dx, float dy,
-                               double scale) {
+                               double scale, boolean known, float ox, float oy) {
         log.info("DWN addWayLabels");
         LabelTileData ld = getLabels(t);
         if (ld == null)
@@ -233,6 +400,11 @@ public class LabelPlacement {
             if (!wayIsVisible(l))
                 continue;
 
+            if (known && wayIsVisible(l, ox, oy)
+                    && !isFreed(Math.min(l.x1, l.x2), Math.min(l.y1, l.y2),
+                    Math.max(l.x1, l.x2), Math.max(l.y1, l.y2)))
+                continue;
+
             byte overlaps = -1;
 
             if (l.bbox == null)
@@ -263,15 +435,18 @@ public class LabelPlacement {
         return l;
     }
 
+    /**
+     * @param known see {@link #addWayLabels}
+     */
     private Label addNodeLabels(MapTile t, Label l, float dx, float dy,
-                                double scale, float cos, float sin) {
+                                double scale, float cos, float sin,
+                                boolean known, float ox, float oy) {
 
         log.info("DWN addNodeLabels");
         LabelTileData ld = getLabels(t);
         if (ld == null)
             return l;
 
-        O:
         for (TextItem ti : ld.labels) {
 	    log.info("DWN text = " + ti.label);
             if (!ti.text.caption) {
@@ -289,6 +464,11 @@ public class LabelPlacement {
             if (!isVisible(l.x, l.y))
                 continue;
 
+            if (known && isVisible(l.x, l.y, ox, oy)
+                    && !isFreed(l.x - l.width, l.y - l.width,
+                    l.x + l.width, l.y + l.width))
+                continue;
+
             if (l.bbox == null)
                 l.bbox = new OBB2D();
 
@@ -297,16 +477,8 @@ public class LabelPlacement {
                     l.text.fontHeight + MIN_CAPTION_DIST,
                     l.text.dy);
 
-            for (Label o = mLabels; o != null; ) {
-                if (l.bbox.overlaps(o.bbox)) {
-                    if (l.text.priority < o.text.priority) {
-                        o = removeLabel(o);
-                        continue;
-                    }
-                    continue O;
-                }
-                o = (Label) o.next;
-            }
+            if (captionOverlaps(l))
+                continue;
 
             addLabel(l);
             l.item = TextItem.copy(ti);
@@ -319,6 +491,175 @@ public class LabelPlacement {
         return l;
     }
 
+    /**
+     * Check caption l against current labels. Labels with lower priority
+     * are removed.
+     *
+     * @return true when l overlaps a label
+     */
+    private boolean captionOverlaps(Label l) {
+        for (int i = 0, n = queryOverlaps(l); i < n; i++) {
+            Label o = mGrid.get(i);
+            if (o.seq == 0)
+                continue;
+
+            if (l.bbox.overlaps(o.bbox)) {
+                if (l.text.priority < o.text.priority) {
+                    removeLabel(o);
+                    continue;
+                }
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Set the position of a label of a previous update relative to the
+     * current map position.
+     *
+     * @param sscale scale of the label's tile zoom-level.
+     */
+    private static void moveLabel(Label l, float sscale, int zoom, double tileX, double tileY,
+                                  int maxx) {
+        float div = FastMath.pow(l.tileZ - zoom);
+
+        float dx = (float) (l.tileX * Tile.SIZE - tileX * div);
+        float dy = (float) (l.tileY * Tile.SIZE - tileY * div);
+
+        dx = flipLongitude(dx, maxx);
+        l.x = (dx + l.item.x) * sscale;
+        l.y = (dy + l.item.y) * sscale;
+    }
+
+    /**
+     * Add labels of the last update again at the current position. Way
+     * labels keep their relative position, so only captions are checked
+     * for overlaps when the map was rotated.
+     */
+    private void keepLabels(Label l, MapPosition pos, int zoom, double tileX, double tileY,
+                            int maxx, float cos, float sin, boolean rotated) {
+        Label captions = null;
+        Label last = null;
+
+        while (l != null) {
+            float sscale = (float) (pos.scale / (1 << l.tileZ));
+            moveLabel(l, sscale, zoom, tileX, tileY, maxx);
+
+            if (l.text.caption) {
+                l.bbox.setNormalized(l.x, l.y, cos, -sin,
+                        l.width + MIN_CAPTION_DIST,
+                        l.text.fontHeight + MIN_CAPTION_DIST,
+                        l.text.dy);
+
+                if (!isVisible(l.x, l.y)) {
+                    addFreed(l);
+                    l = mPool.releaseAndGetNext(l);
+                    continue;
+                }
+
+                /* add after way labels, keep order */
+                Label ll = l;
+                l = (Label) l.next;
+                ll.next = null;
+                if (last == null)
+                    captions = ll;
+                else
+                    last.next = ll;
+                last = ll;
+                continue;
+            }
+
+            placeLabelFrom(l, l.item);
+
+            l.bbox.set(l.x, l.y, l.x1, l.y1,
+                    l.width + MIN_WAY_DIST,
+                    l.text.fontHeight + MIN_WAY_DIST);
+
+            if (!wayIsVisible(l)) {
+                addFreed(l);
+                l = mPool.releaseAndGetNext(l);
+                continue;
+            }
+
+            Label ll = l;
+            l = (Label) l.next;
+            ll.next = null;
+            addLabel(ll);
+        }
+
+        for (l = captions; l != null; ) {
+            if (rotated && captionOverlaps(l)) {
+                addFreed(l);
+                l = mPool.releaseAndGetNext(l);
+                continue;
+            }
+            Label ll = l;
+            l = (Label) l.next;
+            ll.next = null;
+            addLabel(ll);
+        }
+    }
+
+    /**
+     * Labels can be updated incrementally when only the position or, by a
+     * small amount, the rotation changed since the last full update. Tiles
+     * with new data and moving farther than a tile require a full update.
+     */
+    private boolean isIncremental(int zoom, MapPosition pos, double tileX, double tileY,
+                                  MapTile[] tiles, int cnt) {
+        if (!Parameters.INCREMENTAL_LABELS || !mPlaced)
+            return false;
+
+        if (zoom != mLastZoom || pos.scale != mLastScale || mSquareRadius != mLastRadius)
+            return false;
+
+        float rotation = Math.abs(pos.bearing - mFullBearing);
+        if (rotation > 180)
+            rotation = 360 - rotation;
+        if (rotation > MAX_INCREMENTAL_ROTATION)
+            return false;
+
+        double scale = pos.scale / (1 << zoom);
+        if (Math.abs(tileX - mFullTileX) * scale > Tile.SIZE
+                || Math.abs(tileY - mFullTileY) * scale > Tile.SIZE)
+            return false;
+
+        for (int i = 0; i < cnt; i++) {
+            int j = findLastTile(tiles[i]);
+            if (j >= 0 && mLastData[j] != getLabels(tiles[i]))
+                return false;
+        }
+        return true;
+    }
+
+    private int findLastTile(MapTile t) {
+        for (int i = 0; i < mLastCnt; i++) {
+            if (mLastTiles[i] == t)
+                return i;
+        }
+        return -1;
+    }
+
+    private void setLastTiles(MapTile[] tiles, int cnt) {
+        if (mLastTiles.length < cnt) {
+            mLastTiles = new MapTile[cnt];
+            mLastData = new LabelTileData[cnt];
+        }
+        int n = 0;
+        for (int i = 0; i < cnt; i++) {
+            MapTile t = tiles[i];
+            if (!t.state(READY | NEW_DATA))
+                continue;
+            mLastTiles[n] = t;
+            mLastData[n] = getLabels(t);
+            n++;
+        }
+        Arrays.fill(mLastTiles, n, mLastTiles.length, null);
+        Arrays.fill(mLastData, n, mLastData.length, null);
+        mLastCnt = n;
+    }
+
     boolean updateLabels(LabelTask work) {
 
         /* get current tiles */
@@ -397,15 +738,33 @@ public class LabelPlacement {
         double tileX = (pos.x * (Tile.SIZE << zoom));
         double tileY = (pos.y * (Tile.SIZE << zoom));
 
+        boolean incremental = isIncremental(zoom, pos, tileX, tileY, tiles, cnt);
+
+        /* offset to positions of the last update */
+        float ox = (float) ((tileX - mLastTileX) * scale);
+        float oy = (float) ((tileY - mLastTileY) * scale);
+
+        if (incremental)
+            moveFreed(ox, oy);
+        else
+            mFreedCnt = mFreedLast = 0;
+
         /* put current label to previous label */
         Label prevLabels = mLabels;
 
         /* new labels */
         mLabels = null;
+        mGrid.clear();
+        mSeq = 0;
+        mMaxExtent = 0;
         Label l = null;
 
+        if (incremental)
+            keepLabels(prevLabels, pos, zoom, tileX, tileY, maxx, cos, sin,
+                    pos.bearing != mLastBearing);
+
         /* add currently active labels first */
-        for (l = prevLabels; l != null; ) {
+        for (l = incremental ? null : prevLabels; l != null; ) {
 
             if (l.text.caption) {
                 // TODO!!!
@@ -419,7 +778,6 @@ public class LabelPlacement {
                 continue;
             }
 
-            float div = FastMath.pow(diff);
             float sscale = (float) (pos.scale / (1 << l.tileZ));
 
             // plus 10 to rather keep label and avoid flickering
@@ -428,12 +786,7 @@ public class LabelPlacement {
                 continue;
             }
 
-            float dx = (float) (l.tileX * Tile.SIZE - tileX * div);
-            float dy = (float) (l.tileY * Tile.SIZE - tileY * div);
-
-            dx = flipLongitude(dx, maxx);
-            l.x = (float) ((dx + l.item.x) * sscale);
-            l.y = (float) ((dy + l.item.y) * sscale);
+            moveLabel(l, sscale, zoom, tileX, tileY, maxx);
             placeLabelFrom(l, l.item);
 
             if (!wayIsVisible(l)) {
@@ -471,7 +824,8 @@ public class LabelPlacement {
             float dy = (float) (t.tileY * Tile.SIZE - tileY);
             dx = flipLongitude(dx, maxx);
 
-            l = addWayLabels(t, l, dx, dy, scale);
+            boolean known = incremental && findLastTile(t) >= 0;
+            l = addWayLabels(t, l, dx, dy, scale, known, ox, oy);
         }
 
         /* add caption */
@@ -485,7 +839,8 @@ public class LabelPlacement {
             float dy = (float) (t.tileY * Tile.SIZE - tileY);
             dx = flipLongitude(dx, maxx);
 
-            l = addNodeLabels(t, l, dx, dy, scale, cos, sin);
+            boolean known = incremental && findLastTile(t) >= 0;
+            l = addNodeLabels(t, l, dx, dy, scale, cos, sin, known, ox, oy);
         }
 
         for (Label ti = mLabels; ti != null; ti = (Label) ti.next) {
@@ -557,6 +912,20 @@ public class LabelPlacement {
         /* temporary used Label */
         l = (Label) mPool.release(l);
 
+        mPlaced = true;
+        mLastZoom = zoom;
+        mLastScale = pos.scale;
+        mLastBearing = pos.bearing;
+        mLastRadius = mSquareRadius;
+        mLastTileX = tileX;
+        mLastTileY = tileY;
+        if (!incremental) {
+            mFullTileX = tileX;
+            mFullTileY = tileY;
+            mFullBearing = pos.bearing;
+        }
+        setLastTiles(tiles, cnt);
+
         /* draw text to bitmaps and create vertices */
         work.textLayer.labels = groupLabels(mLabels);
         work.textLayer.prepare();
@@ -570,6 +939,12 @@ public class LabelPlacement {
 
     public void cleanup() {
         mLabels = (Label) mPool.releaseAll(mLabels);
+        mGrid.clear();
+        mPlaced = false;
+        mFreedCnt = mFreedLast = 0;
+        Arrays.fill(mLastTiles, null);
+        Arrays.fill(mLastData, null);
+        mLastCnt = 0;
         mTileSet.releaseTiles();
     }
 
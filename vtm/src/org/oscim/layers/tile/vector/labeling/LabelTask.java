@@ -1,6 +1,7 @@
 package org.oscim.layers.tile.vector.labeling;
 
 import org.oscim.core.MapPosition;
+import org.oscim.renderer.bucket.GlyphAtlas;
 import org.oscim.renderer.bucket.SymbolBucket;
 import org.oscim.renderer.bucket.TextBucket;
 import org.oscim.renderer.bucket.TextureBucket;
@@ -13,11 +14,12 @@ final class LabelTask {
 
     final MapPosition pos;
 
-    LabelTask() {
+    LabelTask(GlyphAtlas atlas) {
         pos = new MapPosition();
 
         symbolLayer = new SymbolBucket();
         textLayer = new TextBucket();
+        textLayer.setGlyphAtlas(atlas);
 
         layers = symbolLayer;
         symbolLayer.next = textLayer;
@@ -74,7 +74,7 @@ class TextRenderer extends BucketRenderer {
         GLState.test(false, false);
         //Debug.draw(pos, layers);
 
-        buckets.vbo.bind();
+        buckets.bind();
 
         float scale = (float) (v.pos.scale / mMapPosition.scale);
 
@@ -53,6 +53,7 @@ public class Animator {
     private final Point mScroll = new Point();
     final Point mPivot = new Point();
     private final Point mVelocity = new Point();
+    private final Point mPredictedMove = new Point();
 
     float mDuration = 500;
     long mAnimEnd = -1;
@@ -367,6 +368,45 @@ public class Animator {
         return mState != ANIM_NONE;
     }
 
+    /**
+     * Predict the map position at the end of the current animation, e.g.
+     * to prefetch tiles along the way.
+     *
+     * @param pos MapPosition to set.
+     * @return false when no animation is active or the end position
+     * cannot be predicted.
+     */
+    public boolean getPredictedEndPosition(MapPosition pos) {
+        ThreadUtils.assertMainThread();
+
+        if (mState == ANIM_NONE)
+            return false;
+
+        pos.copy(mStartPos);
+
+        if ((mState & ANIM_FLING) != 0) {
+            Point move = mPredictedMove;
+            ViewController.applyRotation(mVelocity.x, mVelocity.y, mStartPos.bearing, move);
+            double tileScale = mStartPos.scale * Tile.SIZE;
+            pos.x -= move.x / tileScale;
+            pos.y -= move.y / tileScale;
+        } else {
+            if ((mState & ANIM_MOVE) != 0) {
+                pos.x += mDeltaPos.x;
+                pos.y += mDeltaPos.y;
+            }
+            if ((mState & ANIM_SCALE) != 0)
+                pos.setScale(mStartPos.scale + mDeltaPos.scale);
+        }
+
+        while (pos.x > 1)
+            pos.x -= 1;
+        while (pos.x < 0)
+            pos.x += 1;
+        pos.y = clamp(pos.y, 0, 1);
+        return true;
+    }
+
     /**
      * Get the map position at animation end.<br>
      * Note: valid only with animateTo methods.
@@ -22,6 +22,7 @@
 package org.oscim.map;
 
 import org.oscim.backend.CanvasAdapter;
+import org.oscim.core.MapPosition;
 import org.oscim.core.Point;
 import org.oscim.core.Tile;
 import org.oscim.renderer.MapRenderer;
@@ -341,4 +342,13 @@ public class Animator2 extends Animator {
             mMap.postDelayed(updateTask, 10);
         }
     }
+
+    @Override
+    public boolean getPredictedEndPosition(MapPosition pos) {
+        /* drag force flings have no fixed end position */
+        if ((mState & (ANIM_FLING | ANIM_KINETIC)) != 0)
+            return false;
+
+        return super.getPredictedEndPosition(pos);
+    }
 }
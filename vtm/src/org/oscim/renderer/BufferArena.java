@@ -0,0 +1,245 @@
+/*
+ * This file is part of the OpenScienceMap project (http://www.opensciencemap.org).
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.oscim.renderer;
+
+import org.oscim.backend.GL;
+
+import java.util.ArrayList;
+import java.util.logging.Logger;
+
+import static org.oscim.backend.GLAdapter.gl;
+
+/**
+ * Suballocates buffer ranges from a small number of large GL buffers.
+ * <p>
+ * Each block keeps a list of free ranges sorted by offset. Allocation takes
+ * the first fitting range, freed ranges are merged with their neighbours.
+ * Blocks which become empty are deleted by {@link #trim()}, new allocations
+ * prefer the oldest blocks so that younger blocks drain over time.
+ */
+final class BufferArena {
+    private static final Logger log = Logger.getLogger(BufferArena.class.getName());
+
+    /**
+     * Alignment of allocated ranges in bytes.
+     */
+    static final int ALIGN = 16;
+
+    static final class Block {
+        final int id;
+        final int size;
+
+        /**
+         * allocated bytes
+         */
+        int used;
+
+        boolean disposed;
+
+        /* free ranges, sorted by offset */
+        int[] freeOffset = new int[16];
+        int[] freeSize = new int[16];
+        int numFree;
+
+        Block(int id, int size) {
+            this.id = id;
+            this.size = size;
+            freeOffset[0] = 0;
+            freeSize[0] = size;
+            numFree = 1;
+        }
+
+        /**
+         * @return the offset of the allocated range or -1.
+         */
+        int alloc(int size) {
+            for (int i = 0; i < numFree; i++) {
+                if (freeSize[i] < size)
+                    continue;
+
+                int offset = freeOffset[i];
+                if (freeSize[i] == size) {
+                    System.arraycopy(freeOffset, i + 1, freeOffset, i, numFree - i - 1);
+                    System.arraycopy(freeSize, i + 1, freeSize, i, numFree - i - 1);
+                    numFree--;
+                } else {
+                    freeOffset[i] += size;
+                    freeSize[i] -= size;
+                }
+                used += size;
+                return offset;
+            }
+            return -1;
+        }
+
+        void free(int offset, int size) {
+            used -= size;
+
+            /* find first free range after offset */
+            int lo = 0, hi = numFree;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (freeOffset[mid] < offset)
+                    lo = mid + 1;
+                else
+                    hi = mid;
+            }
+            int i = lo;
+
+            boolean joinPrev = i > 0 && freeOffset[i - 1] + freeSize[i - 1] == offset;
+            boolean joinNext = i < numFree && offset + size == freeOffset[i];
+
+            if (joinPrev && joinNext) {
+                freeSize[i - 1] += size + freeSize[i];
+                System.arraycopy(freeOffset, i + 1, freeOffset, i, numFree - i - 1);
+                System.arraycopy(freeSize, i + 1, freeSize, i, numFree - i - 1);
+                numFree--;
+            } else if (joinPrev) {
+                freeSize[i - 1] += size;
+            } else if (joinNext) {
+                freeOffset[i] = offset;
+                freeSize[i] += size;
+            } else {
+                if (numFree == freeOffset.length) {
+                    int[] o = new int[numFree * 2];
+                    int[] s = new int[numFree * 2];
+                    System.arraycopy(freeOffset, 0, o, 0, numFree);
+                    System.arraycopy(freeSize, 0, s, 0, numFree);
+                    freeOffset = o;
+                    freeSize = s;
+                }
+                System.arraycopy(freeOffset, i, freeOffset, i + 1, numFree - i);
+                System.arraycopy(freeSize, i, freeSize, i + 1, numFree - i);
+                freeOffset[i] = offset;
+                freeSize[i] = size;
+                numFree++;
+            }
+        }
+    }
+
+    private final int mTarget;
+    private final int mBlockSize;
+    private final ArrayList<Block> mBlocks = new ArrayList<>();
+
+    /**
+     * bytes of allocated ranges
+     */
+    private long mUsed;
+
+    /**
+     * bytes of GL buffers
+     */
+    private long mReserved;
+
+    BufferArena(int target, int blockSize) {
+        mTarget = target;
+        mBlockSize = blockSize;
+    }
+
+    /**
+     * Note: only call from GL-Thread
+     *
+     * @param size size in bytes
+     * @return the allocated range.
+     */
+    synchronized BufferObject alloc(int size) {
+        size = (size + ALIGN - 1) & ~(ALIGN - 1);
+
+        for (int i = 0, n = mBlocks.size(); i < n; i++) {
+            Block b = mBlocks.get(i);
+            if (b.size - b.used < size)
+                continue;
+
+            int offset = b.alloc(size);
+            if (offset >= 0) {
+                mUsed += size;
+                return new BufferObject(mTarget, b, offset, size);
+            }
+        }
+
+        Block b = createBlock(Math.max(size, mBlockSize));
+        int offset = b.alloc(size);
+        mUsed += size;
+        return new BufferObject(mTarget, b, offset, size);
+    }
+
+    synchronized void free(Block block, int offset, int size) {
+        if (block.disposed)
+            return;
+
+        block.free(offset, size);
+        mUsed -= size;
+    }
+
+    /**
+     * Delete empty blocks, keeping the first one.
+     * Note: only call from GL-Thread
+     *
+     * @return freed bytes
+     */
+    synchronized int trim() {
+        int freed = 0;
+        for (int i = mBlocks.size() - 1; i > 0; i--) {
+            Block b = mBlocks.get(i);
+            if (b.used != 0)
+                continue;
+
+            mBlocks.remove(i);
+            b.disposed = true;
+            GLUtils.glDeleteBuffers(1, new int[]{b.id});
+            mReserved -= b.size;
+            freed += b.size;
+        }
+        if (freed > 0)
+            log.fine("trim " + freed + " bytes, blocks: " + mBlocks.size());
+
+        return freed;
+    }
+
+    /**
+     * Forget all blocks, e.g. when the GL context was lost.
+     */
+    synchronized void clear() {
+        for (Block b : mBlocks)
+            b.disposed = true;
+
+        mBlocks.clear();
+        mUsed = 0;
+        mReserved = 0;
+    }
+
+    synchronized long getUsed() {
+        return mUsed;
+    }
+
+    synchronized long getReserved() {
+        return mReserved;
+    }
+
+    synchronized int getNumBlocks() {
+        return mBlocks.size();
+    }
+
+    private Block createBlock(int size) {
+        int id = GLUtils.glGenBuffers(1)[0];
+        GLState.bindBuffer(mTarget, id);
+        gl.bufferData(mTarget, size, null, GL.STATIC_DRAW);
+
+        Block b = new Block(id, size);
+        mBlocks.add(b);
+        mReserved += size;
+        return b;
+    }
+}
@@ -31,6 +31,7 @@ public final class BufferObject extends Inlist<BufferObject> {
     private static final Logger log = Logger.getLogger(BufferObject.class.getName());
     private static final int MB = 1024 * 1024;
     private static final int LIMIT_BUFFERS = 16 * MB;
+    private static final int ARENA_BLOCK_SIZE = 4 * MB;
 
     /**
      * GL identifier
@@ -47,9 +48,44 @@ public final class BufferObject extends Inlist<BufferObject> {
      */
     private int target;
 
+    /**
+     * arena block of a shared buffer range, null otherwise
+     */
+    private final BufferArena.Block block;
+
+    /**
+     * byte offset of a shared buffer range
+     */
+    private final int offset;
+
     private BufferObject(int target, int id) {
         this.id = id;
         this.target = target;
+        this.block = null;
+        this.offset = 0;
+    }
+
+    BufferObject(int target, BufferArena.Block block, int offset, int size) {
+        this.id = block.id;
+        this.target = target;
+        this.block = block;
+        this.offset = offset;
+        this.size = size;
+    }
+
+    /**
+     * @return byte offset of the data in the bound GL buffer,
+     * only non-zero for shared buffer ranges.
+     */
+    public int getOffset() {
+        return offset;
+    }
+
+    /**
+     * @return true if this is a range of a shared buffer.
+     */
+    public boolean isShared() {
+        return block != null;
     }
 
     /**
@@ -64,6 +100,15 @@ public final class BufferObject extends Inlist<BufferObject> {
         }
 
         GLState.bindBuffer(target, id);
+        RenderStats.upload(newSize);
+
+        if (block != null) {
+            if (newSize > size)
+                throw new IllegalArgumentException("size " + newSize + " > " + size);
+
+            gl.bufferSubData(target, offset, newSize, buf);
+            return;
+        }
 
         /* reuse memory allocated for vbo when possible and allocated
          * memory is less then four times the new data */
@@ -90,9 +135,20 @@ public final class BufferObject extends Inlist<BufferObject> {
     // bytes currently loaded in VBOs
     private static int mBufferMemoryUsage;
 
+    private static long mMemoryLimit = LIMIT_BUFFERS;
+
+    private static final BufferArena arena[] = {
+            new BufferArena(GL.ARRAY_BUFFER, ARENA_BLOCK_SIZE),
+            new BufferArena(GL.ELEMENT_ARRAY_BUFFER, ARENA_BLOCK_SIZE)
+    };
+
     public static void checkBufferUsage(boolean force) {
+        /* delete emptied arena blocks */
+        arena[0].trim();
+        arena[1].trim();
+
         // try to clear some unused vbo when exceding limit
-        if (mBufferMemoryUsage < LIMIT_BUFFERS)
+        if (mBufferMemoryUsage < mMemoryLimit)
             return;
 
         log.fine("use: " + mBufferMemoryUsage / MB + "MB");
@@ -149,11 +205,34 @@ public final class BufferObject extends Inlist<BufferObject> {
         return bo;
     }
 
+    /**
+     * Allocate a range of a shared buffer. The data of the range starts at
+     * {@link #getOffset()} and must be uploaded with {@link #loadBufferData}.
+     * Note: only call from GL-Thread
+     *
+     * @param target can be GL20.ARRAY_BUFFER or GL20.ELEMENT_ARRAY_BUFFER
+     * @param size   size in bytes
+     * @return the range or null when shared buffers are not supported.
+     */
+    public static BufferObject getShared(int target, int size) {
+        if (GLAdapter.NO_BUFFER_SUB_DATA)
+            return null;
+
+        int t = (target == GL.ARRAY_BUFFER) ? 0 : 1;
+        return arena[t].alloc(size);
+    }
+
     @CheckReturnValue
     public static synchronized BufferObject release(BufferObject bo) {
         if (bo == null)
             return null;
 
+        if (bo.block != null) {
+            int t = (bo.target == GL.ARRAY_BUFFER) ? 0 : 1;
+            arena[t].free(bo.block, bo.offset, bo.size);
+            return null;
+        }
+
         // if (counter > 200) {
         // log.debug("should clear some buffers " + counter);
         // }
@@ -224,6 +303,8 @@ public final class BufferObject extends Inlist<BufferObject> {
 
     static synchronized void clear() {
         mBufferMemoryUsage = 0;
+        arena[0].clear();
+        arena[1].clear();
 
         pool[0] = null;
         pool[1] = null;
@@ -236,7 +317,41 @@ public final class BufferObject extends Inlist<BufferObject> {
         counter[0] += num;
     }
 
+    /**
+     * @return bytes used by buffer data, i.e. the size of buffer objects plus
+     * the allocated ranges of shared buffers.
+     */
+    public static long getMemoryUsage() {
+        return mBufferMemoryUsage + arena[0].getUsed() + arena[1].getUsed();
+    }
+
+    /**
+     * @return bytes of GL buffers reserved for shared ranges.
+     */
+    public static long getSharedMemoryReserved() {
+        return arena[0].getReserved() + arena[1].getReserved();
+    }
+
+    /**
+     * @return number of GL buffers used for shared ranges.
+     */
+    public static int getSharedBufferCount() {
+        return arena[0].getNumBlocks() + arena[1].getNumBlocks();
+    }
+
+    public static long getMemoryLimit() {
+        return mMemoryLimit;
+    }
+
+    /**
+     * Set the memory budget for buffer data, used by TileManager to limit
+     * its tile cache and to free unused pooled buffers. Default is 16MB.
+     */
+    public static void setMemoryLimit(long bytes) {
+        mMemoryLimit = bytes;
+    }
+
     public static boolean isMaxFill() {
-        return mBufferMemoryUsage > LIMIT_BUFFERS;
+        return getMemoryUsage() > mMemoryLimit;
     }
 }
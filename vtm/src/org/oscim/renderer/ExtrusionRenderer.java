@@ -174,12 +174,15 @@ public abstract class ExtrusionRenderer extends LayerRenderer {
             int sumIndices = eb.idx[0] + eb.idx[1] + eb.idx[2];
 
             /* extrusion (mMesh == false) */
-            if (sumIndices > 0)
+            if (sumIndices > 0) {
+                RenderStats.drawCall();
                 gl.drawElements(GL.TRIANGLES, sumIndices,
                         GL.UNSIGNED_SHORT, eb.off[0]);
+            }
 
             /* mesh (mMesh == true) */
             if (eb.idx[4] > 0) {
+                RenderStats.drawCall();
                 gl.drawElements(GL.TRIANGLES, eb.idx[4],
                         GL.UNSIGNED_SHORT, eb.off[4]);
             }
@@ -293,16 +296,19 @@ public abstract class ExtrusionRenderer extends LayerRenderer {
 
                     /* draw roof */
                     gl.uniform1i(s.uMode, 0);
+                    RenderStats.drawCall();
                     gl.drawElements(GL.TRIANGLES, eb.idx[2],
                             GL.UNSIGNED_SHORT, eb.off[2]);
 
                     /* draw sides 1 */
                     gl.uniform1i(s.uMode, 1);
+                    RenderStats.drawCall();
                     gl.drawElements(GL.TRIANGLES, eb.idx[0],
                             GL.UNSIGNED_SHORT, eb.off[0]);
 
                     /* draw sides 2 */
                     gl.uniform1i(s.uMode, 2);
+                    RenderStats.drawCall();
                     gl.drawElements(GL.TRIANGLES, eb.idx[1],
                             GL.UNSIGNED_SHORT, eb.off[1]);
 
@@ -317,6 +323,7 @@ public abstract class ExtrusionRenderer extends LayerRenderer {
 
                     gl.uniform1i(s.uMode, 3);
 
+                    RenderStats.drawCall();
                     gl.drawElements(GL.LINES, eb.idx[3],
                             GL.UNSIGNED_SHORT, eb.off[3]);
                 }
@@ -328,6 +335,7 @@ public abstract class ExtrusionRenderer extends LayerRenderer {
                         setMatrix(s, v, ebs[i]);
                     }
 
+                    RenderStats.drawCall();
                     gl.drawElements(GL.TRIANGLES, eb.idx[4],
                             GL.UNSIGNED_SHORT, eb.off[4]);
                 }
@@ -297,6 +297,7 @@ public class LocationRenderer extends LayerRenderer {
 
         GLUtils.setColor(uColor, mColor);
 
+        RenderStats.drawCall();
         gl.drawArrays(GL.TRIANGLE_STRIP, 0, 4);
     }
 
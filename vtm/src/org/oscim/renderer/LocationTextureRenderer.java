@@ -341,6 +341,7 @@ public class LocationTextureRenderer extends BucketRenderer {
 
         GLUtils.setColor(uColor, mColor);
 
+        RenderStats.drawCall();
         gl.drawArrays(GL.TRIANGLE_STRIP, 0, 4);
 
         /* Texture */
@@ -57,8 +57,6 @@ public class MapRenderer {
      */
     public static final int MAX_INDICES = MAX_QUADS * 6;
 
-    private long count = 0;
-
     public static long frametime;
     private static boolean rerender;
 
@@ -89,6 +87,7 @@ public class MapRenderer {
     }
 
     public void onDrawFrame() {
+        long start = RenderStats.begin();
         frametime = System.currentTimeMillis();
         rerender = false;
 
@@ -104,8 +103,8 @@ public class MapRenderer {
 
         mBufferPool.releaseBuffers();
         TextureItem.disposeTextures();
-//	log.info("VTM DWN onDrawFrame time = " + (System.currentTimeMillis() - frametime) + " count = " + count);
-	count++;
+
+        RenderStats.frame(start);
     }
 
     private void draw() {
@@ -158,11 +157,16 @@ public class MapRenderer {
                 renderer.isInitialized = true;
             }
 
+            long start = RenderStats.begin();
+            int drawCalls = RenderStats.getDrawCalls();
+
             renderer.update(mViewport);
 
             if (renderer.isReady)
                 renderer.render(mViewport);
 
+            RenderStats.layer(renderer, start, drawCalls);
+
             if (GLAdapter.debug)
                 GLUtils.checkGlError(renderer.getClass().getName());
         }
@@ -221,6 +221,7 @@ public class OffscreenRenderer extends LayerRenderer {
         GLState.test(false, false);
         GLState.blend(true);
         // FIXME SHADOW to work with ShadowRenderer: gl.blendFunc(GL.ZERO, GL.SRC_COLOR);
+        RenderStats.drawCall();
         gl.drawArrays(GL.TRIANGLE_STRIP, 0, 4);
         GLUtils.checkGlError(getClass().getName() + ": render() end");
     }
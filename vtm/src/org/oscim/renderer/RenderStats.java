@@ -0,0 +1,250 @@
+/*
+ * This file is part of the OpenScienceMap project (http://www.opensciencemap.org).
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.oscim.renderer;
+
+import org.oscim.utils.Histogram;
+import org.oscim.utils.Parameters;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.logging.Logger;
+
+/**
+ * Per-frame render statistics.
+ * <p>
+ * The frame counters (draw calls, buckets, vertices, uploaded bytes) are
+ * plain static fields updated on the GL thread. When
+ * {@link Parameters#RENDER_STATS} is enabled they are recorded into the
+ * histograms at the end of each frame together with the frame and layer
+ * timings, otherwise they are just reset. Timings of the hot paths are only
+ * taken when enabled: {@link #begin()} returns 0 when disabled and
+ * {@link #end(Histogram, long)} ignores that.
+ * <p>
+ * The histograms can be polled from any thread, {@link #dump()} exports all
+ * of them as text.
+ */
+public final class RenderStats {
+    private static final Logger log = Logger.getLogger(RenderStats.class.getName());
+
+    private static final double NANOS_PER_MS = 1000000;
+
+    /**
+     * Frame time in nanoseconds, from begin to end of MapRenderer.onDrawFrame().
+     */
+    public static final Histogram FRAME_TIME = new Histogram("frame_ms");
+    public static final Histogram DRAW_CALLS = new Histogram("draw_calls");
+    public static final Histogram BUCKETS = new Histogram("buckets");
+    public static final Histogram VERTICES = new Histogram("vertices");
+    public static final Histogram UPLOAD_BYTES = new Histogram("upload_bytes");
+
+    /**
+     * Time in nanoseconds to compile and upload new tile data.
+     */
+    public static final Histogram COMPILE_TIME = new Histogram("compile_ms");
+    /**
+     * Time in nanoseconds of a label placement update.
+     */
+    public static final Histogram LABEL_TIME = new Histogram("labels_ms");
+
+    /**
+     * Time in nanoseconds per vector tile to read and decode the data
+     * source, excluding theme matching and bucket building.
+     */
+    public static final Histogram TILE_DECODE = new Histogram("tile_decode_ms");
+    /**
+     * Time in nanoseconds per vector tile for theme matching.
+     */
+    public static final Histogram TILE_MATCH = new Histogram("tile_match_ms");
+    /**
+     * Time in nanoseconds per vector tile to build and prepare buckets.
+     */
+    public static final Histogram TILE_BUILD = new Histogram("tile_build_ms");
+
+    /**
+     * Number of queued tile jobs after each TileManager update.
+     */
+    public static final Histogram QUEUE_DEPTH = new Histogram("queue_depth");
+
+    private static final Histogram[] TIME_HISTOGRAMS = {
+            FRAME_TIME, COMPILE_TIME, LABEL_TIME, TILE_DECODE, TILE_MATCH, TILE_BUILD
+    };
+    private static final Histogram[] COUNT_HISTOGRAMS = {
+            DRAW_CALLS, BUCKETS, VERTICES, UPLOAD_BYTES, QUEUE_DEPTH
+    };
+
+    /**
+     * Statistics of one layer renderer type.
+     */
+    public static final class LayerStats {
+        public final Histogram time;
+        public final Histogram drawCalls;
+
+        LayerStats(String name) {
+            time = new Histogram(name + "_ms");
+            drawCalls = new Histogram(name + "_draw_calls");
+        }
+    }
+
+    private static final LinkedHashMap<String, LayerStats> mLayers = new LinkedHashMap<>();
+
+    /* frame counters, only accessed on the GL thread */
+    private static int mDrawCalls;
+    private static int mBuckets;
+    private static int mVertices;
+    private static long mUploadBytes;
+
+    private RenderStats() {
+        throw new IllegalStateException();
+    }
+
+    public static boolean isEnabled() {
+        return Parameters.RENDER_STATS;
+    }
+
+    /**
+     * @return the start time for {@link #end(Histogram, long)} or 0 when
+     * statistics are disabled.
+     */
+    public static long begin() {
+        return Parameters.RENDER_STATS ? System.nanoTime() : 0;
+    }
+
+    /**
+     * Record the time elapsed since {@link #begin()}.
+     */
+    public static void end(Histogram histogram, long start) {
+        if (start != 0)
+            histogram.record(System.nanoTime() - start);
+    }
+
+    /**
+     * Count a draw call. Must be called on the GL thread.
+     */
+    public static void drawCall() {
+        mDrawCalls++;
+    }
+
+    /**
+     * Count a rendered bucket. Must be called on the GL thread.
+     */
+    public static void bucket(int numVertices) {
+        mBuckets++;
+        mVertices += numVertices;
+    }
+
+    /**
+     * Count bytes uploaded to buffer objects. Must be called on the GL thread.
+     */
+    public static void upload(int bytes) {
+        mUploadBytes += bytes;
+    }
+
+    /**
+     * @return the draw calls of the current frame so far.
+     */
+    public static int getDrawCalls() {
+        return mDrawCalls;
+    }
+
+    /**
+     * Record the time and draw calls of a layer renderer.
+     *
+     * @param start     the time returned by {@link #begin()}.
+     * @param drawCalls {@link #getDrawCalls()} before the layer was rendered.
+     */
+    static void layer(LayerRenderer renderer, long start, int drawCalls) {
+        if (start == 0)
+            return;
+
+        long time = System.nanoTime() - start;
+        String name = renderer.getClass().getSimpleName();
+        LayerStats stats;
+        synchronized (mLayers) {
+            stats = mLayers.get(name);
+            if (stats == null) {
+                stats = new LayerStats(name);
+                mLayers.put(name, stats);
+            }
+        }
+        stats.time.record(time);
+        stats.drawCalls.record(mDrawCalls - drawCalls);
+    }
+
+    /**
+     * Record the frame counters and reset them for the next frame.
+     *
+     * @param start the time returned by {@link #begin()}.
+     */
+    static void frame(long start) {
+        if (start != 0) {
+            FRAME_TIME.record(System.nanoTime() - start);
+            DRAW_CALLS.record(mDrawCalls);
+            BUCKETS.record(mBuckets);
+            VERTICES.record(mVertices);
+            UPLOAD_BYTES.record(mUploadBytes);
+        }
+        mDrawCalls = 0;
+        mBuckets = 0;
+        mVertices = 0;
+        mUploadBytes = 0;
+    }
+
+    /**
+     * @return the statistics of all layer renderer types seen so far.
+     */
+    public static List<LayerStats> getLayers() {
+        synchronized (mLayers) {
+            return new ArrayList<>(mLayers.values());
+        }
+    }
+
+    /**
+     * Reset all histograms.
+     */
+    public static void reset() {
+        for (Histogram h : TIME_HISTOGRAMS)
+            h.reset();
+        for (Histogram h : COUNT_HISTOGRAMS)
+            h.reset();
+        for (LayerStats stats : getLayers()) {
+            stats.time.reset();
+            stats.drawCalls.reset();
+        }
+    }
+
+    /**
+     * @return all histograms as text, one per line. Times are in milliseconds.
+     */
+    public static String dump() {
+        StringBuilder sb = new StringBuilder();
+        for (Histogram h : TIME_HISTOGRAMS)
+            h.format(sb, NANOS_PER_MS).append('\n');
+        for (Histogram h : COUNT_HISTOGRAMS)
+            h.format(sb, 1).append('\n');
+        for (LayerStats stats : getLayers()) {
+            stats.time.format(sb, NANOS_PER_MS).append('\n');
+            stats.drawCalls.format(sb, 1).append('\n');
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Log all histograms.
+     */
+    public static void log() {
+        log.info(dump());
+    }
+}
@@ -21,6 +21,7 @@ import org.oscim.backend.canvas.Bitmap;
 import org.oscim.renderer.GLShader;
 import org.oscim.renderer.GLState;
 import org.oscim.renderer.GLViewport;
+import org.oscim.renderer.RenderStats;
 import org.oscim.renderer.bucket.TextureItem.TexturePool;
 
 import java.nio.ShortBuffer;
@@ -201,6 +202,7 @@ public class BitmapBucket extends TextureBucket {
             s.useProgram();
 
             TextureBucket tb = (TextureBucket) b;
+            RenderStats.bucket(tb.numVertices);
 
             gl.uniform1f(s.uAlpha, alpha);
             v.mvp.setAsUniform(s.uMVP);
@@ -225,6 +227,7 @@ public class BitmapBucket extends TextureBucket {
                     if (numIndices > MAX_INDICES)
                         numIndices = MAX_INDICES;
 
+                    RenderStats.drawCall();
                     gl.drawElements(GL.TRIANGLES, numIndices,
                             GL.UNSIGNED_SHORT, 0);
                 }
@@ -24,6 +24,7 @@ import org.oscim.renderer.GLShader;
 import org.oscim.renderer.GLState;
 import org.oscim.renderer.GLUtils;
 import org.oscim.renderer.GLViewport;
+import org.oscim.renderer.RenderStats;
 import org.oscim.theme.styles.CircleStyle;
 
 import java.util.logging.Logger;
@@ -134,6 +135,7 @@ public class CircleBucket extends RenderBucket {
             s.set(v);
 
             for (; b != null && b.type == CIRCLE; b = b.next) {
+                RenderStats.bucket(b.numVertices);
                 CircleBucket cb = (CircleBucket) b;
                 CircleStyle circle = cb.circle.current();
 
@@ -145,6 +147,7 @@ public class CircleBucket extends RenderBucket {
                 gl.vertexAttribPointer(s.aPos, 2, GL.SHORT,
                         false, 0, cb.vertexOffset);
 
+                RenderStats.drawCall();
                 if (GLAdapter.CIRCLE_QUADS)
                     gl.drawElements(GL.TRIANGLES,
                             cb.numIndices,
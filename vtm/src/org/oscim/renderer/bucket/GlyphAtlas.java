@@ -0,0 +1,346 @@
+/*
+ * This file is part of the OpenScienceMap project (http://www.opensciencemap.org).
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.oscim.renderer.bucket;
+
+import org.oscim.backend.CanvasAdapter;
+import org.oscim.backend.canvas.Canvas;
+import org.oscim.theme.styles.TextStyle;
+
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * Glyphs of label text, drawn once with the Paint of their TextStyle
+ * into textures shared by the TextBuckets of a renderer.
+ * <p>
+ * The stroke of a glyph is drawn to a separate cell next to the fill, so
+ * that the stroke of all glyphs of a label can be drawn below the fill.
+ * Glyphs are not evicted one by one: {@link #get} returns null when the
+ * atlas is full and the next {@link #update()} starts with empty pages.
+ * Pages are released when no TextBucket references them anymore.
+ */
+public final class GlyphAtlas {
+
+    static final int PAGE_SIZE = 1024;
+    static final int MAX_PAGES = 4;
+
+    /* incremented for each new GL context */
+    private static volatile int sContext;
+
+    /* padding around glyphs */
+    private static final int PAD = 1;
+
+    /* first chars which are not stored in a hash map */
+    private static final int CHARS = 0x0530;
+
+    static final class Glyph {
+        /**
+         * page of the glyph
+         */
+        int page;
+
+        /**
+         * position and size of the fill cell, the stroke cell is at
+         * x + width when the style has a stroke.
+         */
+        int x, y, width, height;
+
+        /**
+         * distance of the cell to the pen position and baseline
+         */
+        int pad;
+
+        /**
+         * width of the char
+         */
+        float advance;
+    }
+
+    /* marks glyphs which do not fit into the atlas */
+    private static final Glyph NONE = new Glyph();
+
+    private static final class StyleGlyphs {
+        final float fontSize;
+        final Glyph[] chars = new Glyph[CHARS];
+        final HashMap<Character, Glyph> other = new HashMap<>();
+
+        StyleGlyphs(float fontSize) {
+            this.fontSize = fontSize;
+        }
+
+        Glyph get(char c) {
+            return c < CHARS ? chars[c] : other.get(c);
+        }
+
+        void put(char c, Glyph g) {
+            if (c < CHARS)
+                chars[c] = g;
+            else
+                other.put(c, g);
+        }
+    }
+
+    private static final class Page {
+        final TextureItem texture;
+
+        /* bound once, setBitmap() clears the bitmap on some backends */
+        final Canvas canvas;
+
+        /* current row */
+        int x, y, rowHeight;
+
+        /* incremented when glyphs were added */
+        int version;
+        int uploaded = -1;
+
+        /* textures referencing the page */
+        int refs;
+
+        /* page is no longer used for new glyphs */
+        boolean retired;
+
+        Page(int size) {
+            texture = new TextureItem(CanvasAdapter.newBitmap(size, size, 0));
+            canvas = CanvasAdapter.newCanvas();
+            canvas.setBitmap(texture.bitmap);
+        }
+    }
+
+    private final int mSize;
+    private final Page[] mPages;
+    private int mNumPages;
+
+    private final HashMap<TextStyle, StyleGlyphs> mStyles = new HashMap<>();
+
+    /* page of textures returned by getTexture() */
+    private final HashMap<TextureItem, Page> mTextures = new HashMap<>();
+
+    /* start with empty pages on next update() */
+    private boolean mReset;
+
+    private int mContext = sContext;
+
+    public GlyphAtlas() {
+        this(PAGE_SIZE, MAX_PAGES);
+    }
+
+    GlyphAtlas(int size, int maxPages) {
+        mSize = size;
+        mPages = new Page[maxPages];
+    }
+
+    /**
+     * Release the glyphs of all styles, e.g. when the theme changed.
+     * Takes effect with the next {@link #update()}.
+     * [Threadsafe]
+     */
+    public synchronized void clear() {
+        mReset = true;
+    }
+
+    /**
+     * Start with empty pages when the atlas was full or cleared. Must not
+     * be called while glyphs from {@link #get} are used to add vertices.
+     */
+    synchronized void update() {
+        if (!mReset)
+            return;
+
+        mReset = false;
+        for (int i = 0; i < mNumPages; i++) {
+            Page p = mPages[i];
+            p.retired = true;
+            if (p.refs == 0)
+                p.texture.dispose();
+        }
+        Arrays.fill(mPages, null);
+        mNumPages = 0;
+        mStyles.clear();
+    }
+
+    /**
+     * @return number of pages used for new glyphs
+     */
+    synchronized int getNumPages() {
+        return mNumPages;
+    }
+
+    /**
+     * @return true when the text can be drawn glyph by glyph, i.e. it does
+     * not need shaping or combining characters.
+     */
+    static boolean isSimple(String text) {
+        for (int i = 0, n = text.length(); i < n; i++) {
+            char c = text.charAt(i);
+            /* Latin */
+            if (c < 0x0300)
+                continue;
+            /* Greek, Cyrillic */
+            if (c >= 0x0370 && c < CHARS && (c < 0x0483 || c > 0x0489))
+                continue;
+            /* CJK, Kana */
+            if (c >= 0x2E80 && c < 0xA000 && (c < 0x302A || c > 0x302F)
+                    && c != 0x3099 && c != 0x309A)
+                continue;
+            /* Hangul syllables */
+            if (c >= 0xAC00 && c < 0xD7A4)
+                continue;
+
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Get the glyph of 'c' drawn with 'style'. The glyph is drawn when it
+     * was not used before.
+     * [Threadsafe]
+     *
+     * @return the glyph or null when it does not fit into the atlas.
+     */
+    synchronized Glyph get(TextStyle style, char c) {
+        StyleGlyphs s = mStyles.get(style);
+        if (s == null || s.fontSize != style.fontSize) {
+            /* new style or text size was scaled */
+            s = new StyleGlyphs(style.fontSize);
+            mStyles.put(style, s);
+        }
+
+        Glyph g = s.get(c);
+        if (g == null) {
+            g = draw(style, c);
+            s.put(c, g);
+        }
+        return g == NONE ? null : g;
+    }
+
+    private Glyph draw(TextStyle style, char c) {
+        String str = String.valueOf(c);
+
+        Glyph g = new Glyph();
+        g.advance = style.paint.measureText(str);
+        g.pad = PAD;
+        if (style.stroke != null)
+            g.pad += (int) Math.ceil(style.stroke.getStrokeWidth());
+
+        /* same height as labels drawn by TextBucket */
+        float height = (int) style.fontHeight + 0.5f;
+        g.width = (int) Math.ceil(g.advance) + 2 * g.pad;
+        g.height = (int) Math.ceil(height) + 2 * g.pad;
+
+        Page p = alloc(g, style.stroke == null ? g.width : 2 * g.width, g.height);
+        if (p == null)
+            return NONE;
+
+        float y = g.y + g.pad + height - style.fontDescent;
+        p.canvas.drawText(str, g.x + g.pad, y, style.paint);
+        if (style.stroke != null)
+            p.canvas.drawText(str, g.x + g.width + g.pad, y, style.stroke);
+
+        p.version++;
+        return g;
+    }
+
+    private Page alloc(Glyph g, int width, int height) {
+        if (width > mSize || height > mSize)
+            return null;
+
+        Page p = mNumPages == 0 ? null : mPages[mNumPages - 1];
+        if (p != null && p.x + width > mSize) {
+            p.x = 0;
+            p.y += p.rowHeight;
+            p.rowHeight = 0;
+        }
+        if (p == null || p.y + height > mSize) {
+            if (mNumPages == mPages.length) {
+                mReset = true;
+                return null;
+            }
+            p = mPages[mNumPages++] = new Page(mSize);
+        }
+
+        g.page = mNumPages - 1;
+        g.x = p.x;
+        g.y = p.y;
+
+        p.x += width;
+        p.rowHeight = Math.max(p.rowHeight, height);
+        return p;
+    }
+
+    /**
+     * @return a reference to the texture of 'page', to be released with
+     * {@link #dispose}.
+     */
+    synchronized TextureItem getTexture(int page) {
+        Page p = mPages[page];
+        TextureItem t = TextureItem.clone(p.texture);
+        p.refs++;
+        mTextures.put(t, p);
+        return t;
+    }
+
+    /**
+     * Dispose the first 'n' textures, references to pages. Retired pages
+     * are released with their last reference.
+     *
+     * @return the remaining textures
+     */
+    synchronized TextureItem dispose(TextureItem t, int n) {
+        while (n-- > 0 && t != null) {
+            Page p = mTextures.remove(t);
+            t = t.dispose();
+            if (p != null && --p.refs == 0 && p.retired)
+                p.texture.dispose();
+        }
+        return t;
+    }
+
+    /**
+     * Upload pages with new glyphs.
+     * [on GL-Thread]
+     */
+    synchronized void upload() {
+        if (mContext != sContext) {
+            mContext = sContext;
+            init();
+        }
+        for (int i = 0; i < mNumPages; i++) {
+            Page p = mPages[i];
+            if (p.uploaded == p.version)
+                continue;
+
+            p.texture.loaded = false;
+            p.texture.upload();
+            p.uploaded = p.version;
+        }
+    }
+
+    /**
+     * Textures of all atlases need to be uploaded again to a new GL context.
+     * [on GL-Thread]
+     */
+    static void initContext() {
+        sContext++;
+    }
+
+    private void init() {
+        for (int i = 0; i < mNumPages; i++) {
+            mPages[i].texture.id = -1;
+            mPages[i].texture.loaded = false;
+            mPages[i].uploaded = -1;
+        }
+    }
+}
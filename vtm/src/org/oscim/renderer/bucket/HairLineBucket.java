@@ -23,6 +23,7 @@ import org.oscim.renderer.GLShader;
 import org.oscim.renderer.GLState;
 import org.oscim.renderer.GLUtils;
 import org.oscim.renderer.GLViewport;
+import org.oscim.renderer.RenderStats;
 import org.oscim.theme.styles.LineStyle;
 
 import static org.oscim.backend.GLAdapter.gl;
@@ -133,6 +134,7 @@ public class HairLineBucket extends RenderBucket {
             s.set(v);
 
             for (; l != null && l.type == HAIRLINE; l = l.next) {
+                RenderStats.bucket(l.numVertices);
                 HairLineBucket ll = (HairLineBucket) l;
                 LineStyle line = ll.line.current();
 
@@ -141,6 +143,7 @@ public class HairLineBucket extends RenderBucket {
                 gl.vertexAttribPointer(s.aPos, 2, GL.SHORT,
                         false, 0, ll.vertexOffset);
 
+                RenderStats.drawCall();
                 gl.drawElements(GL.LINES,
                         ll.numIndices,
                         GL.UNSIGNED_SHORT,
@@ -27,6 +27,7 @@ import org.oscim.renderer.GLShader;
 import org.oscim.renderer.GLState;
 import org.oscim.renderer.GLUtils;
 import org.oscim.renderer.GLViewport;
+import org.oscim.renderer.RenderStats;
 import org.oscim.theme.styles.LineStyle;
 
 import java.util.logging.Logger;
@@ -639,6 +640,7 @@ public class LineBucket extends RenderBucket {
             //        return b.next;
             //
             for (; b != null && b.type == RenderBucket.LINE; b = b.next) {
+                RenderStats.bucket(b.numVertices);
                 LineBucket lb = (LineBucket) b;
                 LineStyle line = lb.line.current();
 
@@ -708,6 +710,7 @@ public class LineBucket extends RenderBucket {
                         gl.uniform1i(uLineMode, capMode);
                     }
 
+                    RenderStats.drawCall();
                     gl.drawArrays(GL.TRIANGLE_STRIP,
                             b.vertexOffset, b.numVertices);
 
@@ -758,6 +761,7 @@ public class LineBucket extends RenderBucket {
                         gl.uniform1i(uLineMode, capMode);
                     }
 
+                    RenderStats.drawCall();
                     gl.drawArrays(GL.TRIANGLE_STRIP,
                             ref.vertexOffset, ref.numVertices);
                 }
@@ -769,5 +773,154 @@ public class LineBucket extends RenderBucket {
 
             return b;
         }
+
+        /**
+         * Switches to the next tile of a batch, see
+         * {@link #drawBatch(LineBucket[], int, GLViewport, float, Batch)}.
+         */
+        public interface Batch {
+            /**
+             * Set the matrix (v.mvp), bind the buffers and select the clip
+             * region of tile 'i'.
+             *
+             * @return the RenderBuckets of the tile.
+             */
+            RenderBuckets setTile(int i);
+        }
+
+        /* last uniform values in a batch */
+        private static float mBatchWidth, mBatchFade;
+        private static int mBatchCap;
+
+        /**
+         * Draw line buckets of several tiles which share the same style.
+         * Program, texture and style uniforms are set once, per tile only
+         * the matrix, vertex pointer and clip region change.
+         *
+         * @param lbs   one bucket per tile, all with the same style
+         * @param scale scale relative to the zoom-level of the tiles
+         */
+        public static void drawBatch(LineBucket[] lbs, int n, GLViewport v,
+                                     float scale, Batch batch) {
+            LineStyle line = lbs[0].line.current();
+
+            float alpha = 1;
+            if (line.fadeScale > v.pos.zoomLevel)
+                return;
+            if (line.fadeScale == v.pos.zoomLevel)
+                alpha = (float) (scale > 1.2 ? scale : 1.2) - 1;
+
+            int mode = v.pos.tilt < 1 ? 1 : 0;
+
+            Shader s = shaders[mode];
+            s.useProgram();
+
+            GLState.blend(true);
+
+            if (!GLAdapter.GDX_DESKTOP_QUIRKS)
+                GLState.bindTex2D(mTexID);
+
+            double variableScale = Math.sqrt(scale);
+            double pixel = (mode == SHADER_PROJ) ? 0.0001 : 1.5 / scale;
+
+            GLUtils.setColor(s.uColor, line.color, alpha);
+            gl.uniform1f(s.uHeight, (float) (line.heightOffset
+                    / MercatorProjection.groundResolution(v.pos)));
+
+            mBatchWidth = Float.NaN;
+            mBatchFade = Float.NaN;
+            mBatchCap = -1;
+
+            boolean transparent = line.transparent && !Color.isOpaque(line.color);
+            if (transparent)
+                GLState.test(true, false);
+
+            for (int i = 0; i < n; i++) {
+                LineBucket lb = lbs[i];
+                RenderStats.bucket(lb.numVertices);
+                lb.heightOffset = line.heightOffset;
+
+                RenderBuckets buckets = batch.setTile(i);
+
+                if (transparent) {
+                    /* clear per tile as in draw(), so that lines of
+                     * different tiles blend the same way */
+                    gl.depthMask(true);
+                    gl.clear(GL.DEPTH_BUFFER_BIT);
+                }
+                v.mvp.setAsUniform(s.uMVP);
+                gl.vertexAttribPointer(s.aPos, 4, GL.SHORT, false, 0,
+                        buckets.offset[LINE]);
+
+                if (!line.outline) {
+                    double width;
+                    if (line.fixed)
+                        width = Math.max(line.width, 1) / scale;
+                    else
+                        width = lb.scale * line.width / variableScale;
+
+                    int cap = lb.scale < 1.0 ? CAP_THIN
+                            : (lb.roundCap ? CAP_ROUND : CAP_BUTT);
+
+                    drawBatchLine(s, mode, pixel, line, width, cap,
+                            lb.vertexOffset, lb.numVertices);
+                    continue;
+                }
+
+                for (LineBucket ref = lb.outlines; ref != null; ref = ref.outlines) {
+                    LineStyle core = ref.line.current();
+
+                    double width;
+                    if (core.fixed)
+                        width = Math.max(core.width, 1) / scale;
+                    else
+                        width = ref.scale * core.width / variableScale;
+
+                    if (line.fixed)
+                        width += line.width / scale;
+                    else
+                        width += lb.scale * line.width / variableScale;
+
+                    drawBatchLine(s, mode, pixel, line, width,
+                            ref.roundCap ? CAP_ROUND : CAP_BUTT,
+                            ref.vertexOffset, ref.numVertices);
+                }
+            }
+
+            if (transparent)
+                gl.depthMask(false);
+        }
+
+        private static void drawBatchLine(Shader s, int mode, double pixel,
+                                          LineStyle line, double width, int cap,
+                                          int offset, int numVertices) {
+            float w = (float) (width * COORD_SCALE_BY_DIR_SCALE);
+            if (w != mBatchWidth) {
+                mBatchWidth = w;
+                gl.uniform1f(s.uWidth, w);
+            }
+
+            /* Line-edge fade */
+            float fade;
+            if (line.blur > 0)
+                fade = line.blur;
+            else if (mode == SHADER_FLAT)
+                fade = (float) (pixel / width);
+            else
+                fade = (float) pixel;
+
+            if (fade != mBatchFade) {
+                mBatchFade = fade;
+                gl.uniform1f(s.uFade, fade);
+            }
+
+            if (cap != mBatchCap) {
+                mBatchCap = cap;
+                gl.uniform1i(s.uMode, cap);
+            }
+
+            RenderStats.drawCall();
+            gl.drawArrays(GL.TRIANGLE_STRIP, offset, numVertices);
+        }
     }
 }
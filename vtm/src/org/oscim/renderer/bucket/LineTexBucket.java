@@ -366,18 +366,20 @@ public final class LineTexBucket extends LineBucket {
 
             v.mvp.setAsUniform(shader.uMVP);
 
-            bindQuadIndicesVBO();
-
             GLState.bindVertexBuffer(mVertexFlipID);
             gl.vertexAttribPointer(shader.aFlip, 1,
                     GL.BYTE, false, 0, 0);
 
-            buckets.vbo.bind();
+            /* bind() also sets the vertex base of the buckets,
+             * the quad indices replace their ibo */
+            buckets.bind();
+            bindQuadIndicesVBO();
 
             float scale = (float) v.pos.getZoomScale();
             float s = scale / div;
 
             for (; b != null && b.type == TEXLINE; b = b.next) {
+                RenderStats.bucket(b.numVertices);
                 LineTexBucket lb = (LineTexBucket) b;
                 LineStyle line = lb.line.current();
 
@@ -428,6 +430,7 @@ public final class LineTexBucket extends LineBucket {
                     gl.vertexAttribPointer(aLen1, 2, GL.SHORT, false, STRIDE,
                             add + LEN_OFFSET);
 
+                    RenderStats.drawCall();
                     gl.drawElements(GL.TRIANGLES, numIndices,
                             GL.UNSIGNED_SHORT, 0);
                 }
@@ -453,6 +456,7 @@ public final class LineTexBucket extends LineBucket {
                     gl.vertexAttribPointer(aLen1, 2, GL.SHORT, false, STRIDE,
                             add + STRIDE + LEN_OFFSET);
 
+                    RenderStats.drawCall();
                     gl.drawElements(GL.TRIANGLES, numIndices,
                             GL.UNSIGNED_SHORT, 0);
                 }
@@ -26,11 +26,14 @@ import org.oscim.renderer.GLShader;
 import org.oscim.renderer.GLState;
 import org.oscim.renderer.GLUtils;
 import org.oscim.renderer.GLViewport;
+import org.oscim.renderer.RenderStats;
 import org.oscim.renderer.bucket.VertexData.Chunk;
 import org.oscim.theme.styles.AreaStyle;
 import org.oscim.utils.ColorUtil;
 import org.oscim.utils.TessJNI;
+import org.oscim.utils.Tessellator;
 
+import java.util.Arrays;
 import java.util.logging.Logger;
 
 import static org.oscim.backend.GLAdapter.gl;
@@ -47,12 +50,43 @@ public class MeshBucket extends RenderBucket {
 
     private int numPoints;
 
+    /**
+     * Vertices that can be addressed by the short indices of one range.
+     */
+    static final int MAX_RANGE_VERTICES = 1 << 16;
+
+    /**
+     * First vertex and first index of the ranges after the first one,
+     * indices are relative to the first vertex of their range.
+     */
+    int[] ranges = new int[0];
+    int numRanges;
+
+    /**
+     * First vertex of the current range.
+     */
+    private int rangeVertex;
+
     public MeshBucket(int level) {
         super(RenderBucket.MESH, true, false);
         this.level = level;
     }
 
     public void addMesh(GeometryBuffer geom) {
+        if (!Tessellator.USE_JNI) {
+            int points = geom.pointNextPos >> 1;
+            if (points > MAX_RANGE_VERTICES) {
+                addTriangles(geom);
+                return;
+            }
+            ensureRange(points);
+
+            numIndices += Tessellator.tessellate(geom, COORD_SCALE,
+                    vertexItems, indiceItems, numVertices - rangeVertex);
+            numVertices += points;
+            return;
+        }
+
         numPoints += geom.pointNextPos;
         if (tess == null)
             tess = new TessJNI(8);
@@ -60,12 +94,52 @@ public class MeshBucket extends RenderBucket {
         tess.addContour2D(geom.index, geom.points);
     }
 
-    public void addConvexMesh(GeometryBuffer geom) {
-        short start = (short) numVertices;
+    /**
+     * Add the triangles of a mesh with more vertices than one range can
+     * address, each with its own three vertices.
+     */
+    private void addTriangles(GeometryBuffer geom) {
+        float[] points = geom.points;
+        int[] tris = Tessellator.triangulate(geom);
+
+        for (int i = 0; i < tris.length; i += 3) {
+            ensureRange(3);
+            short start = (short) (numVertices - rangeVertex);
+
+            for (int j = 0; j < 3; j++) {
+                int p = tris[i + j] << 1;
+                vertexItems.add(points[p] * COORD_SCALE,
+                        points[p + 1] * COORD_SCALE);
+            }
+            indiceItems.add(start, (short) (start + 1), (short) (start + 2));
+            numVertices += 3;
+            numIndices += 3;
+        }
+    }
 
-        if (numVertices >= (1 << 16)) {
+    /**
+     * Start a new range when 'vertices' more do not fit into the current.
+     */
+    private void ensureRange(int vertices) {
+        if (numVertices - rangeVertex + vertices <= MAX_RANGE_VERTICES)
             return;
-        }
+
+        if (ranges.length == numRanges * 2)
+            ranges = Arrays.copyOf(ranges, numRanges * 2 + 8);
+
+        ranges[numRanges * 2] = numVertices;
+        ranges[numRanges * 2 + 1] = numIndices;
+        numRanges++;
+        rangeVertex = numVertices;
+    }
+
+    public void addConvexMesh(GeometryBuffer geom) {
+        int points = geom.index[0] >> 1;
+        if (points > MAX_RANGE_VERTICES)
+            return;
+
+        ensureRange(points);
+        short start = (short) (numVertices - rangeVertex);
 
         vertexItems.add(geom.points[0] * COORD_SCALE,
                 geom.points[1] * COORD_SCALE);
@@ -91,6 +165,13 @@ public class MeshBucket extends RenderBucket {
         //tess.addContour2D(geom.index, geom.points);
     }
 
+    @Override
+    protected void clear() {
+        super.clear();
+        numRanges = 0;
+        rangeVertex = 0;
+    }
+
     @Override
     protected void prepare() {
         if (tess == null)
@@ -183,6 +264,7 @@ public class MeshBucket extends RenderBucket {
             gl.uniform1f(s.uHeight, heightOffset);
 
             for (; l != null && l.type == MESH; l = l.next) {
+                RenderStats.bucket(l.numVertices);
                 MeshBucket ml = (MeshBucket) l;
                 AreaStyle area = ml.area.current();
 
@@ -199,29 +281,50 @@ public class MeshBucket extends RenderBucket {
                 else {
                     setColor(area, s, v.pos);
                 }
-                gl.vertexAttribPointer(s.aPos, 2, GL.SHORT,
-                        false, 0, ml.vertexOffset);
-
-                gl.drawElements(GL.TRIANGLES,
-                        ml.numIndices,
-                        GL.UNSIGNED_SHORT,
-                        ml.indiceOffset);
-
-                if (dbgRender) {
-                    int c = (ml.area == null) ? Color.BLUE : ml.area.color;
-                    gl.lineWidth(1);
-                    //c = ColorUtil.shiftHue(c, 0.5);
-                    c = ColorUtil.modHsv(c, 0.1, 1.0, 0.8, true);
-                    GLUtils.setColor(s.uColor, c, 1);
-                    gl.drawElements(GL.LINES,
-                            ml.numIndices,
-                            GL.UNSIGNED_SHORT,
-                            ml.vertexOffset);
+                int vertex = 0;
+                int indice = 0;
+                for (int r = 0; r <= ml.numRanges; r++) {
+                    int end = ml.numIndices;
+                    if (r < ml.numRanges)
+                        end = ml.ranges[r * 2 + 1];
+
+                    /* 4 bytes per vertex, 2 bytes per index */
+                    drawRange(s, ml, ml.vertexOffset + (vertex << 2),
+                            end - indice, ml.indiceOffset + (indice << 1));
+
+                    if (r < ml.numRanges)
+                        vertex = ml.ranges[r * 2];
+                    indice = end;
                 }
             }
             return l;
         }
 
+        private static void drawRange(Shader s, MeshBucket ml, int vertexOffset,
+                                      int numIndices, int indiceOffset) {
+            gl.vertexAttribPointer(s.aPos, 2, GL.SHORT,
+                    false, 0, vertexOffset);
+
+            RenderStats.drawCall();
+            gl.drawElements(GL.TRIANGLES,
+                    numIndices,
+                    GL.UNSIGNED_SHORT,
+                    indiceOffset);
+
+            if (dbgRender) {
+                int c = (ml.area == null) ? Color.BLUE : ml.area.color;
+                gl.lineWidth(1);
+                //c = ColorUtil.shiftHue(c, 0.5);
+                c = ColorUtil.modHsv(c, 0.1, 1.0, 0.8, true);
+                GLUtils.setColor(s.uColor, c, 1);
+                RenderStats.drawCall();
+                gl.drawElements(GL.LINES,
+                        numIndices,
+                        GL.UNSIGNED_SHORT,
+                        indiceOffset);
+            }
+        }
+
         private static final int OPAQUE = 0xff000000;
 
         static void setColor(AreaStyle a, Shader s, MapPosition pos) {
@@ -156,6 +156,16 @@ public final class PolygonBucket extends RenderBucket {
         private static Shader polyShader;
         private static Shader texShader;
 
+        /**
+         * byte offset of the current buckets in the bound vbo,
+         * set by {@link RenderBuckets#bind()}
+         */
+        private static int mVertexBase;
+
+        static void setVertexBase(int offset) {
+            mVertexBase = offset;
+        }
+
         static boolean init() {
             polyShader = new Shader("base_shader");
             texShader = new Shader("polygon_layer_tex");
@@ -223,6 +233,7 @@ public final class PolygonBucket extends RenderBucket {
                 gl.stencilFunc(GL.EQUAL, 0xff, CLIP_BIT | 1 << i);
 
                 /* draw tile fill coordinates */
+                RenderStats.drawCall();
                 gl.drawArrays(GL.TRIANGLE_STRIP, 0, RenderBuckets.TILE_FILL_VERTICES);
 
                 if (a.strokeWidth <= 0)
@@ -240,11 +251,12 @@ public final class PolygonBucket extends RenderBucket {
                 gl.vertexAttribPointer(HairLineBucket.Renderer.shader.aPos,
                         2, GL.SHORT, false, 0,
                         // 4 bytes per vertex
-                        l.vertexOffset << 2);
+                        mVertexBase + (l.vertexOffset << 2));
 
                 gl.uniform1f(HairLineBucket.Renderer.shader.uWidth,
                         a.strokeWidth);
 
+                RenderStats.drawCall();
                 gl.drawElements(GL.LINES,
                         l.numIndices,
                         GL.UNSIGNED_SHORT,
@@ -271,7 +283,7 @@ public final class PolygonBucket extends RenderBucket {
                 GLState.enableVertexArrays(shader.aPos, GLState.DISABLED);
 
                 gl.vertexAttribPointer(shader.aPos, 2,
-                        GL.SHORT, false, 0, 0);
+                        GL.SHORT, false, 0, mVertexBase);
 
                 mvp.setAsUniform(shader.uMVP);
             }
@@ -317,6 +329,7 @@ public final class PolygonBucket extends RenderBucket {
 
             RenderBucket b = buckets;
             for (; b != null && b.type == POLYGON; b = b.next) {
+                RenderStats.bucket(b.numVertices);
                 PolygonBucket pb = (PolygonBucket) b;
                 AreaStyle area = pb.area.current();
 
@@ -379,6 +392,7 @@ public final class PolygonBucket extends RenderBucket {
                     gl.stencilMask(stencilMask);
                 }
 
+                RenderStats.drawCall();
                 gl.drawArrays(GL.TRIANGLE_FAN, b.vertexOffset, b.numVertices);
 
                 /* draw up to 7 buckets into stencil buffer */
@@ -465,6 +479,7 @@ public final class PolygonBucket extends RenderBucket {
             gl.stencilOp(GL.KEEP, GL.KEEP, GL.REPLACE);
 
             /* draw a quad for the tile region */
+            RenderStats.drawCall();
             gl.drawArrays(GL.TRIANGLE_STRIP, 0, RenderBuckets.TILE_FILL_VERTICES);
 
             if (clipMode == CLIP_DEPTH) {
@@ -475,6 +490,35 @@ public final class PolygonBucket extends RenderBucket {
             gl.stencilFunc(GL.EQUAL, CLIP_BIT, CLIP_BIT);
         }
 
+        /**
+         * Write 'id' to the stencil buffer in the tile region of the
+         * current vbo. Used by batched tile rendering to tell the regions
+         * of tiles apart, ids must be between 1 and {@link #CLIP_BIT} - 1.
+         */
+        public static void drawStencilId(GLMatrix mvp, int id) {
+            setShader(polyShader, mvp, true);
+
+            gl.colorMask(false, false, false, false);
+            gl.stencilMask(0xFF);
+            GLState.test(false, true);
+
+            gl.stencilFunc(GL.ALWAYS, id, 0xFF);
+            gl.stencilOp(GL.KEEP, GL.KEEP, GL.REPLACE);
+            RenderStats.drawCall();
+            gl.drawArrays(GL.TRIANGLE_STRIP, 0, RenderBuckets.TILE_FILL_VERTICES);
+
+            gl.stencilMask(0x00);
+            gl.colorMask(true, true, true, true);
+        }
+
+        /**
+         * Only draw to the tile region marked by {@link #drawStencilId}.
+         */
+        public static void useStencilId(int id) {
+            gl.stencilMask(0x00);
+            gl.stencilFunc(GL.EQUAL, id, 0xFF);
+        }
+
         static void clearStencilRegion() {
 
             mCount = 0;
@@ -494,6 +538,7 @@ public final class PolygonBucket extends RenderBucket {
             gl.stencilOp(GL.KEEP, GL.KEEP, GL.REPLACE);
 
             /* draw a quad for the tile region */
+            RenderStats.drawCall();
             gl.drawArrays(GL.TRIANGLE_STRIP, 0, RenderBuckets.TILE_FILL_VERTICES);
         }
 
@@ -503,6 +548,15 @@ public final class PolygonBucket extends RenderBucket {
          * and 'alpha' to fake a fade effect.
          */
         public static void drawOver(GLMatrix mvp, int color, float alpha) {
+            drawOver(mvp, color, alpha, CLIP_BIT, CLIP_BIT);
+        }
+
+        /**
+         * Like {@link #drawOver(GLMatrix, int, float)} for a tile region
+         * marked by stencil value 'ref' and 'mask'.
+         */
+        public static void drawOver(GLMatrix mvp, int color, float alpha,
+                                    int ref, int mask) {
             /* TODO true could be avoided when same shader and vbo */
             setShader(polyShader, mvp, true);
 
@@ -516,7 +570,7 @@ public final class PolygonBucket extends RenderBucket {
             // TODO always pass stencil test: <-- only if not proxy?
             //GL.stencilFunc(GL20.ALWAYS, 0x00, 0x00);
 
-            gl.stencilFunc(GL.EQUAL, CLIP_BIT, CLIP_BIT);
+            gl.stencilFunc(GL.EQUAL, ref, mask);
 
             /* write to all bits */
             gl.stencilMask(0xFF);
@@ -527,6 +581,7 @@ public final class PolygonBucket extends RenderBucket {
             /* zero out area to draw to */
             gl.stencilOp(GL.KEEP, GL.KEEP, GL.ZERO);
 
+            RenderStats.drawCall();
             gl.drawArrays(GL.TRIANGLE_STRIP, 0, RenderBuckets.TILE_FILL_VERTICES);
 
             if (color == 0)
@@ -102,6 +102,10 @@ public abstract class RenderBucket extends Inlist<RenderBucket> {
         return indiceOffset;
     }
 
+    public int getLevel() {
+        return level;
+    }
+
     public void setLevel(int level) {
         this.level = level;
     }
@@ -25,6 +25,8 @@ import org.oscim.theme.styles.AreaStyle;
 import org.oscim.theme.styles.CircleStyle;
 import org.oscim.theme.styles.LineStyle;
 
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.nio.ShortBuffer;
 import java.util.logging.Logger;
 
@@ -84,6 +86,13 @@ public class RenderBuckets extends TileData {
 
     private RenderBucket mCurBucket;
 
+    /**
+     * Vertex and index data packed by {@link #pack(boolean)}.
+     */
+    private ShortBuffer mPackedVertices;
+    private ShortBuffer mPackedIndices;
+    private boolean mPackedFill;
+
     public RenderBuckets() {
     }
 
@@ -190,6 +199,8 @@ public class RenderBuckets extends TileData {
             l.clear();
 
         this.buckets = buckets;
+        mPackedVertices = null;
+        mPackedIndices = null;
     }
 
     /**
@@ -322,6 +333,8 @@ public class RenderBuckets extends TileData {
             l.clear();
 
         mCurBucket = null;
+        mPackedVertices = null;
+        mPackedIndices = null;
     }
 
     @Override
@@ -334,6 +347,11 @@ public class RenderBuckets extends TileData {
             l.prepare();
     }
 
+    /**
+     * Bind vbo and ibo of the buckets. Renderers must not bind the vbo
+     * directly: polygon buckets take the vertex base of shared buffers
+     * from here.
+     */
     public void bind() {
         if (vbo != null)
             vbo.bind();
@@ -341,6 +359,60 @@ public class RenderBuckets extends TileData {
         if (ibo != null)
             ibo.bind();
 
+        PolygonBucket.Renderer.setVertexBase(vbo == null ? 0 : vbo.getOffset());
+    }
+
+    /**
+     * Pack the vertex and index data of all buckets into new direct buffers,
+     * so that {@link #compile(boolean)} only needs to upload them. Intended
+     * to be called on the loader thread after {@link #prepare()}. The buckets
+     * must not be modified afterwards. Buckets which upload textures while
+     * compiling are not packed.
+     *
+     * @param addFill fill tile (add {@link #TILE_FILL_VERTICES 4} vertices).
+     * @return true if the data was packed.
+     */
+    public boolean pack(boolean addFill) {
+        mPackedVertices = null;
+        mPackedIndices = null;
+
+        if (!isPlain())
+            return false;
+
+        int vboSize = countVboSize();
+        if (vboSize <= 0)
+            return false;
+
+        if (addFill)
+            vboSize += TILE_FILL_VERTICES * 2;
+
+        int iboSize = countIboSize();
+
+        ShortBuffer data = ByteBuffer
+                .allocateDirect((vboSize + iboSize) * SHORT_BYTES)
+                .order(ByteOrder.nativeOrder())
+                .asShortBuffer();
+
+        data.limit(vboSize);
+        ShortBuffer vboData = data.slice();
+        ShortBuffer iboData = null;
+        if (iboSize > 0) {
+            data.limit(vboSize + iboSize);
+            data.position(vboSize);
+            iboData = data.slice();
+        }
+
+        if (!fill(vboData, vboSize, iboData, iboSize, addFill))
+            return false;
+
+        vboData.flip();
+        if (iboData != null)
+            iboData.flip();
+
+        mPackedVertices = vboData;
+        mPackedIndices = iboData;
+        mPackedFill = addFill;
+        return true;
     }
 
     /**
@@ -351,6 +423,23 @@ public class RenderBuckets extends TileData {
      */
     public boolean compile(boolean addFill) {
 
+        if (mPackedVertices != null) {
+            ShortBuffer vboData = mPackedVertices;
+            ShortBuffer iboData = mPackedIndices;
+            mPackedVertices = null;
+            mPackedIndices = null;
+
+            /* the vertex data of the buckets was consumed by pack(), so
+             * the packed data must be used. Fill vertices which are not
+             * needed are uploaded but not drawn. */
+            if (addFill && !mPackedFill)
+                vboData = addFill(vboData);
+
+            upload(vboData, vboData.limit(),
+                    iboData, iboData == null ? 0 : iboData.limit(), true);
+            return true;
+        }
+
         int vboSize = countVboSize();
 
         if (vboSize <= 0) {
@@ -364,9 +453,6 @@ public class RenderBuckets extends TileData {
 
         ShortBuffer vboData = MapRenderer.getShortBuffer(vboSize);
 
-        if (addFill)
-            vboData.put(fillShortCoords, 0, TILE_FILL_VERTICES * 2);
-
         ShortBuffer iboData = null;
 
         int iboSize = countIboSize();
@@ -374,6 +460,46 @@ public class RenderBuckets extends TileData {
             iboData = MapRenderer.getShortBuffer(iboSize);
         }
 
+        if (!fill(vboData, vboSize, iboData, iboSize, addFill))
+            return false;
+
+        // Set VBO and IBO data to READ mode
+        vboData.flip();
+        if (iboSize > 0)
+            iboData.flip();
+
+        upload(vboData, vboSize, iboData, iboSize, isPlain());
+
+        return true;
+    }
+
+    /**
+     * Prepend the tile fill vertices to data packed without them and move
+     * the vertex offsets behind them.
+     */
+    private ShortBuffer addFill(ShortBuffer packed) {
+        int fillSize = TILE_FILL_VERTICES * 2;
+        ShortBuffer vboData = MapRenderer.getShortBuffer(packed.limit() + fillSize);
+        vboData.put(fillShortCoords, 0, fillSize);
+        vboData.put(packed);
+        vboData.flip();
+
+        offset[LINE] += fillSize * SHORT_BYTES;
+        for (RenderBucket l = buckets; l != null; l = l.next) {
+            if (l.type == POLYGON)
+                l.vertexOffset += TILE_FILL_VERTICES;
+            else if (l.type != LINE)
+                l.vertexOffset += fillSize * SHORT_BYTES;
+        }
+        return vboData;
+    }
+
+    private boolean fill(ShortBuffer vboData, int vboSize,
+                         ShortBuffer iboData, int iboSize, boolean addFill) {
+
+        if (addFill)
+            vboData.put(fillShortCoords, 0, TILE_FILL_VERTICES * 2);
+
         int pos = addFill ? TILE_FILL_VERTICES : 0;
 
         for (RenderBucket l = buckets; l != null; l = l.next) {
@@ -418,24 +544,82 @@ public class RenderBuckets extends TileData {
                     + " buffer fill: " + iboData.remaining());
             return false;
         }
+        return true;
+    }
 
-        if (vbo == null)
-            vbo = BufferObject.get(GL.ARRAY_BUFFER, vboSize);
+    /**
+     * @return true if no bucket uploads textures or needs its own buffers
+     * while compiling.
+     */
+    private boolean isPlain() {
+        for (RenderBucket l = buckets; l != null; l = l.next) {
+            if (l.type == SYMBOL || l.type == BITMAP || l.type == EXTRUSION)
+                return false;
+        }
+        return true;
+    }
 
-        // Set VBO data to READ mode
-        vbo.loadBufferData(vboData.flip(), vboSize * SHORT_BYTES);
+    /**
+     * @param shared use ranges of shared buffers when possible
+     */
+    private void upload(ShortBuffer vboData, int vboSize,
+                        ShortBuffer iboData, int iboSize, boolean shared) {
 
-        if (iboSize > 0) {
-            if (ibo == null)
-                ibo = BufferObject.get(GL.ELEMENT_ARRAY_BUFFER, iboSize);
+        if (shared && getShared(vboSize, iboSize)) {
+            relocate(vbo.getOffset(), ibo == null ? 0 : ibo.getOffset());
+        } else {
+            if (vbo != null && vbo.isShared())
+                vbo = BufferObject.release(vbo);
+            if (ibo != null && ibo.isShared())
+                ibo = BufferObject.release(ibo);
+
+            if (vbo == null)
+                vbo = BufferObject.get(GL.ARRAY_BUFFER, vboSize);
 
-            // Set IBO data to READ mode
-            ibo.loadBufferData(iboData.flip(), iboSize * SHORT_BYTES);
+            if (iboSize > 0 && ibo == null)
+                ibo = BufferObject.get(GL.ELEMENT_ARRAY_BUFFER, iboSize);
         }
 
+        vbo.loadBufferData(vboData, vboSize * SHORT_BYTES);
+
+        if (iboSize > 0)
+            ibo.loadBufferData(iboData, iboSize * SHORT_BYTES);
+    }
+
+    private boolean getShared(int vboSize, int iboSize) {
+        vbo = BufferObject.release(vbo);
+        ibo = BufferObject.release(ibo);
+
+        vbo = BufferObject.getShared(GL.ARRAY_BUFFER, vboSize * SHORT_BYTES);
+        if (vbo == null)
+            return false;
+
+        if (iboSize > 0) {
+            ibo = BufferObject.getShared(GL.ELEMENT_ARRAY_BUFFER, iboSize * SHORT_BYTES);
+            if (ibo == null) {
+                vbo = BufferObject.release(vbo);
+                return false;
+            }
+        }
         return true;
     }
 
+    /**
+     * Make offsets relative to the start of the shared buffers. Polygon
+     * vertex offsets stay relative to the vertex base, see {@link #bind()},
+     * line vertex offsets relative to {@link #offset offset[LINE]}.
+     */
+    private void relocate(int vboBase, int iboBase) {
+        offset[LINE] += vboBase;
+
+        for (RenderBucket l = buckets; l != null; l = l.next) {
+            if (l.type != LINE && l.type != POLYGON)
+                l.vertexOffset += vboBase;
+            if (l.numIndices > 0)
+                l.indiceOffset += iboBase;
+        }
+    }
+
     private static short[] fillShortCoords;
 
     static {
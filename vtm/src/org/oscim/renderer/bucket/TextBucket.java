@@ -19,6 +19,12 @@ package org.oscim.renderer.bucket;
 
 import org.oscim.backend.CanvasAdapter;
 import org.oscim.backend.canvas.Canvas;
+import org.oscim.renderer.bucket.GlyphAtlas.Glyph;
+import org.oscim.utils.Parameters;
+import org.oscim.utils.pool.Inlist;
+
+import java.nio.ShortBuffer;
+import java.util.Arrays;
 
 import static org.oscim.renderer.MapRenderer.COORD_SCALE;
 
@@ -32,6 +38,25 @@ public class TextBucket extends TextureBucket {
     public TextItem labels;
     protected final Canvas mCanvas;
 
+    /* atlas to draw labels from, null to draw all labels to bitmaps */
+    private GlyphAtlas mAtlas;
+
+    /* number of textures referencing GlyphAtlas pages, first in textures */
+    private int mAtlasTextures;
+
+    /* glyphs of labels and start in mGlyphs by label, -1 when the label
+     * is drawn to a bitmap */
+    private Glyph[] mGlyphs = new Glyph[256];
+    private int[] mGlyphStart = new int[64];
+
+    /**
+     * Set the atlas to draw label text from with
+     * {@link Parameters#GLYPH_ATLAS}, owned by the renderer of this bucket.
+     */
+    public void setGlyphAtlas(GlyphAtlas atlas) {
+        mAtlas = atlas;
+    }
+
     public TextItem getLabels() {
         return labels;
     }
@@ -81,20 +106,43 @@ public class TextBucket extends TextureBucket {
 
     @Override
     public void prepare() {
+        boolean glyphs = Parameters.GLYPH_ATLAS && mAtlas != null;
         int numIndices = 0;
-        int offsetIndices = 0;
+
+        if (glyphs)
+            numIndices = prepareGlyphs();
+
+        prepareBitmaps(numIndices, glyphs);
+    }
+
+    /**
+     * Draw labels which are not drawn from GlyphAtlas to bitmaps.
+     */
+    private void prepareBitmaps(int numIndices, boolean glyphs) {
+        int offsetIndices = numIndices;
 
         int advanceY = 0;
         float x = 0;
         float y = 0;
         float xx, yy;
 
-        TextureItem t = pool.get();
-        textures = t;
-        mCanvas.setBitmap(t.bitmap);
+        TextureItem t = null;
+        int n = 0;
 
         for (TextItem it = labels; it != null; ) {
 
+            if (glyphs && mGlyphStart[n] >= 0) {
+                it = it.next;
+                n++;
+                continue;
+            }
+
+            if (t == null) {
+                t = pool.get();
+                textures = Inlist.appendItem(textures, t);
+                mCanvas.setBitmap(t.bitmap);
+            }
+
             float width = it.width + 2 * mFontPadX;
             float height = (int) (it.text.fontHeight) + 0.5f;
 
@@ -144,6 +192,7 @@ public class TextBucket extends TextureBucket {
                 numIndices += TextureBucket.INDICES_PER_SPRITE;
                 numVertices += 4;
 
+                n++;
                 if (it.next == null
                         || (it.next.text != it.text)
                         || (it.next.label != it.label)) {
@@ -156,8 +205,168 @@ public class TextBucket extends TextureBucket {
             x += width;
         }
 
-        t.offset = offsetIndices;
-        t.indices = (numIndices - offsetIndices);
+        if (t != null) {
+            t.offset = offsetIndices;
+            t.indices = (numIndices - offsetIndices);
+        }
+    }
+
+    /**
+     * Add one quad per glyph for labels which can be drawn from GlyphAtlas.
+     *
+     * @return number of indices
+     */
+    private int prepareGlyphs() {
+        GlyphAtlas atlas = mAtlas;
+        atlas.update();
+
+        int numGlyphs = 0;
+        int pages = 0;
+        int n = 0;
+
+        for (TextItem it = labels, prev = null; it != null; prev = it, it = it.next, n++) {
+            if (n == mGlyphStart.length)
+                mGlyphStart = Arrays.copyOf(mGlyphStart, n * 2);
+
+            /* same string as previous label */
+            if (prev != null && it.label == prev.label && it.text == prev.text) {
+                mGlyphStart[n] = mGlyphStart[n - 1];
+                continue;
+            }
+            mGlyphStart[n] = -1;
+
+            if (it.text.bgFill != null || !GlyphAtlas.isSimple(it.label))
+                continue;
+
+            int len = it.label.length();
+            if (numGlyphs + len > mGlyphs.length)
+                mGlyphs = Arrays.copyOf(mGlyphs, Math.max(numGlyphs + len, mGlyphs.length * 2));
+
+            int i = 0;
+            for (; i < len; i++) {
+                Glyph g = atlas.get(it.text, it.label.charAt(i));
+                if (g == null)
+                    break;
+                mGlyphs[numGlyphs + i] = g;
+                pages |= 1 << g.page;
+            }
+            if (i < len)
+                continue;
+
+            mGlyphStart[n] = numGlyphs;
+            numGlyphs += len;
+        }
+
+        int numIndices = 0;
+        for (int page = 0; pages != 0; page++, pages >>>= 1) {
+            if ((pages & 1) == 0)
+                continue;
+
+            /* stroke of all glyphs below the fill */
+            int offset = numIndices;
+            numIndices += addGlyphs(page, true);
+            numIndices += addGlyphs(page, false);
+            if (numIndices == offset)
+                continue;
+
+            TextureItem t = atlas.getTexture(page);
+            t.offset = offset;
+            t.indices = numIndices - offset;
+            textures = Inlist.appendItem(textures, t);
+            mAtlasTextures++;
+        }
+        return numIndices;
+    }
+
+    private int addGlyphs(int page, boolean stroke) {
+        int numIndices = 0;
+        int n = 0;
+
+        for (TextItem it = labels; it != null; it = it.next, n++) {
+            int start = mGlyphStart[n];
+            if (start < 0 || (stroke && it.text.stroke == null))
+                continue;
+
+            int len = it.label.length();
+
+            /* fit advances to the label width used for placement */
+            float advance = 0;
+            for (int i = 0; i < len; i++)
+                advance += mGlyphs[start + i].advance;
+            float scale = advance > 0 ? it.width / advance : 1;
+
+            float x = -it.width / 2;
+            float y = -((int) (it.text.fontHeight) + 0.5f) / 2;
+
+            for (int i = 0; i < len; i++) {
+                Glyph g = mGlyphs[start + i];
+                if (g.page == page) {
+                    int u = stroke ? g.x + g.width : g.x;
+                    addGlyph(it, x - g.pad, y - g.pad, g.width, g.height, u, g.y);
+
+                    numIndices += TextureBucket.INDICES_PER_SPRITE;
+                    numVertices += 4;
+                }
+                x += g.advance * scale;
+            }
+        }
+        return numIndices;
+    }
+
+    /**
+     * Add quad at x, y relative to the label center, with the texture
+     * region at u, v.
+     */
+    private void addGlyph(TextItem it, float x, float y, int width, int height, int u, int v) {
+        /* texture coordinates */
+        short u1 = (short) (COORD_SCALE * u);
+        short v1 = (short) (COORD_SCALE * v);
+        short u2 = (short) (COORD_SCALE * (u + width));
+        short v2 = (short) (COORD_SCALE * (v + height));
+
+        /* direction of text and of descent */
+        float ex = 1, ey = 0;
+        float fx = 0, fy = 1;
+        if (it.text.caption) {
+            y += it.text.dy;
+        } else {
+            ex = it.x2 - it.x1;
+            ey = it.y2 - it.y1;
+            float a = (float) Math.sqrt(ex * ex + ey * ey);
+            ex /= a;
+            ey /= a;
+            fx = -ey;
+            fy = ex;
+        }
+
+        float x2 = x + width;
+        float y2 = y + height;
+
+        /* add vertices */
+        int tmp = (int) (COORD_SCALE * it.x) & LBIT_MASK;
+        short tx = (short) (tmp | (it.text.caption ? 1 : 0));
+        short ty = (short) (COORD_SCALE * it.y);
+
+        vertexItems.add(tx, ty,
+                (short) (COORD_SCALE * (ex * x + fx * y2)),
+                (short) (COORD_SCALE * (ey * x + fy * y2)), u1, v2);
+        vertexItems.add(tx, ty,
+                (short) (COORD_SCALE * (ex * x + fx * y)),
+                (short) (COORD_SCALE * (ey * x + fy * y)), u1, v1);
+        vertexItems.add(tx, ty,
+                (short) (COORD_SCALE * (ex * x2 + fx * y2)),
+                (short) (COORD_SCALE * (ey * x2 + fy * y2)), u2, v2);
+        vertexItems.add(tx, ty,
+                (short) (COORD_SCALE * (ex * x2 + fx * y)),
+                (short) (COORD_SCALE * (ey * x2 + fy * y)), u2, v1);
+    }
+
+    @Override
+    protected void compile(ShortBuffer vboData, ShortBuffer iboData) {
+        if (mAtlasTextures > 0)
+            mAtlas.upload();
+
+        super.compile(vboData, iboData);
     }
 
     protected void addItem(TextItem it,
@@ -219,6 +428,9 @@ public class TextBucket extends TextureBucket {
 
     @Override
     public void clear() {
+        if (mAtlasTextures > 0)
+            textures = mAtlas.dispose(textures, mAtlasTextures);
+        mAtlasTextures = 0;
         super.clear();
         clearLabels();
     }
@@ -22,6 +22,7 @@ import org.oscim.renderer.GLShader;
 import org.oscim.renderer.GLState;
 import org.oscim.renderer.GLViewport;
 import org.oscim.renderer.MapRenderer;
+import org.oscim.renderer.RenderStats;
 import org.oscim.renderer.bucket.TextureItem.TexturePool;
 
 import java.nio.ShortBuffer;
@@ -114,6 +115,7 @@ public class TextureBucket extends RenderBucket {
 
             /* FIXME pool should be disposed on exit... */
             pool.init(0);
+            GlyphAtlas.initContext();
         }
 
         public static RenderBucket draw(RenderBucket b, GLViewport v, float scale) {
@@ -124,6 +126,7 @@ public class TextureBucket extends RenderBucket {
             shader.useProgram();
 
             TextureBucket tb = (TextureBucket) b;
+            RenderStats.bucket(tb.numVertices);
             gl.uniform1f(shader.uScale, tb.fixed ? 1 / scale : 1);
             gl.uniform1f(shader.uCoordScale, COORD_SCALE);
 
@@ -167,6 +170,7 @@ public class TextureBucket extends RenderBucket {
         gl.vertexAttribPointer(shader.aTexCoord, 2, GL.SHORT,
                 false, RenderBuckets.SHORT_BYTES * 6, offset + RenderBuckets.SHORT_BYTES * 4);
 
+        RenderStats.drawCall();
         gl.drawElements(GL.TRIANGLES, numIndices,
                 GL.UNSIGNED_SHORT, 0);
     }
@@ -291,6 +291,7 @@ public class ShadowRenderer extends LayerRenderer {
                 MapRenderer.bindQuadIndicesVBO();
                 GLState.blend(true);  // allow transparency
                 gl.blendFunc(GL.ZERO, GL.SRC_COLOR); // multiply frame colors
+                RenderStats.drawCall();
                 gl.drawElements(GL.TRIANGLES, 6, GL.UNSIGNED_SHORT, 0);
                 GLState.blend(false);
                 gl.blendFunc(GL.ONE, GL.ONE_MINUS_SRC_ALPHA); // Reset to default func
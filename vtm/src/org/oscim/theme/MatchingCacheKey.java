@@ -21,15 +21,24 @@ import org.oscim.core.Tag;
 import org.oscim.core.TagSet;
 import org.oscim.utils.Utils;
 
+import java.util.Arrays;
+
+/**
+ * Key of the RenderTheme matching cache. A key used for probing the cache
+ * reuses its tags array, only the first mSize tags are valid. Keys stored in
+ * the cache are copies with an array of exactly mSize tags.
+ */
 class MatchingCacheKey {
     int mHash;
     Tag[] mTags;
+    int mSize;
 
     MatchingCacheKey() {
     }
 
     MatchingCacheKey(MatchingCacheKey key) {
-        mTags = key.mTags;
+        mTags = Arrays.copyOf(key.mTags, key.mSize);
+        mSize = key.mSize;
         mHash = key.mHash;
     }
 
@@ -40,7 +49,7 @@ class MatchingCacheKey {
         int numTags = tags.size();
 
         /* Test if tags are equal to previous query */
-        if (compare != null && numTags == compare.mTags.length) {
+        if (compare != null && numTags == compare.mSize) {
             int i = 0;
             for (; i < numTags; i++) {
                 Tag t1 = tags.get(i);
@@ -53,10 +62,10 @@ class MatchingCacheKey {
                 return true;
         }
 
-        /* Clone tags as they belong to TileDataSource.
-         * Also needed for comparison if previous tags
-         * were equal. */
-        mTags = new Tag[numTags];
+        /* Keep references to the tags for comparison, the array
+         * is reused and copied when the key is stored. */
+        if (mTags == null || mTags.length < numTags)
+            mTags = new Tag[Math.max(numTags, 16)];
 
         int result = 7;
         for (int i = 0; i < numTags; i++) {
@@ -64,7 +73,10 @@ class MatchingCacheKey {
             result = 31 * result + t.hashCode();
             mTags[i] = t;
         }
+        for (int i = numTags; i < mSize; i++)
+            mTags[i] = null;
 
+        mSize = numTags;
         mHash = 31 * result;
 
         return false;
@@ -80,8 +92,8 @@ class MatchingCacheKey {
 
         MatchingCacheKey other = (MatchingCacheKey) obj;
 
-        int length = mTags.length;
-        if (length != other.mTags.length)
+        int length = mSize;
+        if (length != other.mSize)
             return false;
 
         for (int i = 0; i < length; i++) {
@@ -25,14 +25,17 @@ import org.oscim.core.TagSet;
 import org.oscim.theme.rule.Rule;
 import org.oscim.theme.rule.Rule.Element;
 import org.oscim.theme.rule.Rule.RuleVisitor;
+import org.oscim.theme.rule.RuleMatcher;
 import org.oscim.theme.styles.RenderStyle;
 import org.oscim.utils.ArrayUtils;
-import org.oscim.utils.LRUCache;
 
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 import java.util.logging.Logger;
 
 public class RenderTheme implements IRenderTheme {
@@ -40,47 +43,113 @@ public class RenderTheme implements IRenderTheme {
 
     private static final int MATCHING_CACHE_SIZE = 8192;
 
+    /**
+     * Size of the front caches, must be a power of two.
+     */
+    private static final int FRONT_CACHE_SIZE = 256;
+
+    /**
+     * Maximum number of front caches, threads matching at the same time
+     * beyond this number use a temporary front cache.
+     */
+    private static final int MAX_FRONT_CACHES =
+            Math.max(4, 2 * Runtime.getRuntime().availableProcessors());
+
     private final float mBaseTextSize;
     private final int mMapBackground;
 
     private final int mLevels;
     private final Rule[] mRules;
+    private final RuleMatcher mMatcher;
     private final boolean mMapsforgeTheme;
 
     private final Map<String, String> mTransformBackwardKeyMap, mTransformForwardKeyMap;
     private final Map<Tag, Tag> mTransformBackwardTagMap, mTransformForwardTagMap;
 
+    /**
+     * Shared matching cache for one element type.
+     */
     static class RenderStyleCache {
         final int matchType;
-        final LRUCache<MatchingCacheKey, RenderStyleItem> cache;
+        final ConcurrentHashMap<MatchingCacheKey, RenderStyleItem> cache;
+
+        public RenderStyleCache(int type) {
+            cache = new ConcurrentHashMap<>(MATCHING_CACHE_SIZE);
+            matchType = type;
+        }
+    }
+
+    /**
+     * Front cache for one element type, used without locking by the
+     * thread which holds it.
+     */
+    static class FrontStyleCache {
+        final RenderStyleItem[] items;
         final MatchingCacheKey cacheKey;
+        final RuleMatcher.State matchState;
 
         /* temporary matching instructions list */
         final List<RenderStyle> instructionList;
 
         RenderStyleItem prevItem;
 
-        public RenderStyleCache(int type) {
-            cache = new LRUCache<>(MATCHING_CACHE_SIZE);
+        FrontStyleCache(RuleMatcher.State state) {
+            matchState = state;
+            items = new RenderStyleItem[FRONT_CACHE_SIZE];
             instructionList = new ArrayList<>(4);
             cacheKey = new MatchingCacheKey();
-            matchType = type;
         }
+    }
 
-        RenderStyleItem getRenderInstructions() {
-            return cache.get(cacheKey);
+    /**
+     * Front caches for all element types, held by one thread at a time.
+     */
+    static class FrontCache {
+        /* slot in mFrontCaches, or -1 when temporary */
+        final int slot;
+        final FrontStyleCache[] types = new FrontStyleCache[3];
+
+        /* statistics, only written by the thread holding the cache */
+        long hits;
+        long misses;
+        long same;
+
+        FrontCache(int slot, RuleMatcher matcher) {
+            this.slot = slot;
+            for (int i = 0; i < 3; i++)
+                types[i] = new FrontStyleCache(matcher.newState());
         }
     }
 
+    /**
+     * Matching instructions for a MatchingCacheKey, items for the
+     * same key are linked by next. Items are modified only while
+     * holding the lock of the first item.
+     */
     static class RenderStyleItem {
-        RenderStyleItem next;
-        int zoom;
+        volatile RenderStyleItem next;
+        volatile int zoom;
         RenderStyle[] list;
         MatchingCacheKey key;
     }
 
     private final RenderStyleCache[] mStyleCache;
 
+    /**
+     * Front caches which are not in use. They are borrowed for each match,
+     * so that their number is bounded and they outlive the threads.
+     */
+    private final AtomicReferenceArray<FrontCache> mFrontCaches =
+            new AtomicReferenceArray<>(MAX_FRONT_CACHES);
+
+    /* all front caches in mFrontCaches, to sum up their statistics */
+    private final FrontCache[] mAllFrontCaches = new FrontCache[MAX_FRONT_CACHES];
+
+    /* statistics of temporary front caches */
+    private final AtomicLong mHitCount = new AtomicLong();
+    private final AtomicLong mMissCount = new AtomicLong();
+    private final AtomicLong mSameCount = new AtomicLong();
+
     public RenderTheme(int mapBackground, float baseTextSize, Rule[] rules, int levels) {
         this(mapBackground, baseTextSize, rules, levels, false);
     }
@@ -103,6 +172,7 @@ public class RenderTheme implements IRenderTheme {
         mBaseTextSize = baseTextSize;
         mLevels = levels;
         mRules = rules;
+        mMatcher = new RuleMatcher(rules);
         mMapsforgeTheme = mapsforgeTheme;
 
         mTransformForwardKeyMap = transformKeyMap;
@@ -114,6 +184,36 @@ public class RenderTheme implements IRenderTheme {
         mStyleCache[0] = new RenderStyleCache(Element.NODE);
         mStyleCache[1] = new RenderStyleCache(Element.LINE);
         mStyleCache[2] = new RenderStyleCache(Element.POLY);
+
+        for (int i = 0; i < MAX_FRONT_CACHES; i++) {
+            mAllFrontCaches[i] = new FrontCache(i, mMatcher);
+            mFrontCaches.set(i, mAllFrontCaches[i]);
+        }
+    }
+
+    /**
+     * @return a front cache for the current thread, preferably the one
+     * it used before. Must be returned with {@link #release(FrontCache)}.
+     */
+    private FrontCache acquire() {
+        int start = (int) (Thread.currentThread().getId() % MAX_FRONT_CACHES);
+        for (int i = 0; i < MAX_FRONT_CACHES; i++) {
+            int slot = (start + i) % MAX_FRONT_CACHES;
+            FrontCache cache = mFrontCaches.getAndSet(slot, null);
+            if (cache != null)
+                return cache;
+        }
+        return new FrontCache(-1, mMatcher);
+    }
+
+    private void release(FrontCache cache) {
+        if (cache.slot >= 0) {
+            mFrontCaches.set(cache.slot, cache);
+            return;
+        }
+        mHitCount.addAndGet(cache.hits);
+        mMissCount.addAndGet(cache.misses);
+        mSameCount.addAndGet(cache.same);
     }
 
     @Override
@@ -122,6 +222,16 @@ public class RenderTheme implements IRenderTheme {
         for (int i = 0; i < 3; i++)
             mStyleCache[i].cache.clear();
 
+        for (int i = 0; i < MAX_FRONT_CACHES; i++) {
+            FrontCache cache = mFrontCaches.get(i);
+            if (cache == null)
+                continue;
+            for (FrontStyleCache c : cache.types) {
+                Arrays.fill(c.items, null);
+                c.prevItem = null;
+            }
+        }
+
         for (Rule rule : mRules)
             rule.dispose();
     }
@@ -145,146 +255,217 @@ public class RenderTheme implements IRenderTheme {
         return mMapsforgeTheme;
     }
 
-    //AtomicInteger hitCount = new AtomicInteger(0);
-    //AtomicInteger missCount = new AtomicInteger(0);
-    //AtomicInteger sameCount = new AtomicInteger(0);
-
-    @Override
-    public RenderStyle[] matchElement(GeometryType geometryType, TagSet tags, int zoomLevel) {
+    /**
+     * @return the number of elements matched from the cache.
+     */
+    public long getMatchingCacheHits() {
+        long count = mHitCount.get();
+        for (FrontCache cache : mAllFrontCaches)
+            count += cache.hits;
+        return count;
+    }
 
-        /* list of items in cache */
-        RenderStyleItem ris = null;
+    /**
+     * @return the number of elements matched against the rules.
+     */
+    public long getMatchingCacheMisses() {
+        long count = mMissCount.get();
+        for (FrontCache cache : mAllFrontCaches)
+            count += cache.misses;
+        return count;
+    }
 
-        /* the item matching tags and zoomlevel */
-        RenderStyleItem ri = null;
+    /**
+     * @return the number of elements with the same tags as the previous
+     * element of the same type.
+     */
+    public long getMatchingCacheSameHits() {
+        long count = mSameCount.get();
+        for (FrontCache cache : mAllFrontCaches)
+            count += cache.same;
+        return count;
+    }
 
+    @Override
+    public RenderStyle[] matchElement(GeometryType geometryType, TagSet tags, int zoomLevel) {
         int type = geometryType.nativeInt;
         if (type < 1 || type > 3) {
             log.fine("invalid geometry type for RenderTheme " + geometryType.name());
             return null;
         }
 
-        RenderStyleCache cache = mStyleCache[type - 1];
+        FrontCache frontCache = acquire();
+        try {
+            return matchElement(frontCache, type, tags, zoomLevel);
+        } finally {
+            release(frontCache);
+        }
+    }
+
+    private RenderStyle[] matchElement(FrontCache frontCache, int type, TagSet tags, int zoomLevel) {
+        FrontStyleCache cache = frontCache.types[type - 1];
+
+        /* the item matching tags and zoomlevel */
+        RenderStyleItem ri = null;
 
         /* NOTE: maximum zoom level supported is 32 */
         int zoomMask = 1 << zoomLevel;
 
-        synchronized (cache) {
+        if ((cache.prevItem == null) || (cache.prevItem.zoom & zoomMask) == 0) {
+            /* previous instructions zoom does not match */
+            cache.cacheKey.set(tags, null);
+        } else {
+            /* compare if tags match previous instructions */
+            if (cache.cacheKey.set(tags, cache.prevItem.key)) {
+                ri = cache.prevItem;
+                frontCache.same++;
+            }
+        }
 
-            if ((cache.prevItem == null) || (cache.prevItem.zoom & zoomMask) == 0) {
-                /* previous instructions zoom does not match */
-                cache.cacheKey.set(tags, null);
-            } else {
-                /* compare if tags match previous instructions */
-                if (cache.cacheKey.set(tags, cache.prevItem.key)) {
-                    ri = cache.prevItem;
-                    //log.debug(hitCount + "/" + sameCount.incrementAndGet()
-                    //        + "/" + missCount + "same hit " + tags);
+        if (ri == null) {
+            /* get instruction for current cacheKey, first from the
+             * front cache, then from the shared cache */
+            MatchingCacheKey cacheKey = cache.cacheKey;
+            int slot = cacheKey.mHash & (FRONT_CACHE_SIZE - 1);
+
+            RenderStyleItem ris = cache.items[slot];
+            if (ris == null || !ris.key.equals(cacheKey)) {
+                ris = mStyleCache[type - 1].cache.get(cacheKey);
+                if (ris != null)
+                    cache.items[slot] = ris;
+            }
+
+            for (ri = ris; ri != null; ri = ri.next) {
+                if ((ri.zoom & zoomMask) != 0) {
+                    /* cache hit */
+                    frontCache.hits++;
+                    break;
                 }
             }
 
             if (ri == null) {
-                /* get instruction for current cacheKey */
-                ris = cache.getRenderInstructions();
+                /* cache miss */
+                frontCache.misses++;
+                ri = matchRules(mStyleCache[type - 1], cache, ris, zoomLevel);
+                cache.items[slot] = mStyleCache[type - 1].cache.get(ri.key);
+            }
+        }
+        cache.prevItem = ri;
 
-                for (ri = ris; ri != null; ri = ri.next) {
-                    if ((ri.zoom & zoomMask) != 0) {
-                        /* cache hit */
+        return ri.list;
+    }
 
-                        //log.debug(hitCount.incrementAndGet()
-                        //       + "/" + sameCount + "/" + missCount
-                        //       + " cache hit " + tags);
-                        break;
+    /**
+     * Match the rules for the current key of the front cache and add
+     * the result to the shared cache.
+     *
+     * @param styleCache the shared cache.
+     * @param cache      the front cache.
+     * @param ris        the cached items for the key or null.
+     * @param zoomLevel  the zoom level.
+     * @return the item for the key and zoom level.
+     */
+    private RenderStyleItem matchRules(RenderStyleCache styleCache, FrontStyleCache cache,
+                                       RenderStyleItem ris, int zoomLevel) {
+        int zoomMask = 1 << zoomLevel;
+
+        MatchingCacheKey key = (ris != null) ? ris.key : new MatchingCacheKey(cache.cacheKey);
+
+        List<RenderStyle> matches = cache.instructionList;
+        matches.clear();
+
+        mMatcher.matchElement(cache.matchState, styleCache.matchType, key.mTags, zoomMask, matches);
+
+        int size = matches.size();
+        if (size > 1) {
+            for (int i = 0; i < size - 1; i++) {
+                RenderStyle r = matches.get(i);
+                for (int j = i + 1; j < size; j++) {
+                    if (matches.get(j) == r) {
+                        log.fine("fix duplicate instruction! "
+                                + Arrays.deepToString(key.mTags)
+                                + " zoom:" + zoomLevel + " "
+                                + r.getClass().getName());
+                        matches.remove(j--);
+                        size--;
                     }
                 }
             }
+        }
 
-            if (ri == null) {
-                /* cache miss */
-                //missCount.incrementAndGet();
-
-                List<RenderStyle> matches = cache.instructionList;
-                matches.clear();
-
-                for (Rule rule : mRules)
-                    rule.matchElement(cache.matchType, cache.cacheKey.mTags, zoomMask, matches);
-
-                int size = matches.size();
-                if (size > 1) {
-                    for (int i = 0; i < size - 1; i++) {
-                        RenderStyle r = matches.get(i);
-                        for (int j = i + 1; j < size; j++) {
-                            if (matches.get(j) == r) {
-                                log.fine("fix duplicate instruction! "
-                                        + Arrays.deepToString(cache.cacheKey.mTags)
-                                        + " zoom:" + zoomLevel + " "
-                                        + r.getClass().getName());
-                                matches.remove(j--);
-                                size--;
-                            }
-                        }
-                    }
-                }
-                /* check if same instructions are used in another level */
-                for (ri = ris; ri != null; ri = ri.next) {
-                    if (size == 0) {
-                        if (ri.list != null)
-                            continue;
+        RenderStyleItem ri;
 
-                        /* both matchinglists are empty */
-                        break;
-                    }
+        if (ris == null) {
+            ri = new RenderStyleItem();
+            ri.zoom = zoomMask;
+            ri.key = key;
+            if (size > 0) {
+                ri.list = new RenderStyle[size];
+                matches.toArray(ri.list);
+            }
 
-                    if (ri.list == null)
-                        continue;
+            if (styleCache.cache.size() >= MATCHING_CACHE_SIZE)
+                styleCache.cache.clear();
 
-                    if (ri.list.length != size)
+            ris = styleCache.cache.putIfAbsent(key, ri);
+            if (ris == null)
+                return ri;
+
+            /* another thread added the key in the meantime */
+        }
+
+        synchronized (ris) {
+            /* check if same instructions are used in another level */
+            for (ri = ris; ri != null; ri = ri.next) {
+                if ((ri.zoom & zoomMask) != 0)
+                    /* added by another thread in the meantime */
+                    return ri;
+
+                if (size == 0) {
+                    if (ri.list != null)
                         continue;
 
-                    int i = 0;
-                    for (RenderStyle r : ri.list) {
-                        if (r != matches.get(i))
-                            break;
-                        i++;
-                    }
-                    if (i == size)
-                        /* both matching lists contain the same items */
-                        break;
+                    /* both matchinglists are empty */
+                    break;
                 }
 
-                if (ri != null) {
-                    /* we found a same matchting list on another zoomlevel add
-                     * this zoom level to the existing RenderInstructionItem. */
-                    ri.zoom |= zoomMask;
+                if (ri.list == null)
+                    continue;
 
-                    //log.debug(zoomLevel + " same instructions " + size + " "
-                    //                + Arrays.deepToString(tags));
-                } else {
-                    //log.debug(zoomLevel + " new instructions " + size + " "
-                    //                + Arrays.deepToString(tags));
+                if (ri.list.length != size)
+                    continue;
 
-                    ri = new RenderStyleItem();
-                    ri.zoom = zoomMask;
+                int i = 0;
+                for (RenderStyle r : ri.list) {
+                    if (r != matches.get(i))
+                        break;
+                    i++;
+                }
+                if (i == size)
+                    /* both matching lists contain the same items */
+                    break;
+            }
 
-                    if (size > 0) {
-                        ri.list = new RenderStyle[size];
-                        matches.toArray(ri.list);
-                    }
+            if (ri != null) {
+                /* we found a same matchting list on another zoomlevel add
+                 * this zoom level to the existing RenderInstructionItem. */
+                ri.zoom |= zoomMask;
+            } else {
+                ri = new RenderStyleItem();
+                ri.zoom = zoomMask;
 
-                    /* attach this list to the one found for MatchingKey */
-                    if (ris != null) {
-                        ri.next = ris.next;
-                        ri.key = ris.key;
-                        ris.next = ri;
-                    } else {
-                        ri.key = new MatchingCacheKey(cache.cacheKey);
-                        cache.cache.put(ri.key, ri);
-                    }
+                if (size > 0) {
+                    ri.list = new RenderStyle[size];
+                    matches.toArray(ri.list);
                 }
+
+                /* attach this list to the one found for MatchingKey */
+                ri.key = ris.key;
+                ri.next = ris.next;
+                ris.next = ri;
             }
-            cache.prevItem = ri;
         }
-        return ri.list;
+        return ri;
     }
 
     @Override
@@ -72,6 +72,15 @@ public class Rule {
         return true;
     }
 
+    /**
+     * @return the keys of which at least one must be present for
+     * {@link #matchesTags(Tag[])} to match, or null if the rule can
+     * match without any of its keys.
+     */
+    String[] requiredKeys() {
+        return null;
+    }
+
     public boolean matchElement(int type, Tag[] tags, int zoomLevel, List<RenderStyle> result) {
         if (((element & type) == 0) || ((zoom & zoomLevel) == 0) || !matchesTags(tags))
             return false;
@@ -196,6 +205,11 @@ public class Rule {
 
             return false;
         }
+
+        @Override
+        String[] requiredKeys() {
+            return new String[]{mKey};
+        }
     }
 
     static class PositiveRuleV extends Rule {
@@ -237,6 +251,11 @@ public class Rule {
 
             return false;
         }
+
+        @Override
+        String[] requiredKeys() {
+            return new String[]{mKey};
+        }
     }
 
     static class PositiveRuleMultiKV extends Rule {
@@ -285,6 +304,11 @@ public class Rule {
                 }
             return false;
         }
+
+        @Override
+        String[] requiredKeys() {
+            return mKeys;
+        }
     }
 
     static class NegativeRule extends Rule {
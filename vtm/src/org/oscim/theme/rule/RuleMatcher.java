@@ -0,0 +1,247 @@
+/*
+ * This file is part of the OpenScienceMap project (http://www.opensciencemap.org).
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.oscim.theme.rule;
+
+import org.oscim.core.Tag;
+import org.oscim.theme.styles.RenderStyle;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A rule tree compiled for matching.
+ * <p/>
+ * Rules which can only match when one of their keys is present are
+ * dispatched by tag key: each key of the theme has an index, the top-level
+ * rules have a bitset of candidates per key and nested rules are skipped
+ * without calling {@link Rule#matchesTags(Tag[])} when none of their keys
+ * is present. Rules are still visited in tree order, so the result is the
+ * same as calling {@link Rule#matchElement(int, Tag[], int, List)} for all
+ * top-level rules.
+ */
+public class RuleMatcher {
+
+    /**
+     * Per thread matching state, see {@link #newState()}.
+     */
+    public static final class State {
+        /* keys present in the current tags, by key index */
+        final long[] present;
+        /* key indices of the current tags */
+        int[] keys;
+        int numKeys;
+        /* candidate top-level rules */
+        final long[] candidates;
+
+        State(int numKeys, int numRules) {
+            present = new long[(numKeys + 63) >> 6];
+            keys = new int[16];
+            candidates = new long[(numRules + 63) >> 6];
+        }
+    }
+
+    private static final class Node {
+        final Rule rule;
+        final int element;
+        final int zoom;
+        final boolean selectWhenMatched;
+        /* key indices of which one must be present, null if none is required */
+        final int[] keys;
+        Node[] subRules;
+
+        Node(Rule rule, int[] keys) {
+            this.rule = rule;
+            this.element = rule.element;
+            this.zoom = rule.zoom;
+            this.selectWhenMatched = rule.selectWhenMatched;
+            this.keys = keys;
+        }
+    }
+
+    private final Map<String, Integer> mKeys = new HashMap<>();
+    private final Node[] mRules;
+
+    /* bitsets of top-level rules by key index */
+    private final long[][] mCandidates;
+    /* bitset of top-level rules which do not require a key */
+    private final long[] mUnconditional;
+
+    public RuleMatcher(Rule[] rules) {
+        mRules = new Node[rules.length];
+        for (int i = 0; i < rules.length; i++)
+            mRules[i] = compile(rules[i]);
+
+        int words = (rules.length + 63) >> 6;
+        mCandidates = new long[mKeys.size()][words];
+        mUnconditional = new long[words];
+
+        for (int i = 0; i < mRules.length; i++) {
+            int[] keys = mRules[i].keys;
+            if (keys == null) {
+                mUnconditional[i >> 6] |= 1L << i;
+                continue;
+            }
+            for (int key : keys)
+                mCandidates[key][i >> 6] |= 1L << i;
+        }
+    }
+
+    private Node compile(Rule rule) {
+        int[] keys = null;
+        String[] required = rule.requiredKeys();
+        if (required != null) {
+            keys = new int[required.length];
+            for (int i = 0; i < required.length; i++) {
+                Integer key = mKeys.get(required[i]);
+                if (key == null) {
+                    key = mKeys.size();
+                    mKeys.put(required[i], key);
+                }
+                keys[i] = key;
+            }
+        }
+
+        Node node = new Node(rule, keys);
+        node.subRules = new Node[rule.subRules.length];
+        for (int i = 0; i < rule.subRules.length; i++)
+            node.subRules[i] = compile(rule.subRules[i]);
+
+        return node;
+    }
+
+    /**
+     * @return a new matching state, which must only be used by one thread at a time.
+     */
+    public State newState() {
+        return new State(mKeys.size(), mRules.length);
+    }
+
+    /**
+     * Adds the styles of all rules matching the element to result.
+     *
+     * @param state     the matching state of the current thread.
+     * @param type      the element type.
+     * @param tags      the element tags.
+     * @param zoomLevel the zoom level bitmask.
+     * @param result    the list of matching styles.
+     */
+    public void matchElement(State state, int type, Tag[] tags, int zoomLevel, List<RenderStyle> result) {
+        long[] candidates = state.candidates;
+        System.arraycopy(mUnconditional, 0, candidates, 0, candidates.length);
+
+        /* mark the keys present in tags */
+        int numKeys = 0;
+        for (Tag tag : tags) {
+            Integer key = mKeys.get(tag.key);
+            if (key == null)
+                continue;
+
+            int k = key;
+            state.present[k >> 6] |= 1L << k;
+
+            if (numKeys == state.keys.length)
+                state.keys = Arrays.copyOf(state.keys, numKeys * 2);
+            state.keys[numKeys++] = k;
+
+            long[] keyCandidates = mCandidates[k];
+            for (int i = 0; i < candidates.length; i++)
+                candidates[i] |= keyCandidates[i];
+        }
+        state.numKeys = numKeys;
+
+        for (int w = 0; w < candidates.length; w++) {
+            long bits = candidates[w];
+            while (bits != 0) {
+                int i = (w << 6) + Long.numberOfTrailingZeros(bits);
+                bits &= bits - 1;
+                match(mRules[i], state, type, tags, zoomLevel, result);
+            }
+        }
+
+        clear(state);
+    }
+
+    private static void clear(State state) {
+        for (int i = 0; i < state.numKeys; i++) {
+            int k = state.keys[i];
+            state.present[k >> 6] = 0;
+        }
+        state.numKeys = 0;
+    }
+
+    private static boolean hasKey(State state, int[] keys) {
+        for (int k : keys)
+            if ((state.present[k >> 6] & (1L << k)) != 0)
+                return true;
+
+        return false;
+    }
+
+    /**
+     * Same as {@link Rule#matchElement(int, Tag[], int, List)}, but skips rules
+     * for which none of the required keys is present.
+     */
+    private static boolean match(Node node, State state, int type, Tag[] tags, int zoomLevel,
+                                 List<RenderStyle> result) {
+        if (((node.element & type) == 0) || ((node.zoom & zoomLevel) == 0))
+            return false;
+
+        if (node.keys != null && !hasKey(state, node.keys))
+            return false;
+
+        Rule rule = node.rule;
+        if (!rule.matchesTags(tags))
+            return false;
+
+        boolean matched = false;
+        if (node.subRules.length > 0) {
+            if (rule.selectFirstMatch) {
+                /* only add first matching rule and when-matched rules iff a
+                 * previous rule matched */
+                for (Node r : node.subRules) {
+                    /* continue if matched xor selectWhenMatch */
+                    if (matched ^ r.selectWhenMatched)
+                        continue;
+
+                    if (match(r, state, type, tags, zoomLevel, result))
+                        matched = true;
+                }
+            } else {
+                /* add all rules and when-matched rules iff a previous rule
+                 * matched */
+                for (Node r : node.subRules) {
+                    if (r.selectWhenMatched && !matched)
+                        continue;
+
+                    if (match(r, state, type, tags, zoomLevel, result))
+                        matched = true;
+                }
+            }
+        }
+
+        if (rule.styles == Rule.EMPTY_STYLE)
+            /* matched if styles where added */
+            return matched;
+
+        /* add instructions for this rule */
+        for (RenderStyle ri : rule.styles)
+            result.add(ri);
+
+        /* this rule did match */
+        return true;
+    }
+}
@@ -33,6 +33,20 @@ public class TileDataSink implements ITileDataSink {
         this.sink = sink;
     }
 
+    /**
+     * @return true when no POI with this hash was added before.
+     */
+    public boolean addPoi(int hash) {
+        return hashPois.add(hash);
+    }
+
+    /**
+     * @return true when no way with this hash was added before.
+     */
+    public boolean addWay(int hash) {
+        return hashWays.add(hash);
+    }
+
     public QueryResult getResult() {
         return result;
     }
@@ -0,0 +1,465 @@
+/*
+ * This file is part of the OpenScienceMap project (http://www.opensciencemap.org).
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.oscim.tiling.cache;
+
+import org.oscim.core.Tile;
+import org.oscim.tiling.ITileCache;
+import org.oscim.utils.IOUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Logger;
+
+/**
+ * Persistent tile cache for the JVM, storing tiles in append-only segment
+ * files of a cache directory.
+ * <p/>
+ * Completed tiles are appended to the current segment and registered in an
+ * in-memory index, which is rebuilt from the segment files on startup. When
+ * the cache exceeds its size the oldest segments are deleted. Tiles can be
+ * read concurrently while new tiles are written.
+ * <p/>
+ * A cache directory must only be used by one FileTileCache at a time, use
+ * one directory per {@link org.oscim.tiling.TileSource}.
+ */
+public class FileTileCache implements ITileCache {
+
+    private static final Logger log = Logger.getLogger(FileTileCache.class.getName());
+    static final boolean dbg = false;
+
+    /**
+     * Default maximum size of the cache in bytes.
+     */
+    public static final long DEFAULT_CACHE_SIZE = 256 * 1024 * 1024;
+
+    private static final String SEGMENT_SUFFIX = ".seg";
+
+    private static final int MIN_SEGMENT_SIZE = 256 * 1024;
+    private static final int MAX_SEGMENT_SIZE = 32 * 1024 * 1024;
+
+    /* record: magic, zoom, x, y, data length */
+    private static final int RECORD_MAGIC = 0x7674636B;
+    private static final int RECORD_HEADER_SIZE = 4 + 1 + 4 + 4 + 4;
+
+    static final class Segment {
+        final int id;
+        final File file;
+        volatile FileChannel channel;
+        boolean deleted;
+
+        /* bytes written, only modified while holding the cache lock */
+        volatile long size;
+
+        Segment(int id, File file) throws IOException {
+            this.id = id;
+            this.file = file;
+            this.channel = open(file);
+        }
+
+        void close() {
+            deleted = true;
+            IOUtils.closeQuietly(channel);
+        }
+
+        /**
+         * Reopens the channel after it was closed by an interrupt of a
+         * reading or writing thread.
+         */
+        synchronized void reopen() throws IOException {
+            if (!deleted && !channel.isOpen())
+                channel = open(file);
+        }
+
+        static FileChannel open(File file) throws IOException {
+            return new RandomAccessFile(file, "rw").getChannel();
+        }
+    }
+
+    static final class Entry {
+        final Segment segment;
+        final long position;
+        final int length;
+
+        Entry(Segment segment, long position, int length) {
+            this.segment = segment;
+            this.position = position;
+            this.length = length;
+        }
+    }
+
+    static final class CacheBuffer extends ByteArrayOutputStream {
+        CacheBuffer() {
+            super(32 * 1024);
+        }
+
+        byte[] buffer() {
+            return buf;
+        }
+    }
+
+    class CacheTileReader implements TileReader {
+        final InputStream mInputStream;
+        final Tile mTile;
+
+        CacheTileReader(Tile tile, InputStream is) {
+            mTile = tile;
+            mInputStream = is;
+        }
+
+        @Override
+        public Tile getTile() {
+            return mTile;
+        }
+
+        @Override
+        public InputStream getInputStream() {
+            return mInputStream;
+        }
+    }
+
+    class CacheTileWriter implements TileWriter {
+        final CacheBuffer mOutputStream;
+        final Tile mTile;
+
+        CacheTileWriter(Tile tile, CacheBuffer os) {
+            mTile = tile;
+            mOutputStream = os;
+        }
+
+        @Override
+        public Tile getTile() {
+            return mTile;
+        }
+
+        @Override
+        public OutputStream getOutputStream() {
+            return mOutputStream;
+        }
+
+        @Override
+        public void complete(boolean success) {
+            saveTile(mTile, mOutputStream, success);
+        }
+    }
+
+    private final File mDirectory;
+    private final ConcurrentHashMap<Long, Entry> mIndex = new ConcurrentHashMap<>();
+    private final ArrayList<CacheBuffer> mCacheBuffers = new ArrayList<>();
+    private final ByteBuffer mHeader = ByteBuffer.allocate(RECORD_HEADER_SIZE);
+
+    /* segments from oldest to current, guarded by 'this' */
+    private final ArrayDeque<Segment> mSegments = new ArrayDeque<>();
+    private long mSize;
+    private long mCacheSize;
+    private boolean mClosed;
+
+    /**
+     * Open the tile cache with {@link #DEFAULT_CACHE_SIZE}.
+     *
+     * @param directory the cache directory, created when missing.
+     */
+    public FileTileCache(File directory) throws IOException {
+        this(directory, DEFAULT_CACHE_SIZE);
+    }
+
+    /**
+     * @param directory the cache directory, created when missing.
+     * @param cacheSize the maximum size of the cache in bytes.
+     */
+    public FileTileCache(File directory, long cacheSize) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs())
+            throw new IOException("cannot create cache directory " + directory);
+
+        mDirectory = directory;
+        mCacheSize = cacheSize;
+
+        synchronized (this) {
+            openSegments();
+            evict();
+        }
+    }
+
+    private void openSegments() throws IOException {
+        File[] files = mDirectory.listFiles();
+        if (files == null)
+            throw new IOException("cannot list cache directory " + mDirectory);
+
+        int[] ids = new int[files.length];
+        int numIds = 0;
+        for (File f : files) {
+            String name = f.getName();
+            if (!name.endsWith(SEGMENT_SUFFIX))
+                continue;
+            try {
+                ids[numIds++] = Integer.parseInt(name.substring(0, name.length() - SEGMENT_SUFFIX.length()));
+            } catch (NumberFormatException e) {
+                log.fine("skip " + f);
+            }
+        }
+        Arrays.sort(ids, 0, numIds);
+
+        for (int i = 0; i < numIds; i++) {
+            Segment segment = new Segment(ids[i], segmentFile(ids[i]));
+            mSegments.add(segment);
+            scanSegment(segment);
+            mSize += segment.size;
+        }
+
+        if (dbg)
+            log.fine("opened " + mDirectory + " tiles:" + mIndex.size() + " size:" + mSize);
+    }
+
+    /**
+     * Adds the records of a segment to the index. A truncated or corrupt tail,
+     * e.g. from an interrupted write, is cut off.
+     */
+    private void scanSegment(Segment segment) throws IOException {
+        FileChannel channel = segment.channel;
+        long fileSize = channel.size();
+        long pos = 0;
+
+        ByteBuffer header = mHeader;
+        while (pos + RECORD_HEADER_SIZE <= fileSize) {
+            header.clear();
+            if (!readFully(channel, header, pos))
+                break;
+            header.flip();
+
+            if (header.getInt() != RECORD_MAGIC)
+                break;
+            int zoom = header.get();
+            int x = header.getInt();
+            int y = header.getInt();
+            int length = header.getInt();
+
+            long data = pos + RECORD_HEADER_SIZE;
+            if (length < 0 || data + length > fileSize)
+                break;
+
+            mIndex.put(key(x, y, zoom), new Entry(segment, data, length));
+            pos = data + length;
+        }
+
+        if (pos < fileSize) {
+            log.fine("truncate " + segment.file + " at " + pos);
+            channel.truncate(pos);
+        }
+        segment.size = pos;
+    }
+
+    private File segmentFile(int id) {
+        return new File(mDirectory, id + SEGMENT_SUFFIX);
+    }
+
+    private static Long key(int x, int y, int zoom) {
+        return ((long) zoom << 58) | ((long) x << 29) | y;
+    }
+
+    @Override
+    public TileWriter writeTile(Tile tile) {
+        CacheBuffer os;
+
+        synchronized (mCacheBuffers) {
+            if (mCacheBuffers.size() == 0)
+                os = new CacheBuffer();
+            else
+                os = mCacheBuffers.remove(mCacheBuffers.size() - 1);
+        }
+        return new CacheTileWriter(tile, os);
+    }
+
+    @Override
+    public TileReader getTile(Tile tile) {
+        Entry entry = mIndex.get(key(tile.tileX, tile.tileY, tile.zoomLevel));
+        if (entry == null) {
+            if (dbg)
+                log.fine("not in cache " + tile);
+            return null;
+        }
+
+        byte[] data = new byte[entry.length];
+        try {
+            if (!readFully(entry.segment.channel, ByteBuffer.wrap(data), entry.position))
+                return null;
+        } catch (ClosedByInterruptException e) {
+            reopen(entry.segment);
+            return null;
+        } catch (IOException e) {
+            /* segment was evicted meanwhile */
+            log.fine(tile + " cache read: " + e);
+            return null;
+        }
+
+        if (dbg)
+            log.fine("load tile " + tile);
+
+        return new CacheTileReader(tile, new ByteArrayInputStream(data));
+    }
+
+    void saveTile(Tile tile, CacheBuffer data, boolean success) {
+        try {
+            if (success && data.size() > 0)
+                append(tile, data);
+        } catch (ClosedByInterruptException e) {
+            /* the record is not indexed, the next tile overwrites it */
+            synchronized (this) {
+                Segment segment = mSegments.peekLast();
+                if (segment != null)
+                    reopen(segment);
+            }
+        } catch (IOException e) {
+            log.fine(tile + " cache write: " + e);
+        } finally {
+            data.reset();
+            synchronized (mCacheBuffers) {
+                mCacheBuffers.add(data);
+            }
+        }
+    }
+
+    private synchronized void append(Tile tile, CacheBuffer data) throws IOException {
+        if (mClosed)
+            return;
+
+        int length = data.size();
+        Segment segment = mSegments.peekLast();
+        if (segment == null || segment.size + RECORD_HEADER_SIZE + length > segmentSize())
+            segment = newSegment();
+
+        long pos = segment.size;
+
+        ByteBuffer header = mHeader;
+        header.clear();
+        header.putInt(RECORD_MAGIC)
+                .put(tile.zoomLevel)
+                .putInt(tile.tileX)
+                .putInt(tile.tileY)
+                .putInt(length);
+        header.flip();
+
+        writeFully(segment.channel, header, pos);
+        writeFully(segment.channel, ByteBuffer.wrap(data.buffer(), 0, length),
+                pos + RECORD_HEADER_SIZE);
+
+        long size = RECORD_HEADER_SIZE + length;
+        segment.size += size;
+        mSize += size;
+
+        mIndex.put(key(tile.tileX, tile.tileY, tile.zoomLevel),
+                new Entry(segment, pos + RECORD_HEADER_SIZE, length));
+
+        if (dbg)
+            log.fine("store tile " + tile + " " + length);
+
+        evict();
+    }
+
+    private Segment newSegment() throws IOException {
+        Segment last = mSegments.peekLast();
+        int id = (last == null) ? 0 : last.id + 1;
+
+        Segment segment = new Segment(id, segmentFile(id));
+        segment.channel.truncate(0);
+        mSegments.add(segment);
+        return segment;
+    }
+
+    private long segmentSize() {
+        return Math.max(MIN_SEGMENT_SIZE, Math.min(MAX_SEGMENT_SIZE, mCacheSize / 8));
+    }
+
+    /**
+     * Deletes the oldest segments until the cache fits its size.
+     */
+    private void evict() {
+        while (mSize > mCacheSize && !mSegments.isEmpty())
+            deleteSegment(mSegments.removeFirst());
+    }
+
+    private void deleteSegment(Segment segment) {
+        for (Iterator<Map.Entry<Long, Entry>> it = mIndex.entrySet().iterator(); it.hasNext(); ) {
+            if (it.next().getValue().segment == segment)
+                it.remove();
+        }
+        mSize -= segment.size;
+        segment.close();
+
+        if (!segment.file.delete())
+            log.fine("cannot delete " + segment.file);
+    }
+
+    /**
+     * @param size the maximum size of the cache in bytes, 0 deletes all tiles.
+     */
+    @Override
+    public synchronized void setCacheSize(long size) {
+        mCacheSize = size;
+        evict();
+    }
+
+    /**
+     * @return the number of bytes stored in the cache.
+     */
+    public synchronized long getSize() {
+        return mSize;
+    }
+
+    public synchronized void dispose() {
+        mClosed = true;
+        for (Segment segment : mSegments)
+            segment.close();
+        mSegments.clear();
+        mIndex.clear();
+    }
+
+    private static void reopen(Segment segment) {
+        try {
+            segment.reopen();
+        } catch (IOException e) {
+            log.fine("cannot reopen " + segment.file + ": " + e);
+        }
+    }
+
+    private static boolean readFully(FileChannel channel, ByteBuffer buf, long pos)
+            throws IOException {
+        while (buf.hasRemaining()) {
+            int n = channel.read(buf, pos);
+            if (n < 0)
+                return false;
+            pos += n;
+        }
+        return true;
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buf, long pos)
+            throws IOException {
+        while (buf.hasRemaining())
+            pos += channel.write(buf, pos);
+    }
+}
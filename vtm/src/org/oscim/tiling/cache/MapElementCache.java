@@ -0,0 +1,403 @@
+/*
+ * This file is part of the OpenScienceMap project (http://www.opensciencemap.org).
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.oscim.tiling.cache;
+
+import org.oscim.backend.canvas.Bitmap;
+import org.oscim.core.GeometryBuffer.GeometryType;
+import org.oscim.core.MapElement;
+import org.oscim.core.PointF;
+import org.oscim.core.Tag;
+import org.oscim.core.Tile;
+import org.oscim.tiling.ITileDataSink;
+import org.oscim.tiling.QueryResult;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.logging.Logger;
+
+/**
+ * Size-bounded in-memory cache of decoded tile data, the MapElements a
+ * tile data source passed to its sink.
+ * <p/>
+ * Together with the tile cache of the TileManager, which keeps the built
+ * buckets of recently used tiles, this is the second cache level: a tile
+ * that was dropped by TileManager.limitCache() is loaded again from here
+ * without querying the data source and decoder.
+ * <p/>
+ * The elements are stored in a compact binary form in one off-heap ring
+ * buffer, the oldest tiles are overwritten first. Tags are kept as
+ * references in a table per tile.
+ * <p/>
+ * Tiles are cached per theme, the data a source passes may depend on
+ * the theme and one cache may be shared by layers with different themes.
+ */
+public class MapElementCache {
+    private static final Logger log = Logger.getLogger(MapElementCache.class.getName());
+    static final boolean dbg = false;
+
+    private static final int FLAG_CENTROID = 1;
+    private static final int FLAG_LABEL = 1 << 1;
+
+    private static final GeometryType[] TYPES = GeometryType.values();
+
+    static final class Key {
+        final long tile;
+        final Object theme;
+
+        Key(Tile tile, Object theme) {
+            this.tile = ((long) tile.zoomLevel << 58) | ((long) tile.tileX << 29) | tile.tileY;
+            this.theme = theme;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Key))
+                return false;
+            Key other = (Key) obj;
+            return tile == other.tile && theme == other.theme;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * (int) (tile ^ (tile >>> 32)) + System.identityHashCode(theme);
+        }
+    }
+
+    static final class Entry {
+        final Key key;
+        final long position;
+        final int length;
+        final int generation;
+        final Tag[] tags;
+
+        Entry(Key key, long position, int length, int generation, Tag[] tags) {
+            this.key = key;
+            this.position = position;
+            this.length = length;
+            this.generation = generation;
+            this.tags = tags;
+        }
+    }
+
+    private final ByteBuffer mBuffer;
+    private final int mCapacity;
+
+    private final HashMap<Key, Entry> mEntries = new HashMap<>();
+    /* entries in order of their position in the ring */
+    private final ArrayDeque<Entry> mQueue = new ArrayDeque<>();
+
+    /* logical write position, the ring offset is mHead % mCapacity */
+    private long mHead;
+    private volatile int mGeneration;
+
+    private int mHits;
+    private int mMisses;
+
+    /**
+     * @param size the size of the cache in bytes.
+     */
+    public MapElementCache(int size) {
+        mCapacity = size;
+        mBuffer = ByteBuffer.allocateDirect(size);
+    }
+
+    /**
+     * Removes all tiles, e.g. when the data source or theme changed. Tiles
+     * which are currently loaded are not added afterwards.
+     */
+    public synchronized void clear() {
+        mGeneration++;
+        mEntries.clear();
+        mQueue.clear();
+        mHead = 0;
+    }
+
+    public synchronized int getHits() {
+        return mHits;
+    }
+
+    public synchronized int getMisses() {
+        return mMisses;
+    }
+
+    /**
+     * @return a new sink to load tiles from the cache and to record
+     * tiles loaded from a data source. A sink must only be used by
+     * one thread.
+     */
+    public CacheSink newSink() {
+        return new CacheSink();
+    }
+
+    /**
+     * Copies the data of a tile into the buffer of the sink.
+     *
+     * @return the tile entry or null when not cached.
+     */
+    synchronized Entry get(Tile tile, Object theme, CacheSink sink) {
+        Entry e = mEntries.get(new Key(tile, theme));
+        if (e == null) {
+            mMisses++;
+            return null;
+        }
+        mHits++;
+
+        sink.ensureCapacity(e.length);
+        ByteBuffer buf = mBuffer.duplicate();
+        int pos = (int) (e.position % mCapacity);
+        buf.limit(pos + e.length);
+        buf.position(pos);
+        buf.get(sink.mData, 0, e.length);
+        return e;
+    }
+
+    synchronized void put(Tile tile, Object theme, CacheSink sink, int generation) {
+        int length = sink.mLength;
+        if (generation != mGeneration || length > mCapacity / 4)
+            return;
+
+        /* do not wrap an entry around the end of the ring */
+        int offset = (int) (mHead % mCapacity);
+        if (offset + length > mCapacity)
+            mHead += mCapacity - offset;
+
+        long position = mHead;
+        mHead += length;
+
+        /* drop entries which are overwritten */
+        long valid = mHead - mCapacity;
+        while (!mQueue.isEmpty() && mQueue.peekFirst().position < valid) {
+            Entry old = mQueue.removeFirst();
+            if (mEntries.get(old.key) == old)
+                mEntries.remove(old.key);
+        }
+
+        ByteBuffer buf = mBuffer.duplicate();
+        buf.position((int) (position % mCapacity));
+        buf.put(sink.mData, 0, length);
+
+        Tag[] tags = sink.mTags.toArray(new Tag[sink.mTags.size()]);
+        Entry e = new Entry(new Key(tile, theme), position, length, generation, tags);
+        mEntries.put(e.key, e);
+        mQueue.addLast(e);
+
+        if (dbg)
+            log.fine("put " + tile + " " + length + " entries:" + mEntries.size());
+    }
+
+    /**
+     * Loads tiles from the cache, or records the tile data passed from
+     * a data source to the target sink.
+     */
+    public final class CacheSink implements ITileDataSink {
+        private final MapElement mElement = new MapElement();
+        private final IdentityHashMap<Tag, Integer> mTagIds = new IdentityHashMap<>();
+        private final ArrayList<Tag> mTags = new ArrayList<>();
+
+        private byte[] mData = new byte[64 * 1024];
+        private ByteBuffer mWriter = ByteBuffer.wrap(mData);
+        private int mLength;
+
+        private ITileDataSink mTarget;
+        private Tile mTile;
+        private Object mTheme;
+        private int mGeneration;
+        private boolean mRecording;
+
+        CacheSink() {
+        }
+
+        public MapElementCache getCache() {
+            return MapElementCache.this;
+        }
+
+        /**
+         * Passes the cached data of a tile to the sink and completes it.
+         *
+         * @param theme the theme the tile is loaded for, compared by
+         *              identity.
+         * @return false when the tile is not cached for the theme.
+         */
+        public boolean load(Tile tile, Object theme, ITileDataSink sink) {
+            Entry e = get(tile, theme, this);
+            if (e == null)
+                return false;
+
+            ByteBuffer in = ByteBuffer.wrap(mData, 0, e.length);
+            MapElement element = mElement;
+            while (in.hasRemaining()) {
+                read(in, element, e.tags);
+                sink.process(element);
+            }
+            sink.completed(QueryResult.SUCCESS);
+            return true;
+        }
+
+        /**
+         * Start recording the data of a tile, which is passed through to
+         * the sink. Pass this CacheSink to the data source.
+         *
+         * @param theme see {@link #load(Tile, Object, ITileDataSink)}
+         */
+        public ITileDataSink record(Tile tile, Object theme, ITileDataSink sink) {
+            mTile = tile;
+            mTheme = theme;
+            mTarget = sink;
+            mGeneration = MapElementCache.this.mGeneration;
+            mRecording = true;
+            mWriter.clear();
+            mTagIds.clear();
+            mTags.clear();
+            return this;
+        }
+
+        @Override
+        public void process(MapElement element) {
+            if (mRecording)
+                mRecording = write(element);
+
+            mTarget.process(element);
+        }
+
+        @Override
+        public void setTileImage(Bitmap bitmap) {
+            /* bitmaps are not cached */
+            mRecording = false;
+            mTarget.setTileImage(bitmap);
+        }
+
+        @Override
+        public void completed(QueryResult result) {
+            if (mRecording && result == QueryResult.SUCCESS) {
+                mLength = mWriter.position();
+                put(mTile, mTheme, this, mGeneration);
+            }
+            mRecording = false;
+            mTags.clear();
+            mTagIds.clear();
+
+            ITileDataSink target = mTarget;
+            mTarget = null;
+            mTile = null;
+            mTheme = null;
+            target.completed(result);
+        }
+
+        private void ensureCapacity(int size) {
+            if (size <= mData.length)
+                return;
+
+            int pos = mWriter.position();
+            mData = Arrays.copyOf(mData, Math.max(size, mData.length * 2));
+            mWriter = ByteBuffer.wrap(mData);
+            mWriter.position(pos);
+        }
+
+        private boolean write(MapElement element) {
+            int[] index = element.index;
+            int numIndex;
+            if (element.type == GeometryType.TRIS) {
+                numIndex = 0;
+                while (numIndex < index.length && index[numIndex] >= 0)
+                    numIndex++;
+            } else {
+                numIndex = Math.min(element.indexCurrentPos + 1, index.length);
+            }
+            int numPoints = element.pointNextPos;
+            int numTags = element.tags.size();
+
+            int size = 2 + 4 * (6 + 4 + numTags + numIndex + numPoints);
+            if (mWriter.position() + size > mCapacity / 4)
+                return false;
+
+            ensureCapacity(mWriter.position() + size);
+            ByteBuffer out = mWriter;
+
+            PointF centroid = element.centroidPosition;
+            PointF label = element.labelPosition;
+
+            out.put((byte) element.type.ordinal());
+            out.put((byte) ((centroid != null ? FLAG_CENTROID : 0)
+                    | (label != null ? FLAG_LABEL : 0)));
+            out.putInt(element.layer);
+            out.putInt(element.level);
+            if (centroid != null)
+                out.putFloat(centroid.x).putFloat(centroid.y);
+            if (label != null)
+                out.putFloat(label.x).putFloat(label.y);
+
+            out.putInt(numTags);
+            for (int i = 0; i < numTags; i++) {
+                Tag tag = element.tags.get(i);
+                Integer id = mTagIds.get(tag);
+                if (id == null) {
+                    id = mTags.size();
+                    mTagIds.put(tag, id);
+                    mTags.add(tag);
+                }
+                out.putInt(id);
+            }
+
+            out.putInt(element.indexCurrentPos);
+            out.putInt(numIndex);
+            for (int i = 0; i < numIndex; i++)
+                out.putInt(index[i]);
+
+            float[] points = element.points;
+            out.putInt(numPoints);
+            for (int i = 0; i < numPoints; i++)
+                out.putFloat(points[i]);
+
+            return true;
+        }
+
+        private void read(ByteBuffer in, MapElement element, Tag[] tags) {
+            element.clear();
+            element.tags.clear();
+
+            element.type = TYPES[in.get()];
+            int flags = in.get();
+            element.layer = in.getInt();
+            element.level = in.getInt();
+            element.centroidPosition = null;
+            element.labelPosition = null;
+            if ((flags & FLAG_CENTROID) != 0)
+                element.setCentroidPosition(in.getFloat(), in.getFloat());
+            if ((flags & FLAG_LABEL) != 0)
+                element.setLabelPosition(in.getFloat(), in.getFloat());
+
+            int numTags = in.getInt();
+            for (int i = 0; i < numTags; i++)
+                element.tags.add(tags[in.getInt()]);
+
+            element.indexCurrentPos = in.getInt();
+            int numIndex = in.getInt();
+            int[] index = element.ensureIndexSize(numIndex + 1, false);
+            for (int i = 0; i < numIndex; i++)
+                index[i] = in.getInt();
+            index[numIndex] = -1;
+
+            int numPoints = in.getInt();
+            float[] points = element.ensurePointSize((numPoints >> 1) + 1, false);
+            for (int i = 0; i < numPoints; i++)
+                points[i] = in.getFloat();
+            element.pointNextPos = numPoints;
+        }
+    }
+}
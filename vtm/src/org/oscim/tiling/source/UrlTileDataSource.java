@@ -25,7 +25,10 @@ import org.oscim.tiling.ITileDataSink;
 import org.oscim.tiling.ITileDataSource;
 import org.oscim.tiling.QueryResult;
 import org.oscim.utils.IOUtils;
+import org.oscim.utils.Parameters;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.SocketException;
@@ -80,6 +83,10 @@ public class UrlTileDataSource implements ITileDataSource {
                 cacheWriter = cache.writeTile(tile);
                 mConn.setCache(cacheWriter.getOutputStream());
             }
+            /* receive the tile before decoding, so that the processors
+             * limited by the executor do not wait for the network */
+            if (Parameters.TILE_LOADER_EXECUTOR)
+                is = readFully(is);
             if (mTileDecoder.decode(tile, sink, is))
                 res = QueryResult.SUCCESS;
         } catch (SocketException e) {
@@ -108,6 +115,15 @@ public class UrlTileDataSource implements ITileDataSource {
         }
     }
 
+    private static InputStream readFully(InputStream is) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(1 << 14);
+        byte[] buffer = new byte[8192];
+        int n;
+        while ((n = is.read(buffer)) >= 0)
+            out.write(buffer, 0, n);
+        return new ByteArrayInputStream(out.toByteArray());
+    }
+
     @Override
     public void dispose() {
         mConn.close();
@@ -0,0 +1,269 @@
+/*
+ * This file is part of the OpenScienceMap project (http://www.opensciencemap.org).
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.oscim.tiling.source.mapfile;
+
+import org.oscim.core.Tag;
+import org.oscim.core.TagSet;
+
+import java.util.logging.Logger;
+
+/**
+ * Decodes the data of a map file block. Implemented by {@link ReadBuffer},
+ * which reads blocks from the file into an array, and by
+ * {@link MappedReadBuffer}, which decodes blocks of a memory mapped
+ * sub-file.
+ */
+public abstract class AbstractReadBuffer {
+    private static final Logger LOG = Logger.getLogger(AbstractReadBuffer.class.getName());
+
+    static final int WAY_NUMBER_OF_TAGS_BITMASK = 0x0f;
+
+    private int[] mTagIds = new int[16];
+
+    /**
+     * Buffer position of the tags of the last way skipped by
+     * {@link #skipWays(int, int)}, -1 if none.
+     */
+    int lastTagPosition;
+
+    AbstractReadBuffer() {
+    }
+
+    /**
+     * Returns one byte from the read buffer.
+     *
+     * @return the byte value.
+     */
+    public abstract byte readByte();
+
+    /**
+     * Converts four bytes from the read buffer to a signed int.
+     * <p/>
+     * The byte order is big-endian.
+     *
+     * @return the int value.
+     */
+    public abstract int readInt();
+
+    /**
+     * Converts eight bytes from the read buffer to a signed long.
+     * <p/>
+     * The byte order is big-endian.
+     *
+     * @return the long value.
+     */
+    public abstract long readLong();
+
+    /**
+     * Converts two bytes from the read buffer to a signed int.
+     * <p/>
+     * The byte order is big-endian.
+     *
+     * @return the int value.
+     */
+    public abstract int readShort();
+
+    /**
+     * Converts a variable amount of bytes from the read buffer to a signed int.
+     *
+     * @return the value.
+     */
+    public abstract int readSignedInt();
+
+    /**
+     * Converts a variable amount of bytes from the read buffer to a signed int
+     * array.
+     *
+     * @param values result values
+     * @param length number of values to read
+     */
+    public abstract void readSignedInt(int[] values, int length);
+
+    /**
+     * Converts a variable amount of bytes from the read buffer to an unsigned
+     * int.
+     *
+     * @return the int value.
+     */
+    public abstract int readUnsignedInt();
+
+    /**
+     * Decodes the given amount of bytes from the read buffer to a string.
+     *
+     * @param stringLength the length of the string in bytes.
+     * @return the UTF-8 decoded string (may be null).
+     */
+    public abstract String readUTF8EncodedString(int stringLength);
+
+    /**
+     * Decodes the given amount of bytes from the read buffer to a tag with
+     * string value.
+     *
+     * @param key          the tag key.
+     * @param cache        the cache of decoded tags.
+     * @param stringLength the length of the string in bytes.
+     * @return the tag (value may be null).
+     */
+    abstract Tag readTag(String key, TagCache cache, int stringLength);
+
+    /**
+     * @return the current buffer position.
+     */
+    abstract int getBufferPosition();
+
+    /**
+     * @return the size of the current block.
+     */
+    abstract int getBufferSize();
+
+    /**
+     * Sets the buffer position to the given offset.
+     *
+     * @param bufferPosition the buffer position.
+     */
+    abstract void setBufferPosition(int bufferPosition);
+
+    /**
+     * Skips the given number of bytes in the read buffer.
+     *
+     * @param bytes the number of bytes to skip.
+     */
+    abstract void skipBytes(int bytes);
+
+    /**
+     * Skips ways which do not match the query tile bitmask.
+     *
+     * @return the number of remaining ways or -1 when a way size is invalid.
+     */
+    abstract int skipWays(int queryTileBitmask, int elements);
+
+    /**
+     * Converts four bytes from the read buffer to a float.
+     * <p/>
+     * The byte order is big-endian.
+     *
+     * @return the float value.
+     */
+    public float readFloat() {
+        return Float.intBitsToFloat(readInt());
+    }
+
+    /**
+     * Decodes a variable amount of bytes from the read buffer to a string.
+     *
+     * @return the UTF-8 decoded string (may be null).
+     */
+    public String readUTF8EncodedString() {
+        return readUTF8EncodedString(readUnsignedInt());
+    }
+
+    /**
+     * @return ...
+     */
+    public int getPositionAndSkip() {
+        int pos = getBufferPosition();
+        int length = readUnsignedInt();
+        skipBytes(length);
+        return pos;
+    }
+
+    /**
+     * Decodes a variable amount of bytes from the read buffer to a string.
+     *
+     * @param position buffer offset position of string
+     * @return the UTF-8 decoded string (may be null).
+     */
+    public String readUTF8EncodedStringAt(int position) {
+        int curPosition = getBufferPosition();
+        setBufferPosition(position);
+        String result = readUTF8EncodedString(readUnsignedInt());
+        setBufferPosition(curPosition);
+        return result;
+    }
+
+    /**
+     * Decodes a variable amount of bytes from the read buffer to a tag with
+     * string value.
+     *
+     * @param key   the tag key.
+     * @param cache the cache of decoded tags.
+     * @return the tag (value may be null).
+     */
+    Tag readTag(String key, TagCache cache) {
+        return readTag(key, cache, readUnsignedInt());
+    }
+
+    /**
+     * Decodes a variable amount of bytes from the read buffer to a tag with
+     * string value.
+     *
+     * @param key      the tag key.
+     * @param cache    the cache of decoded tags.
+     * @param position buffer offset position of string
+     * @return the tag (value may be null).
+     */
+    Tag readTagAt(String key, TagCache cache, int position) {
+        int curPosition = getBufferPosition();
+        setBufferPosition(position);
+        Tag result = readTag(key, cache);
+        setBufferPosition(curPosition);
+        return result;
+    }
+
+    boolean readTags(TagSet tags, Tag[] tagsArray, byte numberOfTags) {
+        tags.clear();
+
+        int maxTag = tagsArray.length;
+        if (mTagIds.length < numberOfTags)
+            mTagIds = new int[numberOfTags];
+
+        int numberOfTagIds = 0;
+        for (byte i = 0; i < numberOfTags; i++) {
+            int tagId = readUnsignedInt();
+            if (tagId < 0 || tagId >= maxTag) {
+                LOG.warning("invalid tag ID: " + tagId);
+                break;
+            }
+            mTagIds[numberOfTagIds++] = tagId;
+        }
+
+        for (int i = 0; i < numberOfTagIds; i++) {
+            Tag tag = tagsArray[mTagIds[i]];
+            // Decode variable values of tags
+            if (tag.value.length() == 2 && tag.value.charAt(0) == '%') {
+                String value = tag.value;
+                if (value.charAt(1) == 'b') {
+                    value = String.valueOf(readByte());
+                } else if (value.charAt(1) == 'i') {
+                    if (tag.key.contains(":colour")) {
+                        value = "#" + Integer.toHexString(readInt());
+                    } else {
+                        value = String.valueOf(readInt());
+                    }
+                } else if (value.charAt(1) == 'f') {
+                    value = String.valueOf(readFloat());
+                } else if (value.charAt(1) == 'h') {
+                    value = String.valueOf(readShort());
+                } else if (value.charAt(1) == 's') {
+                    value = readUTF8EncodedString();
+                }
+                tag = new Tag(tag.key, value);
+            }
+            tags.add(tag);
+        }
+
+        return true;
+    }
+}
@@ -18,18 +18,30 @@
 package org.oscim.tiling.source.mapfile;
 
 import org.oscim.tiling.source.mapfile.header.SubFileParameter;
-import org.oscim.utils.LRUCache;
 
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
-import java.util.Collections;
+import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
- * A cache for database index blocks with a fixed size and LRU policy.
+ * Lock-free cache for the index blocks of a map file.
+ * <p/>
+ * Index blocks are read with positional reads, so the shared file channel is
+ * never locked, and decoded once into their index entries. The cache is a
+ * direct mapped table keyed by (sub-file, index block number): a lookup is a
+ * single volatile read and a newly read block replaces whatever block was in
+ * its slot. Concurrent misses on the same block may read it twice, which is
+ * harmless.
+ * <p/>
+ * Caches opened with {@link #open(File, int)} are shared by all tile sources
+ * opened on the same file.
  */
 class IndexCache {
     /**
@@ -45,24 +57,100 @@ class IndexCache {
     private static final int SIZE_OF_INDEX_BLOCK = INDEX_ENTRIES_PER_BLOCK
             * SubFileParameter.BYTES_PER_INDEX_ENTRY;
 
-    private final Map<IndexCacheEntryKey, byte[]> map;
+    /**
+     * Shared caches by file.
+     */
+    private static final Map<String, IndexCache> SHARED = new HashMap<>();
+
+    private static final class IndexBlock {
+        final long subFileStart;
+        final long indexBlockNumber;
+        final long[] indexEntries;
+
+        IndexBlock(long subFileStart, long indexBlockNumber, long[] indexEntries) {
+            this.subFileStart = subFileStart;
+            this.indexBlockNumber = indexBlockNumber;
+            this.indexEntries = indexEntries;
+        }
+    }
+
+    private final AtomicReferenceArray<IndexBlock> blocks;
+    private final int mask;
     private final FileChannel fileChannel;
 
+    /**
+     * Key in the shared caches, null when not shared.
+     */
+    private final String sharedKey;
+    private int references;
+
+    /**
+     * Returns the shared cache of the given map file, a new cache is created if
+     * no tile source has opened the file yet. The cache reads from its own file
+     * channel and must be released with {@link #destroy()}.
+     *
+     * @param file     the map file from which the index should be read and cached.
+     * @param capacity the maximum number of index blocks in the cache.
+     * @return the shared cache.
+     * @throws IOException if the map file cannot be opened.
+     */
+    static IndexCache open(File file, int capacity) throws IOException {
+        String key = file.getCanonicalPath() + ':' + file.length() + ':' + file.lastModified();
+        synchronized (SHARED) {
+            IndexCache indexCache = SHARED.get(key);
+            if (indexCache == null) {
+                // false positive: stream gets closed when the channel is closed
+                FileChannel inputChannel = new FileInputStream(file).getChannel();
+                indexCache = new IndexCache(inputChannel, capacity, key);
+                SHARED.put(key, indexCache);
+            }
+            indexCache.references++;
+            return indexCache;
+        }
+    }
+
     /**
      * @param inputChannel the map file from which the index should be read and cached.
-     * @param capacity     the maximum number of entries in the cache.
+     * @param capacity     the maximum number of index blocks in the cache.
      * @throws IllegalArgumentException if the capacity is negative.
      */
     IndexCache(FileChannel inputChannel, int capacity) {
+        this(inputChannel, capacity, null);
+    }
+
+    private IndexCache(FileChannel inputChannel, int capacity, String sharedKey) {
+        if (capacity < 0)
+            throw new IllegalArgumentException("capacity must not be negative: " + capacity);
+
+        int size = 1;
+        while (size < capacity)
+            size <<= 1;
+
         this.fileChannel = inputChannel;
-        this.map = Collections.synchronizedMap(new LRUCache<IndexCacheEntryKey, byte[]>(capacity));
+        this.blocks = new AtomicReferenceArray<>(size);
+        this.mask = size - 1;
+        this.sharedKey = sharedKey;
     }
 
     /**
-     * Destroy the cache at the end of its lifetime.
+     * Destroy the cache at the end of its lifetime. A shared cache is
+     * destroyed when the last tile source has released it.
      */
     void destroy() {
-        this.map.clear();
+        if (sharedKey != null) {
+            synchronized (SHARED) {
+                if (--references > 0)
+                    return;
+                SHARED.remove(sharedKey);
+            }
+            try {
+                fileChannel.close();
+            } catch (IOException e) {
+                LOG.log(Level.SEVERE, null, e);
+            }
+        }
+        for (int i = 0; i < blocks.length(); i++)
+            blocks.set(i, null);
     }
 
     /**
@@ -75,53 +163,83 @@ class IndexCache {
      * @param blockNumber      the number of the block in the map file.
      * @return the index entry or -1 if the block number is invalid.
      */
-    synchronized long getIndexEntry(SubFileParameter subFileParameter, long blockNumber) {
-        try {
-            // check if the block number is out of bounds
-            if (blockNumber >= subFileParameter.numberOfBlocks) {
+    long getIndexEntry(SubFileParameter subFileParameter, long blockNumber) {
+        // check if the block number is out of bounds
+        if (blockNumber >= subFileParameter.numberOfBlocks) {
+            return -1;
+        }
+
+        // calculate the index block number
+        long indexBlockNumber = blockNumber / INDEX_ENTRIES_PER_BLOCK;
+        int indexEntryInBlock = (int) (blockNumber % INDEX_ENTRIES_PER_BLOCK);
+
+        int slot = slot(subFileParameter.startAddress, indexBlockNumber);
+
+        // check for cached index block
+        IndexBlock indexBlock = blocks.get(slot);
+        if (indexBlock == null
+                || indexBlock.indexBlockNumber != indexBlockNumber
+                || indexBlock.subFileStart != subFileParameter.startAddress) {
+
+            long[] indexEntries = readIndexBlock(subFileParameter, indexBlockNumber);
+            if (indexEntries == null)
                 return -1;
-            }
 
-            // calculate the index block number
-            long indexBlockNumber = blockNumber / INDEX_ENTRIES_PER_BLOCK;
-
-            // create the cache entry key for this request
-            IndexCacheEntryKey indexCacheEntryKey = new IndexCacheEntryKey(subFileParameter,
-                    indexBlockNumber);
-
-            // check for cached index block
-            byte[] indexBlock = this.map.get(indexCacheEntryKey);
-            if (indexBlock == null) {
-                // cache miss, seek to the correct index block in the file and read it
-                long indexBlockPosition = subFileParameter.indexStartAddress + indexBlockNumber
-                        * SIZE_OF_INDEX_BLOCK;
-
-                int remainingIndexSize = (int) (subFileParameter.indexEndAddress - indexBlockPosition);
-                int indexBlockSize = Math.min(SIZE_OF_INDEX_BLOCK, remainingIndexSize);
-                indexBlock = new byte[indexBlockSize];
-                ByteBuffer indexBlockWrapper = ByteBuffer.wrap(indexBlock, 0, indexBlockSize);
-
-                synchronized (this.fileChannel) {
-                    this.fileChannel.position(indexBlockPosition);
-                    if (this.fileChannel.read(indexBlockWrapper) != indexBlockSize) {
-                        LOG.warning("reading the current index block has failed");
-                        return -1;
-                    }
-                }
+            indexBlock = new IndexBlock(subFileParameter.startAddress, indexBlockNumber, indexEntries);
+            blocks.set(slot, indexBlock);
+        }
 
-                // put the index block in the map
-                this.map.put(indexCacheEntryKey, indexBlock);
-            }
+        if (indexEntryInBlock >= indexBlock.indexEntries.length)
+            return -1;
 
-            // calculate the address of the index entry inside the index block
-            long indexEntryInBlock = blockNumber % INDEX_ENTRIES_PER_BLOCK;
-            int addressInIndexBlock = (int) (indexEntryInBlock * SubFileParameter.BYTES_PER_INDEX_ENTRY);
+        return indexBlock.indexEntries[indexEntryInBlock];
+    }
 
-            // return the real index entry
-            return Deserializer.getFiveBytesLong(indexBlock, addressInIndexBlock);
+    private int slot(long subFileStart, long indexBlockNumber) {
+        long h = subFileStart * 31 + indexBlockNumber;
+        h ^= (h >>> 32);
+        h ^= (h >>> 16);
+        return (int) h & mask;
+    }
+
+    /**
+     * Reads an index block from the map file and decodes its index entries.
+     *
+     * @return the index entries or null if reading the index block has failed.
+     */
+    private long[] readIndexBlock(SubFileParameter subFileParameter, long indexBlockNumber) {
+        long indexBlockPosition = subFileParameter.indexStartAddress + indexBlockNumber
+                * SIZE_OF_INDEX_BLOCK;
+
+        int remainingIndexSize = (int) (subFileParameter.indexEndAddress - indexBlockPosition);
+        int indexBlockSize = Math.min(SIZE_OF_INDEX_BLOCK, remainingIndexSize);
+        if (indexBlockSize <= 0) {
+            LOG.warning("invalid index block: " + indexBlockNumber);
+            return null;
+        }
+
+        byte[] indexBlock = new byte[indexBlockSize];
+        ByteBuffer indexBlockWrapper = ByteBuffer.wrap(indexBlock, 0, indexBlockSize);
+        try {
+            // positional reads do not modify the channel position
+            while (indexBlockWrapper.hasRemaining()) {
+                int read = this.fileChannel.read(indexBlockWrapper,
+                        indexBlockPosition + indexBlockWrapper.position());
+                if (read < 0) {
+                    LOG.warning("reading the current index block has failed");
+                    return null;
+                }
+            }
         } catch (IOException e) {
             LOG.log(Level.SEVERE, null, e);
-            return -1;
+            return null;
         }
+
+        long[] indexEntries = new long[indexBlockSize / SubFileParameter.BYTES_PER_INDEX_ENTRY];
+        for (int i = 0; i < indexEntries.length; i++)
+            indexEntries[i] = Deserializer.getFiveBytesLong(indexBlock,
+                    i * SubFileParameter.BYTES_PER_INDEX_ENTRY);
+
+        return indexEntries;
     }
 }
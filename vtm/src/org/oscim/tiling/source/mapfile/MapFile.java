@@ -41,6 +41,7 @@ import org.oscim.utils.geom.TileSeparator;
 
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
 import java.util.ArrayList;
 import java.util.Collections;
@@ -200,6 +201,14 @@ public class MapFile implements ITileDataSource {
     private int mTileLatitude;
     private int mTileLongitude;
     private int[] mIntBuffer;
+    private MappedReadBuffer mMappedReadBuffer;
+
+    /* reused for each query, MapFile is used by one loader thread */
+    private ReadBuffer mReadBuffer;
+    private final QueryParameters mQueryParameters = new QueryParameters();
+    private final int[] mLabelPosition = new int[2];
+    private int[][] mZoomTable;
+    private final TagCache mTagCache;
 
     private final MapElement mElem = new MapElement();
 
@@ -226,16 +235,22 @@ public class MapFile implements ITileDataSource {
 
     public MapFile(MapFileTileSource tileSource) throws IOException {
         mTileSource = tileSource;
+        mTagCache = new TagCache(tileSource);
         try {
             // false positive: stream gets closed when the channel is closed
             // see e.g. http://bugs.java.com/bugdatabase/view_bug.do?bug_id=4796385
-            if (tileSource.mapFileInputStream != null)
-                mInputChannel = tileSource.mapFileInputStream.getChannel();
-            else {
-                FileInputStream fis = new FileInputStream(tileSource.mapFile);
-                mInputChannel = fis.getChannel();
+            if (tileSource.subFileMapping != null && tileSource.subFileMapping.isComplete()) {
+                /* all blocks are read from the shared mapping */
+                mFileSize = tileSource.subFileMapping.getFileSize();
+            } else {
+                if (tileSource.mapFileInputStream != null)
+                    mInputChannel = tileSource.mapFileInputStream.getChannel();
+                else {
+                    FileInputStream fis = new FileInputStream(tileSource.mapFile);
+                    mInputChannel = fis.getChannel();
+                }
+                mFileSize = mInputChannel.size();
             }
-            mFileSize = mInputChannel.size();
         } catch (IOException e) {
             log.severe(e.toString());
             /* make sure that the file is closed */
@@ -287,7 +302,9 @@ public class MapFile implements ITileDataSource {
                 minDeltaLon = 0;
             }
 
-            QueryParameters queryParameters = new QueryParameters();
+            mTagCache.validate();
+
+            QueryParameters queryParameters = mQueryParameters;
             queryParameters.queryZoomLevel =
                     mTileSource.fileHeader.getQueryZoomLevel(tile.zoomLevel);
 
@@ -353,7 +370,7 @@ public class MapFile implements ITileDataSource {
     private void processBlock(QueryParameters queryParameters,
                               SubFileParameter subFileParameter, ITileDataSink mapDataSink,
                               BoundingBox boundingBox, Selector selector,
-                              MapReadResult mapReadResult, ReadBuffer readBuffer) {
+                              MapReadResult mapReadResult, AbstractReadBuffer readBuffer) {
 
         if (!processBlockSignature(readBuffer)) {
             return;
@@ -530,6 +547,13 @@ public class MapFile implements ITileDataSource {
                                SubFileParameter subFileParameter, BoundingBox boundingBox,
                                Selector selector, MapReadResult mapReadResult) throws IOException {
 
+        ByteBuffer mappedSubFile = null;
+        if (mTileSource.subFileMapping != null) {
+            mappedSubFile = mTileSource.subFileMapping.get(subFileParameter);
+            if (mappedSubFile != null && mMappedReadBuffer == null)
+                mMappedReadBuffer = new MappedReadBuffer();
+        }
+
         /* read and process all blocks from top to bottom and from left to right */
         for (long row = queryParams.fromBlockY; row <= queryParams.toBlockY; row++) {
             for (long column = queryParams.fromBlockX; column <= queryParams.toBlockX; column++) {
@@ -606,13 +630,25 @@ public class MapFile implements ITileDataSource {
                     return;
                 }
 
-                /* seek to the current block in the map file */
-                /* read the current block into the buffer */
-                ReadBuffer readBuffer = new ReadBuffer(mInputChannel);
-                if (!readBuffer.readFromFile(subFileParameter.startAddress + blockPointer, blockSize)) {
-                    /* skip the current block */
-                    log.warning("reading current block has failed: " + blockSize);
-                    return;
+                AbstractReadBuffer readBuffer;
+                if (mappedSubFile != null) {
+                    /* decode the current block directly from the mapped sub-file */
+                    if (!mMappedReadBuffer.setBlock(mappedSubFile, (int) blockPointer, blockSize)) {
+                        log.warning("reading current block has failed: " + blockSize);
+                        return;
+                    }
+                    readBuffer = mMappedReadBuffer;
+                } else {
+                    /* seek to the current block in the map file */
+                    /* read the current block into the buffer */
+                    if (mReadBuffer == null)
+                        mReadBuffer = new ReadBuffer(mInputChannel);
+                    readBuffer = mReadBuffer;
+                    if (!mReadBuffer.readFromFile(subFileParameter.startAddress + blockPointer, blockSize)) {
+                        /* skip the current block */
+                        log.warning("reading current block has failed: " + blockSize);
+                        return;
+                    }
                 }
 
                 /* calculate the top-left coordinates of the underlying tile */
@@ -637,7 +673,7 @@ public class MapFile implements ITileDataSource {
      * @return true if the block signature could be processed successfully,
      * false otherwise.
      */
-    private boolean processBlockSignature(ReadBuffer readBuffer) {
+    private boolean processBlockSignature(AbstractReadBuffer readBuffer) {
         if (mDebugFile) {
             /* get and check the block signature */
             mSignatureBlock = readBuffer.readUTF8EncodedString(SIGNATURE_LENGTH_BLOCK);
@@ -658,7 +694,7 @@ public class MapFile implements ITileDataSource {
      * otherwise.
      */
     private boolean processPOIs(ITileDataSink mapDataSink, int numberOfPois, BoundingBox boundingBox,
-                                boolean filterRequired, List<PointOfInterest> pois, ReadBuffer readBuffer) {
+                                boolean filterRequired, List<PointOfInterest> pois, AbstractReadBuffer readBuffer) {
         Tag[] poiTags = mTileSource.fileInfo.poiTags;
         MapElement e = mElem;
 
@@ -701,14 +737,12 @@ public class MapFile implements ITileDataSource {
             /* bit 1-3 enable optional features
              * check if the POI has a name */
             if ((featureByte & POI_FEATURE_NAME) != 0) {
-                String str = mTileSource.extractLocalized(readBuffer.readUTF8EncodedString());
-                e.tags.add(new Tag(Tag.KEY_NAME, str, false));
+                e.tags.add(readBuffer.readTag(Tag.KEY_NAME, mTagCache));
             }
 
             /* check if the POI has a house number */
             if ((featureByte & POI_FEATURE_HOUSE_NUMBER) != 0) {
-                String str = readBuffer.readUTF8EncodedString();
-                e.tags.add(new Tag(Tag.KEY_HOUSE_NUMBER, str, false));
+                e.tags.add(readBuffer.readTag(Tag.KEY_HOUSE_NUMBER, mTagCache));
             }
 
             /* check if the POI has an elevation */
@@ -738,7 +772,7 @@ public class MapFile implements ITileDataSource {
             }
 
             if (mapDataSink != null) {
-                if (!deduplicate || poi == null || (mapDataSink instanceof TileDataSink && ((TileDataSink) mapDataSink).hashPois.add(poi.hashCode())))
+                if (!deduplicate || poi == null || (mapDataSink instanceof TileDataSink && ((TileDataSink) mapDataSink).addPoi(poi.hashCode())))
                     mapDataSink.process(e);
             }
         }
@@ -746,7 +780,7 @@ public class MapFile implements ITileDataSource {
         return true;
     }
 
-    private boolean processWayDataBlock(MapElement e, boolean doubleDeltaEncoding, boolean isLine, List<GeoPoint[]> wayCoordinates, int[] labelPosition, ReadBuffer readBuffer) {
+    private boolean processWayDataBlock(MapElement e, boolean doubleDeltaEncoding, boolean isLine, List<GeoPoint[]> wayCoordinates, int[] labelPosition, AbstractReadBuffer readBuffer) {
         /* get and check the number of way coordinate blocks (VBE-U) */
         int numBlocks = readBuffer.readUnsignedInt();
         if (numBlocks < 1 || numBlocks > Short.MAX_VALUE) {
@@ -787,7 +821,7 @@ public class MapFile implements ITileDataSource {
         return true;
     }
 
-    private int decodeWayNodes(boolean doubleDelta, MapElement e, int length, boolean isLine, int[] labelPosition, GeoPoint[] waySegment, ReadBuffer readBuffer) {
+    private int decodeWayNodes(boolean doubleDelta, MapElement e, int length, boolean isLine, int[] labelPosition, GeoPoint[] waySegment, AbstractReadBuffer readBuffer) {
         int[] buffer = mIntBuffer;
         readBuffer.readSignedInt(buffer, length);
 
@@ -885,7 +919,7 @@ public class MapFile implements ITileDataSource {
      */
     private boolean processWays(QueryParameters queryParameters, ITileDataSink mapDataSink,
                                 int numberOfWays, BoundingBox boundingBox, boolean filterRequired,
-                                Selector selector, List<Way> ways, ReadBuffer readBuffer) {
+                                Selector selector, List<Way> ways, AbstractReadBuffer readBuffer) {
 
         Tag[] wayTags = mTileSource.fileInfo.wayTags;
         MapElement e = mElem;
@@ -981,31 +1015,25 @@ public class MapFile implements ITileDataSource {
             if (mTileSource.experimental) {
                 if (hasName) {
                     int textPos = readBuffer.readUnsignedInt();
-                    String str = mTileSource.extractLocalized(readBuffer.readUTF8EncodedStringAt(stringOffset + textPos));
-                    e.tags.add(new Tag(Tag.KEY_NAME, str, false));
+                    e.tags.add(readBuffer.readTagAt(Tag.KEY_NAME, mTagCache, stringOffset + textPos));
                 }
                 if (hasHouseNr) {
                     int textPos = readBuffer.readUnsignedInt();
-                    String str = readBuffer.readUTF8EncodedStringAt(stringOffset + textPos);
-                    e.tags.add(new Tag(Tag.KEY_HOUSE_NUMBER, str, false));
+                    e.tags.add(readBuffer.readTagAt(Tag.KEY_HOUSE_NUMBER, mTagCache, stringOffset + textPos));
                 }
                 if (hasRef) {
                     int textPos = readBuffer.readUnsignedInt();
-                    String str = readBuffer.readUTF8EncodedStringAt(stringOffset + textPos);
-                    e.tags.add(new Tag(Tag.KEY_REF, str, false));
+                    e.tags.add(readBuffer.readTagAt(Tag.KEY_REF, mTagCache, stringOffset + textPos));
                 }
             } else {
                 if (hasName) {
-                    String str = mTileSource.extractLocalized(readBuffer.readUTF8EncodedString());
-                    e.tags.add(new Tag(Tag.KEY_NAME, str, false));
+                    e.tags.add(readBuffer.readTag(Tag.KEY_NAME, mTagCache));
                 }
                 if (hasHouseNr) {
-                    String str = readBuffer.readUTF8EncodedString();
-                    e.tags.add(new Tag(Tag.KEY_HOUSE_NUMBER, str, false));
+                    e.tags.add(readBuffer.readTag(Tag.KEY_HOUSE_NUMBER, mTagCache));
                 }
                 if (hasRef) {
-                    String str = readBuffer.readUTF8EncodedString();
-                    e.tags.add(new Tag(Tag.KEY_REF, str, false));
+                    e.tags.add(readBuffer.readTag(Tag.KEY_REF, mTagCache));
                 }
             }
 
@@ -1100,7 +1128,7 @@ public class MapFile implements ITileDataSource {
                 }
 
                 if (mapDataSink != null) {
-                    if (!deduplicate || way == null || (mapDataSink instanceof TileDataSink && ((TileDataSink) mapDataSink).hashWays.add(way.hashCode()))) {
+                    if (!deduplicate || way == null || (mapDataSink instanceof TileDataSink && ((TileDataSink) mapDataSink).addWay(way.hashCode()))) {
                         if (mapDataSink instanceof TileDataSink)
                             e.level = e.isLine() ? ((TileDataSink) mapDataSink).levels : ((TileDataSink) mapDataSink).level;
                         mapDataSink.process(e);
@@ -1112,6 +1140,48 @@ public class MapFile implements ITileDataSource {
         return true;
     }
 
+    /**
+     * Reads the named items stored in the block of a base tile of the
+     * sub-file for the highest zoom levels, which contains all map elements.
+     * Names are not localized. Used by {@link MapFileIndexBuilder}.
+     *
+     * @param subFileParameter the sub-file for the highest zoom levels.
+     * @param tileX            the x number of the base tile.
+     * @param tileY            the y number of the base tile.
+     * @return the items of the block or null on error.
+     */
+    MapReadResult readNamedItems(SubFileParameter subFileParameter, long tileX, long tileY) {
+        if (mTileSource.fileHeader == null)
+            return null;
+
+        MapReadResult mapReadResult = new MapReadResult();
+
+        if (mIntBuffer == null)
+            mIntBuffer = new int[Short.MAX_VALUE * 2];
+
+        try {
+            mTagCache.setLocalize(false);
+
+            QueryParameters queryParameters = mQueryParameters;
+            queryParameters.queryZoomLevel = subFileParameter.zoomLevelMax;
+            queryParameters.fromBaseTileX = queryParameters.toBaseTileX = tileX;
+            queryParameters.fromBaseTileY = queryParameters.toBaseTileY = tileY;
+            queryParameters.useTileBitmask = false;
+
+            QueryCalculations.calculateBlocks(queryParameters, subFileParameter);
+            Tile tile = new Tile((int) tileX, (int) tileY, subFileParameter.baseZoomLevel);
+            mTileProjection.setTile(tile);
+            processBlocks(queryParameters, subFileParameter, tile.getBoundingBox(), Selector.NAMED, mapReadResult);
+        } catch (IOException e) {
+            log.severe(e.toString());
+            return null;
+        } finally {
+            mTagCache.setLocalize(true);
+        }
+
+        return mapReadResult;
+    }
+
     /**
      * Reads only named items for a tile.
      *
@@ -1170,7 +1240,9 @@ public class MapFile implements ITileDataSource {
         try {
             mTileProjection.setTile(upperLeft);
 
-            QueryParameters queryParameters = new QueryParameters();
+            mTagCache.validate();
+
+            QueryParameters queryParameters = mQueryParameters;
             queryParameters.queryZoomLevel =
                     mTileSource.fileHeader.getQueryZoomLevel(upperLeft.zoomLevel);
 
@@ -1196,8 +1268,8 @@ public class MapFile implements ITileDataSource {
         return mapReadResult;
     }
 
-    private int[] readOptionalLabelPosition(ReadBuffer readBuffer) {
-        int[] labelPosition = new int[2];
+    private int[] readOptionalLabelPosition(AbstractReadBuffer readBuffer) {
+        int[] labelPosition = mLabelPosition;
 
         /* get the label position latitude offset (VBE-S) */
         labelPosition[1] = readBuffer.readSignedInt();
@@ -1231,9 +1303,11 @@ public class MapFile implements ITileDataSource {
         return readMapData(upperLeft, lowerRight, Selector.POIS);
     }
 
-    private int[][] readZoomTable(SubFileParameter subFileParameter, ReadBuffer readBuffer) {
+    private int[][] readZoomTable(SubFileParameter subFileParameter, AbstractReadBuffer readBuffer) {
         int rows = subFileParameter.zoomLevelMax - subFileParameter.zoomLevelMin + 1;
-        int[][] zoomTable = new int[rows][2];
+        int[][] zoomTable = mZoomTable;
+        if (zoomTable == null || zoomTable.length < rows)
+            zoomTable = mZoomTable = new int[rows][2];
 
         int cumulatedNumberOfPois = 0;
         int cumulatedNumberOfWays = 0;
@@ -0,0 +1,451 @@
+/*
+ * This file is part of the OpenScienceMap project (http://www.opensciencemap.org).
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.oscim.tiling.source.mapfile;
+
+import org.oscim.core.BoundingBox;
+import org.oscim.core.GeoPoint;
+import org.oscim.core.GeometryBuffer.GeometryType;
+import org.oscim.core.Tag;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Search index of the POIs and named ways of a map file, written by
+ * {@link MapFileIndexBuilder}. The index file is memory mapped.
+ * <p>
+ * Entries are found by their tags with posting lists, by name prefix
+ * with a sorted table of names, in all languages of multilingual names,
+ * and by area with posting lists of the cells of a grid over all entries.
+ * Each entry has its bounding box and the offset of its tags and geometry.
+ */
+public class MapFileIndex implements Closeable {
+    static final String MAGIC = "vtmindex";
+    static final int VERSION = 2;
+    static final int HEADER_SIZE = 8 + 4 + 8 + 8 + 15 * 4;
+
+    /* entry: min lat, min lon, max lat, max lon, data offset */
+    static final int ENTRY_SIZE = 5 * 4;
+
+    /* name: string offset, postings offset, number of postings */
+    static final int NAME_SIZE = 3 * 4;
+
+    /* grid cell: postings offset, number of postings */
+    static final int CELL_SIZE = 2 * 4;
+
+    /* average number of entries per grid cell */
+    static final int CELL_ENTRIES = 8;
+    static final int MAX_GRID_SIZE = 256;
+
+    static final int POI = 0;
+    static final int WAY = 1;
+
+    /**
+     * Keys of tags with arbitrary values, which are not in posting lists.
+     */
+    private static final String[] STRING_KEYS = {
+            Tag.KEY_NAME, Tag.KEY_HOUSE_NUMBER, Tag.KEY_REF, Tag.KEY_ELE
+    };
+    static final int NAME = 0;
+
+    private static final Charset CHARSET_UTF8 = Charset.forName("UTF-8");
+
+    private static final GeometryType[] GEOMETRY_TYPES = GeometryType.values();
+
+    private final RandomAccessFile mFile;
+    private final ByteBuffer mBuffer;
+    private final MappedReadBuffer mReadBuffer = new MappedReadBuffer();
+
+    private final long mMapFileSize;
+    private final long mMapDate;
+    private final int mNumEntries;
+    private final int mNumNames;
+    private final int mEntriesOffset;
+    private final int mNamesOffset;
+    private final int mPostingsOffset;
+    private final int mDataOffset;
+    private final int mStringsOffset;
+
+    /* grid of mGridSize * mGridSize cells over the bounds of all entries */
+    private final int mGridSize;
+    private final int mGridOffset;
+    private final int mGridMinLat, mGridMinLon, mGridMaxLat, mGridMaxLon;
+
+    private final Tag[] mTags;
+    private final int[] mTagPostings;
+    private final int[] mTagSizes;
+    private final Map<Tag, Integer> mTagIds = new HashMap<>();
+
+    private String mPreferredLanguage;
+
+    /**
+     * Open an index file.
+     *
+     * @throws IOException if the file is not a valid index.
+     */
+    public MapFileIndex(File file) throws IOException {
+        mFile = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = mFile.getChannel();
+            mBuffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+
+            byte[] magic = new byte[MAGIC.length()];
+            mBuffer.get(magic);
+            if (!MAGIC.equals(new String(magic, CHARSET_UTF8)))
+                throw new IOException("invalid magic: " + file);
+            int version = mBuffer.getInt();
+            if (version != VERSION)
+                throw new IOException("unsupported version: " + version);
+
+            mMapFileSize = mBuffer.getLong();
+            mMapDate = mBuffer.getLong();
+            int numTags = mBuffer.getInt();
+            mNumEntries = mBuffer.getInt();
+            mNumNames = mBuffer.getInt();
+            int tagsOffset = mBuffer.getInt();
+            mEntriesOffset = mBuffer.getInt();
+            mNamesOffset = mBuffer.getInt();
+            mPostingsOffset = mBuffer.getInt();
+            mDataOffset = mBuffer.getInt();
+            mStringsOffset = mBuffer.getInt();
+            mGridSize = mBuffer.getInt();
+            mGridOffset = mBuffer.getInt();
+            mGridMinLat = mBuffer.getInt();
+            mGridMinLon = mBuffer.getInt();
+            mGridMaxLat = mBuffer.getInt();
+            mGridMaxLon = mBuffer.getInt();
+
+            if (mStringsOffset > mBuffer.capacity())
+                throw new IOException("truncated index: " + file);
+
+            mReadBuffer.setBlock(mBuffer, 0, mBuffer.capacity());
+            mReadBuffer.setBufferPosition(tagsOffset);
+            mTags = new Tag[numTags];
+            mTagPostings = new int[numTags];
+            mTagSizes = new int[numTags];
+            for (int i = 0; i < numTags; i++) {
+                String key = readString();
+                String value = readString();
+                mTags[i] = new Tag(key, value);
+                mTagPostings[i] = mReadBuffer.readUnsignedInt();
+                mTagSizes[i] = mReadBuffer.readUnsignedInt();
+                mTagIds.put(mTags[i], i);
+            }
+        } catch (IOException e) {
+            mFile.close();
+            throw e;
+        }
+    }
+
+    /**
+     * @return true when the index was built from the map file of 'mapInfo'.
+     */
+    public boolean isCurrent(MapInfo mapInfo) {
+        return mapInfo.fileSize == mMapFileSize && mapInfo.mapDate == mMapDate;
+    }
+
+    /**
+     * @return the number of indexed POIs and ways.
+     */
+    public int size() {
+        return mNumEntries;
+    }
+
+    /**
+     * Set the language of the names of returned POIs and ways, null for the
+     * default names.
+     */
+    public synchronized void setPreferredLanguage(String preferredLanguage) {
+        mPreferredLanguage = preferredLanguage;
+    }
+
+    /**
+     * Find POIs.
+     * <p>
+     * To search around a point use e.g.
+     * {@code new BoundingBox(lat, lon, lat, lon).extendMeters(5000)}.
+     *
+     * @param boundingBox the area, or null for all POIs.
+     * @param tags        tags which all POIs must have, or null. Tags with a
+     *                    name, house number, ref or elevation never match.
+     * @param namePrefix  the case insensitive prefix of a name of the POIs,
+     *                    in any language, or null.
+     * @param limit       the maximum number of POIs.
+     */
+    public synchronized List<PointOfInterest> findPois(BoundingBox boundingBox, List<Tag> tags,
+                                                       String namePrefix, int limit) {
+        List<PointOfInterest> pois = new ArrayList<>();
+        BitSet entries = find(boundingBox, tags, namePrefix);
+        for (int i = next(entries, 0); i >= 0 && pois.size() < limit; i = next(entries, i + 1)) {
+            if (matches(i, POI, boundingBox))
+                pois.add(readPoi(i));
+        }
+        return pois;
+    }
+
+    /**
+     * Find named ways, which intersect with 'boundingBox'.
+     *
+     * @see #findPois(BoundingBox, List, String, int)
+     */
+    public synchronized List<Way> findWays(BoundingBox boundingBox, List<Tag> tags,
+                                           String namePrefix, int limit) {
+        List<Way> ways = new ArrayList<>();
+        BitSet entries = find(boundingBox, tags, namePrefix);
+        for (int i = next(entries, 0); i >= 0 && ways.size() < limit; i = next(entries, i + 1)) {
+            if (matches(i, WAY, boundingBox))
+                ways.add(readWay(i));
+        }
+        return ways;
+    }
+
+    /**
+     * Find names of POIs and ways, e.g. to complete a street name.
+     *
+     * @param prefix the case insensitive prefix.
+     * @param limit  the maximum number of names.
+     * @return the names, in all languages, ordered alphabetically.
+     */
+    public synchronized List<String> findNames(String prefix, int limit) {
+        List<String> names = new ArrayList<>();
+        String p = normalize(prefix);
+        for (int i = findName(p); i < mNumNames && names.size() < limit; i++) {
+            String name = readName(i);
+            if (!normalize(name).startsWith(p))
+                break;
+            names.add(name);
+        }
+        return names;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        mFile.close();
+    }
+
+    /**
+     * @return the entries in grid cells of 'boundingBox', with all tags and
+     * a name starting with 'namePrefix', or null when all entries need to be
+     * checked.
+     */
+    private BitSet find(BoundingBox boundingBox, List<Tag> tags, String namePrefix) {
+        BitSet result = null;
+
+        if (boundingBox != null && mGridSize > 0) {
+            result = new BitSet(mNumEntries);
+            if (boundingBox.maxLatitudeE6 >= mGridMinLat && boundingBox.minLatitudeE6 <= mGridMaxLat
+                    && boundingBox.maxLongitudeE6 >= mGridMinLon && boundingBox.minLongitudeE6 <= mGridMaxLon) {
+                int minY = cell(boundingBox.minLatitudeE6, mGridMinLat, mGridMaxLat, mGridSize);
+                int maxY = cell(boundingBox.maxLatitudeE6, mGridMinLat, mGridMaxLat, mGridSize);
+                int minX = cell(boundingBox.minLongitudeE6, mGridMinLon, mGridMaxLon, mGridSize);
+                int maxX = cell(boundingBox.maxLongitudeE6, mGridMinLon, mGridMaxLon, mGridSize);
+                for (int y = minY; y <= maxY; y++) {
+                    for (int x = minX; x <= maxX; x++) {
+                        int offset = mGridOffset + (y * mGridSize + x) * CELL_SIZE;
+                        readPostings(mBuffer.getInt(offset), mBuffer.getInt(offset + 4), result);
+                    }
+                }
+            }
+        }
+
+        if (tags != null) {
+            for (Tag tag : tags) {
+                /* compare tags with interned values */
+                Integer id = mTagIds.get(new Tag(tag.key, tag.value));
+                if (id == null)
+                    return new BitSet();
+
+                BitSet entries = new BitSet(mNumEntries);
+                readPostings(mTagPostings[id], mTagSizes[id], entries);
+                if (result == null)
+                    result = entries;
+                else
+                    result.and(entries);
+            }
+        }
+
+        if (namePrefix != null) {
+            String p = normalize(namePrefix);
+            BitSet entries = new BitSet(mNumEntries);
+            for (int i = findName(p); i < mNumNames; i++) {
+                if (!normalize(readName(i)).startsWith(p))
+                    break;
+                int offset = mNamesOffset + i * NAME_SIZE;
+                readPostings(mBuffer.getInt(offset + 4), mBuffer.getInt(offset + 8), entries);
+            }
+            if (result == null)
+                result = entries;
+            else
+                result.and(entries);
+        }
+        return result;
+    }
+
+    /**
+     * @return the next entry from 'start' in 'entries', all entries when
+     * 'entries' is null, or -1.
+     */
+    private int next(BitSet entries, int start) {
+        if (entries == null)
+            return start < mNumEntries ? start : -1;
+        return entries.nextSetBit(start);
+    }
+
+    private void readPostings(int offset, int size, BitSet entries) {
+        int position = mPostingsOffset + offset * 4;
+        for (int i = 0; i < size; i++)
+            entries.set(mBuffer.getInt(position + i * 4));
+    }
+
+    private boolean matches(int entry, int kind, BoundingBox boundingBox) {
+        int offset = mEntriesOffset + entry * ENTRY_SIZE;
+        if (mBuffer.get(mDataOffset + mBuffer.getInt(offset + 16)) != kind)
+            return false;
+        if (boundingBox == null)
+            return true;
+        return mBuffer.getInt(offset) <= boundingBox.maxLatitudeE6
+                && mBuffer.getInt(offset + 4) <= boundingBox.maxLongitudeE6
+                && mBuffer.getInt(offset + 8) >= boundingBox.minLatitudeE6
+                && mBuffer.getInt(offset + 12) >= boundingBox.minLongitudeE6;
+    }
+
+    /**
+     * @return the index of the first name not less than 'prefix'.
+     */
+    private int findName(String prefix) {
+        int lo = 0, hi = mNumNames;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (normalize(readName(mid)).compareTo(prefix) < 0)
+                lo = mid + 1;
+            else
+                hi = mid;
+        }
+        return lo;
+    }
+
+    private String readName(int name) {
+        mReadBuffer.setBufferPosition(mStringsOffset + mBuffer.getInt(mNamesOffset + name * NAME_SIZE));
+        return readString();
+    }
+
+    private PointOfInterest readPoi(int entry) {
+        int offset = mEntriesOffset + entry * ENTRY_SIZE;
+        GeoPoint position = new GeoPoint(mBuffer.getInt(offset), mBuffer.getInt(offset + 4));
+
+        mReadBuffer.setBufferPosition(mDataOffset + mBuffer.getInt(offset + 16) + 1);
+        byte layer = mReadBuffer.readByte();
+        List<Tag> tags = readTags();
+        return new PointOfInterest(layer, tags, position);
+    }
+
+    private Way readWay(int entry) {
+        int offset = mEntriesOffset + entry * ENTRY_SIZE;
+        int minLat = mBuffer.getInt(offset);
+        int minLon = mBuffer.getInt(offset + 4);
+
+        mReadBuffer.setBufferPosition(mDataOffset + mBuffer.getInt(offset + 16) + 1);
+        byte layer = mReadBuffer.readByte();
+        List<Tag> tags = readTags();
+
+        GeometryType type = GEOMETRY_TYPES[mReadBuffer.readByte()];
+        GeoPoint labelPosition = null;
+        if (mReadBuffer.readByte() != 0) {
+            int lat = minLat + mReadBuffer.readSignedInt();
+            int lon = minLon + mReadBuffer.readSignedInt();
+            labelPosition = new GeoPoint(lat, lon);
+        }
+
+        int lat = minLat, lon = minLon;
+        GeoPoint[][] geoPoints = new GeoPoint[mReadBuffer.readUnsignedInt()][];
+        for (int i = 0; i < geoPoints.length; i++) {
+            GeoPoint[] points = geoPoints[i] = new GeoPoint[mReadBuffer.readUnsignedInt()];
+            for (int j = 0; j < points.length; j++) {
+                lat += mReadBuffer.readSignedInt();
+                lon += mReadBuffer.readSignedInt();
+                points[j] = new GeoPoint(lat, lon);
+            }
+        }
+        return new Way(layer, tags, geoPoints, labelPosition, type);
+    }
+
+    private List<Tag> readTags() {
+        int numTags = mReadBuffer.readUnsignedInt();
+        List<Tag> tags = new ArrayList<>(numTags + 2);
+        for (int i = 0; i < numTags; i++)
+            tags.add(mTags[mReadBuffer.readUnsignedInt()]);
+
+        int numStrings = mReadBuffer.readUnsignedInt();
+        for (int i = 0; i < numStrings; i++) {
+            int key = mReadBuffer.readByte();
+            String value = readString();
+            if (key == NAME)
+                value = MapFileUtils.extract(value, mPreferredLanguage);
+            tags.add(new Tag(STRING_KEYS[key], value, false));
+        }
+        return tags;
+    }
+
+    private String readString() {
+        int length = mReadBuffer.readUnsignedInt();
+        return length == 0 ? "" : mReadBuffer.readUTF8EncodedString(length);
+    }
+
+    /**
+     * @return the number of cells in each direction of the grid for
+     * 'numEntries'.
+     */
+    static int getGridSize(int numEntries) {
+        int size = (int) Math.sqrt(numEntries / CELL_ENTRIES);
+        return Math.max(1, Math.min(MAX_GRID_SIZE, size));
+    }
+
+    /**
+     * @return the grid cell of 'value' between 'min' and 'max'.
+     */
+    static int cell(int value, int min, int max, int size) {
+        long cell = ((long) value - min) * size / ((long) max - min + 1);
+        return (int) Math.max(0, Math.min(size - 1, cell));
+    }
+
+    /**
+     * @return the index of 'key' in the keys of string tags, or -1.
+     */
+    static int getStringKey(String key) {
+        for (int i = 0; i < STRING_KEYS.length; i++) {
+            if (STRING_KEYS[i].equals(key))
+                return i;
+        }
+        return -1;
+    }
+
+    /**
+     * @return the case insensitive form of a name.
+     */
+    static String normalize(String name) {
+        return name.toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,422 @@
+/*
+ * This file is part of the OpenScienceMap project (http://www.opensciencemap.org).
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.oscim.tiling.source.mapfile;
+
+import org.oscim.core.GeoPoint;
+import org.oscim.core.Tag;
+import org.oscim.tiling.source.mapfile.header.MapFileHeader;
+import org.oscim.tiling.source.mapfile.header.SubFileParameter;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Logger;
+
+/**
+ * Writes the {@link MapFileIndex} of a map file.
+ * <p>
+ * The blocks of the sub-file for the highest zoom levels are read once,
+ * all POIs and the ways with a name, house number or ref are indexed. The
+ * index is built in memory before it is written.
+ */
+public final class MapFileIndexBuilder {
+    private static final Logger log = Logger.getLogger(MapFileIndexBuilder.class.getName());
+
+    private static final Charset CHARSET_UTF8 = Charset.forName("UTF-8");
+
+    private static final class IntList {
+        int[] values = new int[4];
+        int size;
+
+        void add(int value) {
+            if (size == values.length)
+                values = Arrays.copyOf(values, size * 2);
+            values[size++] = value;
+        }
+    }
+
+    private final ByteArrayOutputStream mData = new ByteArrayOutputStream();
+    private final IntList mEntries = new IntList();
+    private final Map<Tag, Integer> mTagIds = new HashMap<>();
+    private final List<Tag> mTags = new ArrayList<>();
+    private final List<IntList> mTagEntries = new ArrayList<>();
+    private final Map<String, IntList> mNames = new HashMap<>();
+    private final Set<Way> mWays = new HashSet<>();
+    private int mNumEntries;
+
+    private MapFileIndexBuilder() {
+    }
+
+    /**
+     * Build the index of the map file of 'tileSource'.
+     *
+     * @param tileSource the opened tile source.
+     * @param file       the index file to write.
+     */
+    public static void build(MapFileTileSource tileSource, File file) throws IOException {
+        MapFileHeader fileHeader = tileSource.fileHeader;
+        if (fileHeader == null)
+            throw new IllegalStateException("tile source not opened");
+
+        MapFileIndexBuilder builder = new MapFileIndexBuilder();
+
+        SubFileParameter subFileParameter =
+                fileHeader.getSubFileParameter(fileHeader.getQueryZoomLevel(Byte.MAX_VALUE));
+
+        MapFile mapFile = new MapFile(tileSource);
+        try {
+            for (long y = subFileParameter.boundaryTileTop; y <= subFileParameter.boundaryTileBottom; y++) {
+                for (long x = subFileParameter.boundaryTileLeft; x <= subFileParameter.boundaryTileRight; x++) {
+                    MapReadResult result = mapFile.readNamedItems(subFileParameter, x, y);
+                    if (result == null)
+                        throw new IOException("reading block " + x + "/" + y + " has failed");
+
+                    for (PointOfInterest poi : result.pointOfInterests)
+                        builder.add(poi);
+                    for (Way way : result.ways)
+                        builder.add(way);
+                }
+            }
+        } finally {
+            mapFile.dispose();
+        }
+
+        MapInfo mapInfo = tileSource.getMapInfo();
+        builder.write(file, mapInfo.fileSize, mapInfo.mapDate);
+
+        log.fine(file + ": " + builder.mNumEntries + " entries, "
+                + builder.mTags.size() + " tags, " + builder.mNames.size() + " names");
+    }
+
+    private void add(PointOfInterest poi) {
+        int lat = poi.position.latitudeE6;
+        int lon = poi.position.longitudeE6;
+        addEntry(lat, lon, lat, lon);
+
+        mData.write(MapFileIndex.POI);
+        mData.write(poi.layer);
+        writeTags(poi.tags);
+    }
+
+    private void add(Way way) {
+        /* ways are stored in each block they intersect */
+        if (!mWays.add(way))
+            return;
+
+        int minLat = Integer.MAX_VALUE, minLon = Integer.MAX_VALUE;
+        int maxLat = Integer.MIN_VALUE, maxLon = Integer.MIN_VALUE;
+        for (GeoPoint[] points : way.geoPoints) {
+            for (GeoPoint p : points) {
+                minLat = Math.min(minLat, p.latitudeE6);
+                minLon = Math.min(minLon, p.longitudeE6);
+                maxLat = Math.max(maxLat, p.latitudeE6);
+                maxLon = Math.max(maxLon, p.longitudeE6);
+            }
+        }
+        addEntry(minLat, minLon, maxLat, maxLon);
+
+        mData.write(MapFileIndex.WAY);
+        mData.write(way.layer);
+        writeTags(way.tags);
+
+        mData.write(way.geometryType.ordinal());
+        if (way.labelPosition != null) {
+            mData.write(1);
+            writeSignedInt(way.labelPosition.latitudeE6 - minLat);
+            writeSignedInt(way.labelPosition.longitudeE6 - minLon);
+        } else {
+            mData.write(0);
+        }
+
+        /* coordinates relative to the previous point */
+        int lat = minLat, lon = minLon;
+        writeUnsignedInt(way.geoPoints.length);
+        for (GeoPoint[] points : way.geoPoints) {
+            writeUnsignedInt(points.length);
+            for (GeoPoint p : points) {
+                writeSignedInt(p.latitudeE6 - lat);
+                writeSignedInt(p.longitudeE6 - lon);
+                lat = p.latitudeE6;
+                lon = p.longitudeE6;
+            }
+        }
+    }
+
+    private void addEntry(int minLat, int minLon, int maxLat, int maxLon) {
+        mEntries.add(minLat);
+        mEntries.add(minLon);
+        mEntries.add(maxLat);
+        mEntries.add(maxLon);
+        mEntries.add(mData.size());
+        mNumEntries++;
+    }
+
+    private void writeTags(List<Tag> tags) {
+        int entry = mNumEntries - 1;
+
+        int numIds = 0;
+        int numStrings = 0;
+        for (Tag tag : tags) {
+            if (MapFileIndex.getStringKey(tag.key) < 0)
+                numIds++;
+            else if (tag.value != null && !tag.value.isEmpty())
+                numStrings++;
+        }
+
+        writeUnsignedInt(numIds);
+        for (Tag tag : tags) {
+            if (MapFileIndex.getStringKey(tag.key) >= 0)
+                continue;
+
+            /* compare tags with interned values */
+            Tag t = new Tag(tag.key, tag.value);
+            Integer id = mTagIds.get(t);
+            if (id == null) {
+                id = mTags.size();
+                mTagIds.put(t, id);
+                mTags.add(t);
+                mTagEntries.add(new IntList());
+            }
+            IntList entries = mTagEntries.get(id);
+            if (entries.size == 0 || entries.values[entries.size - 1] != entry)
+                entries.add(entry);
+            writeUnsignedInt(id);
+        }
+
+        writeUnsignedInt(numStrings);
+        for (Tag tag : tags) {
+            int key = MapFileIndex.getStringKey(tag.key);
+            if (key < 0 || tag.value == null || tag.value.isEmpty())
+                continue;
+
+            mData.write(key);
+            writeString(mData, tag.value);
+            if (key == MapFileIndex.NAME)
+                addNames(tag.value, entry);
+        }
+    }
+
+    /**
+     * Add all languages of a multilingual name.
+     */
+    private void addNames(String name, int entry) {
+        for (String s : name.split("\r")) {
+            int language = s.indexOf('\b');
+            if (language >= 0)
+                s = s.substring(language + 1);
+            if (s.isEmpty())
+                continue;
+
+            IntList entries = mNames.get(s);
+            if (entries == null) {
+                entries = new IntList();
+                mNames.put(s, entries);
+            }
+            if (entries.size == 0 || entries.values[entries.size - 1] != entry)
+                entries.add(entry);
+        }
+    }
+
+    private void write(File file, long mapFileSize, long mapDate) throws IOException {
+        List<String> names = new ArrayList<>(mNames.keySet());
+        Collections.sort(names, new Comparator<String>() {
+            @Override
+            public int compare(String a, String b) {
+                int c = MapFileIndex.normalize(a).compareTo(MapFileIndex.normalize(b));
+                return c != 0 ? c : a.compareTo(b);
+            }
+        });
+
+        /* tags, with the position of their posting lists */
+        ByteArrayOutputStream tags = new ByteArrayOutputStream();
+        int postings = 0;
+        for (int i = 0; i < mTags.size(); i++) {
+            Tag tag = mTags.get(i);
+            writeString(tags, tag.key);
+            writeString(tags, tag.value == null ? "" : tag.value);
+            writeUnsignedInt(tags, postings);
+            writeUnsignedInt(tags, mTagEntries.get(i).size);
+            postings += mTagEntries.get(i).size;
+        }
+        int tagPostings = postings;
+
+        /* entries by the grid cells they intersect */
+        int gridSize = 0;
+        int gridMinLat = 0, gridMinLon = 0, gridMaxLat = 0, gridMaxLon = 0;
+        IntList[] cells = new IntList[0];
+        if (mNumEntries > 0) {
+            gridSize = MapFileIndex.getGridSize(mNumEntries);
+            gridMinLat = gridMinLon = Integer.MAX_VALUE;
+            gridMaxLat = gridMaxLon = Integer.MIN_VALUE;
+            int[] e = mEntries.values;
+            for (int i = 0; i < mEntries.size; i += 5) {
+                gridMinLat = Math.min(gridMinLat, e[i]);
+                gridMinLon = Math.min(gridMinLon, e[i + 1]);
+                gridMaxLat = Math.max(gridMaxLat, e[i + 2]);
+                gridMaxLon = Math.max(gridMaxLon, e[i + 3]);
+            }
+            cells = new IntList[gridSize * gridSize];
+            for (int i = 0; i < cells.length; i++)
+                cells[i] = new IntList();
+            for (int i = 0; i < mEntries.size; i += 5) {
+                int minY = MapFileIndex.cell(e[i], gridMinLat, gridMaxLat, gridSize);
+                int minX = MapFileIndex.cell(e[i + 1], gridMinLon, gridMaxLon, gridSize);
+                int maxY = MapFileIndex.cell(e[i + 2], gridMinLat, gridMaxLat, gridSize);
+                int maxX = MapFileIndex.cell(e[i + 3], gridMinLon, gridMaxLon, gridSize);
+                for (int y = minY; y <= maxY; y++) {
+                    for (int x = minX; x <= maxX; x++)
+                        cells[y * gridSize + x].add(i / 5);
+                }
+            }
+        }
+
+        ByteArrayOutputStream strings = new ByteArrayOutputStream();
+        int[] nameStrings = new int[names.size()];
+        for (int i = 0; i < names.size(); i++) {
+            nameStrings[i] = strings.size();
+            writeString(strings, names.get(i));
+        }
+
+        int tagsOffset = MapFileIndex.HEADER_SIZE;
+        int entriesOffset = tagsOffset + tags.size();
+        int namesOffset = entriesOffset + mEntries.size * 4;
+        int gridOffset = namesOffset + names.size() * MapFileIndex.NAME_SIZE;
+        int postingsOffset = gridOffset + cells.length * MapFileIndex.CELL_SIZE;
+        for (IntList entries : mNames.values())
+            postings += entries.size;
+        int namePostings = postings;
+        for (IntList entries : cells)
+            postings += entries.size;
+        int dataOffset = postingsOffset + postings * 4;
+        int stringsOffset = dataOffset + mData.size();
+        if ((long) stringsOffset + strings.size() > Integer.MAX_VALUE)
+            throw new IOException("index too large");
+
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+        try {
+            out.write(MapFileIndex.MAGIC.getBytes(CHARSET_UTF8));
+            out.writeInt(MapFileIndex.VERSION);
+            out.writeLong(mapFileSize);
+            out.writeLong(mapDate);
+            out.writeInt(mTags.size());
+            out.writeInt(mNumEntries);
+            out.writeInt(names.size());
+            out.writeInt(tagsOffset);
+            out.writeInt(entriesOffset);
+            out.writeInt(namesOffset);
+            out.writeInt(postingsOffset);
+            out.writeInt(dataOffset);
+            out.writeInt(stringsOffset);
+            out.writeInt(gridSize);
+            out.writeInt(gridOffset);
+            out.writeInt(gridMinLat);
+            out.writeInt(gridMinLon);
+            out.writeInt(gridMaxLat);
+            out.writeInt(gridMaxLon);
+
+            tags.writeTo(out);
+
+            for (int i = 0; i < mEntries.size; i++)
+                out.writeInt(mEntries.values[i]);
+
+            postings = tagPostings;
+            for (int i = 0; i < names.size(); i++) {
+                int size = mNames.get(names.get(i)).size;
+                out.writeInt(nameStrings[i]);
+                out.writeInt(postings);
+                out.writeInt(size);
+                postings += size;
+            }
+
+            postings = namePostings;
+            for (IntList entries : cells) {
+                out.writeInt(postings);
+                out.writeInt(entries.size);
+                postings += entries.size;
+            }
+
+            for (IntList entries : mTagEntries) {
+                for (int i = 0; i < entries.size; i++)
+                    out.writeInt(entries.values[i]);
+            }
+            for (String name : names) {
+                IntList entries = mNames.get(name);
+                for (int i = 0; i < entries.size; i++)
+                    out.writeInt(entries.values[i]);
+            }
+            for (IntList entries : cells) {
+                for (int i = 0; i < entries.size; i++)
+                    out.writeInt(entries.values[i]);
+            }
+
+            mData.writeTo(out);
+            strings.writeTo(out);
+        } finally {
+            out.close();
+        }
+    }
+
+    private void writeUnsignedInt(int value) {
+        writeUnsignedInt(mData, value);
+    }
+
+    private void writeSignedInt(int value) {
+        writeSignedInt(mData, value);
+    }
+
+    /**
+     * Writes a variable byte encoded unsigned int (VBE-U).
+     */
+    static void writeUnsignedInt(ByteArrayOutputStream out, int value) {
+        while ((value & ~0x7f) != 0) {
+            out.write((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    /**
+     * Writes a variable byte encoded signed int (VBE-S), the sign is stored
+     * in the second highest bit of the last byte.
+     */
+    static void writeSignedInt(ByteArrayOutputStream out, int value) {
+        int sign = value < 0 ? 0x40 : 0;
+        value = Math.abs(value);
+        while ((value & ~0x3f) != 0) {
+            out.write((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value | sign);
+    }
+
+    private static void writeString(ByteArrayOutputStream out, String value) {
+        byte[] bytes = value.getBytes(CHARSET_UTF8);
+        writeUnsignedInt(out, bytes.length);
+        out.write(bytes, 0, bytes.length);
+    }
+}
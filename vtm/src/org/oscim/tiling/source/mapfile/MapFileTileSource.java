@@ -43,6 +43,7 @@ public class MapFileTileSource extends TileSource implements IMapFileTileSource
     MapFileHeader fileHeader;
     MapFileInfo fileInfo;
     IndexCache databaseIndexCache;
+    SubFileMapping subFileMapping;
     boolean experimental;
     File mapFile;
     FileInputStream mapFileInputStream;
@@ -54,6 +55,16 @@ public class MapFileTileSource extends TileSource implements IMapFileTileSource
     private String preferredLanguage;
     private Callback callback;
 
+    /**
+     * Incremented when the localization of labels changes, see {@link TagCache}.
+     */
+    volatile int localization;
+
+    /**
+     * Read the map blocks from memory mapped sub-files.
+     */
+    private boolean memoryMapped;
+
     /**
      * Priority of this MapFileTileSource. A higher number means a higher priority. Negative numbers have a special
      * meaning, they should only be used for so-called background maps. Data from background maps is only read
@@ -87,6 +98,7 @@ public class MapFileTileSource extends TileSource implements IMapFileTileSource
     @Override
     public void setCallback(Callback callback) {
         this.callback = callback;
+        localization++;
     }
 
     public boolean setMapFile(String filename) {
@@ -109,9 +121,30 @@ public class MapFileTileSource extends TileSource implements IMapFileTileSource
         this.mapFileInputStream = fileInputStream;
     }
 
+    /**
+     * Returns whether the sub-files of the map file are memory mapped.
+     *
+     * @return true if the map blocks are decoded directly from memory mapped sub-files.
+     */
+    public boolean isMemoryMapped() {
+        return memoryMapped;
+    }
+
+    /**
+     * Memory map the sub-files of the map file once, shared by all loader threads.
+     * Map blocks are then decoded directly from the mapping without copying
+     * them into a buffer first. Must be set before the tile source is opened.
+     *
+     * @param memoryMapped true to read the map blocks from memory mapped sub-files.
+     */
+    public void setMemoryMapped(boolean memoryMapped) {
+        this.memoryMapped = memoryMapped;
+    }
+
     @Override
     public void setPreferredLanguage(String preferredLanguage) {
         this.preferredLanguage = preferredLanguage;
+        localization++;
     }
 
     /**
@@ -180,7 +213,12 @@ public class MapFileTileSource extends TileSource implements IMapFileTileSource
             }
             fileInfo = fileHeader.getMapFileInfo();
             mapFile = file;
-            databaseIndexCache = new IndexCache(inputChannel, INDEX_CACHE_SIZE);
+            if (file != null)
+                databaseIndexCache = IndexCache.open(file, INDEX_CACHE_SIZE);
+            else
+                databaseIndexCache = new IndexCache(inputChannel, INDEX_CACHE_SIZE);
+            if (memoryMapped)
+                subFileMapping = new SubFileMapping(inputChannel, fileHeader);
 
             log.fine("File version: " + fileInfo.fileVersion);
             return OpenResult.SUCCESS;
@@ -220,6 +258,10 @@ public class MapFileTileSource extends TileSource implements IMapFileTileSource
             databaseIndexCache.destroy();
             databaseIndexCache = null;
         }
+        if (subFileMapping != null) {
+            subFileMapping.destroy();
+            subFileMapping = null;
+        }
     }
 
     public MapInfo getMapInfo() {
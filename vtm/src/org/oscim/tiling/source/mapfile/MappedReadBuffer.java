@@ -0,0 +1,242 @@
+/*
+ * This file is part of the OpenScienceMap project (http://www.opensciencemap.org).
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.oscim.tiling.source.mapfile;
+
+import org.oscim.core.Tag;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.logging.Logger;
+
+/**
+ * Decodes a block directly from a memory mapped sub-file, without copying
+ * the block into a byte array first.
+ * <p/>
+ * Reads are limited to the current block, reading beyond it throws an
+ * IndexOutOfBoundsException.
+ */
+class MappedReadBuffer extends AbstractReadBuffer {
+    private static final Charset CHARSET_UTF8 = Charset.forName("UTF-8");
+    private static final Logger LOG = Logger.getLogger(MappedReadBuffer.class.getName());
+
+    /**
+     * The current block, position 0 is the start of the block.
+     */
+    private ByteBuffer mBuffer;
+    private int mPosition;
+
+    /**
+     * Scratch array for string decoding.
+     */
+    private byte[] mStringData = new byte[256];
+
+    /**
+     * Sets the block to be decoded and resets the buffer position.
+     *
+     * @param buffer the mapped sub-file.
+     * @param offset the offset of the block in the sub-file.
+     * @param length the size of the block in bytes.
+     * @return true if the block is inside of the mapped sub-file, false otherwise.
+     */
+    boolean setBlock(ByteBuffer buffer, int offset, int length) {
+        if (offset < 0 || length < 0 || offset > buffer.capacity() - length) {
+            LOG.warning("invalid block: " + offset + " " + length);
+            return false;
+        }
+        /* the block as buffer of its own, the limit bounds absolute reads */
+        ByteBuffer block = buffer.duplicate();
+        block.limit(offset + length);
+        block.position(offset);
+        mBuffer = block.slice();
+        mPosition = 0;
+        return true;
+    }
+
+    @Override
+    public byte readByte() {
+        return mBuffer.get(mPosition++);
+    }
+
+    @Override
+    public int readInt() {
+        int value = mBuffer.getInt(mPosition);
+        mPosition += 4;
+        return value;
+    }
+
+    @Override
+    public long readLong() {
+        long value = mBuffer.getLong(mPosition);
+        mPosition += 8;
+        return value;
+    }
+
+    @Override
+    public int readShort() {
+        int value = mBuffer.getShort(mPosition);
+        mPosition += 2;
+        return value;
+    }
+
+    @Override
+    public int readSignedInt() {
+        ByteBuffer buffer = mBuffer;
+        int pos = mPosition;
+        int value = 0;
+        int shift = 0;
+        byte b;
+
+        while (((b = buffer.get(pos++)) & 0x80) != 0) {
+            value |= (b & 0x7f) << shift;
+            shift += 7;
+        }
+        value |= (b & 0x3f) << shift;
+
+        mPosition = pos;
+        return (b & 0x40) != 0 ? -value : value;
+    }
+
+    @Override
+    public void readSignedInt(int[] values, int length) {
+        ByteBuffer buffer = mBuffer;
+        int pos = mPosition;
+
+        for (int i = 0; i < length; i++) {
+            int value = 0;
+            int shift = 0;
+            byte b;
+
+            while (((b = buffer.get(pos++)) & 0x80) != 0) {
+                value |= (b & 0x7f) << shift;
+                shift += 7;
+            }
+            value |= (b & 0x3f) << shift;
+
+            values[i] = (b & 0x40) != 0 ? -value : value;
+        }
+
+        mPosition = pos;
+    }
+
+    @Override
+    public int readUnsignedInt() {
+        ByteBuffer buffer = mBuffer;
+        int pos = mPosition;
+        int value = 0;
+        int shift = 0;
+        byte b;
+
+        while (((b = buffer.get(pos++)) & 0x80) != 0) {
+            value |= (b & 0x7f) << shift;
+            shift += 7;
+        }
+        value |= (b & 0x7f) << shift;
+
+        mPosition = pos;
+        return value;
+    }
+
+    @Override
+    public String readUTF8EncodedString(int stringLength) {
+        if (readString(stringLength))
+            return new String(mStringData, 0, stringLength, CHARSET_UTF8);
+
+        LOG.warning("invalid string length: " + stringLength);
+        return null;
+    }
+
+    @Override
+    Tag readTag(String key, TagCache cache, int stringLength) {
+        if (readString(stringLength))
+            return cache.get(key, mStringData, 0, stringLength);
+
+        LOG.warning("invalid string length: " + stringLength);
+        return new Tag(key, null, false);
+    }
+
+    /**
+     * Copy 'length' bytes of a string into mStringData.
+     *
+     * @return false when the string is not inside of the block.
+     */
+    private boolean readString(int length) {
+        if (length <= 0 || mPosition < 0 || mPosition > mBuffer.limit() - length)
+            return false;
+
+        if (mStringData.length < length)
+            mStringData = new byte[length];
+
+        ByteBuffer buffer = mBuffer;
+        buffer.position(mPosition);
+        buffer.get(mStringData, 0, length);
+
+        mPosition += length;
+        return true;
+    }
+
+    @Override
+    int getBufferPosition() {
+        return mPosition;
+    }
+
+    @Override
+    int getBufferSize() {
+        return mBuffer.limit();
+    }
+
+    @Override
+    void setBufferPosition(int bufferPosition) {
+        mPosition = bufferPosition;
+    }
+
+    @Override
+    void skipBytes(int bytes) {
+        mPosition += bytes;
+    }
+
+    @Override
+    int skipWays(int queryTileBitmask, int elements) {
+        ByteBuffer buffer = mBuffer;
+        int cnt = elements;
+
+        lastTagPosition = -1;
+
+        while (cnt > 0) {
+            // read way size (unsigned int)
+            int skip = readUnsignedInt();
+
+            // invalid way size
+            if (skip < 0)
+                return -1;
+
+            int pos = mPosition;
+
+            // check if way matches queryTileBitmask
+            if (((buffer.getShort(pos) & 0xffff) & queryTileBitmask) == 0) {
+
+                // remember last tags position
+                if ((buffer.get(pos + 2) & WAY_NUMBER_OF_TAGS_BITMASK) != 0)
+                    lastTagPosition = pos + 2;
+
+                mPosition += skip;
+                cnt--;
+            } else {
+                mPosition += 2;
+                break;
+            }
+        }
+        return cnt;
+    }
+}
@@ -14,20 +14,39 @@
  */
 package org.oscim.tiling.source.mapfile;
 
+import org.oscim.backend.canvas.Bitmap;
 import org.oscim.core.BoundingBox;
+import org.oscim.core.Box;
+import org.oscim.core.MapElement;
+import org.oscim.core.PointF;
 import org.oscim.core.Tile;
 import org.oscim.layers.tile.MapTile;
 import org.oscim.tiling.ITileDataSink;
 import org.oscim.tiling.ITileDataSource;
 import org.oscim.tiling.QueryResult;
 import org.oscim.tiling.TileDataSink;
+import org.oscim.utils.RTree;
+import org.oscim.utils.SpatialIndex;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.logging.Logger;
 
+/**
+ * Queries a set of {@link MapFile}s in order of their priority.
+ * <p>
+ * The map files which intersect a tile are found with a spatial index of
+ * their bounding boxes. When an executor is set, the map files after the
+ * first are read in parallel and their elements are passed to the sink in
+ * the same order as when reading them one after another.
+ */
 public class MultiMapFile implements ITileDataSource {
 
     private static final Logger log = Logger.getLogger(MultiMapFile.class.getName());
@@ -35,6 +54,30 @@ public class MultiMapFile implements ITileDataSource {
     private final boolean deduplicate;
     private final List<MapFile> mapFiles = new ArrayList<>();
 
+    private ExecutorService executor;
+
+    /* index of map files by bounding box, rebuilt when map files are added */
+    private RTree<Integer> mIndex;
+    private final Box mBox = new Box();
+
+    /* map files intersecting the tile, in order of priority */
+    private int[] mCandidates = new int[16];
+    private int mNumCandidates;
+
+    private final SpatialIndex.SearchCb<Integer> mCollect = new SpatialIndex.SearchCb<Integer>() {
+        @Override
+        public boolean call(Integer item, Object context) {
+            if (mNumCandidates == mCandidates.length)
+                mCandidates = Arrays.copyOf(mCandidates, mNumCandidates * 2);
+            mCandidates[mNumCandidates++] = item;
+            return true;
+        }
+    };
+
+    /* sinks of map files read in parallel, by map file */
+    private BufferedSink[] mSinks;
+    private Future<?>[] mTasks;
+
     public MultiMapFile() {
         this(false);
     }
@@ -55,42 +98,88 @@ public class MultiMapFile implements ITileDataSource {
                 return -Integer.compare(md1.getPriority(), md2.getPriority());
             }
         });
+        mIndex = null;
         return true;
     }
 
+    /**
+     * Read overlapping map files in parallel on the executor.
+     *
+     * @param executor the executor, null to read the map files one after
+     *                 another (default).
+     */
+    public void setExecutor(ExecutorService executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * Find the map files which support the tile, in order of priority.
+     *
+     * @return number of map files, see {@link #mCandidates}.
+     */
+    private int findCandidates(Tile tile) {
+        if (mIndex == null) {
+            mIndex = new RTree<>();
+            for (int i = 0, n = mapFiles.size(); i < n; i++) {
+                BoundingBox bbox = mapFiles.get(i).getTileSource().getMapInfo().boundingBox;
+                mIndex.insert(new Box(bbox.getMinLongitude(), bbox.getMinLatitude(),
+                        bbox.getMaxLongitude(), bbox.getMaxLatitude()), i);
+            }
+        }
+
+        BoundingBox bbox = tile.getBoundingBox();
+        mBox.xmin = bbox.getMinLongitude();
+        mBox.ymin = bbox.getMinLatitude();
+        mBox.xmax = bbox.getMaxLongitude();
+        mBox.ymax = bbox.getMaxLatitude();
+
+        mNumCandidates = 0;
+        mIndex.search(mBox, mCollect, null);
+        Arrays.sort(mCandidates, 0, mNumCandidates);
+
+        /* the index only tests the bounding box */
+        int n = 0;
+        for (int i = 0; i < mNumCandidates; i++) {
+            if (mapFiles.get(mCandidates[i]).supportsTile(tile))
+                mCandidates[n++] = mCandidates[i];
+        }
+        mNumCandidates = n;
+        return n;
+    }
+
     @Override
     public void query(MapTile tile, ITileDataSink sink) {
         try {
-            boolean deduplicate = this.deduplicate;
-            if (deduplicate) {
-                int n = 0;
-                for (MapFile mapFile : mapFiles) {
-                    if (mapFile.supportsTile(tile)) {
-                        if (++n > 1) {
-                            break;
-                        }
-                    }
-                }
-                deduplicate = n > 1;
-            }
+            int n = findCandidates(tile);
+            boolean deduplicate = this.deduplicate && n > 1;
 
-            TileDataSink dataSink = new TileDataSink(sink);
+            /* skip background maps when the tile is filled */
+            int numQueries = 0;
             boolean isTileFilled = false;
-            for (int i = 0, n = mapFiles.size(); i < n; i++) {
-                MapFile mapFile = mapFiles.get(i);
+            for (int i = 0; i < n; i++) {
+                MapFile mapFile = mapFiles.get(mCandidates[i]);
                 if (isTileFilled && mapFile.getPriority() < 0) {
                     break;
                 }
-                if (mapFile.supportsTile(tile)) {
-                    mapFile.setDeduplicate(deduplicate);
-                    dataSink.level = i + 1;
-                    dataSink.levels = n;
-                    mapFile.query(tile, dataSink);
-                }
+                numQueries++;
                 if (mapFile.supportsFullTile(tile)) {
                     isTileFilled = true;
                 }
             }
+
+            TileDataSink dataSink = new TileDataSink(sink);
+            if (executor != null && numQueries > 1)
+                queryParallel(tile, dataSink, numQueries, deduplicate);
+            else {
+                for (int i = 0; i < numQueries; i++) {
+                    int level = mCandidates[i];
+                    MapFile mapFile = mapFiles.get(level);
+                    mapFile.setDeduplicate(deduplicate);
+                    dataSink.level = level + 1;
+                    dataSink.levels = mapFiles.size();
+                    mapFile.query(tile, dataSink);
+                }
+            }
             sink.completed(QueryResult.SUCCESS);
         } catch (Throwable t) {
             log.severe(t.toString());
@@ -98,6 +187,155 @@ public class MultiMapFile implements ITileDataSource {
         }
     }
 
+    private void queryParallel(final MapTile tile, TileDataSink dataSink, int numQueries,
+                               boolean deduplicate) throws ExecutionException {
+        int levels = mapFiles.size();
+        if (mSinks == null || mSinks.length != levels) {
+            mSinks = new BufferedSink[levels];
+            mTasks = new Future<?>[levels];
+        }
+
+        /* read all but the first map file on the executor */
+        for (int i = 1; i < numQueries; i++) {
+            final int level = mCandidates[i];
+            final MapFile mapFile = mapFiles.get(level);
+            if (mSinks[level] == null)
+                mSinks[level] = new BufferedSink();
+            final BufferedSink buffer = mSinks[level];
+            buffer.level = level + 1;
+            buffer.levels = levels;
+            mapFile.setDeduplicate(deduplicate);
+            try {
+                mTasks[i] = executor.submit(new Runnable() {
+                    @Override
+                    public void run() {
+                        mapFile.query(tile, buffer);
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                mTasks[i] = null;
+            }
+        }
+
+        ExecutionException error = null;
+        try {
+            int level = mCandidates[0];
+            MapFile mapFile = mapFiles.get(level);
+            mapFile.setDeduplicate(deduplicate);
+            dataSink.level = level + 1;
+            dataSink.levels = levels;
+            mapFile.query(tile, dataSink);
+        } finally {
+            /* always wait for all tasks, map files and sinks are reused */
+            for (int i = 1; i < numQueries; i++) {
+                int level = mCandidates[i];
+                BufferedSink buffer = mSinks[level];
+                if (mTasks[i] == null)
+                    mapFiles.get(level).query(tile, buffer);
+                else {
+                    try {
+                        await(mTasks[i]);
+                    } catch (ExecutionException e) {
+                        error = e;
+                    }
+                    mTasks[i] = null;
+                }
+                buffer.replay(dataSink);
+            }
+        }
+        if (error != null)
+            throw error;
+    }
+
+    private static void await(Future<?> task) throws ExecutionException {
+        boolean interrupted = false;
+        while (true) {
+            try {
+                task.get();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted)
+            Thread.currentThread().interrupt();
+    }
+
+    /**
+     * Keeps copies of the elements of a map file read in parallel, to be
+     * passed to the sink in order of priority.
+     */
+    static final class BufferedSink extends TileDataSink {
+        private static final int NONE = 0;
+        private static final int POI = 1;
+        private static final int WAY = 2;
+
+        private final ArrayList<MapElement> mElements = new ArrayList<>();
+        private int[] mKinds = new int[64];
+        private int[] mHashes = new int[64];
+
+        /* hash passed by the map file for the next element */
+        private int mKind = NONE;
+        private int mHash;
+
+        BufferedSink() {
+            super(null);
+        }
+
+        @Override
+        public boolean addPoi(int hash) {
+            mKind = POI;
+            mHash = hash;
+            return true;
+        }
+
+        @Override
+        public boolean addWay(int hash) {
+            mKind = WAY;
+            mHash = hash;
+            return true;
+        }
+
+        @Override
+        public void process(MapElement element) {
+            int n = mElements.size();
+            if (n == mKinds.length) {
+                mKinds = Arrays.copyOf(mKinds, n * 2);
+                mHashes = Arrays.copyOf(mHashes, n * 2);
+            }
+            mKinds[n] = mKind;
+            mHashes[n] = mHash;
+            /* positions are modified in place by the reader */
+            MapElement copy = new MapElement(element);
+            if (copy.labelPosition != null)
+                copy.labelPosition = new PointF(copy.labelPosition.x, copy.labelPosition.y);
+            if (copy.centroidPosition != null)
+                copy.centroidPosition = new PointF(copy.centroidPosition.x, copy.centroidPosition.y);
+            mElements.add(copy);
+            mKind = NONE;
+        }
+
+        @Override
+        public void setTileImage(Bitmap bitmap) {
+        }
+
+        /**
+         * Pass the elements to the sink, elements which were added to the
+         * sink before are skipped when the map file deduplicates.
+         */
+        void replay(TileDataSink sink) {
+            for (int i = 0, n = mElements.size(); i < n; i++) {
+                if (mKinds[i] == POI && !sink.addPoi(mHashes[i]))
+                    continue;
+                if (mKinds[i] == WAY && !sink.addWay(mHashes[i]))
+                    continue;
+                sink.process(mElements.get(i));
+            }
+            mElements.clear();
+            mKind = NONE;
+        }
+    }
+
     @Override
     public void dispose() {
         for (MapFile mapFile : mapFiles) {
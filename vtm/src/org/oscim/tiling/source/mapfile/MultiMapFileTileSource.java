@@ -26,6 +26,7 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
 import java.util.logging.Logger;
 
 public class MultiMapFileTileSource extends TileSource implements IMapFileTileSource {
@@ -33,6 +34,7 @@ public class MultiMapFileTileSource extends TileSource implements IMapFileTileSo
     private static final Logger log = Logger.getLogger(MultiMapFileTileSource.class.getName());
 
     private boolean deduplicate;
+    private ExecutorService executor;
     private final List<MapFileTileSource> mapFileTileSources = new ArrayList<>();
     private final Map<MapFileTileSource, int[]> zoomsByTileSource = new HashMap<>();
 
@@ -73,6 +75,7 @@ public class MultiMapFileTileSource extends TileSource implements IMapFileTileSo
     @Override
     public ITileDataSource getDataSource() {
         MultiMapFile multiMapFile = new MultiMapFile(deduplicate);
+        multiMapFile.setExecutor(executor);
         for (MapFileTileSource mapFileTileSource : mapFileTileSources) {
             try {
                 MapFile mapFile = new MapFile(mapFileTileSource);
@@ -117,6 +120,19 @@ public class MultiMapFileTileSource extends TileSource implements IMapFileTileSo
         this.deduplicate = deduplicate;
     }
 
+    /**
+     * Read overlapping map files of a tile in parallel, see
+     * {@link MultiMapFile#setExecutor(ExecutorService)}. Must be set before
+     * the data sources are created. The executor is not shut down by
+     * {@link #close()}.
+     *
+     * @param executor the executor, e.g. {@link org.oscim.layers.tile.TileLoaderExecutor#newExecutor()},
+     *                 null to read the map files one after another (default).
+     */
+    public void setExecutor(ExecutorService executor) {
+        this.executor = executor;
+    }
+
     @Override
     public void setPreferredLanguage(String preferredLanguage) {
         for (MapFileTileSource mapFileTileSource : mapFileTileSources) {
@@ -19,7 +19,6 @@
 package org.oscim.tiling.source.mapfile;
 
 import org.oscim.core.Tag;
-import org.oscim.core.TagSet;
 import org.oscim.utils.Parameters;
 
 import java.io.IOException;
@@ -27,25 +26,23 @@ import java.io.RandomAccessFile;
 import java.io.UnsupportedEncodingException;
 import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
-import java.util.ArrayList;
-import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
  * Reads from a {@link RandomAccessFile} into a buffer and decodes the data.
  */
-public class ReadBuffer {
+public class ReadBuffer extends AbstractReadBuffer {
     private static final String CHARSET_UTF8 = "UTF-8";
     private static final Logger LOG = Logger.getLogger(ReadBuffer.class.getName());
 
     private byte[] mBufferData;
     private int mBufferPosition;
+    /* size of the data in the buffer, the buffer is reused */
+    private int mBufferSize;
     private ByteBuffer mBufferWrapper;
     private final FileChannel mInputChannel;
 
-    private final List<Integer> mTagIds = new ArrayList<>();
-
     ReadBuffer(FileChannel inputChannel) {
         mInputChannel = inputChannel;
     }
@@ -55,21 +52,11 @@ public class ReadBuffer {
      *
      * @return the byte value.
      */
+    @Override
     public byte readByte() {
         return mBufferData[mBufferPosition++];
     }
 
-    /**
-     * Converts four bytes from the read buffer to a float.
-     * <p/>
-     * The byte order is big-endian.
-     *
-     * @return the float value.
-     */
-    public float readFloat() {
-        return Float.intBitsToFloat(readInt());
-    }
-
     /**
      * Reads the given amount of bytes from the file into the read buffer and
      * resets the internal buffer position. If
@@ -98,7 +85,9 @@ public class ReadBuffer {
         }
 
         mBufferPosition = 0;
+        mBufferSize = length;
         mBufferWrapper.clear();
+        mBufferWrapper.limit(length);
 
         // reset the buffer position and read the data into the buffer
         // bufferPosition = 0;
@@ -134,7 +123,9 @@ public class ReadBuffer {
         }
 
         mBufferPosition = 0;
+        mBufferSize = length;
         mBufferWrapper.clear();
+        mBufferWrapper.limit(length);
 
         // reset the buffer position and read the data into the buffer
         // bufferPosition = 0;
@@ -151,6 +142,7 @@ public class ReadBuffer {
      *
      * @return the int value.
      */
+    @Override
     public int readInt() {
         int pos = mBufferPosition;
         byte[] data = mBufferData;
@@ -169,6 +161,7 @@ public class ReadBuffer {
      *
      * @return the long value.
      */
+    @Override
     public long readLong() {
         int pos = mBufferPosition;
         byte[] data = mBufferData;
@@ -192,6 +185,7 @@ public class ReadBuffer {
      *
      * @return the int value.
      */
+    @Override
     public int readShort() {
         mBufferPosition += 2;
         return mBufferData[mBufferPosition - 2] << 8 | (mBufferData[mBufferPosition - 1] & 0xff);
@@ -206,6 +200,7 @@ public class ReadBuffer {
      *
      * @return the value.
      */
+    @Override
     public int readSignedInt() {
         int pos = mBufferPosition;
         byte[] data = mBufferData;
@@ -269,6 +264,7 @@ public class ReadBuffer {
      * @param values result values
      * @param length number of values to read
      */
+    @Override
     public void readSignedInt(int[] values, int length) {
         int pos = mBufferPosition;
         byte[] data = mBufferData;
@@ -335,6 +331,7 @@ public class ReadBuffer {
      *
      * @return the int value.
      */
+    @Override
     public int readUnsignedInt() {
         int pos = mBufferPosition;
         byte[] data = mBufferData;
@@ -373,33 +370,15 @@ public class ReadBuffer {
                 | ((data[pos + 4] & 0x7f) << 28);
     }
 
-    /**
-     * Decodes a variable amount of bytes from the read buffer to a string.
-     *
-     * @return the UTF-8 decoded string (may be null).
-     */
-    public String readUTF8EncodedString() {
-        return readUTF8EncodedString(readUnsignedInt());
-    }
-
-    /**
-     * @return ...
-     */
-    public int getPositionAndSkip() {
-        int pos = mBufferPosition;
-        int length = readUnsignedInt();
-        skipBytes(length);
-        return pos;
-    }
-
     /**
      * Decodes the given amount of bytes from the read buffer to a string.
      *
      * @param stringLength the length of the string in bytes.
      * @return the UTF-8 decoded string (may be null).
      */
+    @Override
     public String readUTF8EncodedString(int stringLength) {
-        if (stringLength > 0 && mBufferPosition + stringLength <= mBufferData.length) {
+        if (stringLength > 0 && mBufferPosition + stringLength <= mBufferSize) {
             mBufferPosition += stringLength;
             try {
                 return new String(mBufferData, mBufferPosition - stringLength, stringLength,
@@ -413,22 +392,28 @@ public class ReadBuffer {
     }
 
     /**
-     * Decodes a variable amount of bytes from the read buffer to a string.
+     * Decodes the given amount of bytes from the read buffer to a tag with
+     * string value.
      *
-     * @param position buffer offset position of string
-     * @return the UTF-8 decoded string (may be null).
+     * @param key          the tag key.
+     * @param cache        the cache of decoded tags.
+     * @param stringLength the length of the string in bytes.
+     * @return the tag (value may be null).
      */
-    public String readUTF8EncodedStringAt(int position) {
-        int curPosition = mBufferPosition;
-        mBufferPosition = position;
-        String result = readUTF8EncodedString(readUnsignedInt());
-        mBufferPosition = curPosition;
-        return result;
+    @Override
+    Tag readTag(String key, TagCache cache, int stringLength) {
+        if (stringLength > 0 && mBufferPosition + stringLength <= mBufferSize) {
+            mBufferPosition += stringLength;
+            return cache.get(key, mBufferData, mBufferPosition - stringLength, stringLength);
+        }
+        LOG.warning("invalid string length: " + stringLength);
+        return new Tag(key, null, false);
     }
 
     /**
      * @return the current buffer position.
      */
+    @Override
     int getBufferPosition() {
         return mBufferPosition;
     }
@@ -436,8 +421,9 @@ public class ReadBuffer {
     /**
      * @return the current size of the read buffer.
      */
+    @Override
     int getBufferSize() {
-        return mBufferData.length;
+        return mBufferSize;
     }
 
     /**
@@ -445,6 +431,7 @@ public class ReadBuffer {
      *
      * @param bufferPosition the buffer position.
      */
+    @Override
     void setBufferPosition(int bufferPosition) {
         mBufferPosition = bufferPosition;
     }
@@ -454,56 +441,12 @@ public class ReadBuffer {
      *
      * @param bytes the number of bytes to skip.
      */
+    @Override
     void skipBytes(int bytes) {
         mBufferPosition += bytes;
     }
 
-    boolean readTags(TagSet tags, Tag[] tagsArray, byte numberOfTags) {
-        tags.clear();
-        mTagIds.clear();
-
-        int maxTag = tagsArray.length;
-
-        for (byte i = 0; i < numberOfTags; i++) {
-            int tagId = readUnsignedInt();
-            if (tagId < 0 || tagId >= maxTag) {
-                LOG.warning("invalid tag ID: " + tagId);
-                break;
-            }
-            mTagIds.add(tagId);
-        }
-
-        for (int tagId : mTagIds) {
-            Tag tag = tagsArray[tagId];
-            // Decode variable values of tags
-            if (tag.value.length() == 2 && tag.value.charAt(0) == '%') {
-                String value = tag.value;
-                if (value.charAt(1) == 'b') {
-                    value = String.valueOf(readByte());
-                } else if (value.charAt(1) == 'i') {
-                    if (tag.key.contains(":colour")) {
-                        value = "#" + Integer.toHexString(readInt());
-                    } else {
-                        value = String.valueOf(readInt());
-                    }
-                } else if (value.charAt(1) == 'f') {
-                    value = String.valueOf(readFloat());
-                } else if (value.charAt(1) == 'h') {
-                    value = String.valueOf(readShort());
-                } else if (value.charAt(1) == 's') {
-                    value = readUTF8EncodedString();
-                }
-                tag = new Tag(tag.key, value);
-            }
-            tags.add(tag);
-        }
-
-        return true;
-    }
-
-    private static final int WAY_NUMBER_OF_TAGS_BITMASK = 0x0f;
-    int lastTagPosition;
-
+    @Override
     int skipWays(int queryTileBitmask, int elements) {
         int pos = mBufferPosition;
         byte[] data = mBufferData;
@@ -0,0 +1,91 @@
+/*
+ * This file is part of the OpenScienceMap project (http://www.opensciencemap.org).
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.oscim.tiling.source.mapfile;
+
+import org.oscim.tiling.source.mapfile.header.MapFileHeader;
+import org.oscim.tiling.source.mapfile.header.SubFileParameter;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.logging.Logger;
+
+/**
+ * Read-only memory mappings of the sub-files of a map file.
+ * <p/>
+ * The mappings are created once when the tile source is opened and shared by
+ * all {@link MapFile} instances, i.e. all loader threads. Only absolute reads
+ * are done on the mapped buffers, so they can be accessed concurrently.
+ */
+class SubFileMapping {
+    private static final Logger log = Logger.getLogger(SubFileMapping.class.getName());
+
+    private final Map<SubFileParameter, ByteBuffer> mBuffers = new HashMap<>();
+    private final long mFileSize;
+    private boolean mComplete = true;
+
+    /**
+     * @param inputChannel the map file channel, may be closed after the mapping was created.
+     * @param fileHeader   the header of the map file.
+     * @throws IOException if a sub-file could not be mapped.
+     */
+    SubFileMapping(FileChannel inputChannel, MapFileHeader fileHeader) throws IOException {
+        mFileSize = inputChannel.size();
+
+        for (SubFileParameter subFileParameter : fileHeader.getSubFileParameters()) {
+            if (subFileParameter.subFileSize > Integer.MAX_VALUE) {
+                /* sub-file cannot be mapped into a single buffer,
+                 * blocks are read from the channel instead */
+                log.warning("sub-file too large for mapping: " + subFileParameter.subFileSize);
+                mComplete = false;
+                continue;
+            }
+            ByteBuffer buffer = inputChannel.map(FileChannel.MapMode.READ_ONLY,
+                    subFileParameter.startAddress, subFileParameter.subFileSize);
+            mBuffers.put(subFileParameter, buffer);
+        }
+    }
+
+    /**
+     * @param subFileParameter the sub-file.
+     * @return the mapped sub-file or null if the sub-file is not mapped.
+     */
+    ByteBuffer get(SubFileParameter subFileParameter) {
+        return mBuffers.get(subFileParameter);
+    }
+
+    /**
+     * @return the size of the map file in bytes.
+     */
+    long getFileSize() {
+        return mFileSize;
+    }
+
+    /**
+     * @return true if all sub-files are mapped.
+     */
+    boolean isComplete() {
+        return mComplete;
+    }
+
+    /**
+     * Release the mappings, they are unmapped when garbage collected.
+     */
+    void destroy() {
+        mBuffers.clear();
+    }
+}
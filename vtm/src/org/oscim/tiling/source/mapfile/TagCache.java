@@ -0,0 +1,133 @@
+/*
+ * This file is part of the OpenScienceMap project (http://www.opensciencemap.org).
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.oscim.tiling.source.mapfile;
+
+import org.oscim.core.Tag;
+
+import java.nio.charset.Charset;
+
+/**
+ * Recently decoded tags with string values, so that repeated names, house
+ * numbers and refs resolve to shared {@link Tag} instances without decoding
+ * and localizing the string again.
+ * <p>
+ * Tags are looked up by key and the UTF-8 bytes of the value. The table is
+ * direct mapped, a miss replaces the entry of the slot. Each {@link MapFile}
+ * has its own cache, it is not thread safe.
+ */
+final class TagCache {
+    private static final Charset CHARSET_UTF8 = Charset.forName("UTF-8");
+
+    private static final int SIZE = 1024;
+    private static final int MASK = SIZE - 1;
+
+    /**
+     * Longer values are not cached.
+     */
+    private static final int MAX_LENGTH = 1024;
+
+    private final MapFileTileSource mTileSource;
+
+    private final String[] mKeys = new String[SIZE];
+    private final byte[][] mValues = new byte[SIZE][];
+    private final int[] mLengths = new int[SIZE];
+    private final Tag[] mTags = new Tag[SIZE];
+
+    /* localization of the cached names */
+    private int mLocalization;
+
+    /* false to keep multilingual names */
+    private boolean mLocalize = true;
+
+    TagCache(MapFileTileSource tileSource) {
+        mTileSource = tileSource;
+        mLocalization = tileSource.localization;
+    }
+
+    /**
+     * Drop cached names when the preferred language of the tile source was
+     * changed. Called before each query.
+     */
+    void validate() {
+        int localization = mTileSource.localization;
+        if (mLocalization != localization) {
+            mLocalization = localization;
+            clear();
+        }
+    }
+
+    /**
+     * @param localize false to return names with all languages, as stored
+     *                 in the map file.
+     */
+    void setLocalize(boolean localize) {
+        if (mLocalize != localize) {
+            mLocalize = localize;
+            clear();
+        }
+    }
+
+    void clear() {
+        for (int i = 0; i < SIZE; i++) {
+            mKeys[i] = null;
+            mTags[i] = null;
+        }
+    }
+
+    /**
+     * @param key    the tag key, one of the {@link Tag} constants.
+     * @param data   the UTF-8 encoded value.
+     * @param offset the offset of the value in 'data'.
+     * @param length the length of the value in bytes.
+     * @return the tag, the value of {@link Tag#KEY_NAME} is localized.
+     */
+    Tag get(String key, byte[] data, int offset, int length) {
+        if (length > MAX_LENGTH)
+            return create(key, data, offset, length);
+
+        int h = key.hashCode();
+        for (int i = offset, end = offset + length; i < end; i++)
+            h = 31 * h + data[i];
+        int slot = (h ^ (h >>> 16)) & MASK;
+
+        if (mKeys[slot] == key && mLengths[slot] == length) {
+            byte[] value = mValues[slot];
+            int i = 0;
+            while (i < length && value[i] == data[offset + i])
+                i++;
+            if (i == length)
+                return mTags[slot];
+        }
+
+        Tag tag = create(key, data, offset, length);
+
+        byte[] value = mValues[slot];
+        if (value == null || value.length < length)
+            value = mValues[slot] = new byte[Math.max(length, 16)];
+        System.arraycopy(data, offset, value, 0, length);
+
+        mKeys[slot] = key;
+        mLengths[slot] = length;
+        mTags[slot] = tag;
+        return tag;
+    }
+
+    private Tag create(String key, byte[] data, int offset, int length) {
+        String value = new String(data, offset, length, CHARSET_UTF8);
+        if (key == Tag.KEY_NAME && mLocalize)
+            value = mTileSource.extractLocalized(value);
+        return new Tag(key, value, false);
+    }
+}
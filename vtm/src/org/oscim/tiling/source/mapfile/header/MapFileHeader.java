@@ -47,6 +47,7 @@ public class MapFileHeader {
 
     private MapFileInfo mapFileInfo;
     private SubFileParameter[] subFileParameters;
+    private SubFileParameter[] subFiles;
     private byte zoomLevelMaximum;
     private byte zoomLevelMinimum;
 
@@ -78,6 +79,13 @@ public class MapFileHeader {
         return this.subFileParameters[queryZoomLevel];
     }
 
+    /**
+     * @return the parameters of all sub-files in the order they are stored in the map file.
+     */
+    public SubFileParameter[] getSubFileParameters() {
+        return this.subFiles;
+    }
+
     /**
      * Reads and validates the header block from the map file.
      *
@@ -228,6 +236,7 @@ public class MapFileHeader {
             updateZoomLevelInformation(tempSubFileParameters[currentSubFile]);
         }
 
+        this.subFiles = tempSubFileParameters;
         mapFileInfoBuilder.zoomLevel = new int[numberOfSubFiles];
 
         // create and fill the lookup table for the sub-files
@@ -0,0 +1,149 @@
+/*
+ * This file is part of the OpenScienceMap project (http://www.opensciencemap.org).
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.oscim.utils;
+
+/**
+ * A histogram of non-negative long values with power-of-two buckets.
+ * <p>
+ * Values are counted into bucket {@code floor(log2(value)) + 1}, value 0 into
+ * bucket 0. This keeps recording cheap and allocation free while percentiles
+ * stay within a factor of two of the exact value. Recording and reading are
+ * synchronized, values can be recorded from any thread.
+ */
+public class Histogram {
+
+    private static final int BUCKETS = 64;
+
+    private final String mName;
+    private final long[] mBuckets = new long[BUCKETS];
+
+    private long mCount;
+    private long mSum;
+    private long mMin;
+    private long mMax;
+
+    public Histogram(String name) {
+        mName = name;
+        reset();
+    }
+
+    public String getName() {
+        return mName;
+    }
+
+    /**
+     * Add a value to the histogram, negative values are counted as 0.
+     */
+    public synchronized void record(long value) {
+        if (value < 0)
+            value = 0;
+
+        mBuckets[BUCKETS - Long.numberOfLeadingZeros(value)]++;
+        mCount++;
+        mSum += value;
+        if (value < mMin)
+            mMin = value;
+        if (value > mMax)
+            mMax = value;
+    }
+
+    public synchronized void reset() {
+        for (int i = 0; i < BUCKETS; i++)
+            mBuckets[i] = 0;
+        mCount = 0;
+        mSum = 0;
+        mMin = Long.MAX_VALUE;
+        mMax = 0;
+    }
+
+    public synchronized long getCount() {
+        return mCount;
+    }
+
+    public synchronized long getSum() {
+        return mSum;
+    }
+
+    public synchronized long getMin() {
+        return mCount == 0 ? 0 : mMin;
+    }
+
+    public synchronized long getMax() {
+        return mMax;
+    }
+
+    public synchronized double getMean() {
+        return mCount == 0 ? 0 : (double) mSum / mCount;
+    }
+
+    /**
+     * Estimate a percentile from the bucket counts.
+     *
+     * @param percentile in range 0..100.
+     * @return the upper bound of the bucket containing the percentile,
+     * clamped to the recorded min and max values.
+     */
+    public synchronized long getPercentile(double percentile) {
+        if (mCount == 0)
+            return 0;
+
+        long rank = (long) Math.ceil(mCount * Math.max(0, Math.min(100, percentile)) / 100);
+        if (rank < 1)
+            rank = 1;
+
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += mBuckets[i];
+            if (seen >= rank) {
+                long upper = i == 0 ? 0 : (1L << i) - 1;
+                return Math.max(mMin, Math.min(mMax, upper));
+            }
+        }
+        return mMax;
+    }
+
+    /**
+     * @return a copy of the counts per power-of-two bucket.
+     */
+    public synchronized long[] getBuckets() {
+        return mBuckets.clone();
+    }
+
+    /**
+     * Append a one line summary of this histogram.
+     *
+     * @param scale divisor for the printed values, e.g. 1000000 to print
+     *              nanoseconds as milliseconds.
+     */
+    public synchronized StringBuilder format(StringBuilder sb, double scale) {
+        sb.append(mName)
+                .append(" n=").append(mCount)
+                .append(" mean=").append(round(getMean() / scale))
+                .append(" p50=").append(round(getPercentile(50) / scale))
+                .append(" p90=").append(round(getPercentile(90) / scale))
+                .append(" p99=").append(round(getPercentile(99) / scale))
+                .append(" max=").append(round(getMax() / scale));
+        return sb;
+    }
+
+    private static double round(double value) {
+        return Math.round(value * 100) / 100.0;
+    }
+
+    @Override
+    public String toString() {
+        return format(new StringBuilder(), 1).toString();
+    }
+}
@@ -28,6 +28,12 @@ public final class Parameters {
      */
     public static boolean ANIMATOR2 = true;
 
+    /**
+     * Draw vector tiles level by level, batching line buckets of the
+     * same style across tiles.
+     */
+    public static boolean BATCH_RENDERING = false;
+
     /**
      * Allow custom scale factor for short vertices instead of the calculated one.
      */
@@ -43,6 +49,18 @@ public final class Parameters {
      */
     public static boolean DISTANT_LABELS = false;
 
+    /**
+     * Draw label text from a shared glyph texture instead of rasterizing
+     * each label, see {@link org.oscim.renderer.bucket.TextBucket}.
+     */
+    public static boolean GLYPH_ATLAS = false;
+
+    /**
+     * Update labels incrementally while the map is only moved or slightly
+     * rotated, see {@link org.oscim.layers.tile.vector.labeling.LabelPlacement}.
+     */
+    public static boolean INCREMENTAL_LABELS = false;
+
     /**
      * If true the <code>MapEventLayer2</code> will be used instead of default <code>MapEventLayer</code>.
      */
@@ -93,6 +111,11 @@ public final class Parameters {
      */
     public static boolean POT_TEXTURES = false;
 
+    /**
+     * Record render statistics, see {@link org.oscim.renderer.RenderStats}.
+     */
+    public static boolean RENDER_STATS = false;
+
     /**
      * Simplification exceptions.
      */
@@ -119,6 +142,18 @@ public final class Parameters {
      */
     public static boolean THREADED_INIT = false;
 
+    /**
+     * Run tile loaders on an executor instead of dedicated loader threads,
+     * see {@link org.oscim.layers.tile.TileLoaderExecutor}.
+     */
+    public static boolean TILE_LOADER_EXECUTOR = false;
+
+    /**
+     * Concurrent tile loads per layer with {@link #TILE_LOADER_EXECUTOR},
+     * decoding is limited to the number of processors.
+     */
+    public static int TILE_LOADER_EXECUTOR_LOADS = 16;
+
     private Parameters() {
         throw new IllegalStateException();
     }
@@ -27,6 +27,13 @@ import java.util.logging.Logger;
 public class Tessellator {
     private static final Logger log = Logger.getLogger(Tessellator.class.getName());
 
+    /**
+     * Use libtess2 via JNI. Otherwise polygons are triangulated by the
+     * pure Java {@link Triangulator}, which does not allocate per polygon
+     * and does not need the native library.
+     */
+    public static boolean USE_JNI = true;
+
     /**
      * Special version for ExtrusionLayer to match indices with vertex positions.
      * Tessellates polygon in tris elements.
@@ -44,6 +51,9 @@ public class Tessellator {
     public static int tessellate(float[] points, int ppos, int numPoints, int[] index,
                                  int ipos, int numRings, int vertexOffset, VertexData outTris) {
 
+        if (!USE_JNI)
+            return triangulate(points, ppos, index, ipos, numRings, vertexOffset, outTris);
+
         int buckets = FastMath.log2(MathUtils.nextPowerOfTwo(numPoints));
         buckets -= 2;
         //log.debug("tess use {}", buckets);
@@ -148,6 +158,16 @@ public class Tessellator {
             numRings++;
         }
 
+        if (!USE_JNI) {
+            Triangulator t = Triangulator.get();
+            int nelems = t.triangulate(points, 0, index, ipos, numRings);
+            if (nelems == 0)
+                return 0;
+
+            outMesh.index = Arrays.copyOf(t.getTriangles(), nelems);
+            return nelems;
+        }
+
         int buckets = FastMath.log2(MathUtils.nextPowerOfTwo(numPoints));
         buckets -= 2;
         //log.debug("tess use {}", buckets);
@@ -182,6 +202,88 @@ public class Tessellator {
         return nelems;
     }
 
+    /**
+     * Tessellates all polygons of a {@link GeometryBuffer} with the
+     * {@link Triangulator}. All points of geom are added to outPoints,
+     * multiplied by scale.
+     *
+     * @param geom         the input GeometryBuffer as POLY
+     * @param scale        the scale of output points
+     * @param outPoints    the output points as x,y {@link VertexData}
+     * @param outTris      the output triangles as {@link VertexData}
+     * @param vertexOffset shift outTris index with offset
+     * @return number of indices of outTris
+     */
+    public static int tessellate(GeometryBuffer geom, float scale,
+                                 VertexData outPoints, VertexData outTris, int vertexOffset) {
+        int[] index = geom.index;
+        int numRings = 0;
+        while (numRings < index.length && index[numRings] >= 0)
+            numRings++;
+
+        float[] points = geom.points;
+        for (int i = 0; i < geom.pointNextPos; i += 2)
+            outPoints.add(points[i] * scale, points[i + 1] * scale);
+
+        Triangulator t = Triangulator.get();
+        int nelems = t.triangulate(points, 0, index, 0, numRings);
+        int[] tris = t.getTriangles();
+
+        for (int i = 0; i < nelems; i += 3)
+            outTris.add((short) (tris[i] + vertexOffset),
+                    (short) (tris[i + 1] + vertexOffset),
+                    (short) (tris[i + 2] + vertexOffset));
+
+        return nelems;
+    }
+
+    /**
+     * Triangulates all polygons of a {@link GeometryBuffer} with the
+     * {@link Triangulator}, without adding the points. For callers that
+     * arrange the vertices themselves.
+     *
+     * @param geom the input GeometryBuffer as POLY
+     * @return the point indices of the triangles
+     */
+    public static int[] triangulate(GeometryBuffer geom) {
+        int[] index = geom.index;
+        int numRings = 0;
+        while (numRings < index.length && index[numRings] >= 0)
+            numRings++;
+
+        Triangulator t = Triangulator.get();
+        int nelems = t.triangulate(geom.points, 0, index, 0, numRings);
+        return Arrays.copyOf(t.getTriangles(), nelems);
+    }
+
+    /**
+     * Java version of the ExtrusionLayer tessellation: Points are extruded
+     * to two vertices and rings with an odd number of points get two
+     * additional vertices.
+     */
+    private static int triangulate(float[] points, int ppos, int[] index, int ipos,
+                                   int numRings, int vertexOffset, VertexData outTris) {
+        Triangulator t = Triangulator.get();
+        int nelems = t.triangulate(points, ppos, index, ipos, numRings);
+        int[] tris = t.getTriangles();
+
+        for (int i = 0; i < nelems; i++) {
+            int id = tris[i];
+            int vertex = vertexOffset + id * 2;
+
+            /* add the padding of previous rings */
+            for (int r = ipos, end = 0; r < ipos + numRings - 1; r++) {
+                end += index[r] >> 1;
+                if (id < end)
+                    break;
+                if (((index[r] >> 1) & 1) != 0)
+                    vertex += 2;
+            }
+            outTris.add((short) vertex);
+        }
+        return nelems;
+    }
+
     //    private static final int RESULT_VERTICES = 0;
     //    private static final int RESULT_TRIANGLES = 1;
     //
@@ -0,0 +1,803 @@
+/*
+ * This file is part of the OpenScienceMap project (http://www.opensciencemap.org).
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.oscim.utils;
+
+import java.util.Arrays;
+
+/**
+ * Pure Java polygon triangulation by ear clipping. Holes are bridged into
+ * the outer ring before clipping. Large polygons use a z-order curve to
+ * find points inside of ear candidates. Triangles have the winding order
+ * of their outer ring, inner rings are holes regardless of their winding.
+ * <p>
+ * Based on the earcut algorithm by Mapbox (ISC license).
+ * <p>
+ * Nodes of the ring lists are kept in arrays which are reused between
+ * calls, so that an instance does not allocate once it has grown to the
+ * size of the largest polygon. Not thread-safe, use {@link #get()} for an
+ * instance of the current thread.
+ */
+public final class Triangulator {
+
+    private static final ThreadLocal<Triangulator> sInstance = new ThreadLocal<Triangulator>() {
+        @Override
+        protected Triangulator initialValue() {
+            return new Triangulator();
+        }
+    };
+
+    /**
+     * @return the Triangulator of the current thread.
+     */
+    public static Triangulator get() {
+        return sInstance.get();
+    }
+
+    /**
+     * Number of points from which the z-order curve is used.
+     */
+    private static final int HASH_MIN_POINTS = 80;
+
+    private static final int NONE = -1;
+
+    /* node list */
+    private int[] mVertex = new int[64];
+    private double[] mX = new double[64];
+    private double[] mY = new double[64];
+    private int[] mPrev = new int[64];
+    private int[] mNext = new int[64];
+    private int[] mZ = new int[64];
+    private int[] mPrevZ = new int[64];
+    private int[] mNextZ = new int[64];
+    private boolean[] mSteiner = new boolean[64];
+    private int mNodes;
+
+    private int[] mHoles = new int[8];
+
+    private int[] mTriangles = new int[192];
+    private int mNumIndices;
+
+    private double mMinX, mMinY, mInvSize;
+
+    /**
+     * Triangulate polygons. The rings are given by their number of
+     * coordinates in 'index', starting at 'ipos'. A ring with zero
+     * coordinates ends a polygon, so that the next ring is an outer ring
+     * again. Rings with less than three points are skipped.
+     *
+     * @param points   x,y coordinates
+     * @param ppos     position of the first ring in 'points'
+     * @param index    ring lengths
+     * @param ipos     position of the first ring in 'index'
+     * @param numRings number of entries in 'index' to use
+     * @return number of triangle indices, see {@link #getTriangles()}.
+     * The indices are vertex ids relative to 'ppos'.
+     */
+    public int triangulate(float[] points, int ppos, int[] index, int ipos, int numRings) {
+        mNumIndices = 0;
+
+        int end = ipos + numRings;
+        int pos = ppos;
+        for (int i = ipos; i < end; ) {
+            /* outer ring */
+            int outerStart = pos;
+            int outerLength = index[i++];
+            if (outerLength < 0)
+                break;
+            pos += outerLength;
+
+            /* inner rings up to the end of the polygon */
+            int holesStart = i;
+            for (; i < end && index[i] > 0; i++)
+                pos += index[i];
+
+            if (outerLength >= 6)
+                triangulate(points, ppos, outerStart, outerLength, index, holesStart, i);
+
+            /* skip polygon separator */
+            if (i < end && index[i] == 0)
+                i++;
+        }
+        return mNumIndices;
+    }
+
+    /**
+     * @return triangle indices of the last call to triangulate(). The array
+     * is reused by the next call.
+     */
+    public int[] getTriangles() {
+        return mTriangles;
+    }
+
+    private void triangulate(float[] points, int ppos, int start, int length,
+                             int[] index, int holesStart, int holesEnd) {
+        mNodes = 0;
+
+        int outer = linkedList(points, ppos, start, start + length, true);
+        if (outer == NONE || mNext[outer] == mPrev[outer])
+            return;
+
+        int numPoints = length;
+        if (holesStart < holesEnd) {
+            outer = eliminateHoles(points, ppos, start + length, index, holesStart, holesEnd, outer);
+            for (int i = holesStart; i < holesEnd; i++)
+                numPoints += index[i];
+        }
+
+        mInvSize = 0;
+        if (numPoints > HASH_MIN_POINTS * 2) {
+            double minX = points[start], maxX = minX;
+            double minY = points[start + 1], maxY = minY;
+            for (int i = start + 2, e = start + length; i < e; i += 2) {
+                double x = points[i];
+                double y = points[i + 1];
+                if (x < minX) minX = x;
+                if (y < minY) minY = y;
+                if (x > maxX) maxX = x;
+                if (y > maxY) maxY = y;
+            }
+            double size = Math.max(maxX - minX, maxY - minY);
+            mMinX = minX;
+            mMinY = minY;
+            mInvSize = size != 0 ? 32767 / size : 0;
+        }
+
+        int first = mNumIndices;
+        earcutLinked(outer, 0);
+
+        /* keep the winding order of the outer ring */
+        if (signedArea(points, start, start + length) < 0) {
+            int[] tris = mTriangles;
+            for (int i = first; i < mNumIndices; i += 3) {
+                int t = tris[i + 1];
+                tris[i + 1] = tris[i + 2];
+                tris[i + 2] = t;
+            }
+        }
+    }
+
+    private int linkedList(float[] points, int ppos, int start, int end, boolean clockwise) {
+        int last = NONE;
+        if (clockwise == (signedArea(points, start, end) > 0)) {
+            for (int i = start; i < end; i += 2)
+                last = insertNode((i - ppos) >> 1, points[i], points[i + 1], last);
+        } else {
+            for (int i = end - 2; i >= start; i -= 2)
+                last = insertNode((i - ppos) >> 1, points[i], points[i + 1], last);
+        }
+        if (last != NONE && equals(last, mNext[last])) {
+            removeNode(last);
+            last = mNext[last];
+        }
+        return last;
+    }
+
+    private static double signedArea(float[] points, int start, int end) {
+        double sum = 0;
+        for (int i = start, j = end - 2; i < end; i += 2) {
+            sum += ((double) points[j] - points[i]) * ((double) points[i + 1] + points[j + 1]);
+            j = i;
+        }
+        return sum;
+    }
+
+    private void earcutLinked(int ear, int pass) {
+        if (ear == NONE)
+            return;
+
+        if (pass == 0 && mInvSize != 0)
+            indexCurve(ear);
+
+        int stop = ear;
+        while (mPrev[ear] != mNext[ear]) {
+            int prev = mPrev[ear];
+            int next = mNext[ear];
+
+            if (mInvSize != 0 ? isEarHashed(ear) : isEar(ear)) {
+                addTriangle(prev, ear, next);
+                removeNode(ear);
+
+                /* skipping the next vertex leads to less sliver triangles */
+                ear = mNext[next];
+                stop = ear;
+                continue;
+            }
+
+            ear = next;
+
+            if (ear == stop) {
+                if (pass == 0) {
+                    /* try again after removing collinear points */
+                    earcutLinked(filterPoints(ear, NONE), 1);
+                } else if (pass == 1) {
+                    ear = cureLocalIntersections(filterPoints(ear, NONE));
+                    earcutLinked(ear, 2);
+                } else if (pass == 2) {
+                    splitEarcut(ear);
+                }
+                break;
+            }
+        }
+    }
+
+    private boolean isEar(int ear) {
+        int a = mPrev[ear];
+        int c = mNext[ear];
+
+        /* reflex */
+        if (area(a, ear, c) >= 0)
+            return false;
+
+        double ax = mX[a], bx = mX[ear], cx = mX[c];
+        double ay = mY[a], by = mY[ear], cy = mY[c];
+
+        double x0 = Math.min(ax, Math.min(bx, cx));
+        double y0 = Math.min(ay, Math.min(by, cy));
+        double x1 = Math.max(ax, Math.max(bx, cx));
+        double y1 = Math.max(ay, Math.max(by, cy));
+
+        for (int p = mNext[c]; p != a; p = mNext[p]) {
+            double px = mX[p], py = mY[p];
+            if (px >= x0 && px <= x1 && py >= y0 && py <= y1
+                    && pointInTriangle(ax, ay, bx, by, cx, cy, px, py)
+                    && area(mPrev[p], p, mNext[p]) >= 0)
+                return false;
+        }
+        return true;
+    }
+
+    private boolean isEarHashed(int ear) {
+        int a = mPrev[ear];
+        int c = mNext[ear];
+
+        if (area(a, ear, c) >= 0)
+            return false;
+
+        double ax = mX[a], bx = mX[ear], cx = mX[c];
+        double ay = mY[a], by = mY[ear], cy = mY[c];
+
+        double x0 = Math.min(ax, Math.min(bx, cx));
+        double y0 = Math.min(ay, Math.min(by, cy));
+        double x1 = Math.max(ax, Math.max(bx, cx));
+        double y1 = Math.max(ay, Math.max(by, cy));
+
+        /* z-order range of the triangle bbox */
+        int minZ = zOrder(x0, y0);
+        int maxZ = zOrder(x1, y1);
+
+        int p = mPrevZ[ear];
+        int n = mNextZ[ear];
+
+        /* look in both directions */
+        while (p != NONE && mZ[p] >= minZ && n != NONE && mZ[n] <= maxZ) {
+            if (inEar(p, a, c, x0, y0, x1, y1, ax, ay, bx, by, cx, cy))
+                return false;
+            p = mPrevZ[p];
+
+            if (inEar(n, a, c, x0, y0, x1, y1, ax, ay, bx, by, cx, cy))
+                return false;
+            n = mNextZ[n];
+        }
+        while (p != NONE && mZ[p] >= minZ) {
+            if (inEar(p, a, c, x0, y0, x1, y1, ax, ay, bx, by, cx, cy))
+                return false;
+            p = mPrevZ[p];
+        }
+        while (n != NONE && mZ[n] <= maxZ) {
+            if (inEar(n, a, c, x0, y0, x1, y1, ax, ay, bx, by, cx, cy))
+                return false;
+            n = mNextZ[n];
+        }
+        return true;
+    }
+
+    private boolean inEar(int p, int a, int c, double x0, double y0, double x1, double y1,
+                          double ax, double ay, double bx, double by, double cx, double cy) {
+        double px = mX[p], py = mY[p];
+        return px >= x0 && px <= x1 && py >= y0 && py <= y1 && p != a && p != c
+                && pointInTriangle(ax, ay, bx, by, cx, cy, px, py)
+                && area(mPrev[p], p, mNext[p]) >= 0;
+    }
+
+    /**
+     * Go through all polygon nodes and cure small local self-intersections.
+     */
+    private int cureLocalIntersections(int start) {
+        int p = start;
+        do {
+            int a = mPrev[p];
+            int b = mNext[mNext[p]];
+
+            if (!equals(a, b) && intersects(a, p, mNext[p], b)
+                    && locallyInside(a, b) && locallyInside(b, a)) {
+
+                addTriangle(a, p, b);
+
+                /* remove two nodes involved */
+                removeNode(p);
+                removeNode(mNext[p]);
+
+                p = start = b;
+            }
+            p = mNext[p];
+        } while (p != start);
+
+        return filterPoints(p, NONE);
+    }
+
+    /**
+     * Try splitting the polygon into two and triangulate them independently.
+     */
+    private void splitEarcut(int start) {
+        int a = start;
+        do {
+            int b = mNext[mNext[a]];
+            while (b != mPrev[a]) {
+                if (mVertex[a] != mVertex[b] && isValidDiagonal(a, b)) {
+                    int c = splitPolygon(a, b);
+
+                    a = filterPoints(a, mNext[a]);
+                    c = filterPoints(c, mNext[c]);
+
+                    earcutLinked(a, 0);
+                    earcutLinked(c, 0);
+                    return;
+                }
+                b = mNext[b];
+            }
+            a = mNext[a];
+        } while (a != start);
+    }
+
+    private int eliminateHoles(float[] points, int ppos, int pos, int[] index,
+                               int holesStart, int holesEnd, int outer) {
+        int numHoles = 0;
+        if (mHoles.length < holesEnd - holesStart)
+            mHoles = new int[holesEnd - holesStart];
+
+        for (int i = holesStart; i < holesEnd; i++) {
+            int start = pos;
+            int length = index[i];
+            pos += length;
+            if (length < 6)
+                continue;
+
+            int list = linkedList(points, ppos, start, start + length, false);
+            if (list == NONE)
+                continue;
+            if (list == mNext[list])
+                mSteiner[list] = true;
+
+            mHoles[numHoles++] = getLeftmost(list);
+        }
+
+        /* process holes from left to right */
+        for (int i = 1; i < numHoles; i++) {
+            int h = mHoles[i];
+            int j = i - 1;
+            for (; j >= 0 && mX[mHoles[j]] > mX[h]; j--)
+                mHoles[j + 1] = mHoles[j];
+            mHoles[j + 1] = h;
+        }
+
+        for (int i = 0; i < numHoles; i++)
+            outer = eliminateHole(mHoles[i], outer);
+
+        return outer;
+    }
+
+    private int eliminateHole(int hole, int outer) {
+        int bridge = findHoleBridge(hole, outer);
+        if (bridge == NONE)
+            return outer;
+
+        int bridgeReverse = splitPolygon(bridge, hole);
+
+        filterPoints(bridgeReverse, mNext[bridgeReverse]);
+        return filterPoints(bridge, mNext[bridge]);
+    }
+
+    /**
+     * David Eberly's algorithm for finding a bridge between hole and
+     * outer polygon.
+     */
+    private int findHoleBridge(int hole, int outer) {
+        int p = outer;
+        double hx = mX[hole];
+        double hy = mY[hole];
+        double qx = Double.NEGATIVE_INFINITY;
+        int m = NONE;
+
+        /* find a segment intersected by a ray from the hole's leftmost
+         * point to the left; segment's endpoint with lesser x will be
+         * potential connection point */
+        do {
+            int n = mNext[p];
+            if (hy <= mY[p] && hy >= mY[n] && mY[n] != mY[p]) {
+                double x = mX[p] + (hy - mY[p]) * (mX[n] - mX[p]) / (mY[n] - mY[p]);
+                if (x <= hx && x > qx) {
+                    qx = x;
+                    m = mX[p] < mX[n] ? p : n;
+                    if (x == hx)
+                        return m;
+                }
+            }
+            p = n;
+        } while (p != outer);
+
+        if (m == NONE)
+            return NONE;
+
+        /* look for points inside the triangle of hole point, segment
+         * intersection and endpoint; if there are no points found, we
+         * have a valid connection; otherwise choose the point of the
+         * minimum angle with the ray as connection point */
+        int stop = m;
+        double mx = mX[m];
+        double my = mY[m];
+        double tanMin = Double.POSITIVE_INFINITY;
+
+        p = m;
+        do {
+            double px = mX[p], py = mY[p];
+            if (hx >= px && px >= mx && hx != px
+                    && pointInTriangle(hy < my ? hx : qx, hy, mx, my, hy < my ? qx : hx, hy, px, py)) {
+
+                double tan = Math.abs(hy - py) / (hx - px);
+
+                if (locallyInside(p, hole)
+                        && (tan < tanMin || (tan == tanMin
+                        && (px > mX[m] || (px == mX[m] && sectorContainsSector(m, p)))))) {
+                    m = p;
+                    tanMin = tan;
+                }
+            }
+            p = mNext[p];
+        } while (p != stop);
+
+        return m;
+    }
+
+    private boolean sectorContainsSector(int m, int p) {
+        return area(mPrev[m], m, mPrev[p]) < 0 && area(mNext[p], m, mNext[m]) < 0;
+    }
+
+    private int getLeftmost(int start) {
+        int p = start;
+        int leftmost = start;
+        do {
+            if (mX[p] < mX[leftmost] || (mX[p] == mX[leftmost] && mY[p] < mY[leftmost]))
+                leftmost = p;
+            p = mNext[p];
+        } while (p != start);
+        return leftmost;
+    }
+
+    /**
+     * Eliminate colinear or duplicate points.
+     */
+    private int filterPoints(int start, int end) {
+        if (start == NONE)
+            return start;
+        if (end == NONE)
+            end = start;
+
+        int p = start;
+        boolean again;
+        do {
+            again = false;
+
+            if (!mSteiner[p] && (equals(p, mNext[p]) || area(mPrev[p], p, mNext[p]) == 0)) {
+                removeNode(p);
+                p = end = mPrev[p];
+                if (p == mNext[p])
+                    break;
+                again = true;
+            } else {
+                p = mNext[p];
+            }
+        } while (again || p != end);
+
+        return end;
+    }
+
+    /**
+     * Interlink polygon nodes in z-order.
+     */
+    private void indexCurve(int start) {
+        int p = start;
+        do {
+            if (mZ[p] == 0)
+                mZ[p] = zOrder(mX[p], mY[p]);
+            mPrevZ[p] = mPrev[p];
+            mNextZ[p] = mNext[p];
+            p = mNext[p];
+        } while (p != start);
+
+        mNextZ[mPrevZ[p]] = NONE;
+        mPrevZ[p] = NONE;
+
+        sortLinked(p);
+    }
+
+    /**
+     * Simon Tatham's linked list merge sort algorithm.
+     */
+    private void sortLinked(int list) {
+        int inSize = 1;
+        int numMerges;
+        do {
+            int p = list;
+            int tail = NONE;
+            list = NONE;
+            numMerges = 0;
+
+            while (p != NONE) {
+                numMerges++;
+                int q = p;
+                int pSize = 0;
+                for (int i = 0; i < inSize; i++) {
+                    pSize++;
+                    q = mNextZ[q];
+                    if (q == NONE)
+                        break;
+                }
+                int qSize = inSize;
+
+                while (pSize > 0 || (qSize > 0 && q != NONE)) {
+                    int e;
+                    if (pSize != 0 && (qSize == 0 || q == NONE || mZ[p] <= mZ[q])) {
+                        e = p;
+                        p = mNextZ[p];
+                        pSize--;
+                    } else {
+                        e = q;
+                        q = mNextZ[q];
+                        qSize--;
+                    }
+
+                    if (tail != NONE)
+                        mNextZ[tail] = e;
+                    else
+                        list = e;
+
+                    mPrevZ[e] = tail;
+                    tail = e;
+                }
+                p = q;
+            }
+            mNextZ[tail] = NONE;
+            inSize *= 2;
+        } while (numMerges > 1);
+    }
+
+    /**
+     * z-order of a point given coords and inverse of the longer side of
+     * data bbox.
+     */
+    private int zOrder(double px, double py) {
+        int x = (int) ((px - mMinX) * mInvSize);
+        int y = (int) ((py - mMinY) * mInvSize);
+
+        x = (x | (x << 8)) & 0x00FF00FF;
+        x = (x | (x << 4)) & 0x0F0F0F0F;
+        x = (x | (x << 2)) & 0x33333333;
+        x = (x | (x << 1)) & 0x55555555;
+
+        y = (y | (y << 8)) & 0x00FF00FF;
+        y = (y | (y << 4)) & 0x0F0F0F0F;
+        y = (y | (y << 2)) & 0x33333333;
+        y = (y | (y << 1)) & 0x55555555;
+
+        return x | (y << 1);
+    }
+
+    private static boolean pointInTriangle(double ax, double ay, double bx, double by,
+                                           double cx, double cy, double px, double py) {
+        return (cx - px) * (ay - py) >= (ax - px) * (cy - py)
+                && (ax - px) * (by - py) >= (bx - px) * (ay - py)
+                && (bx - px) * (cy - py) >= (cx - px) * (by - py);
+    }
+
+    /**
+     * Check if a diagonal between two polygon nodes is valid (lies in
+     * polygon interior).
+     */
+    private boolean isValidDiagonal(int a, int b) {
+        return mVertex[mNext[a]] != mVertex[b] && mVertex[mPrev[a]] != mVertex[b]
+                && !intersectsPolygon(a, b)
+                && (locallyInside(a, b) && locallyInside(b, a) && middleInside(a, b)
+                && (area(mPrev[a], a, mPrev[b]) != 0 || area(a, mPrev[b], b) != 0)
+                || equals(a, b) && area(mPrev[a], a, mNext[a]) > 0
+                && area(mPrev[b], b, mNext[b]) > 0);
+    }
+
+    /**
+     * Signed area of a triangle.
+     */
+    private double area(int p, int q, int r) {
+        return (mY[q] - mY[p]) * (mX[r] - mX[q]) - (mX[q] - mX[p]) * (mY[r] - mY[q]);
+    }
+
+    private boolean equals(int p1, int p2) {
+        return mX[p1] == mX[p2] && mY[p1] == mY[p2];
+    }
+
+    /**
+     * Check if two segments intersect.
+     */
+    private boolean intersects(int p1, int q1, int p2, int q2) {
+        int o1 = sign(area(p1, q1, p2));
+        int o2 = sign(area(p1, q1, q2));
+        int o3 = sign(area(p2, q2, p1));
+        int o4 = sign(area(p2, q2, q1));
+
+        if (o1 != o2 && o3 != o4)
+            return true;
+
+        /* collinear and on segment */
+        if (o1 == 0 && onSegment(p1, p2, q1))
+            return true;
+        if (o2 == 0 && onSegment(p1, q2, q1))
+            return true;
+        if (o3 == 0 && onSegment(p2, p1, q2))
+            return true;
+        if (o4 == 0 && onSegment(p2, q1, q2))
+            return true;
+
+        return false;
+    }
+
+    /**
+     * For collinear points p, q, r, check if point q lies on segment pr.
+     */
+    private boolean onSegment(int p, int q, int r) {
+        return mX[q] <= Math.max(mX[p], mX[r]) && mX[q] >= Math.min(mX[p], mX[r])
+                && mY[q] <= Math.max(mY[p], mY[r]) && mY[q] >= Math.min(mY[p], mY[r]);
+    }
+
+    private static int sign(double num) {
+        return num > 0 ? 1 : num < 0 ? -1 : 0;
+    }
+
+    /**
+     * Check if a polygon diagonal intersects any polygon segments.
+     */
+    private boolean intersectsPolygon(int a, int b) {
+        int p = a;
+        do {
+            int n = mNext[p];
+            if (mVertex[p] != mVertex[a] && mVertex[n] != mVertex[a]
+                    && mVertex[p] != mVertex[b] && mVertex[n] != mVertex[b]
+                    && intersects(p, n, a, b))
+                return true;
+            p = n;
+        } while (p != a);
+
+        return false;
+    }
+
+    /**
+     * Check if a polygon diagonal is locally inside the polygon.
+     */
+    private boolean locallyInside(int a, int b) {
+        return area(mPrev[a], a, mNext[a]) < 0
+                ? area(a, b, mNext[a]) >= 0 && area(a, mPrev[a], b) >= 0
+                : area(a, b, mPrev[a]) < 0 || area(a, mNext[a], b) < 0;
+    }
+
+    /**
+     * Check if the middle point of a polygon diagonal is inside the polygon.
+     */
+    private boolean middleInside(int a, int b) {
+        int p = a;
+        boolean inside = false;
+        double px = (mX[a] + mX[b]) / 2;
+        double py = (mY[a] + mY[b]) / 2;
+        do {
+            int n = mNext[p];
+            if (((mY[p] > py) != (mY[n] > py)) && mY[n] != mY[p]
+                    && (px < (mX[n] - mX[p]) * (py - mY[p]) / (mY[n] - mY[p]) + mX[p]))
+                inside = !inside;
+            p = n;
+        } while (p != a);
+
+        return inside;
+    }
+
+    /**
+     * Link two polygon vertices with a bridge. If the vertices belong to
+     * the same ring, it splits polygon into two. If one belongs to the
+     * outer ring and another to a hole, it merges it into a single ring.
+     */
+    private int splitPolygon(int a, int b) {
+        int a2 = newNode(mVertex[a], mX[a], mY[a]);
+        int b2 = newNode(mVertex[b], mX[b], mY[b]);
+        int an = mNext[a];
+        int bp = mPrev[b];
+
+        mNext[a] = b;
+        mPrev[b] = a;
+
+        mNext[a2] = an;
+        mPrev[an] = a2;
+
+        mNext[b2] = a2;
+        mPrev[a2] = b2;
+
+        mNext[bp] = b2;
+        mPrev[b2] = bp;
+
+        return b2;
+    }
+
+    private int insertNode(int vertex, double x, double y, int last) {
+        int p = newNode(vertex, x, y);
+
+        if (last == NONE) {
+            mPrev[p] = p;
+            mNext[p] = p;
+        } else {
+            mNext[p] = mNext[last];
+            mPrev[p] = last;
+            mPrev[mNext[last]] = p;
+            mNext[last] = p;
+        }
+        return p;
+    }
+
+    private void removeNode(int p) {
+        mPrev[mNext[p]] = mPrev[p];
+        mNext[mPrev[p]] = mNext[p];
+
+        if (mPrevZ[p] != NONE)
+            mNextZ[mPrevZ[p]] = mNextZ[p];
+        if (mNextZ[p] != NONE)
+            mPrevZ[mNextZ[p]] = mPrevZ[p];
+    }
+
+    private int newNode(int vertex, double x, double y) {
+        int p = mNodes++;
+        if (p == mVertex.length) {
+            int size = p * 2;
+            mVertex = Arrays.copyOf(mVertex, size);
+            mX = Arrays.copyOf(mX, size);
+            mY = Arrays.copyOf(mY, size);
+            mPrev = Arrays.copyOf(mPrev, size);
+            mNext = Arrays.copyOf(mNext, size);
+            mZ = Arrays.copyOf(mZ, size);
+            mPrevZ = Arrays.copyOf(mPrevZ, size);
+            mNextZ = Arrays.copyOf(mNextZ, size);
+            mSteiner = Arrays.copyOf(mSteiner, size);
+        }
+        mVertex[p] = vertex;
+        mX[p] = x;
+        mY[p] = y;
+        mZ[p] = 0;
+        mPrevZ[p] = NONE;
+        mNextZ[p] = NONE;
+        mSteiner[p] = false;
+        return p;
+    }
+
+    private void addTriangle(int a, int b, int c) {
+        if (mNumIndices + 3 > mTriangles.length)
+            mTriangles = Arrays.copyOf(mTriangles, mTriangles.length * 2);
+
+        mTriangles[mNumIndices++] = mVertex[a];
+        mTriangles[mNumIndices++] = mVertex[b];
+        mTriangles[mNumIndices++] = mVertex[c];
+    }
+}
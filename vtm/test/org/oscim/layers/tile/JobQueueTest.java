@@ -0,0 +1,155 @@
+package org.oscim.layers.tile;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.oscim.layers.tile.JobQueue.PRIORITY_PARENT;
+import static org.oscim.layers.tile.JobQueue.PRIORITY_PREFETCH;
+import static org.oscim.layers.tile.JobQueue.PRIORITY_VISIBLE;
+import static org.oscim.layers.tile.MapTile.State.CANCEL;
+import static org.oscim.layers.tile.MapTile.State.LOADING;
+import static org.oscim.layers.tile.MapTile.State.NONE;
+
+public class JobQueueTest {
+
+    static MapTile tile(int x, float distance) {
+        MapTile t = new MapTile(x, 0, 10);
+        t.distance = distance;
+        return t;
+    }
+
+    @Test
+    public void shouldPollByPriorityAndDistance() {
+        JobQueue queue = new JobQueue();
+        Random r = new Random(42);
+
+        int num = 200;
+        MapTile[] tiles = new MapTile[num];
+        int[] priorities = new int[num];
+        for (int i = 0; i < num; i++) {
+            tiles[i] = tile(i, r.nextFloat() * 100);
+            priorities[i] = r.nextInt(3);
+        }
+        queue.update(tiles, priorities, num);
+
+        int prevPriority = -1;
+        float prevDistance = 0;
+        for (int i = 0; i < num; i++) {
+            MapTile t = queue.poll();
+            Assert.assertNotNull(t);
+            Assert.assertTrue(t.state(LOADING));
+
+            int priority = priorities[t.tileX];
+            Assert.assertTrue(priority >= prevPriority);
+            if (priority == prevPriority)
+                Assert.assertTrue(t.distance >= prevDistance);
+            prevPriority = priority;
+            prevDistance = t.distance;
+        }
+        Assert.assertNull(queue.poll());
+        Assert.assertTrue(queue.isEmpty());
+    }
+
+    @Test
+    public void shouldUpdateQueuedJobs() {
+        JobQueue queue = new JobQueue();
+
+        MapTile a = tile(0, 1);
+        MapTile b = tile(1, 2);
+        MapTile c = tile(2, 3);
+        queue.update(new MapTile[]{a, b, c},
+                new int[]{PRIORITY_VISIBLE, PRIORITY_VISIBLE, PRIORITY_VISIBLE}, 3);
+
+        /* 'a' is loaded, 'c' leaves the view, 'b' moved further away */
+        Assert.assertSame(a, queue.poll());
+        MapTile d = tile(3, 4);
+        b.distance = 5;
+        queue.update(new MapTile[]{a, b, d, d},
+                new int[]{PRIORITY_VISIBLE, PRIORITY_VISIBLE, PRIORITY_PREFETCH, PRIORITY_VISIBLE}, 4);
+
+        Assert.assertTrue(a.state(LOADING));
+        Assert.assertTrue(c.state(NONE));
+
+        Assert.assertSame(d, queue.poll());
+        Assert.assertSame(b, queue.poll());
+        Assert.assertNull(queue.poll());
+    }
+
+    @Test
+    public void shouldRestoreCanceledJobs() {
+        JobQueue queue = new JobQueue();
+
+        MapTile a = tile(0, 1);
+        MapTile b = tile(1, 2);
+        queue.update(new MapTile[]{a, b}, new int[]{PRIORITY_PARENT, PRIORITY_VISIBLE}, 2);
+
+        a.setState(CANCEL);
+        queue.update(new MapTile[]{a, b}, new int[]{PRIORITY_PARENT, PRIORITY_VISIBLE}, 2);
+        Assert.assertTrue(a.state(LOADING));
+
+        Assert.assertSame(b, queue.poll());
+        Assert.assertSame(a, queue.poll());
+
+        queue.update(new MapTile[]{tile(2, 0)}, new int[]{PRIORITY_VISIBLE}, 1);
+        queue.clear();
+        Assert.assertTrue(queue.isEmpty());
+    }
+
+    @Test
+    public void shouldPollConcurrently() throws InterruptedException {
+        final JobQueue queue = new JobQueue();
+        final Set<MapTile> polled = ConcurrentHashMap.newKeySet();
+        final AtomicInteger duplicates = new AtomicInteger();
+        final AtomicBoolean running = new AtomicBoolean(true);
+
+        List<Thread> loaders = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            Thread loader = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    while (running.get()) {
+                        MapTile t = queue.poll();
+                        if (t != null && !polled.add(t))
+                            duplicates.incrementAndGet();
+                    }
+                }
+            });
+            loaders.add(loader);
+            loader.start();
+        }
+
+        Random r = new Random(42);
+        int num = 500;
+        MapTile[] pool = new MapTile[num];
+        for (int i = 0; i < num; i++)
+            pool[i] = tile(i, r.nextFloat() * 100);
+
+        MapTile[] tiles = new MapTile[100];
+        int[] priorities = new int[100];
+        for (int update = 0; update < 500; update++) {
+            for (int i = 0; i < tiles.length; i++) {
+                tiles[i] = pool[r.nextInt(num)];
+                priorities[i] = r.nextInt(3);
+            }
+            queue.update(tiles, priorities, tiles.length);
+        }
+
+        running.set(false);
+        for (Thread loader : loaders)
+            loader.join();
+        queue.clear();
+
+        Assert.assertEquals(0, duplicates.get());
+        Assert.assertTrue(queue.isEmpty());
+        for (MapTile t : pool)
+            Assert.assertTrue(polled.contains(t) ? t.state(LOADING) : t.state(NONE));
+    }
+}
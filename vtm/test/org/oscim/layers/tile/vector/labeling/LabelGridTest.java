@@ -0,0 +1,81 @@
+package org.oscim.layers.tile.vector.labeling;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+public class LabelGridTest {
+
+    private LabelGrid grid;
+    private int seq;
+
+    @Before
+    public void setUp() {
+        grid = new LabelGrid();
+        seq = 0;
+    }
+
+    private Label add(String text, float x1, float y1, float x2, float y2) {
+        Label l = new Label();
+        l.label = text;
+        l.seq = ++seq;
+        grid.add(l, x1, y1, x2, y2);
+        return l;
+    }
+
+    @Test
+    public void shouldFindNearbyLabels() {
+        Label a = add("a", 0, 0, 10, 10);
+        add("b", 500, 500, 510, 510);
+        Label c = add("c", -20, 5, -5, 15);
+
+        assertEquals(2, grid.query(-30, -30, 30, 30, null));
+        assertSame(c, grid.get(0));
+        assertSame(a, grid.get(1));
+    }
+
+    @Test
+    public void shouldFindLabelsWithSameText() {
+        add("a", 0, 0, 10, 10);
+        Label b = add("b", 5000, 5000, 5010, 5010);
+
+        assertEquals(2, grid.query(-10, -10, 20, 20, "b"));
+        assertSame(b, grid.get(0));
+    }
+
+    @Test
+    public void shouldReturnLabelsOnceInListOrder() {
+        for (int i = 0; i < 200; i++)
+            add("l" + i, i * 10, 0, i * 10 + 300, 100);
+
+        int n = grid.query(0, 0, 2500, 100, null);
+        assertEquals(200, n);
+        for (int i = 0; i < n; i++)
+            assertEquals(200 - i, grid.get(i).seq);
+    }
+
+    @Test
+    public void shouldSkipRemovedLabels() {
+        Label a = add("a", 0, 0, 10, 10);
+        Label b = add("b", 0, 0, 10, 10);
+        a.seq = 0;
+
+        assertEquals(1, grid.query(0, 0, 10, 10, "a"));
+        assertSame(b, grid.get(0));
+    }
+
+    @Test
+    public void shouldKeepLargeLabels() {
+        Label a = add("a", -10000, 0, 10000, 10);
+        Label b = add("b", Float.NaN, Float.NaN, Float.NaN, Float.NaN);
+
+        assertEquals(2, grid.query(100, 100, 110, 110, null));
+        assertSame(b, grid.get(0));
+        assertSame(a, grid.get(1));
+
+        grid.clear();
+        assertEquals(0, grid.query(100, 100, 110, 110, null));
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * This file is part of the OpenScienceMap project (http://www.opensciencemap.org).
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.oscim.renderer;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Random;
+
+public class BufferArenaTest {
+
+    @Test
+    public void shouldAllocateFirstFit() {
+        BufferArena.Block b = new BufferArena.Block(1, 256);
+
+        Assert.assertEquals(0, b.alloc(64));
+        Assert.assertEquals(64, b.alloc(64));
+        Assert.assertEquals(128, b.alloc(128));
+        Assert.assertEquals(-1, b.alloc(16));
+        Assert.assertEquals(256, b.used);
+
+        b.free(64, 64);
+        Assert.assertEquals(-1, b.alloc(128));
+        Assert.assertEquals(64, b.alloc(32));
+        Assert.assertEquals(96, b.alloc(32));
+    }
+
+    @Test
+    public void shouldMergeFreeRanges() {
+        BufferArena.Block b = new BufferArena.Block(1, 256);
+        for (int i = 0; i < 8; i++)
+            Assert.assertEquals(i * 32, b.alloc(32));
+
+        b.free(32, 32);
+        b.free(96, 32);
+        Assert.assertEquals(2, b.numFree);
+
+        /* join previous and next */
+        b.free(64, 32);
+        Assert.assertEquals(1, b.numFree);
+        Assert.assertEquals(32, b.freeOffset[0]);
+        Assert.assertEquals(96, b.freeSize[0]);
+
+        b.free(0, 32);
+        b.free(128, 32);
+        b.free(224, 32);
+        b.free(160, 32);
+        b.free(192, 32);
+        Assert.assertEquals(1, b.numFree);
+        Assert.assertEquals(256, b.freeSize[0]);
+        Assert.assertEquals(0, b.used);
+    }
+
+    @Test
+    public void shouldNotOverlap() {
+        BufferArena.Block b = new BufferArena.Block(1, 1 << 16);
+        Random rnd = new Random(42);
+        int[] offset = new int[200];
+        int[] size = new int[200];
+        boolean[] used = new boolean[1 << 16];
+
+        for (int round = 0; round < 2000; round++) {
+            int i = rnd.nextInt(offset.length);
+            if (size[i] > 0) {
+                for (int k = 0; k < size[i]; k++)
+                    used[offset[i] + k] = false;
+                b.free(offset[i], size[i]);
+                size[i] = 0;
+            } else {
+                int s = (1 + rnd.nextInt(64)) * BufferArena.ALIGN;
+                int o = b.alloc(s);
+                if (o < 0)
+                    continue;
+                for (int k = 0; k < s; k++) {
+                    Assert.assertFalse(used[o + k]);
+                    used[o + k] = true;
+                }
+                offset[i] = o;
+                size[i] = s;
+            }
+        }
+        for (int i = 0; i < offset.length; i++) {
+            if (size[i] > 0)
+                b.free(offset[i], size[i]);
+        }
+        Assert.assertEquals(1, b.numFree);
+        Assert.assertEquals(0, b.used);
+    }
+}
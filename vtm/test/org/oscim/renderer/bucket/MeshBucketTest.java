@@ -0,0 +1,128 @@
+/*
+ * This file is part of the OpenScienceMap project (http://www.opensciencemap.org).
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.oscim.renderer.bucket;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.oscim.core.GeometryBuffer;
+import org.oscim.utils.Tessellator;
+
+import java.nio.ShortBuffer;
+
+public class MeshBucketTest {
+
+    private boolean mUseJni;
+
+    @Before
+    public void setUp() {
+        mUseJni = Tessellator.USE_JNI;
+        Tessellator.USE_JNI = false;
+    }
+
+    @After
+    public void tearDown() {
+        Tessellator.USE_JNI = mUseJni;
+    }
+
+    private static short[] indices(MeshBucket b) {
+        ShortBuffer buf = ShortBuffer.allocate(b.numIndices);
+        b.compileIndicesItems(buf);
+        return buf.array();
+    }
+
+    /**
+     * Check that each index refers to a vertex of its range.
+     */
+    private static void checkRanges(MeshBucket b) {
+        short[] indices = indices(b);
+        int vertex = 0;
+        int indice = 0;
+        for (int r = 0; r <= b.numRanges; r++) {
+            int end = r < b.numRanges ? b.ranges[r * 2 + 1] : b.numIndices;
+            int next = r < b.numRanges ? b.ranges[r * 2] : b.numVertices;
+            for (int i = indice; i < end; i++)
+                Assert.assertTrue(vertex + (indices[i] & 0xffff) < next);
+            vertex = next;
+            indice = end;
+        }
+    }
+
+    @Test
+    public void shouldStartNewRange() {
+        MeshBucket b = new MeshBucket(0);
+        GeometryBuffer g = new GeometryBuffer(4, 2);
+
+        /* 4 vertices each, the first range is full after 16384 */
+        for (int i = 0; i <= MeshBucket.MAX_RANGE_VERTICES / 4; i++) {
+            g.clear();
+            g.startPolygon();
+            g.addPoint(0, 0);
+            g.addPoint(10, 0);
+            g.addPoint(10, 10);
+            g.addPoint(0, 10);
+            b.addMesh(g);
+        }
+        Assert.assertEquals(MeshBucket.MAX_RANGE_VERTICES + 4, b.numVertices);
+        Assert.assertEquals(1, b.numRanges);
+        Assert.assertEquals(MeshBucket.MAX_RANGE_VERTICES, b.ranges[0]);
+        checkRanges(b);
+
+        short[] indices = indices(b);
+        for (int i = b.ranges[1]; i < b.numIndices; i++)
+            Assert.assertTrue(indices[i] < 4);
+    }
+
+    @Test
+    public void shouldSplitLargeMesh() {
+        int points = MeshBucket.MAX_RANGE_VERTICES + 1000;
+        GeometryBuffer g = new GeometryBuffer(points, 2);
+        g.startPolygon();
+        for (int i = 0; i < points; i++) {
+            double a = 2 * Math.PI * i / points;
+            g.addPoint((float) (2048 + 2000 * Math.cos(a)),
+                    (float) (2048 + 2000 * Math.sin(a)));
+        }
+
+        MeshBucket b = new MeshBucket(0);
+        b.addMesh(g);
+
+        Assert.assertTrue(b.numIndices > 0);
+        Assert.assertEquals(b.numIndices, b.numVertices);
+        Assert.assertTrue(b.numRanges > 0);
+        checkRanges(b);
+    }
+
+    @Test
+    public void shouldResetRangesOnClear() {
+        MeshBucket b = new MeshBucket(0);
+        GeometryBuffer g = new GeometryBuffer(4, 2);
+        for (int i = 0; i <= MeshBucket.MAX_RANGE_VERTICES / 3; i++) {
+            g.clear();
+            g.startPolygon();
+            g.addPoint(0, 0);
+            g.addPoint(10, 0);
+            g.addPoint(10, 10);
+            b.addConvexMesh(g);
+        }
+        Assert.assertEquals(1, b.numRanges);
+        checkRanges(b);
+
+        b.clear();
+        Assert.assertEquals(0, b.numRanges);
+        Assert.assertEquals(0, b.numVertices);
+    }
+}
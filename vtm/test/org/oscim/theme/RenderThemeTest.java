@@ -0,0 +1,115 @@
+/*
+ * This file is part of the OpenScienceMap project (http://www.opensciencemap.org).
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.oscim.theme;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.oscim.core.GeometryBuffer.GeometryType;
+import org.oscim.core.Tag;
+import org.oscim.core.TagSet;
+import org.oscim.theme.rule.Rule;
+import org.oscim.theme.rule.Rule.Element;
+import org.oscim.theme.rule.Rule.Selector;
+import org.oscim.theme.rule.RuleBuilder;
+import org.oscim.theme.rule.RuleBuilder.RuleType;
+import org.oscim.theme.styles.RenderStyle;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class RenderThemeTest {
+    static final String[] KEYS = {"highway", "building", "landuse", "natural"};
+    static final String[] VALUES = {"primary", "secondary", "yes", "water"};
+
+    static class Style extends RenderStyle<Style> {
+        @Override
+        public Style current() {
+            return this;
+        }
+    }
+
+    private static Rule[] createRules(int[] level) {
+        Rule[] rules = new Rule[KEYS.length * VALUES.length];
+        int i = 0;
+        for (String key : KEYS) {
+            for (String value : VALUES) {
+                RuleBuilder b = new RuleBuilder(RuleType.POSITIVE, Element.ANY, ~0,
+                        Selector.ANY, new String[]{key}, new String[]{value});
+                b.zoom((byte) (i % 10), (byte) 20);
+                b.addStyle(new Style());
+                rules[i++] = b.onComplete(level);
+            }
+        }
+        return rules;
+    }
+
+    private static TagSet[] createTags(Random random, int count) {
+        TagSet[] tags = new TagSet[count];
+        for (int i = 0; i < count; i++) {
+            tags[i] = new TagSet();
+            for (int j = random.nextInt(3); j >= 0; j--)
+                tags[i].add(new Tag(KEYS[random.nextInt(KEYS.length)],
+                        VALUES[random.nextInt(VALUES.length)]));
+        }
+        return tags;
+    }
+
+    @Test
+    public void shouldMatchConcurrently() throws InterruptedException {
+        int[] level = {0};
+        Rule[] rules = createRules(level);
+        final RenderTheme theme = new RenderTheme(0, 1, rules, level[0]);
+        final RenderTheme reference = new RenderTheme(0, 1, rules, level[0]);
+        final GeometryType[] types = {GeometryType.POINT, GeometryType.LINE, GeometryType.POLY};
+
+        final TagSet[] tags = createTags(new Random(42), 500);
+        final int threads = 32;
+        final int rounds = 20;
+
+        /* more threads than front caches, each thread is new */
+        final AtomicInteger errors = new AtomicInteger();
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            final int seed = t;
+            workers[t] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    Random random = new Random(seed);
+                    for (int i = 0; i < rounds * tags.length; i++) {
+                        TagSet tagSet = tags[random.nextInt(tags.length)];
+                        GeometryType type = types[random.nextInt(types.length)];
+                        int zoom = random.nextInt(20);
+                        RenderStyle[] result = theme.matchElement(type, tagSet, zoom);
+                        RenderStyle[] expected;
+                        synchronized (reference) {
+                            expected = reference.matchElement(type, tagSet, zoom);
+                        }
+                        if (!Arrays.equals(expected, result))
+                            errors.incrementAndGet();
+                    }
+                }
+            });
+            workers[t].start();
+        }
+        for (Thread t : workers)
+            t.join();
+
+        Assert.assertEquals(0, errors.get());
+        Assert.assertEquals((long) threads * rounds * tags.length,
+                theme.getMatchingCacheHits() + theme.getMatchingCacheMisses()
+                        + theme.getMatchingCacheSameHits());
+    }
+}
@@ -0,0 +1,93 @@
+package org.oscim.theme.rule;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.oscim.core.Tag;
+import org.oscim.theme.rule.Rule.Element;
+import org.oscim.theme.rule.Rule.Selector;
+import org.oscim.theme.rule.RuleBuilder.RuleType;
+import org.oscim.theme.styles.RenderStyle;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+public class RuleMatcherTest {
+    static final String[] KEYS = {"highway", "building", "landuse", "natural", "name", "amenity"};
+    static final String[] VALUES = {"primary", "secondary", "yes", "water", "forest", "residential"};
+
+    static class Style extends RenderStyle<Style> {
+        @Override
+        public Style current() {
+            return this;
+        }
+    }
+
+    private final Random random = new Random(42);
+
+    private String[] pick(String[] items) {
+        int n = random.nextInt(3);
+        String[] result = new String[n];
+        for (int i = 0; i < n; i++)
+            result[i] = items[random.nextInt(items.length)];
+        return result;
+    }
+
+    private RuleBuilder randomRule(int depth) {
+        String[] keys = pick(KEYS);
+        String[] values = pick(VALUES);
+        RuleType type = RuleType.POSITIVE;
+        if (keys.length > 0 && random.nextInt(5) == 0)
+            type = random.nextBoolean() ? RuleType.NEGATIVE : RuleType.EXCLUDE;
+
+        int[] elements = {Element.ANY, Element.NODE, Element.LINE, Element.POLY, Element.WAY};
+        int[] selectors = {Selector.ANY, Selector.FIRST, Selector.WHEN_MATCHED};
+
+        RuleBuilder b = new RuleBuilder(type, elements[random.nextInt(elements.length)], ~0,
+                selectors[random.nextInt(selectors.length)], keys, values);
+
+        int zoomMin = random.nextInt(10);
+        b.zoom((byte) zoomMin, (byte) (zoomMin + random.nextInt(10)));
+
+        for (int i = random.nextInt(3); i > 0; i--)
+            b.addStyle(new Style());
+
+        if (depth < 4)
+            for (int i = random.nextInt(4); i > 0; i--)
+                b.addSubRule(randomRule(depth + 1));
+
+        return b;
+    }
+
+    @Test
+    public void shouldMatchSameAsRuleTree() {
+        int[] level = {0};
+        Rule[] rules = new Rule[50];
+        for (int i = 0; i < rules.length; i++)
+            rules[i] = randomRule(0).onComplete(level);
+
+        RuleMatcher matcher = new RuleMatcher(rules);
+        RuleMatcher.State state = matcher.newState();
+
+        List<RenderStyle> expected = new ArrayList<>();
+        List<RenderStyle> result = new ArrayList<>();
+
+        for (int i = 0; i < 10000; i++) {
+            Tag[] tags = new Tag[random.nextInt(4)];
+            for (int j = 0; j < tags.length; j++)
+                tags[j] = new Tag(KEYS[random.nextInt(KEYS.length)], VALUES[random.nextInt(VALUES.length)]);
+
+            int type = 1 << random.nextInt(3);
+            int zoom = 1 << random.nextInt(20);
+
+            expected.clear();
+            for (Rule rule : rules)
+                rule.matchElement(type, tags, zoom, expected);
+
+            result.clear();
+            matcher.matchElement(state, type, tags, zoom, result);
+
+            Assert.assertEquals(expected, result);
+        }
+    }
+}
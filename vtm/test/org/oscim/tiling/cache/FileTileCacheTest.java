@@ -0,0 +1,140 @@
+/*
+ * This file is part of the OpenScienceMap project (http://www.opensciencemap.org).
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.oscim.tiling.cache;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.oscim.core.Tile;
+import org.oscim.tiling.ITileCache.TileReader;
+import org.oscim.tiling.ITileCache.TileWriter;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+
+public class FileTileCacheTest {
+
+    private File mDirectory;
+
+    @Before
+    public void setUp() throws IOException {
+        mDirectory = File.createTempFile("tilecache", "");
+        Assert.assertTrue(mDirectory.delete());
+    }
+
+    @After
+    public void tearDown() {
+        File[] files = mDirectory.listFiles();
+        if (files != null) {
+            for (File f : files)
+                f.delete();
+        }
+        mDirectory.delete();
+    }
+
+    private static byte[] data(Tile tile, int length) {
+        byte[] data = new byte[length];
+        for (int i = 0; i < length; i++)
+            data[i] = (byte) (tile.tileX * 31 + tile.tileY * 7 + tile.zoomLevel + i);
+        return data;
+    }
+
+    private static void write(FileTileCache cache, Tile tile, int length) throws IOException {
+        TileWriter writer = cache.writeTile(tile);
+        writer.getOutputStream().write(data(tile, length));
+        writer.complete(true);
+    }
+
+    private static void assertTile(FileTileCache cache, Tile tile, int length) throws IOException {
+        TileReader reader = cache.getTile(tile);
+        Assert.assertNotNull(reader);
+
+        InputStream is = reader.getInputStream();
+        byte[] expected = data(tile, length);
+        for (int i = 0; i < length; i++)
+            Assert.assertEquals(expected[i], (byte) is.read());
+        Assert.assertEquals(-1, is.read());
+    }
+
+    @Test
+    public void shouldReadWrittenTiles() throws IOException {
+        FileTileCache cache = new FileTileCache(mDirectory);
+        for (int x = 0; x < 16; x++)
+            write(cache, new Tile(x, 15 - x, (byte) 4), 100 + x);
+
+        /* failed tiles are not stored */
+        TileWriter writer = cache.writeTile(new Tile(1, 1, (byte) 1));
+        writer.getOutputStream().write(1);
+        writer.complete(false);
+
+        Assert.assertNull(cache.getTile(new Tile(1, 1, (byte) 1)));
+        Assert.assertNull(cache.getTile(new Tile(0, 15, (byte) 5)));
+        for (int x = 0; x < 16; x++)
+            assertTile(cache, new Tile(x, 15 - x, (byte) 4), 100 + x);
+        cache.dispose();
+    }
+
+    @Test
+    public void shouldPersistTiles() throws IOException {
+        FileTileCache cache = new FileTileCache(mDirectory);
+        write(cache, new Tile(1, 2, (byte) 3), 1000);
+        write(cache, new Tile(2, 3, (byte) 3), 2000);
+        /* replaced tile */
+        write(cache, new Tile(1, 2, (byte) 3), 500);
+        long size = cache.getSize();
+        cache.dispose();
+
+        /* append garbage as from an interrupted write */
+        File segment = mDirectory.listFiles()[0];
+        RandomAccessFile file = new RandomAccessFile(segment, "rw");
+        file.seek(file.length());
+        file.write(new byte[]{1, 2, 3});
+        file.close();
+
+        cache = new FileTileCache(mDirectory);
+        Assert.assertEquals(size, cache.getSize());
+        assertTile(cache, new Tile(1, 2, (byte) 3), 500);
+        assertTile(cache, new Tile(2, 3, (byte) 3), 2000);
+        Assert.assertEquals(size, segment.length());
+        cache.dispose();
+    }
+
+    @Test
+    public void shouldEvictOldestTiles() throws IOException {
+        long cacheSize = 1024 * 1024;
+        FileTileCache cache = new FileTileCache(mDirectory, cacheSize);
+
+        int num = 100;
+        for (int x = 0; x < num; x++)
+            write(cache, new Tile(x, 0, (byte) 10), 32 * 1024);
+
+        Assert.assertTrue(cache.getSize() <= cacheSize);
+        Assert.assertNull(cache.getTile(new Tile(0, 0, (byte) 10)));
+        assertTile(cache, new Tile(num - 1, 0, (byte) 10), 32 * 1024);
+
+        cache.setCacheSize(0);
+        Assert.assertEquals(0, cache.getSize());
+        Assert.assertNull(cache.getTile(new Tile(num - 1, 0, (byte) 10)));
+
+        /* still writable */
+        cache.setCacheSize(cacheSize);
+        write(cache, new Tile(1, 1, (byte) 1), 10);
+        assertTile(cache, new Tile(1, 1, (byte) 1), 10);
+        cache.dispose();
+    }
+}
@@ -0,0 +1,220 @@
+/*
+ * This file is part of the OpenScienceMap project (http://www.opensciencemap.org).
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.oscim.tiling.cache;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.oscim.backend.canvas.Bitmap;
+import org.oscim.core.MapElement;
+import org.oscim.core.Tag;
+import org.oscim.core.Tile;
+import org.oscim.tiling.ITileDataSink;
+import org.oscim.tiling.QueryResult;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class MapElementCacheTest {
+
+    static class Sink implements ITileDataSink {
+        final List<MapElement> elements = new ArrayList<>();
+        QueryResult result;
+
+        @Override
+        public void process(MapElement element) {
+            elements.add(new MapElement(element));
+        }
+
+        @Override
+        public void setTileImage(Bitmap bitmap) {
+        }
+
+        @Override
+        public void completed(QueryResult result) {
+            this.result = result;
+        }
+    }
+
+    private static final Tag HIGHWAY = new Tag("highway", "primary");
+    private static final Tag NAME = new Tag(Tag.KEY_NAME, "Main Street", false);
+    private static final Object THEME = new Object();
+
+    private static List<MapElement> elements(int n) {
+        List<MapElement> elements = new ArrayList<>();
+
+        MapElement e = new MapElement();
+        e.startPoints();
+        e.addPoint(n, 2);
+        e.tags.add(NAME);
+        e.setLabelPosition(1, 2);
+        elements.add(e);
+
+        e = new MapElement();
+        e.startLine();
+        e.addPoint(0, 0);
+        e.addPoint(n, 10);
+        e.startLine();
+        e.addPoint(5, 5);
+        e.addPoint(6, 6);
+        e.tags.add(HIGHWAY);
+        e.tags.add(NAME);
+        e.setLayer(7);
+        elements.add(e);
+
+        e = new MapElement();
+        e.startPolygon();
+        e.addPoint(0, 0);
+        e.addPoint(n, 0);
+        e.addPoint(n, n);
+        e.startHole();
+        e.addPoint(1, 1);
+        e.addPoint(2, 1);
+        e.addPoint(2, 2);
+        e.setCentroidPosition(n / 2f, n / 2f);
+        e.level = 2;
+        elements.add(e);
+
+        return elements;
+    }
+
+    private static void record(MapElementCache.CacheSink cacheSink, Tile tile, List<MapElement> elements) {
+        record(cacheSink, tile, THEME, elements);
+    }
+
+    private static void record(MapElementCache.CacheSink cacheSink, Tile tile, Object theme,
+                               List<MapElement> elements) {
+        Sink sink = new Sink();
+        ITileDataSink recorder = cacheSink.record(tile, theme, sink);
+        for (MapElement e : elements)
+            recorder.process(e);
+        recorder.completed(QueryResult.SUCCESS);
+
+        Assert.assertEquals(QueryResult.SUCCESS, sink.result);
+        Assert.assertEquals(elements.size(), sink.elements.size());
+    }
+
+    private static void assertEquals(MapElement expected, MapElement actual) {
+        Assert.assertEquals(expected.type, actual.type);
+        Assert.assertEquals(expected.layer, actual.layer);
+        Assert.assertEquals(expected.level, actual.level);
+        Assert.assertEquals(expected.tags.size(), actual.tags.size());
+        for (int i = 0; i < expected.tags.size(); i++)
+            Assert.assertTrue(expected.tags.get(i) == actual.tags.get(i));
+        Assert.assertEquals(String.valueOf(expected.labelPosition), String.valueOf(actual.labelPosition));
+        Assert.assertEquals(String.valueOf(expected.centroidPosition), String.valueOf(actual.centroidPosition));
+        Assert.assertEquals(expected.pointNextPos, actual.pointNextPos);
+        for (int i = 0; i < expected.pointNextPos; i++)
+            Assert.assertEquals(expected.points[i], actual.points[i], 0);
+        for (int i = 0; i <= expected.indexCurrentPos; i++)
+            Assert.assertEquals(expected.index[i], actual.index[i]);
+    }
+
+    @Test
+    public void shouldReplayRecordedTile() {
+        MapElementCache cache = new MapElementCache(1024 * 1024);
+        MapElementCache.CacheSink cacheSink = cache.newSink();
+
+        Tile tile = new Tile(1, 2, (byte) 3);
+        Sink sink = new Sink();
+        Assert.assertFalse(cacheSink.load(tile, THEME, sink));
+
+        List<MapElement> elements = elements(10);
+        record(cacheSink, tile, elements);
+
+        Assert.assertTrue(cacheSink.load(tile, THEME, sink));
+        Assert.assertEquals(QueryResult.SUCCESS, sink.result);
+        Assert.assertEquals(elements.size(), sink.elements.size());
+        for (int i = 0; i < elements.size(); i++)
+            assertEquals(elements.get(i), sink.elements.get(i));
+
+        Assert.assertEquals(1, cache.getHits());
+        Assert.assertEquals(1, cache.getMisses());
+    }
+
+    @Test
+    public void shouldNotStoreFailedTile() {
+        MapElementCache cache = new MapElementCache(1024 * 1024);
+        MapElementCache.CacheSink cacheSink = cache.newSink();
+
+        Tile tile = new Tile(1, 2, (byte) 3);
+        Sink sink = new Sink();
+        ITileDataSink recorder = cacheSink.record(tile, THEME, sink);
+        recorder.process(elements(1).get(0));
+        recorder.completed(QueryResult.FAILED);
+
+        Assert.assertEquals(QueryResult.FAILED, sink.result);
+        Assert.assertFalse(cacheSink.load(tile, THEME, new Sink()));
+    }
+
+    @Test
+    public void shouldOverwriteOldestTiles() {
+        MapElementCache cache = new MapElementCache(16 * 1024);
+        MapElementCache.CacheSink cacheSink = cache.newSink();
+
+        int num = 200;
+        for (int i = 0; i < num; i++)
+            record(cacheSink, new Tile(i, 0, (byte) 8), elements(i));
+
+        Assert.assertFalse(cacheSink.load(new Tile(0, 0, (byte) 8), THEME, new Sink()));
+
+        for (int i = num - 10; i < num; i++) {
+            Sink sink = new Sink();
+            Assert.assertTrue(cacheSink.load(new Tile(i, 0, (byte) 8), THEME, sink));
+            List<MapElement> elements = elements(i);
+            for (int j = 0; j < elements.size(); j++)
+                assertEquals(elements.get(j), sink.elements.get(j));
+        }
+    }
+
+    @Test
+    public void shouldDiscardTilesRecordedBeforeClear() {
+        MapElementCache cache = new MapElementCache(1024 * 1024);
+        MapElementCache.CacheSink cacheSink = cache.newSink();
+
+        Tile tile = new Tile(1, 2, (byte) 3);
+        record(cacheSink, tile, elements(1));
+        cache.clear();
+        Assert.assertFalse(cacheSink.load(tile, THEME, new Sink()));
+
+        /* tile loading while the cache is cleared */
+        Sink sink = new Sink();
+        ITileDataSink recorder = cacheSink.record(tile, THEME, sink);
+        recorder.process(elements(1).get(0));
+        cache.clear();
+        recorder.completed(QueryResult.SUCCESS);
+        Assert.assertFalse(cacheSink.load(tile, THEME, new Sink()));
+    }
+
+    @Test
+    public void shouldCacheTilesPerTheme() {
+        MapElementCache cache = new MapElementCache(1024 * 1024);
+        MapElementCache.CacheSink cacheSink = cache.newSink();
+
+        Object otherTheme = new Object();
+        Tile tile = new Tile(1, 2, (byte) 3);
+        record(cacheSink, tile, elements(1));
+        Assert.assertFalse(cacheSink.load(tile, otherTheme, new Sink()));
+
+        record(cacheSink, tile, otherTheme, elements(2));
+
+        Sink sink = new Sink();
+        Assert.assertTrue(cacheSink.load(tile, THEME, sink));
+        assertEquals(elements(1).get(0), sink.elements.get(0));
+
+        sink = new Sink();
+        Assert.assertTrue(cacheSink.load(tile, otherTheme, sink));
+        assertEquals(elements(2).get(0), sink.elements.get(0));
+    }
+}
@@ -0,0 +1,154 @@
+package org.oscim.tiling.source.mapfile;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.oscim.core.BoundingBox;
+import org.oscim.tiling.source.mapfile.header.SubFileParameter;
+import org.oscim.tiling.source.mapfile.header.SubFileParameters;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class IndexCacheTest {
+
+    private static final int INDEX_ENTRIES_PER_BLOCK = 128;
+    private static final long START_ADDRESS = 100;
+    private static final long INDEX_START_ADDRESS = START_ADDRESS + 16;
+
+    private File mFile;
+    private SubFileParameter mSubFile;
+    private final List<IndexCache> mCaches = new ArrayList<>();
+
+    @Before
+    public void setUp() throws IOException {
+        mSubFile = SubFileParameters.create(new BoundingBox(52.0, 13.0, 52.5, 13.5),
+                (byte) 14, START_ADDRESS, INDEX_START_ADDRESS);
+        Assert.assertTrue(mSubFile.numberOfBlocks > 4 * INDEX_ENTRIES_PER_BLOCK);
+
+        mFile = File.createTempFile("index", ".map");
+        RandomAccessFile file = new RandomAccessFile(mFile, "rw");
+        try {
+            file.setLength(mSubFile.indexEndAddress);
+        } finally {
+            file.close();
+        }
+        for (long block = 0; block < mSubFile.numberOfBlocks; block++)
+            writeIndexEntry(block, entry(block));
+    }
+
+    @After
+    public void tearDown() {
+        for (IndexCache cache : mCaches)
+            cache.destroy();
+        mFile.delete();
+    }
+
+    private static long entry(long block) {
+        return block * 1000 + 7;
+    }
+
+    private void writeIndexEntry(long block, long entry) throws IOException {
+        RandomAccessFile file = new RandomAccessFile(mFile, "rw");
+        try {
+            file.seek(INDEX_START_ADDRESS + block * SubFileParameter.BYTES_PER_INDEX_ENTRY);
+            for (int shift = 32; shift >= 0; shift -= 8)
+                file.write((int) (entry >>> shift));
+        } finally {
+            file.close();
+        }
+    }
+
+    private IndexCache newCache(int capacity) throws IOException {
+        IndexCache cache = new IndexCache(new FileInputStream(mFile).getChannel(), capacity);
+        mCaches.add(cache);
+        return cache;
+    }
+
+    @Test
+    public void shouldReadIndexEntries() throws IOException {
+        IndexCache cache = newCache(4);
+
+        for (long block = 0; block < mSubFile.numberOfBlocks; block++)
+            Assert.assertEquals(entry(block), cache.getIndexEntry(mSubFile, block));
+
+        Assert.assertEquals(-1, cache.getIndexEntry(mSubFile, mSubFile.numberOfBlocks));
+    }
+
+    @Test
+    public void shouldReturnCachedIndexBlock() throws IOException {
+        IndexCache cache = newCache(4);
+        Assert.assertEquals(entry(1), cache.getIndexEntry(mSubFile, 1));
+
+        /* hits do not read the file again */
+        writeIndexEntry(1, 42);
+        writeIndexEntry(INDEX_ENTRIES_PER_BLOCK + 1, 43);
+        Assert.assertEquals(entry(1), cache.getIndexEntry(mSubFile, 1));
+
+        /* other index blocks are read */
+        Assert.assertEquals(43, cache.getIndexEntry(mSubFile, INDEX_ENTRIES_PER_BLOCK + 1));
+    }
+
+    @Test
+    public void shouldEvictIndexBlockAtCapacity() throws IOException {
+        /* one slot, each index block replaces the previous one */
+        IndexCache cache = newCache(1);
+        Assert.assertEquals(entry(1), cache.getIndexEntry(mSubFile, 1));
+        Assert.assertEquals(entry(INDEX_ENTRIES_PER_BLOCK),
+                cache.getIndexEntry(mSubFile, INDEX_ENTRIES_PER_BLOCK));
+
+        writeIndexEntry(1, 42);
+        Assert.assertEquals(42, cache.getIndexEntry(mSubFile, 1));
+    }
+
+    @Test
+    public void shouldReadConcurrently() throws Exception {
+        /* fewer slots than index blocks, threads replace each others blocks */
+        final IndexCache cache = newCache(2);
+        final AtomicInteger errors = new AtomicInteger();
+
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            final Random random = new Random(t);
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < 20000; i++) {
+                        long block = random.nextInt((int) mSubFile.numberOfBlocks);
+                        if (cache.getIndexEntry(mSubFile, block) != entry(block))
+                            errors.incrementAndGet();
+                    }
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads)
+            thread.join();
+
+        Assert.assertEquals(0, errors.get());
+    }
+
+    @Test
+    public void shouldShareCacheOfFile() throws IOException {
+        IndexCache cache = IndexCache.open(mFile, 4);
+        IndexCache other = IndexCache.open(mFile, 4);
+        Assert.assertSame(cache, other);
+
+        /* still open for the other tile source */
+        cache.destroy();
+        Assert.assertEquals(entry(1), other.getIndexEntry(mSubFile, 1));
+        other.destroy();
+
+        IndexCache reopened = IndexCache.open(mFile, 4);
+        Assert.assertNotSame(cache, reopened);
+        reopened.destroy();
+    }
+}
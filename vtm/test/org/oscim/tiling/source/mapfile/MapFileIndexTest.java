@@ -0,0 +1,76 @@
+package org.oscim.tiling.source.mapfile;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.oscim.core.Tag;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+
+public class MapFileIndexTest {
+    private static final int[] VALUES = {
+            0, 1, -1, 63, -63, 64, -64, 127, 128, 8191, 8192, -8192,
+            1 << 20, -(1 << 20), Integer.MAX_VALUE, -Integer.MAX_VALUE
+    };
+
+    private static MappedReadBuffer read(ByteArrayOutputStream out) {
+        MappedReadBuffer buffer = new MappedReadBuffer();
+        buffer.setBlock(ByteBuffer.wrap(out.toByteArray()), 0, out.size());
+        return buffer;
+    }
+
+    @Test
+    public void shouldReadSignedInts() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (int value : VALUES)
+            MapFileIndexBuilder.writeSignedInt(out, value);
+
+        MappedReadBuffer buffer = read(out);
+        for (int value : VALUES)
+            Assert.assertEquals(value, buffer.readSignedInt());
+    }
+
+    @Test
+    public void shouldReadUnsignedInts() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (int value : VALUES) {
+            if (value >= 0)
+                MapFileIndexBuilder.writeUnsignedInt(out, value);
+        }
+
+        MappedReadBuffer buffer = read(out);
+        for (int value : VALUES) {
+            if (value >= 0)
+                Assert.assertEquals(value, buffer.readUnsignedInt());
+        }
+    }
+
+    @Test
+    public void shouldKeepStringTags() {
+        Assert.assertEquals(MapFileIndex.NAME, MapFileIndex.getStringKey(Tag.KEY_NAME));
+        Assert.assertTrue(MapFileIndex.getStringKey(Tag.KEY_HOUSE_NUMBER) >= 0);
+        Assert.assertEquals(-1, MapFileIndex.getStringKey(Tag.KEY_AMENITY));
+    }
+
+    @Test
+    public void shouldMapCoordinatesToGridCells() {
+        Assert.assertEquals(0, MapFileIndex.cell(-100, -100, 100, 4));
+        Assert.assertEquals(3, MapFileIndex.cell(100, -100, 100, 4));
+        Assert.assertEquals(1, MapFileIndex.cell(-1, -100, 100, 4));
+        Assert.assertEquals(2, MapFileIndex.cell(1, -100, 100, 4));
+
+        /* outside of the grid */
+        Assert.assertEquals(0, MapFileIndex.cell(Integer.MIN_VALUE, -100, 100, 4));
+        Assert.assertEquals(3, MapFileIndex.cell(Integer.MAX_VALUE, -100, 100, 4));
+
+        /* all entries at one point */
+        Assert.assertEquals(0, MapFileIndex.cell(5, 5, 5, 1));
+    }
+
+    @Test
+    public void shouldLimitGridSize() {
+        Assert.assertEquals(1, MapFileIndex.getGridSize(0));
+        Assert.assertEquals(2, MapFileIndex.getGridSize(4 * MapFileIndex.CELL_ENTRIES));
+        Assert.assertEquals(MapFileIndex.MAX_GRID_SIZE, MapFileIndex.getGridSize(Integer.MAX_VALUE));
+    }
+}
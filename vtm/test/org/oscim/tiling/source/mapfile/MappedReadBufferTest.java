@@ -0,0 +1,50 @@
+package org.oscim.tiling.source.mapfile;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+public class MappedReadBufferTest {
+
+    /* two blocks: 4 bytes of int 1, string "ab" with length prefix */
+    private static final byte[] DATA = {0, 0, 0, 1, 2, 'a', 'b'};
+
+    @Test
+    public void shouldReadBlockAtOffset() {
+        MappedReadBuffer buffer = new MappedReadBuffer();
+        Assert.assertTrue(buffer.setBlock(ByteBuffer.wrap(DATA), 4, 3));
+
+        Assert.assertEquals(3, buffer.getBufferSize());
+        Assert.assertEquals("ab", buffer.readUTF8EncodedString());
+        Assert.assertEquals(3, buffer.getBufferPosition());
+    }
+
+    @Test
+    public void shouldRejectBlocksOutsideOfBuffer() {
+        MappedReadBuffer buffer = new MappedReadBuffer();
+        ByteBuffer data = ByteBuffer.wrap(DATA);
+
+        Assert.assertFalse(buffer.setBlock(data, -1, 2));
+        Assert.assertFalse(buffer.setBlock(data, 0, -1));
+        Assert.assertFalse(buffer.setBlock(data, 4, 4));
+        Assert.assertFalse(buffer.setBlock(data, Integer.MAX_VALUE, 2));
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void shouldNotReadBeyondBlock() {
+        MappedReadBuffer buffer = new MappedReadBuffer();
+        buffer.setBlock(ByteBuffer.wrap(DATA), 0, 3);
+
+        /* the fourth byte belongs to the next block */
+        buffer.readInt();
+    }
+
+    @Test
+    public void shouldNotReadStringBeyondBlock() {
+        MappedReadBuffer buffer = new MappedReadBuffer();
+        buffer.setBlock(ByteBuffer.wrap(DATA), 4, 2);
+
+        Assert.assertNull(buffer.readUTF8EncodedString());
+    }
+}
@@ -0,0 +1,94 @@
+package org.oscim.tiling.source.mapfile;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.oscim.backend.canvas.Bitmap;
+import org.oscim.core.MapElement;
+import org.oscim.tiling.ITileDataSink;
+import org.oscim.tiling.QueryResult;
+import org.oscim.tiling.TileDataSink;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class MultiMapFileTest {
+
+    static class ListSink implements ITileDataSink {
+        final List<MapElement> elements = new ArrayList<>();
+
+        @Override
+        public void process(MapElement element) {
+            elements.add(element);
+        }
+
+        @Override
+        public void setTileImage(Bitmap bitmap) {
+        }
+
+        @Override
+        public void completed(QueryResult result) {
+        }
+    }
+
+    private static MapElement element(float x, int level) {
+        MapElement e = new MapElement();
+        e.startPoints();
+        e.addPoint(x, 1);
+        e.setLabelPosition(x, 2);
+        e.level = level;
+        return e;
+    }
+
+    @Test
+    public void shouldReplayCopies() {
+        MultiMapFile.BufferedSink buffer = new MultiMapFile.BufferedSink();
+        MapElement e = element(1, 3);
+        buffer.process(e);
+
+        /* reused by the reader */
+        e.clear();
+        e.labelPosition.x = 5;
+
+        ListSink sink = new ListSink();
+        buffer.replay(new TileDataSink(sink));
+        Assert.assertEquals(1, sink.elements.size());
+        MapElement copy = sink.elements.get(0);
+        Assert.assertNotSame(e, copy);
+        Assert.assertEquals(1, copy.getNumPoints());
+        Assert.assertEquals(1, copy.getPointX(0), 0);
+        Assert.assertEquals(1, copy.labelPosition.x, 0);
+        Assert.assertEquals(3, copy.level);
+
+        /* buffer is empty after replay */
+        sink.elements.clear();
+        buffer.replay(new TileDataSink(sink));
+        Assert.assertEquals(0, sink.elements.size());
+    }
+
+    @Test
+    public void shouldSkipDuplicates() {
+        ListSink sink = new ListSink();
+        TileDataSink dataSink = new TileDataSink(sink);
+        /* added by a map file with higher priority */
+        Assert.assertTrue(dataSink.addPoi(1));
+        Assert.assertTrue(dataSink.addWay(2));
+
+        MultiMapFile.BufferedSink buffer = new MultiMapFile.BufferedSink();
+        if (buffer.addPoi(1))
+            buffer.process(element(1, 0));
+        if (buffer.addPoi(3))
+            buffer.process(element(2, 0));
+        if (buffer.addWay(2))
+            buffer.process(element(3, 0));
+        if (buffer.addWay(1))
+            buffer.process(element(4, 0));
+        /* not deduplicated */
+        buffer.process(element(5, 0));
+
+        buffer.replay(dataSink);
+        Assert.assertEquals(3, sink.elements.size());
+        Assert.assertEquals(2, sink.elements.get(0).getPointX(0), 0);
+        Assert.assertEquals(4, sink.elements.get(1).getPointX(0), 0);
+        Assert.assertEquals(5, sink.elements.get(2).getPointX(0), 0);
+    }
+}
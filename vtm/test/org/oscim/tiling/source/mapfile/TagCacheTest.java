@@ -0,0 +1,77 @@
+package org.oscim.tiling.source.mapfile;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.oscim.core.Tag;
+
+import java.nio.charset.Charset;
+
+public class TagCacheTest {
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private MapFileTileSource mTileSource;
+    private TagCache mCache;
+
+    @Before
+    public void setUp() {
+        mTileSource = new MapFileTileSource();
+        mCache = new TagCache(mTileSource);
+    }
+
+    private Tag get(String key, String value) {
+        /* value at an offset of a larger block */
+        byte[] bytes = ("xx" + value + "yy").getBytes(UTF8);
+        return mCache.get(key, bytes, 2, bytes.length - 4);
+    }
+
+    @Test
+    public void shouldShareTags() {
+        Tag t1 = get(Tag.KEY_HOUSE_NUMBER, "12a");
+        Tag t2 = get(Tag.KEY_HOUSE_NUMBER, "12a");
+        Assert.assertSame(t1, t2);
+        Assert.assertEquals(Tag.KEY_HOUSE_NUMBER, t1.key);
+        Assert.assertEquals("12a", t1.value);
+
+        Tag t3 = get(Tag.KEY_REF, "12a");
+        Assert.assertNotSame(t1, t3);
+        Assert.assertEquals(Tag.KEY_REF, t3.key);
+
+        Tag t4 = get(Tag.KEY_HOUSE_NUMBER, "12b");
+        Assert.assertEquals("12b", t4.value);
+    }
+
+    @Test
+    public void shouldDecodeUtf8() {
+        Tag t = get(Tag.KEY_NAME, "Zürich Straße");
+        Assert.assertEquals("Zürich Straße", t.value);
+        Assert.assertSame(t, get(Tag.KEY_NAME, "Zürich Straße"));
+    }
+
+    @Test
+    public void shouldReplaceEntries() {
+        Tag[] tags = new Tag[5000];
+        for (int i = 0; i < tags.length; i++)
+            tags[i] = get(Tag.KEY_HOUSE_NUMBER, String.valueOf(i));
+
+        for (int i = 0; i < tags.length; i++)
+            Assert.assertEquals(String.valueOf(i), get(Tag.KEY_HOUSE_NUMBER, String.valueOf(i)).value);
+    }
+
+    @Test
+    public void shouldLocalizeNames() {
+        String name = "Base\ren\bEnglish\rde\bDeutsch";
+        mTileSource.setPreferredLanguage("en");
+        mCache.validate();
+        Tag t1 = get(Tag.KEY_NAME, name);
+        Assert.assertEquals("English", t1.value);
+        Assert.assertSame(t1, get(Tag.KEY_NAME, name));
+
+        /* not localized */
+        Assert.assertEquals(name, get(Tag.KEY_REF, name).value);
+
+        mTileSource.setPreferredLanguage("de");
+        mCache.validate();
+        Assert.assertEquals("Deutsch", get(Tag.KEY_NAME, name).value);
+    }
+}
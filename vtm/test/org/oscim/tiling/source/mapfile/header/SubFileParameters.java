@@ -0,0 +1,24 @@
+package org.oscim.tiling.source.mapfile.header;
+
+import org.oscim.core.BoundingBox;
+
+/**
+ * Creates {@link SubFileParameter} for tests outside of the header package.
+ */
+public final class SubFileParameters {
+
+    public static SubFileParameter create(BoundingBox boundingBox, byte baseZoomLevel,
+                                          long startAddress, long indexStartAddress) {
+        SubFileParameterBuilder builder = new SubFileParameterBuilder();
+        builder.boundingBox = boundingBox;
+        builder.baseZoomLevel = baseZoomLevel;
+        builder.zoomLevelMin = baseZoomLevel;
+        builder.zoomLevelMax = baseZoomLevel;
+        builder.startAddress = startAddress;
+        builder.indexStartAddress = indexStartAddress;
+        return builder.build();
+    }
+
+    private SubFileParameters() {
+    }
+}
@@ -0,0 +1,52 @@
+package org.oscim.utils;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class HistogramTest {
+
+    @Test
+    public void shouldRecordStats() {
+        Histogram h = new Histogram("test");
+        Assert.assertEquals(0, h.getCount());
+        Assert.assertEquals(0, h.getMin());
+        Assert.assertEquals(0, h.getPercentile(50));
+
+        for (int i = 1; i <= 100; i++)
+            h.record(i);
+
+        Assert.assertEquals(100, h.getCount());
+        Assert.assertEquals(5050, h.getSum());
+        Assert.assertEquals(1, h.getMin());
+        Assert.assertEquals(100, h.getMax());
+        Assert.assertEquals(50.5, h.getMean(), 0.001);
+
+        /* percentiles are within a factor of two */
+        long p50 = h.getPercentile(50);
+        Assert.assertTrue(p50 >= 50 && p50 < 100);
+        Assert.assertEquals(100, h.getPercentile(100));
+        Assert.assertEquals(1, h.getPercentile(0));
+
+        h.reset();
+        Assert.assertEquals(0, h.getCount());
+        Assert.assertEquals(0, h.getMax());
+    }
+
+    @Test
+    public void shouldBucketByPowerOfTwo() {
+        Histogram h = new Histogram("test");
+        h.record(0);
+        h.record(-5);
+        h.record(1);
+        h.record(2);
+        h.record(3);
+        h.record(Long.MAX_VALUE);
+
+        long[] buckets = h.getBuckets();
+        Assert.assertEquals(2, buckets[0]);
+        Assert.assertEquals(1, buckets[1]);
+        Assert.assertEquals(2, buckets[2]);
+        Assert.assertEquals(1, buckets[63]);
+        Assert.assertEquals(Long.MAX_VALUE, h.getPercentile(100));
+    }
+}
@@ -0,0 +1,139 @@
+package org.oscim.utils;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.oscim.core.GeometryBuffer;
+
+public class TriangulatorTest {
+
+    private static double area(float[] points, int[] tris, int numIndices) {
+        double sum = 0;
+        for (int i = 0; i < numIndices; i += 3) {
+            int a = tris[i] * 2, b = tris[i + 1] * 2, c = tris[i + 2] * 2;
+            sum += ((points[b] - points[a]) * (points[c + 1] - points[a + 1])
+                    - (points[c] - points[a]) * (points[b + 1] - points[a + 1])) / 2;
+        }
+        return sum;
+    }
+
+    private static GeometryBuffer square(GeometryBuffer g, float x, float y, float size, boolean ccw) {
+        if (ccw) {
+            g.addPoint(x, y);
+            g.addPoint(x + size, y);
+            g.addPoint(x + size, y + size);
+            g.addPoint(x, y + size);
+        } else {
+            g.addPoint(x, y);
+            g.addPoint(x, y + size);
+            g.addPoint(x + size, y + size);
+            g.addPoint(x + size, y);
+        }
+        return g;
+    }
+
+    @Test
+    public void shouldTriangulateConcavePolygon() {
+        GeometryBuffer g = new GeometryBuffer(8, 2);
+        g.startPolygon();
+        g.addPoint(0, 0);
+        g.addPoint(10, 0);
+        g.addPoint(10, 10);
+        g.addPoint(5, 4);
+        g.addPoint(0, 10);
+
+        Triangulator t = new Triangulator();
+        int n = t.triangulate(g.points, 0, g.index, 0, 1);
+        Assert.assertEquals(9, n);
+        Assert.assertEquals(70, area(g.points, t.getTriangles(), n), 1e-6);
+    }
+
+    @Test
+    public void shouldKeepWindingOrder() {
+        Triangulator t = new Triangulator();
+
+        GeometryBuffer g = new GeometryBuffer(4, 2);
+        g.startPolygon();
+        square(g, 0, 0, 10, false);
+        int n = t.triangulate(g.points, 0, g.index, 0, 1);
+        Assert.assertEquals(6, n);
+        Assert.assertEquals(-100, area(g.points, t.getTriangles(), n), 1e-6);
+    }
+
+    @Test
+    public void shouldCutHoles() {
+        Triangulator t = new Triangulator();
+
+        /* inner rings are holes independent of their winding */
+        for (boolean ccw : new boolean[]{true, false}) {
+            GeometryBuffer g = new GeometryBuffer(12, 4);
+            g.startPolygon();
+            square(g, 0, 0, 10, true);
+            g.startHole();
+            square(g, 2, 2, 2, ccw);
+            g.startHole();
+            square(g, 6, 6, 2, !ccw);
+
+            int n = t.triangulate(g.points, 0, g.index, 0, 3);
+            /* points + 2 * holes - 2 triangles */
+            Assert.assertEquals(3 * 14, n);
+            Assert.assertEquals(92, area(g.points, t.getTriangles(), n), 1e-6);
+        }
+    }
+
+    @Test
+    public void shouldTriangulateMultiPolygon() {
+        GeometryBuffer g = new GeometryBuffer(12, 4);
+        g.startPolygon();
+        square(g, 0, 0, 10, true);
+        g.startPolygon();
+        /* degenerate ring is skipped */
+        g.addPoint(20, 0);
+        g.addPoint(30, 0);
+        g.startPolygon();
+        square(g, 40, 0, 10, true);
+
+        Triangulator t = new Triangulator();
+        int n = t.triangulate(g.points, 0, g.index, 0, 5);
+        Assert.assertEquals(12, n);
+        Assert.assertEquals(200, area(g.points, t.getTriangles(), n), 1e-6);
+
+        /* vertex ids are relative to the first point */
+        int[] tris = t.getTriangles();
+        for (int i = 6; i < 12; i++)
+            Assert.assertTrue(tris[i] >= 6 && tris[i] < 10);
+    }
+
+    @Test
+    public void shouldIgnoreClosingPoint() {
+        GeometryBuffer g = new GeometryBuffer(5, 2);
+        g.startPolygon();
+        square(g, 0, 0, 10, true);
+        g.addPoint(0, 0);
+
+        Triangulator t = new Triangulator();
+        int n = t.triangulate(g.points, 0, g.index, 0, 1);
+        Assert.assertEquals(6, n);
+        Assert.assertEquals(100, area(g.points, t.getTriangles(), n), 1e-6);
+    }
+
+    @Test
+    public void shouldTriangulateLargePolygon() {
+        int points = 1000;
+        GeometryBuffer g = new GeometryBuffer(points, 2);
+        g.startPolygon();
+        for (int i = 0; i < points; i++) {
+            double a = 2 * Math.PI * i / points;
+            double r = (i & 1) == 0 ? 100 : 90;
+            g.addPoint((float) (Math.cos(a) * r), (float) (Math.sin(a) * r));
+        }
+
+        Triangulator t = new Triangulator();
+        int n = t.triangulate(g.points, 0, g.index, 0, 1);
+        Assert.assertEquals(3 * (points - 2), n);
+
+        double expected = 0;
+        for (int i = 0, j = points - 1; i < points; j = i++)
+            expected += (g.points[j * 2] * g.points[i * 2 + 1] - g.points[i * 2] * g.points[j * 2 + 1]) / 2.0;
+        Assert.assertEquals(expected, area(g.points, t.getTriangles(), n), 1e-2);
+    }
+}